@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares two ways of getting a downloaded forecast from the network thread to the disk thread
+ * while the main thread is busy: posting it to a LiveData observed on the main thread, which is
+ * how the repository used to pick it up, and handing it straight to a download sink. Measures how
+ * long each batch takes to reach the disk thread and how many never do.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ForecastHandoffBenchmark {
+    private static final String LOG_TAG = ForecastHandoffBenchmark.class.getSimpleName();
+
+    private static final int BATCHES = 100;
+    // A batch is handed over this often, about as fast as a group sync delivers its locations
+    private static final long BATCH_INTERVAL_MILLIS = 5;
+    // The main thread is kept busy in slices this long, like a screen dropping frames
+    private static final long MAIN_THREAD_BUSY_MILLIS = 50;
+    // How long to wait for the last batches to arrive
+    private static final long DRAIN_TIMEOUT_SECONDS = 5;
+
+    private ExecutorService mDiskIO;
+    private AppExecutors mExecutors;
+
+    @Before
+    public void createExecutors() {
+        mDiskIO = Executors.newSingleThreadExecutor();
+        // LiveData has to be observed on the real main thread
+        Handler mainThread = new Handler(Looper.getMainLooper());
+        mExecutors = new AppExecutors(mDiskIO, mDiskIO, mainThread::post);
+    }
+
+    @After
+    public void shutDownExecutors() {
+        mDiskIO.shutdownNow();
+    }
+
+    @Test
+    public void sinkDeliversEveryBatchSooner() throws InterruptedException {
+        Handoff liveData = measureLiveData();
+        Handoff sink = measureSink();
+        Log.d(LOG_TAG, liveData.report("LiveData.postValue") + '\n' + sink.report("DownloadSink"));
+
+        assertEquals(BATCHES, sink.getArrivedCount());
+        // postValue only keeps the latest value until the main thread gets to it
+        assertTrue("LiveData delivered " + liveData.getArrivedCount() + " batches",
+                liveData.getArrivedCount() < BATCHES);
+        assertTrue("Sink median " + sink.getMedianNanos() + " ns, LiveData median "
+                        + liveData.getMedianNanos() + " ns",
+                sink.getMedianNanos() < liveData.getMedianNanos());
+    }
+
+    private Handoff measureLiveData() throws InterruptedException {
+        Handoff handoff = new Handoff();
+        MutableLiveData<Integer> liveData = new MutableLiveData<>();
+        Observer<Integer> observer = batch ->
+                mExecutors.diskIO().execute(() -> handoff.arrived(batch));
+        mExecutors.mainThread().execute(() -> liveData.observeForever(observer));
+
+        handoff.measure(mExecutors, liveData::postValue);
+        mExecutors.mainThread().execute(() -> liveData.removeObserver(observer));
+        return handoff;
+    }
+
+    private Handoff measureSink() throws InterruptedException {
+        Handoff handoff = new Handoff();
+        handoff.measure(mExecutors, batch ->
+                mExecutors.diskIO().execute(() -> handoff.arrived(batch)));
+        return handoff;
+    }
+
+    /**
+     * Hands batches over one way and records when each of them arrives on the disk thread.
+     */
+    private static class Handoff {
+        private final long[] mSentNanos = new long[BATCHES];
+        private final AtomicLongArray mLatencyNanos = new AtomicLongArray(BATCHES);
+        private final CountDownLatch mArrivals = new CountDownLatch(BATCHES);
+        // Latencies of the batches which arrived, sorted
+        private long[] mLatencies;
+
+        void arrived(int batch) {
+            mLatencyNanos.set(batch, System.nanoTime() - mSentNanos[batch]);
+            mArrivals.countDown();
+        }
+
+        void measure(AppExecutors executors, Sender sender) throws InterruptedException {
+            AtomicBoolean busy = new AtomicBoolean(true);
+            keepBusy(executors, busy);
+            try {
+                for (int batch = 0; batch < BATCHES; batch++) {
+                    // Written before the batch is handed over, which publishes it to the receiver
+                    mSentNanos[batch] = System.nanoTime();
+                    sender.send(batch);
+                    SystemClock.sleep(BATCH_INTERVAL_MILLIS);
+                }
+                mArrivals.await(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } finally {
+                busy.set(false);
+            }
+
+            long[] latencies = new long[BATCHES];
+            int arrived = 0;
+            for (int batch = 0; batch < BATCHES; batch++) {
+                long latency = mLatencyNanos.get(batch);
+                if (latency != 0) latencies[arrived++] = latency;
+            }
+            mLatencies = Arrays.copyOf(latencies, arrived);
+            Arrays.sort(mLatencies);
+        }
+
+        int getArrivedCount() {
+            return mLatencies.length;
+        }
+
+        long getMedianNanos() {
+            return mLatencies.length == 0 ? Long.MAX_VALUE : mLatencies[mLatencies.length / 2];
+        }
+
+        String report(String name) {
+            int arrived = mLatencies.length;
+            if (arrived == 0) {
+                return String.format(Locale.US, "%s: none of %d batches arrived", name, BATCHES);
+            }
+            return String.format(Locale.US, "%s: %d of %d batches arrived, median %.3f ms,"
+                            + " 95th percentile %.3f ms, max %.3f ms",
+                    name, arrived, BATCHES,
+                    mLatencies[arrived / 2] / 1e6,
+                    mLatencies[Math.min(arrived - 1, arrived * 95 / 100)] / 1e6,
+                    mLatencies[arrived - 1] / 1e6);
+        }
+
+        /**
+         * Keeps the main thread busy, a slice at a time, until told to stop.
+         */
+        private static void keepBusy(AppExecutors executors, AtomicBoolean busy) {
+            executors.mainThread().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!busy.get()) return;
+                    long end = SystemClock.uptimeMillis() + MAIN_THREAD_BUSY_MILLIS;
+                    while (SystemClock.uptimeMillis() < end) {
+                        // Spins, as a long layout or a slow bind would
+                    }
+                    executors.mainThread().execute(this);
+                }
+            });
+        }
+    }
+
+    private interface Sender {
+        void send(int batch);
+    }
+}
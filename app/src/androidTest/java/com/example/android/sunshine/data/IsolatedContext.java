@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+/**
+ * The app's context, with preferences of its own, so that tests leave the app's sync state and
+ * settings alone. It is its own application context, so that it isn't left behind by the
+ * classes which keep the application context.
+ */
+public class IsolatedContext extends ContextWrapper {
+    // Keeps the preferences of the tests apart from the app's
+    private static final String PREFERENCES_PREFIX = "test_";
+
+    public IsolatedContext(Context base) {
+        super(base);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return super.getSharedPreferences(PREFERENCES_PREFIX + name, mode);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that a {@link QueryStream} only delivers the results asked for, stops on cancel, and
+ * skips results which didn't change when asked to.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class QueryStreamTest {
+
+    private static final int DAYS = 14;
+    // How long to wait for a result which should arrive
+    private static final long RESULT_TIMEOUT_SECONDS = 5;
+    // How long to wait to be sure a result isn't coming. Room tells the stream about a change
+    // well within this.
+    private static final long QUIET_MILLIS = 500;
+
+    private SunshineDatabase mDatabase;
+    private ExecutorService mQueryExecutor;
+    private ExecutorService mDeliveryExecutor;
+    private final BlockingQueue<List<ListWeatherEntry>> mResults = new LinkedBlockingQueue<>();
+    private final QueryStream.Subscriber<List<ListWeatherEntry>> mSubscriber =
+            new QueryStream.Subscriber<List<ListWeatherEntry>>() {
+                @Override
+                public void onNext(List<ListWeatherEntry> result) {
+                    mResults.add(result);
+                }
+
+                @Override
+                public void onError(RuntimeException e) {
+                    throw new AssertionError("The query failed", e);
+                }
+            };
+
+    @Before
+    public void createDatabase() {
+        mDatabase = TestWeatherData.createInMemoryDatabase(
+                InstrumentationRegistry.getTargetContext());
+        mDatabase.weatherDao().bulkInsert(TestWeatherData.createForecast(DAYS));
+        mQueryExecutor = Executors.newSingleThreadExecutor();
+        mDeliveryExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void closeDatabase() throws InterruptedException {
+        mQueryExecutor.shutdown();
+        mDeliveryExecutor.shutdown();
+        mQueryExecutor.awaitTermination(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mDeliveryExecutor.awaitTermination(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mDatabase.close();
+    }
+
+    @Test
+    public void nothingIsDeliveredUntilRequested() throws InterruptedException {
+        QueryStream.Subscription subscription = createStream().subscribe(mDeliveryExecutor,
+                mSubscriber);
+        assertNull(pollQuiet());
+
+        subscription.request(1);
+        assertEquals(DAYS, takeResult().size());
+    }
+
+    @Test
+    public void onlyTheRequestedNumberOfResultsIsDelivered() throws InterruptedException {
+        QueryStream.Subscription subscription = createStream().subscribe(mDeliveryExecutor,
+                mSubscriber);
+        subscription.request(1);
+        assertEquals(DAYS, takeResult().size());
+
+        // Nothing more was asked for, the changes wait for the next request
+        insertForecast(DAYS + 1);
+        insertForecast(DAYS + 2);
+        assertNull(pollQuiet());
+
+        // Both changes are read by a single run, with the latest rows
+        subscription.request(1);
+        assertEquals(DAYS + 2, takeResult().size());
+        assertNull(pollQuiet());
+
+        subscription.request(2);
+        insertForecast(DAYS + 3);
+        assertEquals(DAYS + 3, takeResult().size());
+        insertForecast(DAYS + 4);
+        assertEquals(DAYS + 4, takeResult().size());
+        insertForecast(DAYS + 5);
+        assertNull(pollQuiet());
+        subscription.cancel();
+    }
+
+    @Test
+    public void nothingIsDeliveredAfterCancel() throws InterruptedException {
+        QueryStream.Subscription subscription = createStream().subscribe(mDeliveryExecutor,
+                mSubscriber);
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(DAYS, takeResult().size());
+
+        subscription.cancel();
+        insertForecast(DAYS + 1);
+        assertNull(pollQuiet());
+
+        // Asking for more doesn't bring a cancelled stream back
+        subscription.request(1);
+        assertNull(pollQuiet());
+    }
+
+    @Test
+    public void distinctUntilChangedSkipsUnchangedResults() throws InterruptedException {
+        QueryStream.Subscription subscription = createStream()
+                .distinctUntilChanged(QueryStream.elementwise(ListWeatherEntry::hasSameContent))
+                .subscribe(mDeliveryExecutor, mSubscriber);
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(DAYS, takeResult().size());
+
+        // Replacing the rows gives them new ids but the same weather
+        insertForecast(DAYS);
+        assertNull(pollQuiet());
+
+        insertForecast(DAYS + 1);
+        assertEquals(DAYS + 1, takeResult().size());
+        subscription.cancel();
+    }
+
+    @Test
+    public void skippedResultsDontCountTowardsTheRequested() throws InterruptedException {
+        QueryStream.Subscription subscription = createStream()
+                .distinctUntilChanged(QueryStream.elementwise(ListWeatherEntry::hasSameContent))
+                .subscribe(mDeliveryExecutor, mSubscriber);
+        subscription.request(2);
+        assertEquals(DAYS, takeResult().size());
+
+        insertForecast(DAYS);
+        assertNull(pollQuiet());
+
+        // The second result asked for is still owed
+        insertForecast(DAYS + 1);
+        assertEquals(DAYS + 1, takeResult().size());
+        subscription.cancel();
+    }
+
+    private QueryStream<List<ListWeatherEntry>> createStream() {
+        return new QueryStream<>(mDatabase, mQueryExecutor,
+                () -> mDatabase.weatherDao().getCurrentWeatherForecastsNow(new Date(0)),
+                "weather");
+    }
+
+    /**
+     * Stores a forecast of the given number of days from the epoch. Days already stored get the
+     * same weather again.
+     */
+    private void insertForecast(int days) {
+        mDatabase.weatherDao().bulkInsert(TestWeatherData.createForecast(days));
+    }
+
+    private List<ListWeatherEntry> takeResult() throws InterruptedException {
+        List<ListWeatherEntry> result = mResults.poll(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No result was delivered", result);
+        return result;
+    }
+
+    private List<ListWeatherEntry> pollQuiet() throws InterruptedException {
+        return mResults.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
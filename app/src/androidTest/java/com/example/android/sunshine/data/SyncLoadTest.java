@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.alert.WeatherAlertEngine;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+import com.example.android.sunshine.data.network.LocalWeatherServer;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the whole sync, from the request to a {@link LocalWeatherServer} until the
+ * forecast has been stored by a {@link SunshineRepository} and handed to its listener. Syncs a
+ * number of locations one at a time, for the latency of a sync, and then all at once, for the
+ * throughput of group queries, against servers of different speeds.
+ * <p>
+ * Everything is synced into an in-memory database, preferences and executors of its own, so that
+ * the app's forecast and sync schedule are left alone. Every location is new to the server, so
+ * every sync downloads the whole forecast. The data source is a standalone one, which delivers
+ * every location, so the locations overwrite one another's days, which is all the same for
+ * counting stores.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SyncLoadTest {
+    private static final String LOG_TAG = SyncLoadTest.class.getSimpleName();
+
+    private static final String SNAPSHOT_FILE = "sync_load_test_snapshot.bin";
+    private static final int SYNC_COUNT = 20;
+
+    // A slow mobile network
+    private static final LocalWeatherServer.Conditions SLOW_NETWORK =
+            new LocalWeatherServer.Conditions(300, 32 * 1024, 0, 0);
+    // Much longer forecasts than the app asks for
+    private static final LocalWeatherServer.Conditions LONG_FORECASTS =
+            new LocalWeatherServer.Conditions(0, 0, 0, 60);
+
+    private final StoreCounter mCounter = new StoreCounter();
+    private Context mContext;
+    private ExecutorService mDiskIO;
+    private ExecutorService mNetworkIO;
+    private AppExecutors mExecutors;
+    private SunshineDatabase mDatabase;
+    private File mSnapshotFile;
+    private LocalWeatherServer mServer;
+    private WeatherNetworkDataSource mDataSource;
+
+    @Before
+    public void createDatabase() {
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mDiskIO = Executors.newSingleThreadExecutor();
+        mNetworkIO = Executors.newFixedThreadPool(3);
+        mExecutors = new AppExecutors(mDiskIO, mNetworkIO,
+                new Handler(Looper.getMainLooper())::post);
+        mDatabase = TestWeatherData.createInMemoryDatabase(mContext);
+        mSnapshotFile = new File(mContext.getCacheDir(), SNAPSHOT_FILE);
+    }
+
+    @After
+    public void stopServer() throws InterruptedException {
+        if (mServer != null) mServer.stop();
+        // Waits for the last writes before the database goes away
+        awaitDiskIO();
+        mDatabase.close();
+        mDiskIO.shutdownNow();
+        mNetworkIO.shutdownNow();
+        if (mSnapshotFile.exists() && !mSnapshotFile.delete()) {
+            Log.w(LOG_TAG, "Deleting " + mSnapshotFile + " failed");
+        }
+    }
+
+    @Test
+    public void syncsQuicklyFromAnIdealServer() throws Exception {
+        startServer(LocalWeatherServer.Conditions.IDEAL);
+        long[] latencies = syncOneAtATime();
+        long burstNanos = syncAllAtOnce();
+        logReport(latencies, burstNanos);
+
+        assertTrue("95th percentile " + latencies[SYNC_COUNT * 95 / 100] / 1000000 + " ms",
+                latencies[SYNC_COUNT * 95 / 100] < 1000 * 1000000L);
+        assertTrue("All at once took " + burstNanos / 1000000 + " ms",
+                burstNanos < SYNC_COUNT * 1000 * 1000000L);
+    }
+
+    @Test
+    public void syncsEverythingOverASlowNetwork() throws Exception {
+        startServer(SLOW_NETWORK);
+        long[] latencies = syncOneAtATime();
+        long burstNanos = syncAllAtOnce();
+        logReport(latencies, burstNanos);
+
+        // A daily and a three hour request, each at least one round trip
+        assertTrue("Median " + latencies[SYNC_COUNT / 2] / 1000000 + " ms",
+                latencies[SYNC_COUNT / 2] >= 2 * 300 * 1000000L);
+        assertTrue("Max " + latencies[SYNC_COUNT - 1] / 1000000 + " ms",
+                latencies[SYNC_COUNT - 1] < 10 * 1000 * 1000000L);
+    }
+
+    @Test
+    public void storesLongForecasts() throws Exception {
+        startServer(LONG_FORECASTS);
+        long[] latencies = syncOneAtATime();
+        long burstNanos = syncAllAtOnce();
+        logReport(latencies, burstNanos);
+
+        assertTrue("Max " + latencies[SYNC_COUNT - 1] / 1000000 + " ms",
+                latencies[SYNC_COUNT - 1] < 5 * 1000 * 1000000L);
+    }
+
+    private void startServer(LocalWeatherServer.Conditions conditions) throws IOException {
+        mServer = LocalWeatherServer.start(conditions);
+        mDataSource = WeatherNetworkDataSource.newStandaloneInstance(mContext, mExecutors,
+                mDatabase.syncRequestDao(), new CityDatabase(mContext), mServer.getBaseUrl());
+        new SunshineRepository(mDatabase, mDataSource, mExecutors,
+                new ForecastSnapshot(mSnapshotFile), mCounter,
+                new WeatherAlertEngine(mContext, mDatabase));
+    }
+
+    /**
+     * Syncs one location after the other, each one only once the one before it was stored.
+     *
+     * @return The time from each request until its forecast was stored, sorted
+     */
+    private long[] syncOneAtATime() throws InterruptedException {
+        long[] latencies = new long[SYNC_COUNT];
+        for (int i = 0; i < SYNC_COUNT; i++) {
+            int storedBefore = mCounter.getStoredCount();
+            long start = System.nanoTime();
+            mDataSource.fetchLocations(Collections.singletonList("Load test " + i));
+            awaitDiskIO();
+            assertEquals("Sync " + i + " wasn't stored", storedBefore + 1,
+                    mCounter.getStoredCount());
+            latencies[i] = mCounter.getLastStoredNanos() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Syncs every location at once, which fetches them in groups.
+     *
+     * @return The time until every forecast was stored
+     */
+    private long syncAllAtOnce() throws InterruptedException {
+        List<String> locations = new ArrayList<>(SYNC_COUNT);
+        for (int i = 0; i < SYNC_COUNT; i++) locations.add("Load test burst " + i);
+
+        int storedBefore = mCounter.getStoredCount();
+        long start = System.nanoTime();
+        mDataSource.fetchLocations(locations);
+        awaitDiskIO();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(SYNC_COUNT, mCounter.getStoredCount() - storedBefore);
+        return elapsed;
+    }
+
+    private void logReport(long[] latencies, long burstNanos) {
+        Log.d(LOG_TAG, String.format(Locale.US, "One at a time: median %.1f ms,"
+                        + " 95th percentile %.1f ms, max %.1f ms. All at once: %.1f ms,"
+                        + " %.1f syncs per second. Server: %d requests, %.1f KB sent",
+                latencies[SYNC_COUNT / 2] / 1e6, latencies[SYNC_COUNT * 95 / 100] / 1e6,
+                latencies[SYNC_COUNT - 1] / 1e6, burstNanos / 1e6,
+                SYNC_COUNT / (burstNanos / 1e9), mServer.getRequestCount(),
+                mServer.getBytesSent() / 1024f));
+    }
+
+    /**
+     * Waits until everything handed to the disk thread so far has run. The disk thread works
+     * through its tasks in order, so that is once a task queued now runs.
+     */
+    private void awaitDiskIO() throws InterruptedException {
+        CountDownLatch idle = new CountDownLatch(1);
+        mDiskIO.execute(idle::countDown);
+        idle.await();
+    }
+
+    /**
+     * Counts the forecasts stored and when the last one was.
+     */
+    private static class StoreCounter implements SunshineRepository.ForecastStoredListener {
+        private final AtomicInteger mStoredCount = new AtomicInteger();
+        private volatile long mLastStoredNanos;
+
+        @Override
+        public void onForecastStored(List<ListWeatherEntry> forecast) {
+            mLastStoredNanos = System.nanoTime();
+            mStoredCount.incrementAndGet();
+        }
+
+        int getStoredCount() {
+            return mStoredCount.get();
+        }
+
+        long getLastStoredNanos() {
+            return mLastStoredNanos;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.alert;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.WeatherDataSource;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long the alert rules take to compile and to test, for thousands of rules against
+ * the forecasts of a thousand locations. Each forecast is tested whole, as on the first sync of
+ * a day, and then only the few days a typical sync changes. Also checks that grouping the rules
+ * by day finds the same matches as testing every rule against every day.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class WeatherAlertBenchmark {
+    private static final String LOG_TAG = WeatherAlertBenchmark.class.getSimpleName();
+
+    private static final int[] RULE_COUNTS = {100, 1000, 5000};
+    private static final int LOCATION_COUNT = 1000;
+    // Days a sync usually changes, out of the whole forecast
+    private static final int CHANGED_DAY_COUNT = 2;
+    // Compiling is done once per evaluation, it should never be noticeable next to the sync
+    private static final long MAX_COMPILE_MILLIS = 500;
+
+    // Made into rules with random thresholds and windows
+    private static final String[] CONDITION_FORMATS = {
+            "min < %d",
+            "max > %d",
+            "weatherId between 500 and 531",
+            "wind >= %d and max < %d",
+            "humidity > %d and pressure < 1000",
+    };
+
+    private static long sToday;
+    private static List<List<WeatherEntry>> sForecasts;
+    private static List<List<WeatherEntry>> sChangedDays;
+
+    @BeforeClass
+    public static void createForecasts() {
+        sToday = SunshineDateUtils.getNormalizedUtcMsForToday();
+        Random random = new Random(0);
+        sForecasts = new ArrayList<>(LOCATION_COUNT);
+        sChangedDays = new ArrayList<>(LOCATION_COUNT);
+        for (int i = 0; i < LOCATION_COUNT; i++) {
+            List<WeatherEntry> forecast = makeForecast(random, sToday);
+            sForecasts.add(forecast);
+            List<WeatherEntry> changed = new ArrayList<>(CHANGED_DAY_COUNT);
+            for (int j = 0; j < CHANGED_DAY_COUNT; j++) {
+                changed.add(forecast.get(random.nextInt(forecast.size())));
+            }
+            sChangedDays.add(changed);
+        }
+    }
+
+    @Test
+    public void ruleSetMatchesEveryRuleTestedOnItsOwn() {
+        List<AlertRuleEntry> rules = makeRules(new Random(1), RULE_COUNTS[0]);
+        AlertRuleSet ruleSet = new AlertRuleSet(rules);
+        assertEquals(rules.size(), ruleSet.getRuleCount());
+
+        for (List<WeatherEntry> forecast : sForecasts.subList(0, 50)) {
+            assertEquals(countMatchesOneByOne(rules, forecast),
+                    ruleSet.match(forecast, sToday).size());
+        }
+    }
+
+    @Test
+    public void changedDaysAreTestedFasterThanWholeForecasts() {
+        Random random = new Random(2);
+        StringBuilder report = new StringBuilder();
+        for (int ruleCount : RULE_COUNTS) {
+            List<AlertRuleEntry> rules = makeRules(random, ruleCount);
+
+            long start = System.nanoTime();
+            AlertRuleSet ruleSet = new AlertRuleSet(rules);
+            long compileNanos = System.nanoTime() - start;
+
+            int fullMatches = 0;
+            start = System.nanoTime();
+            for (List<WeatherEntry> forecast : sForecasts) {
+                fullMatches += ruleSet.match(forecast, sToday).size();
+            }
+            long fullNanos = System.nanoTime() - start;
+
+            int changedMatches = 0;
+            start = System.nanoTime();
+            for (List<WeatherEntry> changed : sChangedDays) {
+                changedMatches += ruleSet.match(changed, sToday).size();
+            }
+            long changedNanos = System.nanoTime() - start;
+
+            report.append(String.format(Locale.US, "%d rules: compiled in %.3f ms; %d locations"
+                            + " tested whole in %.3f ms (%.1f µs each, %d matches), changed days"
+                            + " only in %.3f ms (%.1f µs each, %d matches)\n",
+                    ruleCount, compileNanos / 1e6, LOCATION_COUNT,
+                    fullNanos / 1e6, fullNanos / 1e3 / LOCATION_COUNT, fullMatches,
+                    changedNanos / 1e6, changedNanos / 1e3 / LOCATION_COUNT, changedMatches));
+
+            assertTrue(ruleCount + " rules compiled in " + compileNanos / 1000000 + " ms",
+                    compileNanos < MAX_COMPILE_MILLIS * 1000000);
+            // Fewer days are tested, so fewer can match
+            assertTrue(changedMatches <= fullMatches);
+            assertTrue(ruleCount + " rules, changed days in " + changedNanos + " ns, whole in "
+                    + fullNanos + " ns", changedNanos < fullNanos);
+        }
+        Log.d(LOG_TAG, report.toString());
+    }
+
+    /**
+     * Tests each rule against each day of its window, without grouping the rules by day
+     */
+    private static int countMatchesOneByOne(List<AlertRuleEntry> rules,
+                                            List<WeatherEntry> forecast) {
+        int matches = 0;
+        for (AlertRuleEntry rule : rules) {
+            WeatherPredicate predicate = AlertRuleCompiler.compile(rule.getCondition());
+            for (WeatherEntry weather : forecast) {
+                long day = (weather.getDate().getTime() - sToday) / SunshineDateUtils.DAY_IN_MILLIS;
+                if (day >= rule.getFirstDay() && day <= rule.getLastDay()
+                        && predicate.test(weather)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static List<AlertRuleEntry> makeRules(Random random, int ruleCount) {
+        List<AlertRuleEntry> rules = new ArrayList<>(ruleCount);
+        for (int id = 1; id <= ruleCount; id++) {
+            String format = CONDITION_FORMATS[random.nextInt(CONDITION_FORMATS.length)];
+            String condition = String.format(Locale.US, format,
+                    random.nextInt(40) - 10, random.nextInt(40) - 10);
+            int firstDay = random.nextInt(WeatherDataSource.NUM_DAYS);
+            int lastDay = firstDay + random.nextInt(4);
+            rules.add(new AlertRuleEntry(id, "Rule " + id, condition, firstDay, lastDay));
+        }
+        return rules;
+    }
+
+    private static List<WeatherEntry> makeForecast(Random random, long today) {
+        List<WeatherEntry> forecast = new ArrayList<>(WeatherDataSource.NUM_DAYS);
+        for (int day = 0; day < WeatherDataSource.NUM_DAYS; day++) {
+            double min = -10 + random.nextInt(300) / 10.0;
+            forecast.add(new WeatherEntry(200 + random.nextInt(605),
+                    new Date(today + SunshineDateUtils.DAY_IN_MILLIS * day),
+                    min, min + random.nextInt(150) / 10.0, 20 + random.nextInt(80),
+                    980 + random.nextInt(500) / 10.0, random.nextInt(250) / 10.0,
+                    random.nextInt(3600) / 10.0));
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.city;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link CityIndex} against a brute force search over 50k synthetic cities, laid out the
+ * way {@code tools/build_city_database.py} lays out the bundled index, and compares their speed.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class CityIndexTest {
+    private static final String LOG_TAG = CityIndexTest.class.getSimpleName();
+
+    // Must match CityIndex and build_city_database.py
+    private static final int MAGIC = 0x53434b44;
+    private static final int VERSION = 1;
+
+    private static final int UNIFORM_CITIES = 40000;
+    // The rest are packed around a few centers, like cities in a metropolitan area
+    private static final int CLUSTERS = 100;
+    private static final int CITIES_PER_CLUSTER = 100;
+    private static final double CLUSTER_RADIUS_DEGREES = 0.5;
+    private static final int QUERIES = 2000;
+    // Far below the distance between any two real cities. The index works in floats, so
+    // positions almost the same distance away can come out either way.
+    private static final double TOLERANCE_KM = 0.01;
+
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private File mIndexFile;
+    private CityIndex mIndex;
+
+    @Before
+    public void buildIndex() throws IOException {
+        Random random = new Random(0);
+        int count = UNIFORM_CITIES + CLUSTERS * CITIES_PER_CLUSTER;
+        mLatitudes = new double[count];
+        mLongitudes = new double[count];
+        for (int i = 0; i < UNIFORM_CITIES; i++) {
+            // Uniform over the sphere, not over latitudes, which would crowd the poles
+            mLatitudes[i] = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            mLongitudes[i] = 360 * random.nextDouble() - 180;
+        }
+        int i = UNIFORM_CITIES;
+        for (int cluster = 0; cluster < CLUSTERS; cluster++) {
+            double latitude = 170 * random.nextDouble() - 85;
+            double longitude = 360 * random.nextDouble() - 180;
+            for (int city = 0; city < CITIES_PER_CLUSTER; city++, i++) {
+                mLatitudes[i] = latitude + CLUSTER_RADIUS_DEGREES * (2 * random.nextDouble() - 1);
+                mLongitudes[i] = wrapLongitude(
+                        longitude + CLUSTER_RADIUS_DEGREES * (2 * random.nextDouble() - 1));
+            }
+        }
+
+        mIndexFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "city_index_test.kdtree");
+        writeIndex(mIndexFile);
+        mIndex = CityIndex.open(mIndexFile, VERSION);
+    }
+
+    @After
+    public void deleteIndex() {
+        if (!mIndexFile.delete()) Log.w(LOG_TAG, "Deleting " + mIndexFile + " failed");
+    }
+
+    @Test
+    public void findsTheSameCityAsBruteForce() {
+        Random random = new Random(1);
+        int sameCity = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            double longitude = 360 * random.nextDouble() - 180;
+            if (checkNearest(latitude, longitude)) sameCity++;
+        }
+        // Only ties within the tolerance may pick another city
+        assertTrue(sameCity + " of " + QUERIES + " found the same city",
+                sameCity >= QUERIES * 99 / 100);
+    }
+
+    @Test
+    public void findsTheNearestCityAtThePolesAndTheDateLine() {
+        double[][] positions = {
+                {90, 0}, {-90, 0}, {89.99, 123}, {-89.99, -45},
+                {0, 180}, {0, -180}, {45, 179.999}, {45, -179.999}, {-33.9, 180},
+                {0, 0}, {51.5, -0.1},
+        };
+        for (double[] position : positions) checkNearest(position[0], position[1]);
+    }
+
+    @Test
+    public void findsEveryCityAtItsOwnPosition() {
+        for (int i = 0; i < mLatitudes.length; i += 97) {
+            int found = (int) mIndex.findNearest(mLatitudes[i], mLongitudes[i]);
+            assertEquals(0, distanceKm(found, mLatitudes[i], mLongitudes[i]), TOLERANCE_KM);
+        }
+    }
+
+    @Test
+    public void indexIsFasterThanBruteForce() {
+        Random random = new Random(2);
+        double[][] positions = new double[QUERIES][];
+        for (int query = 0; query < QUERIES; query++) {
+            positions[query] = new double[]{
+                    Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)),
+                    360 * random.nextDouble() - 180};
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (double[] position : positions) {
+            checksum += mIndex.findNearest(position[0], position[1]);
+        }
+        long indexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (double[] position : positions) {
+            checksum -= findNearestBruteForce(position[0], position[1]);
+        }
+        long bruteForceNanos = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, String.format(Locale.US, "%d cities, %d lookups: index %.1f µs each,"
+                        + " brute force %.1f µs each (checksum %d)", mLatitudes.length, QUERIES,
+                indexNanos / 1e3 / QUERIES, bruteForceNanos / 1e3 / QUERIES, checksum));
+        // O(log n) against O(n), by far more than this on 50k cities
+        assertTrue("Index took " + indexNanos + " ns, brute force " + bruteForceNanos + " ns",
+                indexNanos * 10 < bruteForceNanos);
+    }
+
+    /**
+     * Asserts the index finds a city as near as the nearest one
+     *
+     * @return Whether it is the very same city
+     */
+    private boolean checkNearest(double latitude, double longitude) {
+        int expected = findNearestBruteForce(latitude, longitude);
+        int found = (int) mIndex.findNearest(latitude, longitude);
+        assertEquals("Nearest city to " + latitude + ", " + longitude,
+                distanceKm(expected, latitude, longitude), distanceKm(found, latitude, longitude),
+                TOLERANCE_KM);
+        return found == expected;
+    }
+
+    private int findNearestBruteForce(double latitude, double longitude) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < mLatitudes.length; i++) {
+            double distance = distanceKm(i, latitude, longitude);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private double distanceKm(int city, double latitude, double longitude) {
+        return City.getDistanceKm(mLatitudes[city], mLongitudes[city], latitude, longitude);
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude >= 180) return longitude - 360;
+        if (longitude < -180) return longitude + 360;
+        return longitude;
+    }
+
+    /**
+     * Writes the cities as an index file, using their position in the arrays as their id
+     */
+    private void writeIndex(File file) throws IOException {
+        int count = mLatitudes.length;
+        float[][] points = new float[count][];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = toUnitVector(mLatitudes[i], mLongitudes[i]);
+            order[i] = i;
+        }
+        layOutTree(points, order, 0, count, 0);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            for (int city : order) {
+                float[] point = points[city];
+                out.writeFloat(point[0]);
+                out.writeFloat(point[1]);
+                out.writeFloat(point[2]);
+                out.writeInt(city);
+            }
+        }
+    }
+
+    /**
+     * Sorts order[lo, hi) into the implicit k-d tree order, as lay_out_kdtree does
+     */
+    private static void layOutTree(float[][] points, Integer[] order, int lo, int hi, int depth) {
+        if (hi - lo <= 1) return;
+        int axis = depth % 3;
+        Arrays.sort(order, lo, hi, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(points[a][axis], points[b][axis]);
+            }
+        });
+        int mid = (lo + hi) >>> 1;
+        layOutTree(points, order, lo, mid, depth + 1);
+        layOutTree(points, order, mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * @return The same point on the unit sphere as CityIndex and build_city_database.py make
+     */
+    private static float[] toUnitVector(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        return new float[]{
+                (float) (Math.cos(phi) * Math.cos(lambda)),
+                (float) (Math.cos(phi) * Math.sin(lambda)),
+                (float) Math.sin(phi)};
+    }
+}
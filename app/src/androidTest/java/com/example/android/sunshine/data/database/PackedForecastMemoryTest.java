@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the heap retained by a {@link PackedForecast} with the list of
+ * {@link ListWeatherEntry} the adapter used to read, for the same rows.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PackedForecastMemoryTest {
+    private static final String LOG_TAG = PackedForecastMemoryTest.class.getSimpleName();
+
+    private static final int ROWS = 50000;
+
+    private SunshineDatabase mDatabase;
+
+    @Before
+    public void createDatabase() {
+        mDatabase = TestWeatherData.createInMemoryDatabase(
+                InstrumentationRegistry.getTargetContext());
+        mDatabase.weatherDao().bulkInsert(TestWeatherData.createForecast(ROWS));
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void packedForecastMatchesEntries() {
+        List<ListWeatherEntry> entries = readEntries();
+        PackedForecast packed = readPacked();
+
+        assertEquals(entries.size(), packed.size());
+        for (int i = 0; i < entries.size(); i++) {
+            ListWeatherEntry entry = entries.get(i);
+            assertEquals(entry.getDate().getTime(), packed.getDateMillis(i));
+            assertEquals(entry.getWeatherIconId(), packed.getWeatherIconId(i));
+            assertEquals(entry.getMin(), packed.getMin(i), 1e-3);
+            assertEquals(entry.getMax(), packed.getMax(i), 1e-3);
+        }
+    }
+
+    @Test
+    public void packedForecastRetainsLessHeap() {
+        long baseline = usedHeap();
+        List<ListWeatherEntry> entries = readEntries();
+        long entriesBytes = usedHeap() - baseline;
+        assertEquals(ROWS, entries.size());
+        entries = null;
+
+        baseline = usedHeap();
+        PackedForecast packed = readPacked();
+        long packedBytes = usedHeap() - baseline;
+        assertEquals(ROWS, packed.size());
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d rows: entry list %d bytes (%.1f per row), packed %d bytes (%.1f per row), "
+                        + "packed estimate %d bytes",
+                ROWS, entriesBytes, (double) entriesBytes / ROWS, packedBytes,
+                (double) packedBytes / ROWS, packed.getSizeInBytes()));
+        // The entry list only holds two of the weather columns and still costs more than twice
+        // the packed forecast, which holds all of them
+        assertTrue("Entry list " + entriesBytes + " bytes, packed " + packedBytes + " bytes",
+                packedBytes * 2 < entriesBytes);
+    }
+
+    private List<ListWeatherEntry> readEntries() {
+        return mDatabase.weatherDao().getCurrentWeatherForecastsNow(new Date(0));
+    }
+
+    private PackedForecast readPacked() {
+        Cursor cursor = mDatabase.weatherDao().getCurrentWeatherForecastsCursor(new Date(0));
+        try {
+            return PackedForecast.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return Bytes in use on the Java heap once everything unreachable has been collected
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.Date;
+
+/**
+ * Builds throwaway databases and synthetic forecasts for the database tests and benchmarks.
+ */
+public final class TestWeatherData {
+
+    private TestWeatherData() {
+    }
+
+    /**
+     * @return A {@link SunshineDatabase} which only lives in memory, so tests don't touch the
+     * app's stored forecast
+     */
+    public static SunshineDatabase createInMemoryDatabase(Context context) {
+        return Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+    }
+
+    /**
+     * Builds one forecast per day from the epoch on, with values that vary from day to day so
+     * that charts and summaries don't see a flat series.
+     *
+     * @param days Number of consecutive days
+     * @return The forecasts, ordered by date
+     */
+    public static WeatherEntry[] createForecast(int days) {
+        WeatherEntry[] forecast = new WeatherEntry[days];
+        for (int day = 0; day < days; day++) {
+            double min = 5 + 10 * Math.sin(day / 58.0) + day % 3;
+            forecast[day] = new WeatherEntry(500 + day % 300,
+                    new Date(day * SunshineDateUtils.DAY_IN_MILLIS), min, min + 4 + day % 7,
+                    40 + day % 60, 990 + day % 40, day % 25, day % 360);
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Applies random sequences of inserts, replacements and deletes through
+ * {@link WeatherAggregator} and checks after each one that the {@link WeatherSummaryEntry} and
+ * {@link WindRoseEntry} rows are what a full recomputation from the weather table gives. Also
+ * checks that the backfill of the migration to version 3 gives the same rows.
+ * <p>
+ * Temperatures are whole degrees in a narrow range, so that many days share a period's lowest
+ * or highest temperature and replacing or deleting the day which held it happens often.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class WeatherAggregatorTest {
+
+    // Monday 20 November 2023, the days run past a year end and a leap day
+    private static final long FIRST_DAY = 19681;
+    private static final int DAYS = 120;
+    private static final int STEPS = 300;
+    private static final int[] PERIODS =
+            {WeatherSummaryEntry.PERIOD_WEEK, WeatherSummaryEntry.PERIOD_MONTH};
+    // Rainy and dry condition ids, including both ends of the rainy range
+    private static final int[] WEATHER_IDS = {199, 200, 301, 500, 599, 600, 800, 802};
+    // Sector boundaries and the wrap around north
+    private static final double[] EDGE_DEGREES = {0, 22.5, 67.5, 337.4, 337.5, 359.9};
+
+    private final Random mRandom = new Random(35);
+    // What was last written for each date still stored, for replacements which change nothing
+    private final Map<Long, WeatherEntry> mStored = new HashMap<>();
+    private SunshineDatabase mDatabase;
+    private WeatherDao mWeatherDao;
+    private WeatherAggregator mAggregator;
+
+    @Before
+    public void createDatabase() {
+        mDatabase = TestWeatherData.createInMemoryDatabase(
+                InstrumentationRegistry.getTargetContext());
+        mWeatherDao = mDatabase.weatherDao();
+        mAggregator = new WeatherAggregator(mDatabase);
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void summariesMatchRecomputationAfterEveryWrite() {
+        for (int step = 0; step < STEPS; step++) {
+            int operation = mRandom.nextInt(20);
+            String description;
+            if (operation < 14) {
+                description = insertRandomDays();
+            } else if (operation < 19) {
+                long cutoff = getDateMillis(mRandom.nextInt(DAYS));
+                mAggregator.deleteOldWeather(new Date(cutoff));
+                removeStoredBefore(cutoff);
+                description = "delete before " + new Date(cutoff);
+            } else {
+                mAggregator.deleteAllWeather();
+                mStored.clear();
+                description = "delete all";
+            }
+            assertSummariesMatchWeather("Step " + step + ", " + description);
+        }
+    }
+
+    @Test
+    public void replacingWithTheSameDaysChangesNothing() {
+        WeatherEntry[] forecast = createRandomDays(0, DAYS);
+        mAggregator.bulkInsert(forecast);
+        List<WeatherSummaryEntry> weeks =
+                mWeatherDao.getWeatherSummariesNow(WeatherSummaryEntry.PERIOD_WEEK);
+
+        List<WeatherEntry> changed = mAggregator.bulkInsert(copy(forecast));
+
+        assertEquals(0, changed.size());
+        assertSummariesMatchWeather("Same days again");
+        List<WeatherSummaryEntry> weeksAfter =
+                mWeatherDao.getWeatherSummariesNow(WeatherSummaryEntry.PERIOD_WEEK);
+        assertEquals(weeks.size(), weeksAfter.size());
+        for (int i = 0; i < weeks.size(); i++) {
+            assertTrue(weeks.get(i).hasSameContent(weeksAfter.get(i)));
+        }
+    }
+
+    @Test
+    public void backfillMatchesRecomputation() {
+        // Written straight to the weather table, as a version 2 database has it
+        mWeatherDao.bulkInsert(createRandomDays(0, DAYS));
+        mWeatherDao.deleteOldWeather(new Date(getDateMillis(3)));
+        assertEquals(0, mWeatherDao.getWeatherSummariesNow(WeatherSummaryEntry.PERIOD_WEEK)
+                .size());
+
+        SunshineDatabase.backfillSummaries(mDatabase.getOpenHelper().getWritableDatabase());
+
+        assertSummariesMatchWeather("Backfill");
+    }
+
+    @Test
+    public void backfillMatchesMaintainedSummaries() {
+        for (int step = 0; step < STEPS / 10; step++) insertRandomDays();
+        mAggregator.deleteOldWeather(new Date(getDateMillis(10)));
+        Map<Long, Summary> maintained = readSummaries(WeatherSummaryEntry.PERIOD_MONTH);
+        Map<Long, int[]> maintainedRoses = readWindRoses(WeatherSummaryEntry.PERIOD_MONTH);
+
+        mWeatherDao.deleteAllWeatherSummaries();
+        mWeatherDao.deleteAllWindRoses();
+        SunshineDatabase.backfillSummaries(mDatabase.getOpenHelper().getWritableDatabase());
+
+        assertSummariesEqual("Backfill", maintained,
+                readSummaries(WeatherSummaryEntry.PERIOD_MONTH));
+        assertWindRosesEqual("Backfill", maintainedRoses,
+                readWindRoses(WeatherSummaryEntry.PERIOD_MONTH));
+    }
+
+    /**
+     * Writes a random run of days, some of which are new, some replace stored days with other
+     * weather and some replace them with the same weather.
+     */
+    private String insertRandomDays() {
+        int first = mRandom.nextInt(DAYS);
+        int count = Math.min(DAYS - first, 1 + mRandom.nextInt(16));
+        WeatherEntry[] days = createRandomDays(first, count);
+        for (int i = 0; i < days.length; i++) {
+            WeatherEntry stored = mStored.get(days[i].getDate().getTime());
+            if (stored != null && mRandom.nextInt(4) == 0) days[i] = copy(stored);
+        }
+        mAggregator.bulkInsert(days);
+        for (WeatherEntry day : days) mStored.put(day.getDate().getTime(), day);
+        return "insert " + count + " days from " + new Date(getDateMillis(first));
+    }
+
+    private WeatherEntry[] createRandomDays(int first, int count) {
+        WeatherEntry[] days = new WeatherEntry[count];
+        for (int i = 0; i < count; i++) {
+            double min = mRandom.nextInt(11) - 5;
+            double degrees = mRandom.nextInt(4) == 0
+                    ? EDGE_DEGREES[mRandom.nextInt(EDGE_DEGREES.length)]
+                    : mRandom.nextInt(360);
+            days[i] = new WeatherEntry(WEATHER_IDS[mRandom.nextInt(WEATHER_IDS.length)],
+                    new Date(getDateMillis(first + i)), min, min + mRandom.nextInt(7),
+                    50, 1000, 10, degrees);
+        }
+        return days;
+    }
+
+    private static WeatherEntry[] copy(WeatherEntry... days) {
+        WeatherEntry[] copies = new WeatherEntry[days.length];
+        for (int i = 0; i < days.length; i++) copies[i] = copy(days[i]);
+        return copies;
+    }
+
+    private static WeatherEntry copy(WeatherEntry day) {
+        return new WeatherEntry(day.getWeatherIconId(), day.getDate(), day.getMin(), day.getMax(),
+                day.getHumidity(), day.getPressure(), day.getWind(), day.getDegrees());
+    }
+
+    private void removeStoredBefore(long cutoff) {
+        List<Long> dates = new ArrayList<>(mStored.keySet());
+        for (long date : dates) {
+            if (date < cutoff) mStored.remove(date);
+        }
+    }
+
+    private static long getDateMillis(int day) {
+        return (FIRST_DAY + day) * SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    private void assertSummariesMatchWeather(String message) {
+        List<WeatherEntry> weather = mWeatherDao.getWeatherBetweenDatesNow(new Date(0),
+                new Date(Long.MAX_VALUE));
+        for (int period : PERIODS) {
+            Map<Long, Summary> expected = new TreeMap<>();
+            Map<Long, int[]> expectedRoses = new TreeMap<>();
+            for (WeatherEntry day : weather) {
+                long periodStart =
+                        WeatherAggregator.getPeriodStart(period, day.getDate().getTime());
+                Summary summary = expected.get(periodStart);
+                if (summary == null) {
+                    summary = new Summary();
+                    expected.put(periodStart, summary);
+                    expectedRoses.put(periodStart, new int[WindRoseEntry.SECTOR_COUNT]);
+                }
+                summary.add(day);
+                expectedRoses.get(periodStart)[WindRoseEntry.sectorForDegrees(
+                        day.getDegrees())]++;
+            }
+            String periodMessage = message + ", period " + period;
+            assertSummariesEqual(periodMessage, expected, readSummaries(period));
+            assertWindRosesEqual(periodMessage, expectedRoses, readWindRoses(period));
+        }
+    }
+
+    private Map<Long, Summary> readSummaries(int period) {
+        Map<Long, Summary> summaries = new TreeMap<>();
+        for (WeatherSummaryEntry entry : mWeatherDao.getWeatherSummariesNow(period)) {
+            summaries.put(entry.getPeriodStart(), new Summary(entry));
+        }
+        return summaries;
+    }
+
+    /**
+     * Reads every wind rose of a period, including any left behind for periods without weather
+     */
+    private Map<Long, int[]> readWindRoses(int period) {
+        Map<Long, int[]> windRoses = new TreeMap<>();
+        Cursor cursor = mDatabase.query("SELECT periodStart, sector, dayCount "
+                + "FROM wind_rose WHERE period = ?", new Object[]{period});
+        try {
+            while (cursor.moveToNext()) {
+                int[] sectorDays = windRoses.get(cursor.getLong(0));
+                if (sectorDays == null) {
+                    sectorDays = new int[WindRoseEntry.SECTOR_COUNT];
+                    windRoses.put(cursor.getLong(0), sectorDays);
+                }
+                // Empty sectors have no row
+                assertTrue(cursor.getInt(2) > 0);
+                sectorDays[cursor.getInt(1)] = cursor.getInt(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        return windRoses;
+    }
+
+    private static void assertSummariesEqual(String message, Map<Long, Summary> expected,
+                                             Map<Long, Summary> actual) {
+        assertEquals(message + ", periods", expected.keySet(), actual.keySet());
+        for (Map.Entry<Long, Summary> entry : expected.entrySet()) {
+            String periodMessage = message + ", starting " + new Date(entry.getKey());
+            Summary expectedSummary = entry.getValue();
+            Summary actualSummary = actual.get(entry.getKey());
+            assertEquals(periodMessage + ", days", expectedSummary.mDayCount,
+                    actualSummary.mDayCount);
+            assertEquals(periodMessage + ", sum of lows", expectedSummary.mSumMin,
+                    actualSummary.mSumMin, 1e-9);
+            assertEquals(periodMessage + ", sum of highs", expectedSummary.mSumMax,
+                    actualSummary.mSumMax, 1e-9);
+            assertEquals(periodMessage + ", lowest", expectedSummary.mMinTemp,
+                    actualSummary.mMinTemp, 0);
+            assertEquals(periodMessage + ", highest", expectedSummary.mMaxTemp,
+                    actualSummary.mMaxTemp, 0);
+            assertEquals(periodMessage + ", rainy days", expectedSummary.mRainyDays,
+                    actualSummary.mRainyDays);
+        }
+    }
+
+    private static void assertWindRosesEqual(String message, Map<Long, int[]> expected,
+                                             Map<Long, int[]> actual) {
+        assertEquals(message + ", wind rose periods", expected.keySet(), actual.keySet());
+        for (Map.Entry<Long, int[]> entry : expected.entrySet()) {
+            assertArrayEquals(message + ", wind rose starting " + new Date(entry.getKey())
+                            + ", " + Arrays.toString(actual.get(entry.getKey())),
+                    entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * A period's summary, either recomputed from its days or read from the summary table
+     */
+    private static class Summary {
+        private int mDayCount;
+        private double mSumMin;
+        private double mSumMax;
+        private double mMinTemp = Double.MAX_VALUE;
+        private double mMaxTemp = -Double.MAX_VALUE;
+        private int mRainyDays;
+
+        Summary() {
+        }
+
+        Summary(WeatherSummaryEntry entry) {
+            mDayCount = entry.getDayCount();
+            mSumMin = entry.getSumMin();
+            mSumMax = entry.getSumMax();
+            mMinTemp = entry.getMinTemp();
+            mMaxTemp = entry.getMaxTemp();
+            mRainyDays = entry.getRainyDays();
+        }
+
+        void add(WeatherEntry day) {
+            mDayCount++;
+            mSumMin += day.getMin();
+            mSumMax += day.getMax();
+            mMinTemp = Math.min(mMinTemp, day.getMin());
+            mMaxTemp = Math.max(mMaxTemp, day.getMax());
+            // Thunderstorms, drizzle and rain
+            if (day.getWeatherIconId() >= 200 && day.getWeatherIconId() <= 599) mRainyDays++;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.database.Cursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads 10^5 weather rows both as a list of {@link WeatherEntry} and through
+ * {@link WeatherCursorReader}, and compares the time and the allocations each takes to sum the
+ * temperatures.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class WeatherCursorReaderBenchmark {
+    private static final String LOG_TAG = WeatherCursorReaderBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 100000;
+    // Runs before the measured one, so both paths are compiled and the pages are cached
+    private static final int WARM_UP_RUNS = 2;
+
+    private SunshineDatabase mDatabase;
+    private WeatherDao mWeatherDao;
+
+    @Before
+    public void createDatabase() {
+        mDatabase = TestWeatherData.createInMemoryDatabase(
+                InstrumentationRegistry.getTargetContext());
+        mWeatherDao = mDatabase.weatherDao();
+        mWeatherDao.bulkInsert(TestWeatherData.createForecast(ROWS));
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void visitorAllocatesNothingPerRow() {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            sumWithEntities();
+            sumWithVisitor();
+        }
+
+        Measurement entities = measure(this::sumWithEntities);
+        Measurement visitor = measure(this::sumWithVisitor);
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d rows: entities %d ms, %d allocations; visitor %d ms, %d allocations",
+                ROWS, entities.mMillis, entities.mAllocations, visitor.mMillis,
+                visitor.mAllocations));
+
+        assertEquals(entities.mSum, visitor.mSum, 1e-3 * ROWS);
+        // Each entity costs at least itself and its Date
+        assertTrue("Entities made " + entities.mAllocations + " allocations",
+                entities.mAllocations >= 2L * ROWS);
+        // What is left is per query, the cursor and its window, not per row
+        assertTrue("Visitor made " + visitor.mAllocations + " allocations",
+                visitor.mAllocations < ROWS / 100);
+    }
+
+    private double sumWithEntities() {
+        List<WeatherEntry> entries = mWeatherDao.getWeatherBetweenDatesNow(new Date(0),
+                new Date(Long.MAX_VALUE));
+        double sum = 0;
+        for (WeatherEntry entry : entries) sum += entry.getMin() + entry.getMax();
+        return sum;
+    }
+
+    private double sumWithVisitor() {
+        TemperatureSum sum = new TemperatureSum();
+        Cursor cursor = mWeatherDao.getCurrentWeatherForecastsCursor(new Date(0));
+        try {
+            WeatherCursorReader.read(cursor, sum);
+        } finally {
+            cursor.close();
+        }
+        return sum.mSum;
+    }
+
+    private interface Run {
+        double run();
+    }
+
+    private static Measurement measure(Run run) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = SystemClock.elapsedRealtime();
+        double sum = run.run();
+        long millis = SystemClock.elapsedRealtime() - start;
+        Debug.stopAllocCounting();
+        return new Measurement(sum, millis, Debug.getThreadAllocCount());
+    }
+
+    private static class Measurement {
+        private final double mSum;
+        private final long mMillis;
+        private final long mAllocations;
+
+        Measurement(double sum, long millis, long allocations) {
+            mSum = sum;
+            mMillis = millis;
+            mAllocations = allocations;
+        }
+    }
+
+    private static class TemperatureSum implements WeatherCursorReader.RowVisitor {
+        private double mSum;
+
+        @Override
+        public void visitRow(int position, long dateMillis, int weatherIconId, float min,
+                             float max, float humidity, float pressure, float wind,
+                             float degrees) {
+            mSum += min + max;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.IsolatedContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a version only becomes the stored one once its own forecast has been stored, and
+ * that the transfer totals add up.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class DeltaSyncStateTest {
+
+    private DeltaSyncState mState;
+
+    @Before
+    public void createState() {
+        Context context = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        clear(context);
+        mState = new DeltaSyncState(context);
+    }
+
+    /**
+     * Forgets the versions and byte counts left by an earlier test.
+     */
+    static void clear(Context context) {
+        context.getSharedPreferences(DeltaSyncState.PREFERENCES_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    @Test
+    public void versionOnlyStoredOnceCommitted() {
+        mState.setPendingVersion("Paris", 1, "v1");
+        assertNull(mState.getVersion("Paris"));
+        mState.commitPendingVersion(1);
+        assertEquals("v1", mState.getVersion("Paris"));
+    }
+
+    @Test
+    public void groupMembersCommitOnTheirOwn() {
+        // A group query posts every member before the first one is stored
+        mState.setPendingVersion("Paris", 1, "paris-v1");
+        mState.setPendingVersion("Rome", 2, "rome-v1");
+        mState.setPendingVersion("Oslo", 3, "oslo-v1");
+
+        mState.commitPendingVersion(2);
+        assertEquals("rome-v1", mState.getVersion("Rome"));
+        assertNull(mState.getVersion("Paris"));
+        assertNull(mState.getVersion("Oslo"));
+
+        mState.commitPendingVersion(1);
+        mState.commitPendingVersion(3);
+        assertEquals("paris-v1", mState.getVersion("Paris"));
+        assertEquals("oslo-v1", mState.getVersion("Oslo"));
+    }
+
+    @Test
+    public void newerFetchWaitsForItsOwnStore() {
+        mState.setPendingVersion("Paris", 1, "v1");
+        mState.setPendingVersion("Paris", 2, "v2");
+
+        // The older forecast was replaced before it was stored, it mustn't commit the newer one
+        mState.commitPendingVersion(1);
+        assertNull(mState.getVersion("Paris"));
+        mState.commitPendingVersion(2);
+        assertEquals("v2", mState.getVersion("Paris"));
+    }
+
+    @Test
+    public void forecastWithoutVersionForgetsStoredOne() {
+        mState.setPendingVersion("Paris", 1, "v1");
+        mState.commitPendingVersion(1);
+        mState.setPendingVersion("Paris", 2, null);
+        mState.commitPendingVersion(2);
+        assertNull(mState.getVersion("Paris"));
+    }
+
+    @Test
+    public void resetForgetsStoredAndPendingVersions() {
+        mState.setPendingVersion("Paris", 1, "v1");
+        mState.commitPendingVersion(1);
+        mState.setPendingVersion("Rome", 2, "v1");
+
+        mState.reset();
+        mState.commitPendingVersion(2);
+        assertNull(mState.getVersion("Paris"));
+        assertNull(mState.getVersion("Rome"));
+    }
+
+    @Test
+    public void transfersAddUp() {
+        // A delta of 100 bytes standing in for a full forecast of 1000, then a full forecast
+        mState.recordTransfer(100, 1000);
+        mState.recordTransfer(1000, 1000);
+        assertEquals(1100, mState.getBytesReceived());
+        assertEquals(900, mState.getBytesSaved());
+    }
+}
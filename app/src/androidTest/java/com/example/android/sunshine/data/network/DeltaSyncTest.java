@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.IsolatedContext;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Syncs against a {@link LocalWeatherServer}: once a version is stored only deltas are
+ * downloaded, and the whole forecast is fetched again when the versions diverge or the
+ * repository asks for it.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class DeltaSyncTest {
+
+    private static final String LOCATION = "Paris";
+
+    private IsolatedContext mContext;
+    private ExecutorService mExecutor;
+    private AppExecutors mExecutors;
+    private SunshineDatabase mDatabase;
+    private LocalWeatherServer mServer;
+    private WeatherNetworkDataSource mDataSource;
+    private DeltaSyncState mState;
+    // Length of the last forecast handed to the sink
+    private int mLastForecastLength;
+
+    @Before
+    public void startServer() throws IOException {
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        DeltaSyncStateTest.clear(mContext);
+        mExecutor = Executors.newSingleThreadExecutor();
+        mExecutors = new AppExecutors(mExecutor, mExecutor, mExecutor);
+        mDatabase = TestWeatherData.createInMemoryDatabase(mContext);
+        mState = new DeltaSyncState(mContext);
+        startDataSource();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop();
+        mDatabase.close();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a new run of the server, whose versions can't be compared with the last one's, and a
+     * data source fetching from it. Stands in for the repository, storing every forecast as
+     * soon as it is downloaded.
+     */
+    private void startDataSource() throws IOException {
+        mServer = LocalWeatherServer.start();
+        WeatherNetworkDataSource dataSource = WeatherNetworkDataSource.newStandaloneInstance(
+                mContext, mExecutors, mDatabase.syncRequestDao(), new CityDatabase(mContext),
+                mServer.getBaseUrl());
+        dataSource.setDownloadSink(new WeatherDataSource.DownloadSink() {
+            @Override
+            public void onForecastDownloaded(WeatherEntry[] forecast, int syncId) {
+                mLastForecastLength = forecast.length;
+                dataSource.onForecastStored(syncId, forecast.length,
+                        WeatherDataSource.NUM_DAYS);
+            }
+
+            @Override
+            public void onHourlyForecastDownloaded(HourlyWeatherEntry[] hourlyForecast) {
+            }
+
+            @Override
+            public void onLocationChanged() {
+            }
+        });
+        mDataSource = dataSource;
+    }
+
+    private void sync() {
+        mDataSource.fetchLocations(Collections.singletonList(LOCATION));
+    }
+
+    @Test
+    public void firstSyncIsFullThenDeltas() {
+        sync();
+        assertEquals(WeatherDataSource.NUM_DAYS, mLastForecastLength);
+        assertNotNull(mState.getVersion(LOCATION));
+        assertEquals(0, mDataSource.getBytesSaved());
+        long fullBytes = mDataSource.getBytesReceived();
+
+        sync();
+        long deltaBytes = mDataSource.getBytesReceived() - fullBytes;
+        assertTrue("Delta saved " + mDataSource.getBytesSaved() + " bytes",
+                mDataSource.getBytesSaved() > 0);
+        assertTrue("Delta of " + deltaBytes + " bytes, full forecast " + fullBytes,
+                deltaBytes < fullBytes);
+    }
+
+    @Test
+    public void divergedVersionFallsBackToFull() throws IOException {
+        sync();
+        String firstVersion = mState.getVersion(LOCATION);
+        assertNotNull(firstVersion);
+
+        // The new run of the server doesn't know the stored version
+        mServer.stop();
+        startDataSource();
+        sync();
+        assertEquals(WeatherDataSource.NUM_DAYS, mLastForecastLength);
+        assertEquals(0, mDataSource.getBytesSaved());
+        String secondVersion = mState.getVersion(LOCATION);
+        assertNotNull(secondVersion);
+        assertNotEquals(firstVersion, secondVersion);
+
+        // And deltas resume from the new version
+        sync();
+        assertTrue(mDataSource.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void requireFullFetchDownloadsEverything() {
+        sync();
+        sync();
+        long savedBefore = mDataSource.getBytesSaved();
+
+        mDataSource.requireFullFetch();
+        sync();
+        assertEquals(WeatherDataSource.NUM_DAYS, mLastForecastLength);
+        assertEquals(savedBefore, mDataSource.getBytesSaved());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.os.Debug;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the JSON and binary forecast formats on payload size, decode time and the
+ * allocations made while decoding, for forecasts from two weeks up to a thousand days long, and
+ * checks that both decode to the same forecast.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ForecastCodecBenchmark {
+    private static final String LOG_TAG = ForecastCodecBenchmark.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int[] ENTRY_COUNTS = {WeatherDataSource.NUM_DAYS, 100, 1000};
+    // Each size is decoded this many times, after as many untimed runs to warm up
+    private static final int ITERATIONS = 20;
+    // The binary format rounds to a tenth
+    private static final double TOLERANCE = 0.05;
+
+    private final JsonForecastCodec mJsonCodec = new JsonForecastCodec();
+    private final BinaryForecastCodec mBinaryCodec = new BinaryForecastCodec();
+
+    @Test
+    public void formatsDecodeToSameForecast() throws IOException, JSONException {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        for (int entryCount : ENTRY_COUNTS) {
+            WeatherEntry[] weatherEntries = makeForecast(entryCount, today);
+            WeatherEntry[] fromJson = mJsonCodec.decode(
+                    toJson(weatherEntries, today).getBytes(UTF_8)).getWeatherForecast();
+            WeatherEntry[] fromBinary = mBinaryCodec.decode(mBinaryCodec.encode(
+                    new WeatherResponse(weatherEntries), today)).getWeatherForecast();
+
+            assertEquals(entryCount, fromJson.length);
+            assertEquals(entryCount, fromBinary.length);
+            for (int i = 0; i < entryCount; i++) {
+                WeatherEntry json = fromJson[i];
+                WeatherEntry binary = fromBinary[i];
+                assertEquals(json.getDate(), binary.getDate());
+                assertEquals(json.getWeatherIconId(), binary.getWeatherIconId());
+                assertEquals(json.getMin(), binary.getMin(), TOLERANCE);
+                assertEquals(json.getMax(), binary.getMax(), TOLERANCE);
+                assertEquals(json.getHumidity(), binary.getHumidity(), TOLERANCE);
+                assertEquals(json.getPressure(), binary.getPressure(), TOLERANCE);
+                assertEquals(json.getWind(), binary.getWind(), TOLERANCE);
+                assertEquals(json.getDegrees(), binary.getDegrees(), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void binaryIsSmallerAndCheaperToDecode() throws IOException, JSONException {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        StringBuilder report = new StringBuilder();
+        for (int entryCount : ENTRY_COUNTS) {
+            WeatherEntry[] weatherEntries = makeForecast(entryCount, today);
+            byte[] json = toJson(weatherEntries, today).getBytes(UTF_8);
+            byte[] binary = mBinaryCodec.encode(new WeatherResponse(weatherEntries), today);
+            Measurement jsonDecode = measure(mJsonCodec, json);
+            Measurement binaryDecode = measure(mBinaryCodec, binary);
+            report.append(format(mJsonCodec, entryCount, json, jsonDecode)).append('\n')
+                    .append(format(mBinaryCodec, entryCount, binary, binaryDecode)).append('\n');
+
+            assertTrue(entryCount + " entries: binary " + binary.length + " bytes, JSON "
+                    + json.length, binary.length * 2 < json.length);
+            assertTrue(entryCount + " entries: binary made " + binaryDecode.mAllocations
+                            + " allocations, JSON " + jsonDecode.mAllocations,
+                    binaryDecode.mAllocations < jsonDecode.mAllocations);
+            assertTrue(entryCount + " entries: binary took " + binaryDecode.mNanos
+                    + " ns, JSON " + jsonDecode.mNanos, binaryDecode.mNanos < jsonDecode.mNanos);
+        }
+        Log.d(LOG_TAG, report.toString());
+    }
+
+    /**
+     * @return The mean time and allocations of one decode
+     */
+    private static Measurement measure(ForecastCodec codec, byte[] body) throws IOException {
+        for (int i = 0; i < ITERATIONS; i++) codec.decode(body);
+
+        // The allocation counters only count while started, and only for this thread
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) codec.decode(body);
+        long elapsedNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        return new Measurement(elapsedNanos / ITERATIONS,
+                Debug.getThreadAllocCount() / ITERATIONS,
+                Debug.getThreadAllocSize() / ITERATIONS);
+    }
+
+    private static String format(ForecastCodec codec, int entryCount, byte[] body,
+                                 Measurement measurement) {
+        return String.format(Locale.US, "%s, %d entries: %d bytes, %.3f ms, %d allocations"
+                        + " (%d bytes) per decode",
+                codec.getContentType(), entryCount, body.length, measurement.mNanos / 1e6,
+                measurement.mAllocations, measurement.mAllocatedBytes);
+    }
+
+    /**
+     * Makes up a forecast, the same one every run.
+     */
+    private static WeatherEntry[] makeForecast(int entryCount, long today) {
+        Random random = new Random(entryCount);
+        WeatherEntry[] weatherEntries = new WeatherEntry[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            double min = -10 + random.nextInt(300) / 10.0;
+            weatherEntries[i] = new WeatherEntry(800 + random.nextInt(5),
+                    new Date(today + SunshineDateUtils.DAY_IN_MILLIS * i),
+                    min, min + random.nextInt(150) / 10.0, 20 + random.nextInt(80),
+                    980 + random.nextInt(500) / 10.0, random.nextInt(250) / 10.0,
+                    random.nextInt(3600) / 10.0);
+        }
+        return weatherEntries;
+    }
+
+    /**
+     * Lays the forecast out the way the weather server does.
+     */
+    private static String toJson(WeatherEntry[] weatherEntries, long today)
+            throws JSONException {
+        JSONArray list = new JSONArray();
+        for (WeatherEntry weatherEntry : weatherEntries) {
+            list.put(new JSONObject()
+                    .put("day", (weatherEntry.getDate().getTime() - today)
+                            / SunshineDateUtils.DAY_IN_MILLIS)
+                    .put("temp", new JSONObject()
+                            .put("min", weatherEntry.getMin())
+                            .put("max", weatherEntry.getMax()))
+                    .put("pressure", weatherEntry.getPressure())
+                    .put("humidity", (int) weatherEntry.getHumidity())
+                    .put("speed", weatherEntry.getWind())
+                    .put("deg", weatherEntry.getDegrees())
+                    .put("weather", new JSONArray().put(new JSONObject()
+                            .put("id", weatherEntry.getWeatherIconId()))));
+        }
+        return new JSONObject().put("cod", 200).put("list", list).toString();
+    }
+
+    private static class Measurement {
+        private final long mNanos;
+        private final long mAllocations;
+        private final long mAllocatedBytes;
+
+        Measurement(long nanos, long allocations, long allocatedBytes) {
+            mNanos = nanos;
+            mAllocations = allocations;
+            mAllocatedBytes = allocatedBytes;
+        }
+    }
+}
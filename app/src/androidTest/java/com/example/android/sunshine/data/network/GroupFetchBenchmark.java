@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.IsolatedContext;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Syncs the same number of locations against a {@link LocalWeatherServer} with some latency,
+ * once one location per request and once in group queries, and compares the round trips and the
+ * time each takes.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class GroupFetchBenchmark {
+    private static final String LOG_TAG = GroupFetchBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 40;
+    private static final int BATCH_SIZE = WeatherNetworkDataSource.DEFAULT_GROUP_BATCH_SIZE;
+    // Round trip time of a mobile network, which is what group queries save
+    private static final LocalWeatherServer.Conditions CONDITIONS =
+            new LocalWeatherServer.Conditions(50, 0, 0, 0);
+
+    private final AtomicInteger mDownloaded = new AtomicInteger();
+    private ExecutorService mDiskIO;
+    private ExecutorService mNetworkIO;
+    private ExecutorService mMainThread;
+    private LocalWeatherServer mServer;
+    private SunshineDatabase mDatabase;
+    private WeatherNetworkDataSource mDataSource;
+
+    @Before
+    public void startServer() throws Exception {
+        IsolatedContext context = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mDiskIO = Executors.newSingleThreadExecutor();
+        mNetworkIO = Executors.newSingleThreadExecutor();
+        mMainThread = Executors.newSingleThreadExecutor();
+        AppExecutors executors = new AppExecutors(mDiskIO, mNetworkIO, mMainThread);
+        mServer = LocalWeatherServer.start(CONDITIONS);
+        mDatabase = TestWeatherData.createInMemoryDatabase(context);
+        mDataSource = WeatherNetworkDataSource.newStandaloneInstance(context, executors,
+                mDatabase.syncRequestDao(), new CityDatabase(context), mServer.getBaseUrl());
+        mDataSource.setDownloadSink(new WeatherDataSource.DownloadSink() {
+            @Override
+            public void onForecastDownloaded(WeatherEntry[] forecast, int syncId) {
+                mDownloaded.incrementAndGet();
+            }
+
+            @Override
+            public void onHourlyForecastDownloaded(HourlyWeatherEntry[] hourlyForecast) {
+            }
+
+            @Override
+            public void onLocationChanged() {
+            }
+        });
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop();
+        mDatabase.close();
+        mDiskIO.shutdownNow();
+        mNetworkIO.shutdownNow();
+        mMainThread.shutdownNow();
+    }
+
+    @Test
+    public void groupQueriesSaveRoundTrips() {
+        Measurement single = fetch(1);
+        Measurement grouped = fetch(BATCH_SIZE);
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d locations: one per request %d daily requests in %d ms, groups of %d %d daily"
+                        + " requests in %d ms",
+                LOCATIONS, single.mDailyRequests, single.mMillis, BATCH_SIZE,
+                grouped.mDailyRequests, grouped.mMillis));
+
+        assertEquals(LOCATIONS, single.mDownloaded);
+        assertEquals(LOCATIONS, grouped.mDownloaded);
+        assertEquals(LOCATIONS, single.mDailyRequests);
+        assertEquals((LOCATIONS + BATCH_SIZE - 1) / BATCH_SIZE, grouped.mDailyRequests);
+        assertTrue("Groups took " + grouped.mMillis + " ms, single " + single.mMillis + " ms",
+                grouped.mMillis < single.mMillis);
+    }
+
+    /**
+     * Fetches locations the server hasn't seen yet, so every one is a full fetch.
+     */
+    private Measurement fetch(int batchSize) {
+        mDataSource.setGroupBatchSize(batchSize);
+        List<String> locations = new ArrayList<>(LOCATIONS);
+        for (int i = 0; i < LOCATIONS; i++) locations.add("Batch" + batchSize + "City" + i);
+
+        int downloadedBefore = mDownloaded.get();
+        int requestsBefore = mServer.getRequestCount();
+        long start = System.nanoTime();
+        mDataSource.fetchLocations(locations);
+        long millis = (System.nanoTime() - start) / 1000000;
+        // Every location also costs a request for its three hour forecast, which can't be grouped
+        int dailyRequests = mServer.getRequestCount() - requestsBefore - LOCATIONS;
+        return new Measurement(mDownloaded.get() - downloadedBefore, dailyRequests, millis);
+    }
+
+    private static class Measurement {
+        private final int mDownloaded;
+        private final int mDailyRequests;
+        private final long mMillis;
+
+        Measurement(int downloaded, int dailyRequests, long millis) {
+            mDownloaded = downloaded;
+            mDailyRequests = dailyRequests;
+            mMillis = millis;
+        }
+    }
+}
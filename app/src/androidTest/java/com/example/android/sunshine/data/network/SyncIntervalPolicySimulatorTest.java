@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays recorded sync histories through {@link SyncIntervalPolicy#computeIntervalSeconds} on a
+ * simulated clock. Nothing depends on the time the test runs at, so every replay gives the same
+ * schedule.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SyncIntervalPolicySimulatorTest {
+
+    private static final int FORECAST_ROWS = 14;
+    private static final long WEEK_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    // Syncs a week at the original fixed interval of three hours
+    private static final int FIXED_SYNCS_PER_WEEK = 56;
+
+    // Rows changed by each sync, recorded while the forecast was settled: the day rolling over
+    // and the odd correction
+    private static final int[] STABLE_HISTORY = {1, 0, 0, 1, 0, 0, 0, 2, 0, 0, 1, 0};
+    // Recorded while a front came through and most of the forecast was rewritten every sync
+    private static final int[] VOLATILE_HISTORY = {14, 12, 13, 14, 9, 14, 11, 14, 13, 12};
+
+    @Test
+    public void noHistoryUsesDefault() {
+        assertEquals(SyncIntervalPolicy.DEFAULT_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[0], 0, 0));
+    }
+
+    @Test
+    public void volatilityMapsOntoRange() {
+        assertEquals(SyncIntervalPolicy.MAX_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{0f, 0f}, 0, 0));
+        assertEquals(SyncIntervalPolicy.MIN_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f}, 0, 0));
+        // The newest sync counts half, 0.5 of the way from the longest to the shortest interval
+        assertEquals(TimeUnit.MINUTES.toSeconds(390),
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{0f, 1f}, 0, 0));
+        // Volatility 1, 1, 0.5, 0.25
+        assertEquals(TimeUnit.MINUTES.toSeconds(555),
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f, 1f, 0f, 0f}, 0, 0));
+    }
+
+    @Test
+    public void idleAppDoublesInterval() {
+        long idleMillis = TimeUnit.DAYS.toMillis(3);
+        assertEquals(2 * SyncIntervalPolicy.MIN_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f}, idleMillis, 0));
+        // Still never longer than the longest interval
+        assertEquals(SyncIntervalPolicy.MAX_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f, 1f, 0f, 0f},
+                        idleMillis, 0));
+    }
+
+    @Test
+    public void serverMaxAgeIsFloor() {
+        long twoHours = TimeUnit.HOURS.toSeconds(2);
+        assertEquals(twoHours,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f}, 0, twoHours));
+        assertEquals(SyncIntervalPolicy.MAX_INTERVAL_SECONDS,
+                SyncIntervalPolicy.computeIntervalSeconds(new float[]{1f}, 0,
+                        TimeUnit.DAYS.toSeconds(1)));
+    }
+
+    @Test
+    public void stableHistorySyncsLessOften() {
+        long[] schedule = simulateWeek(STABLE_HISTORY, 0, 0);
+        assertTrue("Stable forecast synced " + schedule.length + " times",
+                schedule.length < FIXED_SYNCS_PER_WEEK / 2);
+        // Settles at the long end once the history only holds small changes
+        long last = schedule[schedule.length - 1];
+        assertTrue("Settled at " + last + " s",
+                last >= SyncIntervalPolicy.MAX_INTERVAL_SECONDS * 3 / 4);
+    }
+
+    @Test
+    public void volatileHistorySyncsMoreOften() {
+        long[] schedule = simulateWeek(VOLATILE_HISTORY, 0, 0);
+        assertTrue("Volatile forecast synced " + schedule.length + " times",
+                schedule.length > FIXED_SYNCS_PER_WEEK);
+        for (long interval : schedule) {
+            assertTrue(interval >= SyncIntervalPolicy.MIN_INTERVAL_SECONDS);
+        }
+    }
+
+    @Test
+    public void idleAndServerMaxAgeStretchVolatileSchedule() {
+        long serverMaxAge = TimeUnit.HOURS.toSeconds(4);
+        long[] schedule = simulateWeek(VOLATILE_HISTORY, TimeUnit.DAYS.toMillis(3), serverMaxAge);
+        // No sync comes before the server's copy expires
+        for (int i = 0; i < schedule.length; i++) {
+            assertTrue("Sync " + i + " after " + schedule[i] + " s",
+                    schedule[i] >= serverMaxAge);
+        }
+        assertTrue(schedule.length < simulateWeek(VOLATILE_HISTORY, 0, 0).length);
+    }
+
+    @Test
+    public void replayIsDeterministic() {
+        assertArrayEquals(simulateWeek(STABLE_HISTORY, 0, 0), simulateWeek(STABLE_HISTORY, 0, 0));
+        assertArrayEquals(simulateWeek(VOLATILE_HISTORY, 0, 0),
+                simulateWeek(VOLATILE_HISTORY, 0, 0));
+    }
+
+    /**
+     * Runs the recurring sync for a simulated week. Each sync changes the next number of rows of
+     * the history, starting over once it runs out, and the next sync is scheduled after the
+     * interval the policy picks from the syncs so far.
+     *
+     * @param changedRows           Rows changed by each sync, out of {@link #FORECAST_ROWS}
+     * @param millisSinceForeground Time since the app was in the foreground, for every sync
+     * @param serverMaxAgeSeconds   Freshness lifetime of every response
+     * @return The interval picked after each sync, in seconds
+     */
+    private static long[] simulateWeek(int[] changedRows, long millisSinceForeground,
+                                       long serverMaxAgeSeconds) {
+        List<Float> history = new ArrayList<>();
+        List<Long> schedule = new ArrayList<>();
+        long clockSeconds = 0;
+        int sync = 0;
+        while (clockSeconds < WEEK_SECONDS) {
+            float[] changeRatios = new float[history.size()];
+            for (int i = 0; i < changeRatios.length; i++) changeRatios[i] = history.get(i);
+            long interval = SyncIntervalPolicy.computeIntervalSeconds(changeRatios,
+                    millisSinceForeground, serverMaxAgeSeconds);
+            schedule.add(interval);
+            clockSeconds += interval;
+
+            // The policy only remembers the most recent syncs
+            history.add((float) changedRows[sync % changedRows.length] / FORECAST_ROWS);
+            if (history.size() > SyncIntervalPolicy.HISTORY_SIZE) history.remove(0);
+            sync++;
+        }
+
+        long[] intervals = new long[schedule.size()];
+        for (int i = 0; i < intervals.length; i++) intervals[i] = schedule.get(i);
+        return intervals;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.chart;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.PackedForecast;
+import com.example.android.sunshine.data.database.PackedForecast.Field;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times building the level of detail pyramids of 10^5 points, and picking a level for a frame,
+ * which is all the chart does per frame besides drawing.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ForecastChartDataBenchmark {
+    private static final String LOG_TAG = ForecastChartDataBenchmark.class.getSimpleName();
+
+    private static final int POINTS = 100000;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int RUNS = 5;
+    // Generous bound on building every pyramid, it is done on the disk IO executor and only
+    // delays the chart appearing
+    private static final long MAX_BUILD_MILLIS = 250;
+    // One point per two pixels of a 1080 pixel wide chart
+    private static final int MAX_FRAME_POINTS = 540;
+    // A frame has 16 ms, picking the levels may only use a sliver of it
+    private static final long MAX_PICK_NANOS = 100000;
+
+    private static PackedForecast sForecast;
+
+    @BeforeClass
+    public static void loadForecast() {
+        SunshineDatabase database = TestWeatherData.createInMemoryDatabase(
+                InstrumentationRegistry.getTargetContext());
+        try {
+            database.weatherDao().bulkInsert(TestWeatherData.createForecast(POINTS));
+            Cursor cursor = database.weatherDao().getCurrentWeatherForecastsCursor(new Date(0));
+            try {
+                sForecast = PackedForecast.fromCursor(cursor);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void buildsPyramidsWithinBound() {
+        for (int i = 0; i < WARM_UP_RUNS; i++) ForecastChartData.build(sForecast);
+
+        long start = SystemClock.elapsedRealtime();
+        ForecastChartData data = null;
+        for (int i = 0; i < RUNS; i++) data = ForecastChartData.build(sForecast);
+        long meanMillis = (SystemClock.elapsedRealtime() - start) / RUNS;
+
+        Log.d(LOG_TAG, String.format(Locale.US, "Built the pyramids of %d points in %d ms",
+                POINTS, meanMillis));
+        assertEquals(POINTS, data.size());
+        assertTrue("Building took " + meanMillis + " ms", meanMillis < MAX_BUILD_MILLIS);
+    }
+
+    @Test
+    public void frameDrawsBoundedPoints() {
+        ForecastChartData data = ForecastChartData.build(sForecast);
+        float firstX = data.getFirstX();
+        float lastX = data.getLastX();
+
+        // Whole range, then zoomed in ten and a thousand times
+        float[] spans = {lastX - firstX, (lastX - firstX) / 10, (lastX - firstX) / 1000};
+        for (float span : spans) {
+            int[] level = data.getLevel(Field.MAX, firstX, firstX + span, MAX_FRAME_POINTS);
+            int visible = data.indexAfter(level, firstX + span)
+                    - data.indexBefore(level, firstX) + 1;
+            assertTrue("Span " + span + " draws " + visible + " points",
+                    visible <= MAX_FRAME_POINTS + 2);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            for (float span : spans) {
+                data.getLevel(Field.MAX, firstX, firstX + span, MAX_FRAME_POINTS);
+            }
+        }
+        long meanNanos = (System.nanoTime() - start) / (RUNS * spans.length);
+        Log.d(LOG_TAG, String.format(Locale.US, "Picked a level in %d ns", meanNanos));
+        assertTrue("Picking a level took " + meanNanos + " ns", meanNanos < MAX_PICK_NANOS);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.location;
+
+import android.arch.lifecycle.Observer;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.data.city.CityDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures how long the location search takes to answer a keystroke: with a slow database,
+ * while the user types faster than it can search, and with the bundled city database if the
+ * build has one.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class LocationSearchLatencyTest {
+    private static final String LOG_TAG = LocationSearchLatencyTest.class.getSimpleName();
+
+    private static final String TYPED = "Londonderry";
+    // The slow database takes this long per search, and the user types faster than that
+    private static final long SEARCH_MILLIS = 40;
+    private static final long KEYSTROKE_INTERVAL_MILLIS = 10;
+    private static final long RESULT_TIMEOUT_SECONDS = 5;
+    // A search of the bundled database should fit in a frame or two
+    private static final long MAX_BUNDLED_SEARCH_MILLIS = 50;
+
+    private Context mContext;
+    private ExecutorService mSearchExecutor;
+    private final Handler mMainThread = new Handler(Looper.getMainLooper());
+
+    @Before
+    public void createExecutor() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mSearchExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void shutDownExecutor() {
+        mSearchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void latestKeystrokeIsAnsweredWithinTwoSearches() throws InterruptedException {
+        SlowCityDatabase cityDatabase = new SlowCityDatabase(mContext);
+        LocationSearchViewModel viewModel =
+                new LocationSearchViewModel(cityDatabase, mSearchExecutor);
+
+        List<String> posted = new CopyOnWriteArrayList<>();
+        CountDownLatch answered = new CountDownLatch(1);
+        long[] answeredAt = new long[1];
+        Observer<List<City>> observer = cities -> {
+            String query = cities.get(0).getName();
+            posted.add(query);
+            if (query.equals(TYPED)) {
+                answeredAt[0] = SystemClock.uptimeMillis();
+                answered.countDown();
+            }
+        };
+        mMainThread.post(() -> viewModel.getResults().observeForever(observer));
+
+        long lastKeystroke = 0;
+        for (int length = 1; length <= TYPED.length(); length++) {
+            lastKeystroke = SystemClock.uptimeMillis();
+            viewModel.setQuery(TYPED.substring(0, length));
+            SystemClock.sleep(KEYSTROKE_INTERVAL_MILLIS);
+        }
+        assertTrue(answered.await(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mMainThread.post(() -> viewModel.getResults().removeObserver(observer));
+
+        long latency = answeredAt[0] - lastKeystroke;
+        Log.d(LOG_TAG, String.format(Locale.US, "%d keystrokes, %d searches run, %d posted,"
+                        + " last keystroke answered in %d ms", TYPED.length(),
+                cityDatabase.mSearched.size(), posted.size(), latency));
+
+        // At worst the search already running finishes first, the overtaken ones are skipped
+        assertTrue("Answered in " + latency + " ms", latency < 2 * SEARCH_MILLIS + 100);
+        assertTrue(cityDatabase.mSearched.size() < TYPED.length());
+        assertEquals(TYPED, posted.get(posted.size() - 1));
+    }
+
+    @Test
+    public void bundledDatabaseAnswersWithinAFrameOrTwo() {
+        CityDatabase cityDatabase = new CityDatabase(mContext);
+        assumeTrue("The build has no city database", cityDatabase.isAvailable());
+
+        long[] latencies = new long[TYPED.length()];
+        for (int length = 1; length <= TYPED.length(); length++) {
+            long start = System.nanoTime();
+            cityDatabase.search(TYPED.substring(0, length), 10);
+            latencies[length - 1] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        long max = latencies[latencies.length - 1];
+        Log.d(LOG_TAG, String.format(Locale.US, "Bundled database, %d keystrokes: median"
+                        + " %.2f ms, max %.2f ms", latencies.length,
+                latencies[latencies.length / 2] / 1e6, max / 1e6));
+        assertTrue("Slowest search took " + max / 1000000 + " ms",
+                max < MAX_BUNDLED_SEARCH_MILLIS * 1000000);
+    }
+
+    /**
+     * Takes {@link #SEARCH_MILLIS} per search and finds a single city, named after the query.
+     */
+    private static class SlowCityDatabase extends CityDatabase {
+        final List<String> mSearched = new CopyOnWriteArrayList<>();
+
+        SlowCityDatabase(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public List<City> search(String query, int limit) {
+            mSearched.add(query);
+            SystemClock.sleep(SEARCH_MILLIS);
+            return Collections.singletonList(new City(mSearched.size(), query, null, "GB",
+                    55, -7.3, 1000));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.IsolatedContext;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.TestWeatherData;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers lazily built dependencies from many threads at once, the way job services and
+ * activities may ask for them while the app starts, and checks that each one is only ever built
+ * once. Also measures what a call costs once the instance exists, which a lock taken on every
+ * call would show.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SingletonStressTest {
+    private static final String LOG_TAG = SingletonStressTest.class.getSimpleName();
+
+    private static final int THREADS = 32;
+    private static final int CALLS_PER_THREAD = 10000;
+    // Generous bound on the mean cost of a call once the instance exists, locking on every call
+    // with this many threads is far slower
+    private static final long MAX_MEAN_CALL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void lazyProviderCreatesOnce() throws Exception {
+        AtomicInteger creations = new AtomicInteger();
+        LazyProvider<Object> provider = new LazyProvider<>("Stress", appContext -> {
+            creations.incrementAndGet();
+            // Keeps the other threads waiting on the creation for a while
+            SystemClock.sleep(50);
+            return new Object();
+        });
+
+        List<Object> instances = runConcurrently(() -> provider.get(mContext));
+        assertEquals(1, creations.get());
+        for (Object instance : instances) assertSame(instances.get(0), instance);
+    }
+
+    /**
+     * Races a fresh graph of providers, built like the one in {@link InjectorUtils} where each
+     * factory gets what it depends on from the providers below it. The threads ask for
+     * different levels of the graph at once, as a job service and an activity may while the app
+     * starts, and every dependency must still be built exactly once. The app's own graph can't
+     * be raced this way, it was already built by {@link InjectorUtils#warmUp} when the test
+     * process started.
+     */
+    @Test
+    public void lazyGraphBuildsEachDependencyOnce() throws Exception {
+        Context context = new IsolatedContext(mContext);
+        AtomicInteger executorsCreations = new AtomicInteger();
+        AtomicInteger databaseCreations = new AtomicInteger();
+        AtomicInteger dataSourceCreations = new AtomicInteger();
+        AtomicInteger graphCreations = new AtomicInteger();
+        List<ExecutorService> pools = new ArrayList<>();
+
+        LazyProvider<AppExecutors> executors = new LazyProvider<>("Executors", appContext -> {
+            executorsCreations.incrementAndGet();
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            synchronized (pools) {
+                pools.add(pool);
+            }
+            return new AppExecutors(pool, pool, pool);
+        });
+        LazyProvider<SunshineDatabase> database = new LazyProvider<>("Database", appContext -> {
+            databaseCreations.incrementAndGet();
+            // Keeps the other threads waiting on the creation for a while
+            SystemClock.sleep(20);
+            return TestWeatherData.createInMemoryDatabase(appContext);
+        });
+        LazyProvider<WeatherNetworkDataSource> dataSource =
+                new LazyProvider<>("DataSource", appContext -> {
+                    dataSourceCreations.incrementAndGet();
+                    SystemClock.sleep(20);
+                    return WeatherNetworkDataSource.newStandaloneInstance(appContext,
+                            executors.get(appContext), database.get(appContext).syncRequestDao(),
+                            new CityDatabase(appContext), "http://localhost");
+                });
+        // Stands in for the repository, which only the data package can build
+        LazyProvider<Object[]> graph = new LazyProvider<>("Graph", appContext -> {
+            graphCreations.incrementAndGet();
+            return new Object[]{dataSource.get(appContext), database.get(appContext),
+                    executors.get(appContext)};
+        });
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        List<Object[]> graphs = runConcurrently(() -> {
+            // A third of the threads start lower down the graph, before asking for all of it
+            switch (threadIndex.getAndIncrement() % 3) {
+                case 1:
+                    dataSource.get(context);
+                    break;
+                case 2:
+                    database.get(context);
+                    break;
+                default:
+                    break;
+            }
+            return graph.get(context);
+        });
+
+        try {
+            assertEquals(1, executorsCreations.get());
+            assertEquals(1, databaseCreations.get());
+            assertEquals(1, dataSourceCreations.get());
+            assertEquals(1, graphCreations.get());
+            for (Object[] built : graphs) {
+                assertSame(graphs.get(0), built);
+                assertSame(dataSource.get(context), built[0]);
+                assertSame(database.get(context), built[1]);
+                assertSame(executors.get(context), built[2]);
+            }
+        } finally {
+            database.get(context).close();
+            for (ExecutorService pool : pools) pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void contendedCallsDontLock() throws Exception {
+        // Built before timing, only the cost of handing out the existing instance is measured
+        InjectorUtils.provideRepository(mContext);
+        List<Long> elapsed = runConcurrently(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS_PER_THREAD; i++) InjectorUtils.provideRepository(mContext);
+            return System.nanoTime() - start;
+        });
+
+        long total = 0;
+        for (long threadNanos : elapsed) total += threadNanos;
+        long meanNanos = total / ((long) THREADS * CALLS_PER_THREAD);
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "provideRepository: %d threads, mean %d ns per call", THREADS, meanNanos));
+        assertTrue("Mean call took " + meanNanos + " ns", meanNanos < MAX_MEAN_CALL_NANOS);
+    }
+
+    /**
+     * Runs a call on every thread at the same moment.
+     *
+     * @return What each thread's call returned
+     */
+    private static <T> List<T> runConcurrently(Callable<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>(THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>(THREADS);
+            for (Future<T> future : futures) results.add(future.get(30, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the temperatures {@link UnitFormatter} shows in either unit: the conversion, the
+ * rounding to whole degrees, and that the strings come out the same whether or not they are in
+ * its cache.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UnitFormatterTest {
+
+    private Locale mDefaultLocale;
+    private UnitFormatter mFormatter;
+
+    @Before
+    public void setLocale() {
+        // Decimal digits differ between locales
+        mDefaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        mFormatter = UnitFormatter.getInstance(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void restoreLocale() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void convertsToFahrenheit() {
+        assertEquals("32°", mFormatter.formatTemperature(0, false));
+        assertEquals("212°", mFormatter.formatTemperature(100, false));
+        assertEquals("-40°", mFormatter.formatTemperature(-40, false));
+        assertEquals("98°", mFormatter.formatTemperature(36.6, false));
+    }
+
+    @Test
+    public void keepsCelsius() {
+        assertEquals("0°", mFormatter.formatTemperature(0, true));
+        assertEquals("21°", mFormatter.formatTemperature(21, true));
+        assertEquals("-40°", mFormatter.formatTemperature(-40, true));
+    }
+
+    @Test
+    public void roundsToWholeDegrees() {
+        assertEquals("21°", mFormatter.formatTemperature(21.4, true));
+        assertEquals("22°", mFormatter.formatTemperature(21.5, true));
+        assertEquals("-3°", mFormatter.formatTemperature(-2.6, true));
+        // Halves round up, so -0.5 is 0 rather than -1
+        assertEquals("0°", mFormatter.formatTemperature(-0.5, true));
+        // 0.3°C is 32.54°F
+        assertEquals("33°", mFormatter.formatTemperature(0.3, false));
+    }
+
+    @Test
+    public void formatsTemperaturesOutsideTheCache() {
+        assertEquals("200°", mFormatter.formatTemperature(200, true));
+        assertEquals("-150°", mFormatter.formatTemperature(-150, true));
+        // 100°C is in the cached range, 212°F isn't
+        assertEquals("212°", mFormatter.formatTemperature(100, false));
+        assertEquals("-238°", mFormatter.formatTemperature(-150, false));
+        // The edges of the cached range
+        assertEquals("160°", mFormatter.formatTemperature(160, true));
+        assertEquals("161°", mFormatter.formatTemperature(161, true));
+        assertEquals("-100°", mFormatter.formatTemperature(-100, true));
+        assertEquals("-101°", mFormatter.formatTemperature(-101, true));
+    }
+
+    @Test
+    public void cachesTemperatures() {
+        String first = mFormatter.formatTemperature(15.2, true);
+        assertSame(first, mFormatter.formatTemperature(14.8, true));
+    }
+
+    @Test
+    public void formatsAgainWhenTheLocaleChanges() {
+        assertEquals("5°", mFormatter.formatTemperature(5, true));
+        // Eastern Arabic digits
+        Locale.setDefault(new Locale("ar", "EG"));
+        assertEquals(String.format(new Locale("ar", "EG"), "%1.0f°", 5.0),
+                mFormatter.formatTemperature(5, true));
+    }
+}
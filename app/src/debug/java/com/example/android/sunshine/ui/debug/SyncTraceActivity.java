@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.debug;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.text.format.Formatter;
+import android.widget.TextView;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.SyncTracer;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+import java.util.List;
+
+/**
+ * Debug builds only. Lists how long each stage of the most recent syncs took, newest first, so
+ * that the slow stage of a sync can be found without attaching a profiler, and how much delta
+ * syncs have saved.
+ */
+public class SyncTraceActivity extends Activity {
+    private TextView mDeltaSyncView;
+    private TextView mTracesView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_traces);
+        mDeltaSyncView = findViewById(R.id.delta_sync_bytes);
+        mTracesView = findViewById(R.id.sync_traces);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showTraces();
+        showDeltaSyncBytes();
+    }
+
+    /**
+     * Reads the byte counts off of the main thread, they are kept in preferences.
+     */
+    private void showDeltaSyncBytes() {
+        Context appContext = getApplicationContext();
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.diskIO().execute(() -> {
+            WeatherNetworkDataSource dataSource =
+                    InjectorUtils.provideNetworkDataSource(appContext);
+            long received = dataSource.getBytesReceived();
+            long saved = dataSource.getBytesSaved();
+            executors.mainThread().execute(() -> mDeltaSyncView.setText(getString(
+                    R.string.delta_sync_bytes,
+                    Formatter.formatShortFileSize(appContext, received),
+                    Formatter.formatShortFileSize(appContext, received + saved))));
+        });
+    }
+
+    private void showTraces() {
+        List<SyncTracer.SyncTrace> traces = SyncTracer.getInstance().getRecentSyncs();
+        if (traces.isEmpty()) {
+            mTracesView.setText(R.string.sync_traces_empty);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (SyncTracer.SyncTrace trace : traces) {
+            text.append(trace).append("\n\n");
+        }
+        mTracesView.setText(text);
+    }
+}
@@ -19,6 +19,7 @@ package com.example.android.sunshine;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -31,28 +32,23 @@ import java.util.concurrent.Executors;
  */
 public class AppExecutors {
 
-    // For Singleton instantiation
-    private static final Object LOCK = new Object();
-    private static AppExecutors sInstance;
     private final Executor diskIO;
     private final Executor mainThread;
     private final Executor networkIO;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    /**
+     * Makes executors apart from the app's, for tests which mustn't queue behind the app's own
+     * work or leave theirs behind.
+     */
+    @VisibleForTesting
+    public AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
         this.diskIO = diskIO;
         this.networkIO = networkIO;
         this.mainThread = mainThread;
     }
 
     public static AppExecutors getInstance() {
-        if (sInstance == null) {
-            synchronized (LOCK) {
-                sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
-                        Executors.newFixedThreadPool(3),
-                        new MainThreadExecutor());
-            }
-        }
-        return sInstance;
+        return Holder.INSTANCE;
     }
 
     public Executor diskIO() {
@@ -67,6 +63,15 @@ public class AppExecutors {
         return networkIO;
     }
 
+    // For Singleton instantiation. The class loader creates the instance exactly once, the first
+    // time getInstance is called, without any locking on later calls.
+    private static class Holder {
+        private static final AppExecutors INSTANCE = new AppExecutors(
+                Executors.newSingleThreadExecutor(),
+                Executors.newFixedThreadPool(3),
+                new MainThreadExecutor());
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
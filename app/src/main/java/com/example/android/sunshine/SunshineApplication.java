@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.app.Application;
+import android.util.Log;
+
+import com.example.android.sunshine.data.network.LocalWeatherServer;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+import java.io.IOException;
+
+/**
+ * Starts building Sunshine's dependencies on a background thread as soon as the process starts,
+ * so that they are usually ready by the time the first activity asks for them.
+ */
+public class SunshineApplication extends Application {
+    private static final String LOG_TAG = SunshineApplication.class.getSimpleName();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.USE_LOCAL_WEATHER_SERVER) startLocalWeatherServer();
+        InjectorUtils.warmUp(this);
+    }
+
+    /**
+     * Serves the forecast from inside the app. The server only binds a loopback port here, so
+     * its URL is known before the first sync can start.
+     */
+    private void startLocalWeatherServer() {
+        try {
+            LocalWeatherServer server = LocalWeatherServer.start();
+            WeatherNetworkDataSource.setServerBaseUrl(server.getBaseUrl());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Starting the local weather server failed", e);
+        }
+    }
+}
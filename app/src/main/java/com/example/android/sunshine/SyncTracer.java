@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each stage of a sync takes, from the network call to the forecast list being
+ * updated on screen.
+ * <p>
+ * Every fetch gets a sync id. Stages which start and end on the same thread are recorded as
+ * sections, which also show up in systrace. Stages which hand the sync over to another thread,
+ * such as handing the forecast to the disk thread, are recorded as hops, which only show up here
+ * as systrace sections can't span threads. The most recent syncs are kept in a ring buffer, shown by the
+ * debug screen.
+ */
+public class SyncTracer {
+    private static final String LOG_TAG = SyncTracer.class.getSimpleName();
+
+    // Id which is never handed out, every call made with it is ignored
+    public static final int NO_SYNC = 0;
+
+    // The stages of a sync, in the order they happen
+    public static final String STAGE_FETCH = "fetch";
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_HANDOFF = "hand off to disk";
+    public static final String STAGE_DELETE = "delete old";
+    public static final String STAGE_INSERT = "insert";
+    public static final String STAGE_INVALIDATION = "invalidation and requery";
+    public static final String STAGE_UI = "ui update";
+
+    // Number of syncs kept
+    private static final int CAPACITY = 20;
+
+    private final ArrayDeque<SyncTrace> mTraces = new ArrayDeque<>(CAPACITY);
+    private int mNextSyncId = NO_SYNC + 1;
+
+    private SyncTracer() {
+    }
+
+    public static SyncTracer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Starts tracing a sync, dropping the oldest one kept if the buffer is full.
+     *
+     * @param trigger What the sync is for, such as its location
+     * @return The id of the sync
+     */
+    public synchronized int beginSync(String trigger) {
+        if (mTraces.size() == CAPACITY) mTraces.removeFirst();
+        int syncId = mNextSyncId++;
+        mTraces.addLast(new SyncTrace(syncId, trigger));
+        return syncId;
+    }
+
+    /**
+     * Starts a stage which will end on the same thread.
+     */
+    public void beginSection(int syncId, String stage) {
+        TraceCompat.beginSection("sync " + syncId + ": " + stage);
+        beginHop(syncId, stage);
+    }
+
+    /**
+     * Ends a stage started by {@link #beginSection(int, String)}, on the same thread.
+     */
+    public void endSection(int syncId, String stage) {
+        endHop(syncId, stage);
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Starts a stage which will end on another thread.
+     */
+    public synchronized void beginHop(int syncId, String stage) {
+        SyncTrace trace = find(syncId);
+        if (trace != null) trace.mOpenStages.put(stage, System.nanoTime());
+    }
+
+    /**
+     * Ends a stage started by {@link #beginHop(int, String)}.
+     *
+     * @return Whether the stage had been started
+     */
+    public synchronized boolean endHop(int syncId, String stage) {
+        SyncTrace trace = find(syncId);
+        Long start = trace == null ? null : trace.mOpenStages.remove(stage);
+        if (start == null) return false;
+        long end = System.nanoTime();
+        trace.mSpans.add(new Span(stage, start - trace.mStartNanos, end - start,
+                Thread.currentThread().getName()));
+        if (STAGE_UI.equals(stage)) Log.d(LOG_TAG, trace.toString());
+        return true;
+    }
+
+    /**
+     * @return Copies of the syncs kept, newest first
+     */
+    public synchronized List<SyncTrace> getRecentSyncs() {
+        List<SyncTrace> traces = new ArrayList<>(mTraces.size());
+        for (SyncTrace trace : mTraces) traces.add(new SyncTrace(trace));
+        Collections.reverse(traces);
+        return traces;
+    }
+
+    private SyncTrace find(int syncId) {
+        if (syncId == NO_SYNC) return null;
+        for (SyncTrace trace : mTraces) {
+            if (trace.mId == syncId) return trace;
+        }
+        return null;
+    }
+
+    /**
+     * The stages recorded for one sync
+     */
+    public static final class SyncTrace {
+        private final int mId;
+        private final String mTrigger;
+        private final long mStartedAt;
+        private final long mStartNanos;
+        private final List<Span> mSpans;
+        // Start times of the stages which haven't ended yet
+        private final Map<String, Long> mOpenStages;
+
+        SyncTrace(int id, String trigger) {
+            mId = id;
+            mTrigger = trigger;
+            mStartedAt = System.currentTimeMillis();
+            mStartNanos = System.nanoTime();
+            mSpans = new ArrayList<>();
+            mOpenStages = new HashMap<>();
+        }
+
+        SyncTrace(SyncTrace trace) {
+            mId = trace.mId;
+            mTrigger = trace.mTrigger;
+            mStartedAt = trace.mStartedAt;
+            mStartNanos = trace.mStartNanos;
+            mSpans = Collections.unmodifiableList(new ArrayList<>(trace.mSpans));
+            mOpenStages = Collections.unmodifiableMap(new HashMap<>(trace.mOpenStages));
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        public String getTrigger() {
+            return mTrigger;
+        }
+
+        /**
+         * @return When the sync started, in milliseconds since the epoch
+         */
+        public long getStartedAt() {
+            return mStartedAt;
+        }
+
+        /**
+         * @return The stages which have ended, in the order they ended
+         */
+        public List<Span> getSpans() {
+            return mSpans;
+        }
+
+        /**
+         * @return Time from the start of the sync to the end of its last stage
+         */
+        public long getElapsedNanos() {
+            long elapsed = 0;
+            for (Span span : mSpans) {
+                elapsed = Math.max(elapsed, span.mStartOffsetNanos + span.mDurationNanos);
+            }
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "Sync %d (%s): %.1f ms", mId, mTrigger, toMillis(getElapsedNanos())));
+            for (Span span : mSpans) builder.append("\n  ").append(span);
+            for (String stage : mOpenStages.keySet()) {
+                builder.append("\n  ").append(stage).append(": unfinished");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * One stage of a sync
+     */
+    public static final class Span {
+        private final String mStage;
+        private final long mStartOffsetNanos;
+        private final long mDurationNanos;
+        private final String mThreadName;
+
+        Span(String stage, long startOffsetNanos, long durationNanos, String threadName) {
+            mStage = stage;
+            mStartOffsetNanos = startOffsetNanos;
+            mDurationNanos = durationNanos;
+            mThreadName = threadName;
+        }
+
+        public String getStage() {
+            return mStage;
+        }
+
+        /**
+         * @return Time from the start of the sync to the start of this stage
+         */
+        public long getStartOffsetNanos() {
+            return mStartOffsetNanos;
+        }
+
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        /**
+         * @return Name of the thread the stage ended on
+         */
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %.1f ms at +%.1f ms on %s", mStage,
+                    toMillis(mDurationNanos), toMillis(mStartOffsetNanos), mThreadName);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // For Singleton instantiation, see AppExecutors
+    private static class Holder {
+        private static final SyncTracer INSTANCE = new SyncTracer();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.persistence.room.InvalidationTracker;
+import android.arch.persistence.room.RoomDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A query whose results are streamed to background consumers, such as the widget, statistics,
+ * export or notifications, which shouldn't wait on the main thread the way {@link
+ * android.arch.lifecycle.LiveData} observers do.
+ * <p>
+ * Like {@link TableLiveData}, the query runs again whenever one of the observed tables changes.
+ * Unlike it, a subscriber decides how many results it is ready for with
+ * {@link Subscription#request(long)}. The query doesn't run while nothing is requested, or while
+ * the previous result is still being delivered. Changes in the meantime are remembered and cause
+ * a single run once the subscriber asks for more, so a slow subscriber gets the latest result
+ * rather than a backlog of stale ones.
+ *
+ * @param <T> Type of the query result
+ */
+public final class QueryStream<T> {
+
+    /**
+     * Receives the results of a {@link QueryStream}, one call at a time, on the executor given to
+     * {@link #subscribe(Executor, Subscriber)}.
+     */
+    public interface Subscriber<T> {
+        @WorkerThread
+        void onNext(T result);
+
+        /**
+         * The query failed. Nothing is delivered after this.
+         */
+        @WorkerThread
+        void onError(RuntimeException e);
+    }
+
+    /**
+     * Links a {@link Subscriber} to its {@link QueryStream}.
+     */
+    public interface Subscription {
+        /**
+         * Asks for up to n more results, on top of those asked for already.
+         */
+        void request(long n);
+
+        /**
+         * Stops the query from running again. Nothing is delivered once this returns, unless
+         * the subscriber is already being called.
+         */
+        void cancel();
+    }
+
+    /**
+     * Decides whether two results are the same as far as a subscriber is concerned.
+     */
+    public interface Equivalence<T> {
+        boolean isEquivalent(T a, T b);
+    }
+
+    private final RoomDatabase mDatabase;
+    private final Executor mQueryExecutor;
+    private final TableLiveData.Query<T> mQuery;
+    private final String mTable;
+    private final String[] mOtherTables;
+    // Results equivalent to the last one delivered are skipped, null to deliver every result
+    private final Equivalence<? super T> mDistinct;
+
+    QueryStream(RoomDatabase database, Executor queryExecutor, TableLiveData.Query<T> query,
+                String table, String... otherTables) {
+        this(database, queryExecutor, query, table, otherTables, null);
+    }
+
+    private QueryStream(RoomDatabase database, Executor queryExecutor,
+                        TableLiveData.Query<T> query, String table, String[] otherTables,
+                        Equivalence<? super T> distinct) {
+        mDatabase = database;
+        mQueryExecutor = queryExecutor;
+        mQuery = query;
+        mTable = table;
+        mOtherTables = otherTables;
+        mDistinct = distinct;
+    }
+
+    /**
+     * @return A stream which skips results equal to the last one delivered
+     */
+    public QueryStream<T> distinctUntilChanged() {
+        return distinctUntilChanged((a, b) -> a == null ? b == null : a.equals(b));
+    }
+
+    /**
+     * @param equivalence Decides which results are the same. Combined with any equivalence
+     *                    already applied, a result is skipped if either finds it the same.
+     * @return A stream which skips results equivalent to the last one delivered. Skipped results
+     * don't count towards the ones requested.
+     */
+    public QueryStream<T> distinctUntilChanged(Equivalence<? super T> equivalence) {
+        Equivalence<? super T> previous = mDistinct;
+        Equivalence<T> distinct = previous == null ? equivalence::isEquivalent
+                : (a, b) -> previous.isEquivalent(a, b) || equivalence.isEquivalent(a, b);
+        return new QueryStream<>(mDatabase, mQueryExecutor, mQuery, mTable, mOtherTables,
+                distinct);
+    }
+
+    /**
+     * @return An equivalence for lists which are the same length and whose elements are
+     * equivalent pairwise, for use with {@link #distinctUntilChanged(Equivalence)}
+     */
+    public static <E> Equivalence<List<E>> elementwise(Equivalence<? super E> equivalence) {
+        return (a, b) -> {
+            if (a == b) return true;
+            if (a == null || b == null || a.size() != b.size()) return false;
+            for (int i = 0; i < a.size(); i++) {
+                if (!equivalence.isEquivalent(a.get(i), b.get(i))) return false;
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Starts watching the tables. Nothing is delivered until the subscriber asks for it with
+     * {@link Subscription#request(long)}, and the first result is always delivered.
+     *
+     * @param deliveryExecutor Where the subscriber is called, it mustn't be the main thread's
+     * @return The subscription, to ask for results and to cancel
+     */
+    public Subscription subscribe(Executor deliveryExecutor, Subscriber<? super T> subscriber) {
+        QuerySubscription subscription = new QuerySubscription(deliveryExecutor, subscriber);
+        // Registering the observer touches the database, so it is done on the executor
+        mQueryExecutor.execute(() ->
+                mDatabase.getInvalidationTracker().addObserver(subscription.mObserver));
+        return subscription;
+    }
+
+    private final class QuerySubscription implements Subscription {
+        private final Executor mDeliveryExecutor;
+        private final Subscriber<? super T> mSubscriber;
+        private final InvalidationTracker.Observer mObserver;
+
+        // All guarded by this
+        private long mRequested;
+        // The tables changed since the query last ran, true so that it runs the first time
+        private boolean mStale = true;
+        // Set from when the query is scheduled until its result has been delivered or skipped,
+        // so that the subscriber is only ever called once at a time
+        private boolean mBusy;
+        private boolean mCancelled;
+        private boolean mHasDelivered;
+        private T mLastDelivered;
+
+        QuerySubscription(Executor deliveryExecutor, Subscriber<? super T> subscriber) {
+            mDeliveryExecutor = deliveryExecutor;
+            mSubscriber = subscriber;
+            mObserver = new InvalidationTracker.Observer(mTable, mOtherTables) {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    synchronized (QuerySubscription.this) {
+                        mStale = true;
+                        scheduleQuery();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) throw new IllegalArgumentException("Must request at least one, not " + n);
+            synchronized (this) {
+                // Stays at Long.MAX_VALUE rather than overflowing
+                mRequested = mRequested + n < 0 ? Long.MAX_VALUE : mRequested + n;
+                scheduleQuery();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (mCancelled) return;
+                mCancelled = true;
+                mLastDelivered = null;
+            }
+            mQueryExecutor.execute(() ->
+                    mDatabase.getInvalidationTracker().removeObserver(mObserver));
+        }
+
+        /**
+         * Runs the query if there is a reason to and the subscriber is ready. Called holding the
+         * lock.
+         */
+        private void scheduleQuery() {
+            if (mCancelled || mBusy || !mStale || mRequested == 0) return;
+            mBusy = true;
+            mStale = false;
+            mQueryExecutor.execute(this::runQuery);
+        }
+
+        @WorkerThread
+        private void runQuery() {
+            T result;
+            try {
+                result = mQuery.run();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    if (mCancelled) return;
+                }
+                cancel();
+                mDeliveryExecutor.execute(() -> mSubscriber.onError(e));
+                return;
+            }
+
+            synchronized (this) {
+                if (mCancelled) return;
+                if (mDistinct != null && mHasDelivered
+                        && mDistinct.isEquivalent(mLastDelivered, result)) {
+                    mBusy = false;
+                    scheduleQuery();
+                    return;
+                }
+                if (mDistinct != null) mLastDelivered = result;
+                mHasDelivered = true;
+                if (mRequested != Long.MAX_VALUE) mRequested--;
+            }
+            mDeliveryExecutor.execute(() -> deliver(result));
+        }
+
+        @WorkerThread
+        private void deliver(T result) {
+            try {
+                synchronized (this) {
+                    if (mCancelled) return;
+                }
+                mSubscriber.onNext(result);
+            } finally {
+                synchronized (this) {
+                    mBusy = false;
+                    scheduleQuery();
+                }
+            }
+        }
+    }
+}
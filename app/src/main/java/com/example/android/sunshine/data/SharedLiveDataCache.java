@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import android.arch.core.util.Function;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.support.annotation.MainThread;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares a single source {@link LiveData} between every caller that asks for the same key.
+ * <p>
+ * Each caller gets its own lightweight {@link MediatorLiveData}. The underlying source (for
+ * example a Room query) is created when the first of them becomes active and is dropped once the
+ * last one becomes inactive, so identical queries only register one invalidation observer and
+ * only run once per table change, no matter how many screens are observing them.
+ * <p>
+ * All of the bookkeeping happens in {@link LiveData#onActive()} and {@link LiveData#onInactive()},
+ * which are always called on the main thread, so no locking is needed.
+ *
+ * @param <K> Key identifying a query, it must implement equals and hashCode
+ * @param <T> Type of the data held by the query
+ */
+class SharedLiveDataCache<K, T> {
+
+    private final Function<K, LiveData<T>> mSourceFactory;
+    private final Map<K, SharedSource<T>> mSources = new HashMap<>();
+
+    /**
+     * @param sourceFactory Creates the source {@link LiveData} for a key the first time it is
+     *                      needed
+     */
+    SharedLiveDataCache(Function<K, LiveData<T>> sourceFactory) {
+        mSourceFactory = sourceFactory;
+    }
+
+    /**
+     * Gets a {@link LiveData} backed by the shared source for the given key.
+     *
+     * @param key The key identifying the query
+     * @return {@link LiveData} which mirrors the shared source while it has active observers
+     */
+    LiveData<T> get(K key) {
+        return new SharedLiveData(key);
+    }
+
+    @MainThread
+    private LiveData<T> acquire(K key) {
+        SharedSource<T> source = mSources.get(key);
+        if (source == null) {
+            source = new SharedSource<>(mSourceFactory.apply(key));
+            mSources.put(key, source);
+        }
+        source.mRefCount++;
+        return source.mLiveData;
+    }
+
+    @MainThread
+    private void release(K key) {
+        SharedSource<T> source = mSources.get(key);
+        if (source != null && --source.mRefCount == 0) {
+            // Nobody is observing this query anymore, drop the source so that it stops being
+            // recomputed when the table changes
+            mSources.remove(key);
+        }
+    }
+
+    private static class SharedSource<T> {
+        private final LiveData<T> mLiveData;
+        private int mRefCount;
+
+        SharedSource(LiveData<T> liveData) {
+            mLiveData = liveData;
+        }
+    }
+
+    /**
+     * The {@link LiveData} handed out to callers. It only holds a reference on the shared source
+     * while it has active observers itself.
+     */
+    private class SharedLiveData extends MediatorLiveData<T> {
+        private final K mKey;
+        private LiveData<T> mSource;
+
+        SharedLiveData(K key) {
+            mKey = key;
+        }
+
+        @Override
+        protected void onActive() {
+            super.onActive();
+            mSource = acquire(mKey);
+            addSource(mSource, value -> {
+                // Re-attaching to the source redelivers its latest value, only forward real
+                // changes so observers aren't notified twice with the same data
+                if (value != getValue()) setValue(value);
+            });
+        }
+
+        @Override
+        protected void onInactive() {
+            super.onInactive();
+            removeSource(mSource);
+            mSource = null;
+            release(mKey);
+        }
+    }
+}
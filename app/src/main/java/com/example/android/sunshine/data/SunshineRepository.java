@@ -17,67 +17,138 @@
 package com.example.android.sunshine.data;
 
 import android.arch.lifecycle.LiveData;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.SyncTracer;
+import com.example.android.sunshine.data.alert.AlertRuleCompiler;
+import com.example.android.sunshine.data.alert.WeatherAlertEngine;
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.data.database.AlertDao;
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.HourlyWeatherDao;
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.PackedForecast;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.WeatherAggregator;
+import com.example.android.sunshine.data.database.WeatherCursorReader;
 import com.example.android.sunshine.data.database.WeatherDao;
 import com.example.android.sunshine.data.database.WeatherEntry;
-import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.data.database.WeatherSummaryEntry;
+import com.example.android.sunshine.data.database.WindRoseEntry;
+import com.example.android.sunshine.data.network.WeatherDataSource;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Handles data operations in Sunshine. Acts as a mediator between {@link WeatherNetworkDataSource}
- * and {@link WeatherDao}
+ * Handles data operations in Sunshine. Acts as a mediator between {@link WeatherDataSource} and
+ * {@link WeatherDao}
  */
 public class SunshineRepository {
     private static final String LOG_TAG = SunshineRepository.class.getSimpleName();
 
+    // Length of a slot of the three hour forecast. Slots which have ended are deleted on sync.
+    private static final long HOURLY_SLOT_MILLIS = TimeUnit.HOURS.toMillis(3);
+
     // For Singleton instantiation
     private static final Object LOCK = new Object();
-    private static SunshineRepository sInstance;
+    private static volatile SunshineRepository sInstance;
+    private final SunshineDatabase mDatabase;
     private final WeatherDao mWeatherDao;
-    private final WeatherNetworkDataSource mWeatherNetworkDataSource;
+    // Writes to the weather table go through here so that the summaries stay up to date
+    private final WeatherAggregator mWeatherAggregator;
+    private final HourlyWeatherDao mHourlyWeatherDao;
+    private final AlertDao mAlertDao;
+    private final WeatherDataSource mWeatherDataSource;
     private final AppExecutors mExecutors;
+    private final ForecastSnapshot mForecastSnapshot;
+    // Told about every newly stored forecast, only load tests count the stores this way, null
+    // for the app's repository
+    private final ForecastStoredListener mForecastStoredListener;
+    // Notifies the user of the days which match their alert rules
+    private final WeatherAlertEngine mWeatherAlertEngine;
+    // Identical queries share a single Room LiveData, no matter how many screens observe them
+    private final SharedLiveDataCache<Date, SyncedValue<List<ListWeatherEntry>>>
+            mCurrentForecasts;
+    private final SharedLiveDataCache<Date, WeatherEntry> mWeatherByDate;
+    private final SharedLiveDataCache<Date, PackedForecast> mPackedForecasts;
     private boolean mInitialized = false;
+    // The sync which stored the forecast last. Only touched on the disk thread, where the
+    // forecast is both stored and read, so it always matches the rows a query reads.
+    private int mStoredSyncId = SyncTracer.NO_SYNC;
 
-    private SunshineRepository(WeatherDao weatherDao,
-                               WeatherNetworkDataSource weatherNetworkDataSource,
-                               AppExecutors executors) {
-        mWeatherDao = weatherDao;
-        mWeatherNetworkDataSource = weatherNetworkDataSource;
+    /**
+     * Use {@link #getInstance} for the app's repository. Load tests make their own, with a data
+     * source and a database of their own.
+     */
+    SunshineRepository(SunshineDatabase database, WeatherDataSource weatherDataSource,
+                       AppExecutors executors, ForecastSnapshot forecastSnapshot,
+                       @Nullable ForecastStoredListener forecastStoredListener,
+                       WeatherAlertEngine weatherAlertEngine) {
+        mDatabase = database;
+        mWeatherDao = database.weatherDao();
+        mWeatherAggregator = new WeatherAggregator(database);
+        mHourlyWeatherDao = database.hourlyWeatherDao();
+        mAlertDao = database.alertDao();
+        mWeatherDataSource = weatherDataSource;
         mExecutors = executors;
+        mForecastSnapshot = forecastSnapshot;
+        mForecastStoredListener = forecastStoredListener;
+        mWeatherAlertEngine = weatherAlertEngine;
+        mCurrentForecasts = new SharedLiveDataCache<>(date -> new TableLiveData<>(mDatabase,
+                mExecutors.diskIO(), () -> loadCurrentForecast(date), "weather"));
+        mWeatherByDate = new SharedLiveDataCache<>(mWeatherDao::getWeatherByDate);
+        mPackedForecasts = new SharedLiveDataCache<>(date -> new TableLiveData<>(mDatabase,
+                mExecutors.diskIO(), () -> loadPackedForecast(date), "weather"));
+
+        // Every download comes straight here from the network thread and is written on the disk
+        // thread, without waiting on the main thread
+        mWeatherDataSource.setDownloadSink(new WeatherDataSource.DownloadSink() {
+            @Override
+            public void onForecastDownloaded(WeatherEntry[] forecast, int syncId) {
+                // The disk executor queues every forecast, none are coalesced or dropped
+                mExecutors.diskIO().execute(() -> storeForecast(forecast, syncId));
+            }
+
+            @Override
+            public void onHourlyForecastDownloaded(HourlyWeatherEntry[] hourlyForecast) {
+                mExecutors.diskIO().execute(() -> storeHourlyForecast(hourlyForecast));
+            }
 
-        // As long as the repository exists, observe the network LiveData.
-        // If that LiveData changes, update the database.
-        LiveData<WeatherEntry[]> networkData = mWeatherNetworkDataSource.getCurrentWeatherForecasts();
-        networkData.observeForever(newForecastsFromNetwork -> {
-            mExecutors.diskIO().execute(() -> {
-                // Deletes old historical data
-                deleteOldData();
-                Log.d(LOG_TAG, "Old weather deleted");
-                // Insert our new weather data into Sunshine's database
-                mWeatherDao.bulkInsert(newForecastsFromNetwork);
-                Log.d(LOG_TAG, "New values inserted");
-            });
+            @Override
+            public void onLocationChanged() {
+                // Queued ahead of the new location's forecast, which is only fetched after this
+                mExecutors.diskIO().execute(SunshineRepository.this::clearStoredWeather);
+            }
         });
     }
 
-    public synchronized static SunshineRepository getInstance(
-            WeatherDao weatherDao, WeatherNetworkDataSource weatherNetworkDataSource,
-            AppExecutors executors) {
-        Log.d(LOG_TAG, "Getting the repository");
-        if (sInstance == null) {
+    public static SunshineRepository getInstance(
+            SunshineDatabase database, WeatherDataSource weatherDataSource,
+            AppExecutors executors, ForecastSnapshot forecastSnapshot,
+            WeatherAlertEngine weatherAlertEngine) {
+        SunshineRepository instance = sInstance;
+        if (instance == null) {
             synchronized (LOCK) {
-                sInstance = new SunshineRepository(weatherDao, weatherNetworkDataSource,
-                        executors);
-                Log.d(LOG_TAG, "Made new repository");
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new SunshineRepository(database, weatherDataSource,
+                            executors, forecastSnapshot, null, weatherAlertEngine);
+                    sInstance = instance;
+                    Log.d(LOG_TAG, "Made new repository");
+                }
             }
         }
-        return sInstance;
+        return instance;
     }
 
     /**
@@ -93,10 +164,12 @@ public class SunshineRepository {
 
         // This method call triggers Sunshine to create its task to synchronize weather data
         // periodically.
-        mWeatherNetworkDataSource.scheduleRecurringFetchWeatherSync();
+        mWeatherDataSource.scheduleRecurringFetchWeatherSync();
 
         mExecutors.diskIO().execute(() -> {
             if (isFetchNeeded()) {
+                // Days are missing, which only a full fetch brings back
+                mWeatherDataSource.requireFullFetch();
                 startFetchWeatherService();
             }
         });
@@ -106,15 +179,255 @@ public class SunshineRepository {
      * Database related operations
      **/
 
-    public LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts() {
+    /**
+     * Gets the forecast from today on, with the sync which stored it, see {@link SyncedValue}
+     */
+    public LiveData<SyncedValue<List<ListWeatherEntry>>> getCurrentWeatherForecasts() {
         initializeData();
         Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
-        return mWeatherDao.getCurrentWeatherForecasts(today);
+        return mCurrentForecasts.get(today);
     }
 
     public LiveData<WeatherEntry> getWeatherByDate(Date date) {
         initializeData();
-        return mWeatherDao.getWeatherByDate(date);
+        return mWeatherByDate.get(date);
+    }
+
+    public LiveData<List<WeatherEntry>> getWeatherBetweenDates(Date startDate, Date endDate) {
+        initializeData();
+        return mWeatherDao.getWeatherBetweenDates(startDate, endDate);
+    }
+
+    /**
+     * Gets the same forecasts as {@link #getCurrentWeatherForecasts()}, with every column, packed
+     * into primitive arrays. Meant for charts and anything else which reads many rows at once.
+     */
+    public LiveData<PackedForecast> getPackedWeatherForecasts() {
+        initializeData();
+        Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        return mPackedForecasts.get(today);
+    }
+
+    /**
+     * Streams the same forecasts as {@link #getCurrentWeatherForecasts()} to a background
+     * consumer. "Today" is worked out again every time the query runs, so a long lived
+     * subscriber moves on to the next day by itself. Apply
+     * {@code distinctUntilChanged(QueryStream.elementwise(ListWeatherEntry::hasSameContent))} to
+     * skip syncs which didn't change anything.
+     * <p>
+     * Unlike the LiveData getters, streams don't start a sync. Their consumers run in the
+     * background, such as the widget, and only follow whatever the app stores.
+     */
+    public QueryStream<List<ListWeatherEntry>> getCurrentWeatherForecastStream() {
+        return new QueryStream<>(mDatabase, mExecutors.diskIO(), () -> mWeatherDao
+                .getCurrentWeatherForecastsNow(SunshineDateUtils.getNormalizedUtcDateForToday()),
+                "weather");
+    }
+
+    /**
+     * Streams the weather for every day between two dates, inclusive, ordered by date, to a
+     * background consumer.
+     */
+    public QueryStream<List<WeatherEntry>> getWeatherBetweenDatesStream(Date startDate,
+                                                                        Date endDate) {
+        return new QueryStream<>(mDatabase, mExecutors.diskIO(),
+                () -> mWeatherDao.getWeatherBetweenDatesNow(startDate, endDate), "weather");
+    }
+
+    /**
+     * Streams the same summaries as {@link #getWeatherSummaries(int)} to a background consumer.
+     */
+    public QueryStream<List<WeatherSummaryEntry>> getWeatherSummaryStream(int period) {
+        return new QueryStream<>(mDatabase, mExecutors.diskIO(),
+                () -> mWeatherDao.getWeatherSummariesNow(period), "weather_summary");
+    }
+
+    /**
+     * Streams the forecasts from the given date onwards to a visitor, one primitive valued call
+     * per row, without creating an entity per row. Must be called off of the main thread.
+     *
+     * @param date    The date to read from (inclusive)
+     * @param visitor Receives each row, in date order
+     * @return The number of rows visited
+     */
+    @WorkerThread
+    public int visitWeatherSince(Date date, WeatherCursorReader.RowVisitor visitor) {
+        Cursor cursor = mWeatherDao.getCurrentWeatherForecastsCursor(date);
+        try {
+            return WeatherCursorReader.read(cursor, visitor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the min, max and mean temperature and the rainy days of every stored week or month.
+     *
+     * @param period {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *               {@link WeatherSummaryEntry#PERIOD_MONTH}
+     */
+    public LiveData<List<WeatherSummaryEntry>> getWeatherSummaries(int period) {
+        initializeData();
+        return mWeatherDao.getWeatherSummaries(period);
+    }
+
+    /**
+     * Gets the wind rose of the week or month a date falls in.
+     *
+     * @param period {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *               {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @param date   Any day of the period
+     */
+    public LiveData<List<WindRoseEntry>> getWindRose(int period, Date date) {
+        initializeData();
+        return mWeatherDao.getWindRose(period,
+                WeatherAggregator.getPeriodStart(period, date.getTime()));
+    }
+
+    /**
+     * Gets the three hour forecast slots starting between two dates, inclusive.
+     */
+    public LiveData<List<HourlyWeatherEntry>> getHourlyWeatherBetweenDates(Date startDate,
+                                                                         Date endDate) {
+        return mHourlyWeatherDao.getHourlyWeatherBetweenDates(startDate, endDate);
+    }
+
+    /**
+     * Fetches the weather for the city the user picked from now on, starting straight away.
+     */
+    public void setLocation(City city) {
+        mWeatherDataSource.setLocation(city);
+    }
+
+    /**
+     * Fetches the weather for where the device is from now on. Positions near the current
+     * location or a known city keep or get that location's forecast, see
+     * {@link WeatherDataSource#setDevicePosition}.
+     */
+    public void setDevicePosition(double latitude, double longitude) {
+        mWeatherDataSource.setDevicePosition(latitude, longitude);
+    }
+
+    /**
+     * Gets the user's weather alert rules, in the order they were added.
+     */
+    public LiveData<List<AlertRuleEntry>> getAlertRules() {
+        return mAlertDao.getAlertRules();
+    }
+
+    /**
+     * Adds a weather alert rule and tests the stored forecast against it straight away.
+     *
+     * @param name      Shown in the notification
+     * @param condition See {@link AlertRuleCompiler} for what it may contain
+     * @param firstDay  First day the rule looks at, counted from today
+     * @param lastDay   Last day the rule looks at, inclusive
+     * @throws IllegalArgumentException If the condition isn't valid
+     */
+    public void addAlertRule(String name, String condition, int firstDay, int lastDay) {
+        // Compiled here as well, so that a mistake is reported to the caller
+        AlertRuleCompiler.compile(condition);
+        AlertRuleEntry alertRule = new AlertRuleEntry(name, condition, firstDay, lastDay);
+        mExecutors.diskIO().execute(() -> {
+            mAlertDao.insertAlertRule(alertRule);
+            mWeatherAlertEngine.evaluateAll();
+        });
+    }
+
+    /**
+     * Deletes a weather alert rule along with the alerts it has fired.
+     */
+    public void deleteAlertRule(int id) {
+        mExecutors.diskIO().execute(() -> {
+            mDatabase.beginTransaction();
+            try {
+                mAlertDao.deleteFiredAlerts(id);
+                mAlertDao.deleteAlertRule(id);
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * Reads the forecasts from the given date onwards, with the sync which stored them. Runs on
+     * the disk thread, after any store queued before it has finished.
+     */
+    @WorkerThread
+    private SyncedValue<List<ListWeatherEntry>> loadCurrentForecast(Date date) {
+        return new SyncedValue<>(mWeatherDao.getCurrentWeatherForecastsNow(date), mStoredSyncId);
+    }
+
+    /**
+     * Reads the forecasts from the given date onwards straight from a cursor into a
+     * {@link PackedForecast}, without creating an entity per row
+     */
+    @WorkerThread
+    private PackedForecast loadPackedForecast(Date date) {
+        Cursor cursor = mWeatherDao.getCurrentWeatherForecastsCursor(date);
+        try {
+            return PackedForecast.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Replaces the old weather with a newly downloaded forecast
+     */
+    @WorkerThread
+    private void storeForecast(WeatherEntry[] forecast, int syncId) {
+        SyncTracer tracer = SyncTracer.getInstance();
+        tracer.endHop(syncId, SyncTracer.STAGE_HANDOFF);
+        // Deletes old historical data
+        tracer.beginSection(syncId, SyncTracer.STAGE_DELETE);
+        deleteOldData();
+        tracer.endSection(syncId, SyncTracer.STAGE_DELETE);
+        Log.d(LOG_TAG, "Old weather deleted");
+        // Insert our new weather data into Sunshine's database
+        tracer.beginSection(syncId, SyncTracer.STAGE_INSERT);
+        List<WeatherEntry> changed = mWeatherAggregator.bulkInsert(forecast);
+        mStoredSyncId = syncId;
+        tracer.endSection(syncId, SyncTracer.STAGE_INSERT);
+        // Ended by the forecast list, once the rows have been read again and delivered
+        tracer.beginHop(syncId, SyncTracer.STAGE_INVALIDATION);
+        Log.d(LOG_TAG, "New values inserted");
+        // How much actually changed decides how soon the next sync is worth it. A delta only
+        // carries the changed days, so the share is of the whole forecast.
+        mWeatherDataSource.onForecastStored(syncId, changed.size(),
+                Math.max(forecast.length, WeatherDataSource.NUM_DAYS));
+        // Keep a copy of the new list around for the next cold start
+        updateForecastSnapshot();
+        // Only the days which changed need testing against the alert rules
+        mWeatherAlertEngine.onWeatherChanged(changed);
+    }
+
+    /**
+     * Stores a newly downloaded three hour forecast in its own table
+     */
+    @WorkerThread
+    private void storeHourlyForecast(HourlyWeatherEntry[] hourlyForecast) {
+        // Only keeps slots which haven't ended, so the table stays the size of one fetch no
+        // matter how often we sync
+        Date currentSlotStart = new Date(System.currentTimeMillis() - HOURLY_SLOT_MILLIS);
+        mHourlyWeatherDao.replaceHourlyWeather(currentSlotStart, hourlyForecast);
+        Log.d(LOG_TAG, "New hourly values inserted");
+    }
+
+    /**
+     * Deletes the forecasts, summaries and hourly forecast of the location the user left, and
+     * the alerts they fired, so that none of it shows or fires again under the new location
+     */
+    @WorkerThread
+    private void clearStoredWeather() {
+        mWeatherAggregator.deleteAllWeather();
+        mHourlyWeatherDao.deleteAllHourlyWeather();
+        mWeatherAlertEngine.onLocationChanged();
+        mStoredSyncId = SyncTracer.NO_SYNC;
+        // An empty snapshot, so a cold start doesn't show the old location either
+        mForecastSnapshot.write(Collections.<ListWeatherEntry>emptyList());
+        Log.d(LOG_TAG, "Weather of the previous location deleted");
     }
 
     /**
@@ -122,7 +435,19 @@ public class SunshineRepository {
      */
     private void deleteOldData() {
         Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
-        mWeatherDao.deleteOldWeather(today);
+        mWeatherAggregator.deleteOldWeather(today);
+    }
+
+    /**
+     * Writes the forecasts currently in the database to the {@link ForecastSnapshot}, so they can
+     * be shown on the next cold start before the database is open, and hands them to the
+     * {@link ForecastStoredListener}
+     */
+    private void updateForecastSnapshot() {
+        Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        List<ListWeatherEntry> forecast = mWeatherDao.getCurrentWeatherForecastsNow(today);
+        mForecastSnapshot.write(forecast);
+        if (mForecastStoredListener != null) mForecastStoredListener.onForecastStored(forecast);
     }
 
     /**
@@ -133,7 +458,7 @@ public class SunshineRepository {
     private boolean isFetchNeeded() {
         Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
         int count = mWeatherDao.countAllFutureWeather(today);
-        return (count < WeatherNetworkDataSource.NUM_DAYS);
+        return (count < WeatherDataSource.NUM_DAYS);
     }
 
     /**
@@ -141,7 +466,17 @@ public class SunshineRepository {
      */
 
     private void startFetchWeatherService() {
-        mWeatherNetworkDataSource.startFetchWeatherService();
+        mWeatherDataSource.startFetchWeatherService();
     }
 
-}
\ No newline at end of file
+    /**
+     * Receives the forecast list after every sync has been stored, on the disk thread. Called
+     * once per sync, even one which changed nothing, which is what load tests count. Consumers
+     * which only need the latest forecast, like the widget, subscribe to
+     * {@link #getCurrentWeatherForecastStream()} instead.
+     */
+    interface ForecastStoredListener {
+        @WorkerThread
+        void onForecastStored(List<ListWeatherEntry> forecast);
+    }
+}
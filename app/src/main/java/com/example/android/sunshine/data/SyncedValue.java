@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import com.example.android.sunshine.SyncTracer;
+
+/**
+ * A query result together with the sync whose forecast it was read after, so that the screen
+ * showing it can close that sync's trace without asking the {@link SyncTracer} which sync ran
+ * last, which may be a later one still on its way.
+ *
+ * @param <T> Type of the query result
+ */
+public final class SyncedValue<T> {
+    private final T mValue;
+    private final int mSyncId;
+
+    public SyncedValue(T value, int syncId) {
+        mValue = value;
+        mSyncId = syncId;
+    }
+
+    public T getValue() {
+        return mValue;
+    }
+
+    /**
+     * @return The sync which stored the newest forecast the value includes, or
+     * {@link SyncTracer#NO_SYNC} if none has been stored since the app started
+     */
+    public int getSyncId() {
+        return mSyncId;
+    }
+}
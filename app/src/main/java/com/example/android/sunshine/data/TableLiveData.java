@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.InvalidationTracker;
+import android.arch.persistence.room.RoomDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link LiveData} for queries that Room can't generate, such as ones that read a
+ * {@link android.database.Cursor} directly. Like Room's own LiveData, it runs the query when it
+ * becomes active and again whenever one of the observed tables changes while it is active.
+ *
+ * @param <T> Type of the query result
+ */
+class TableLiveData<T> extends LiveData<T> {
+
+    /**
+     * Runs the query. Always called on the executor given to {@link TableLiveData}.
+     */
+    interface Query<T> {
+        @WorkerThread
+        T run();
+    }
+
+    private final RoomDatabase mDatabase;
+    private final Executor mExecutor;
+    private final Query<T> mQuery;
+    private final InvalidationTracker.Observer mObserver;
+
+    // Set while a run of the query is scheduled but hasn't started yet, so that a burst of
+    // invalidations only causes one run
+    private final AtomicBoolean mPending = new AtomicBoolean(false);
+
+    TableLiveData(RoomDatabase database, Executor executor, Query<T> query, String table,
+                  String... otherTables) {
+        mDatabase = database;
+        mExecutor = executor;
+        mQuery = query;
+        mObserver = new InvalidationTracker.Observer(table, otherTables) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                if (hasActiveObservers()) scheduleQuery();
+            }
+        };
+    }
+
+    @Override
+    protected void onActive() {
+        // Registering the observer touches the database, so it is done on the executor
+        mExecutor.execute(() -> mDatabase.getInvalidationTracker().addObserver(mObserver));
+        scheduleQuery();
+    }
+
+    @Override
+    protected void onInactive() {
+        mExecutor.execute(() -> mDatabase.getInvalidationTracker().removeObserver(mObserver));
+    }
+
+    private void scheduleQuery() {
+        if (mPending.compareAndSet(false, true)) {
+            mExecutor.execute(() -> {
+                mPending.set(false);
+                postValue(mQuery.run());
+            });
+        }
+    }
+}
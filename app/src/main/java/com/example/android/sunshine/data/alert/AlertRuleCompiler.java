@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.alert;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the condition of an alert rule into a {@link WeatherPredicate}, once, so that
+ * evaluating it against a day's weather is only a few comparisons.
+ * <p>
+ * A condition is one or more comparisons joined by "and", such as {@code min < 0} or
+ * {@code weatherId between 500 and 531 and wind >= 10}. Each compares one of the fields min, max
+ * (°C), humidity (%), pressure (hPa), wind (km/h), degrees or weatherId against a number with
+ * {@code <}, {@code <=}, {@code >}, {@code >=}, {@code =} or {@code !=}, or checks it lies
+ * between two numbers, inclusive.
+ */
+public final class AlertRuleCompiler {
+
+    private interface FieldReader {
+        double read(WeatherEntry weather);
+    }
+
+    private static final Map<String, FieldReader> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("min", WeatherEntry::getMin);
+        FIELDS.put("max", WeatherEntry::getMax);
+        FIELDS.put("humidity", WeatherEntry::getHumidity);
+        FIELDS.put("pressure", WeatherEntry::getPressure);
+        FIELDS.put("wind", WeatherEntry::getWind);
+        FIELDS.put("degrees", WeatherEntry::getDegrees);
+        FIELDS.put("weatherid", WeatherEntry::getWeatherIconId);
+    }
+
+    private static final String AND = "and";
+    private static final String BETWEEN = "between";
+
+    // Words, numbers and comparison operators, which may or may not be separated by spaces
+    private static final Pattern TOKEN =
+            Pattern.compile("\\s*(<=|>=|!=|<|>|=|-?\\d+(?:\\.\\d+)?|[A-Za-z]+)\\s*");
+
+    private AlertRuleCompiler() {
+    }
+
+    /**
+     * @param condition The condition of a rule
+     * @return The compiled condition
+     * @throws IllegalArgumentException If the condition isn't valid
+     */
+    public static WeatherPredicate compile(String condition) {
+        List<String> tokens = tokenize(condition);
+        List<WeatherPredicate> comparisons = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            String fieldName = token(tokens, position++, condition);
+            FieldReader field = FIELDS.get(fieldName.toLowerCase(Locale.US));
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown field " + fieldName + " in "
+                        + condition);
+            }
+
+            String operator = token(tokens, position++, condition).toLowerCase(Locale.US);
+            if (BETWEEN.equals(operator)) {
+                double low = number(tokens, position++, condition);
+                if (!AND.equals(token(tokens, position++, condition).toLowerCase(Locale.US))) {
+                    throw new IllegalArgumentException("Expected and in " + condition);
+                }
+                double high = number(tokens, position++, condition);
+                comparisons.add(weather -> {
+                    double value = field.read(weather);
+                    return value >= low && value <= high;
+                });
+            } else {
+                comparisons.add(compare(field, operator,
+                        number(tokens, position++, condition), condition));
+            }
+
+            if (position == tokens.size()) break;
+            if (!AND.equals(tokens.get(position++).toLowerCase(Locale.US))) {
+                throw new IllegalArgumentException("Expected and in " + condition);
+            }
+        }
+
+        if (comparisons.size() == 1) return comparisons.get(0);
+        WeatherPredicate[] all = comparisons.toArray(new WeatherPredicate[comparisons.size()]);
+        return weather -> {
+            for (WeatherPredicate comparison : all) {
+                if (!comparison.test(weather)) return false;
+            }
+            return true;
+        };
+    }
+
+    private static WeatherPredicate compare(FieldReader field, String operator, double value,
+                                            String condition) {
+        switch (operator) {
+            case "<":
+                return weather -> field.read(weather) < value;
+            case "<=":
+                return weather -> field.read(weather) <= value;
+            case ">":
+                return weather -> field.read(weather) > value;
+            case ">=":
+                return weather -> field.read(weather) >= value;
+            case "=":
+                return weather -> field.read(weather) == value;
+            case "!=":
+                return weather -> field.read(weather) != value;
+            default:
+                throw new IllegalArgumentException("Unknown comparison " + operator + " in "
+                        + condition);
+        }
+    }
+
+    private static List<String> tokenize(String condition) {
+        if (condition == null) throw new IllegalArgumentException("No condition");
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(condition);
+        int position = 0;
+        while (position < condition.length()) {
+            matcher.region(position, condition.length());
+            if (!matcher.lookingAt()) {
+                throw new IllegalArgumentException("Unexpected " + condition.substring(position)
+                        + " in " + condition);
+            }
+            tokens.add(matcher.group(1));
+            position = matcher.end();
+        }
+        return tokens;
+    }
+
+    private static String token(List<String> tokens, int position, String condition) {
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of " + condition);
+        }
+        return tokens.get(position);
+    }
+
+    private static double number(List<String> tokens, int position, String condition) {
+        String token = token(tokens, position, condition);
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number, not " + token + " in "
+                    + condition);
+        }
+    }
+}
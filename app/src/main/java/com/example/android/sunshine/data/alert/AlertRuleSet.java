@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.alert;
+
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.WeatherDataSource;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The user's alert rules, compiled and grouped by the days they look at, so that a day's weather
+ * is only tested against the rules whose window it falls in.
+ */
+public final class AlertRuleSet {
+    private static final String LOG_TAG = AlertRuleSet.class.getSimpleName();
+
+    // Only the days which are fetched can match
+    private static final int DAY_COUNT = WeatherDataSource.NUM_DAYS;
+
+    // The rules whose window includes each day, counted from today
+    private final List<List<CompiledRule>> mRulesByDay = new ArrayList<>(DAY_COUNT);
+    private final int mRuleCount;
+
+    /**
+     * Compiles the rules. Rules which don't compile are left out.
+     */
+    public AlertRuleSet(List<AlertRuleEntry> rules) {
+        for (int day = 0; day < DAY_COUNT; day++) mRulesByDay.add(new ArrayList<>());
+        int ruleCount = 0;
+        for (AlertRuleEntry rule : rules) {
+            WeatherPredicate predicate;
+            try {
+                predicate = AlertRuleCompiler.compile(rule.getCondition());
+            } catch (IllegalArgumentException e) {
+                Log.w(LOG_TAG, "Leaving out rule " + rule.getId() + ": " + e.getMessage());
+                continue;
+            }
+            CompiledRule compiledRule = new CompiledRule(rule, predicate);
+            int firstDay = Math.max(rule.getFirstDay(), 0);
+            int lastDay = Math.min(rule.getLastDay(), DAY_COUNT - 1);
+            for (int day = firstDay; day <= lastDay; day++) {
+                mRulesByDay.get(day).add(compiledRule);
+            }
+            ruleCount++;
+        }
+        mRuleCount = ruleCount;
+    }
+
+    /**
+     * @return The number of rules which compiled
+     */
+    public int getRuleCount() {
+        return mRuleCount;
+    }
+
+    /**
+     * Tests the weather against the rules which look at its day.
+     *
+     * @param weather Days of weather, in any order. Days outside of every rule's window are
+     *                skipped.
+     * @param today   Normalized UTC date in milliseconds of today
+     * @return Every rule and day which matched
+     */
+    public List<Match> match(Collection<WeatherEntry> weather, long today) {
+        List<Match> matches = new ArrayList<>();
+        for (WeatherEntry weatherEntry : weather) {
+            long dayOffset = (weatherEntry.getDate().getTime() - today)
+                    / SunshineDateUtils.DAY_IN_MILLIS;
+            if (dayOffset < 0 || dayOffset >= DAY_COUNT) continue;
+            for (CompiledRule rule : mRulesByDay.get((int) dayOffset)) {
+                if (rule.mPredicate.test(weatherEntry)) {
+                    matches.add(new Match(rule.mRule, weatherEntry));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static class CompiledRule {
+        final AlertRuleEntry mRule;
+        final WeatherPredicate mPredicate;
+
+        CompiledRule(AlertRuleEntry rule, WeatherPredicate predicate) {
+            mRule = rule;
+            mPredicate = predicate;
+        }
+    }
+
+    /**
+     * A rule which matched a day's weather
+     */
+    public static final class Match {
+        private final AlertRuleEntry mRule;
+        private final WeatherEntry mWeather;
+
+        Match(AlertRuleEntry rule, WeatherEntry weather) {
+            mRule = rule;
+            mWeather = weather;
+        }
+
+        public AlertRuleEntry getRule() {
+            return mRule;
+        }
+
+        public WeatherEntry getWeather() {
+            return mWeather;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.alert;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.support.annotation.WorkerThread;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.AlertDao;
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+import com.example.android.sunshine.data.database.FiredAlertEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.WeatherDao;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.WeatherDataSource;
+import com.example.android.sunshine.ui.list.MainActivity;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Notifies the user when the forecast matches one of their {@link AlertRuleEntry} rules.
+ * <p>
+ * After a sync only the days whose weather changed are tested, the rest have been tested already.
+ * The exception is the first sync of a day: as days move into a rule's window without their
+ * forecast changing, the whole forecast is tested then. A rule notifies once for each day it
+ * matches, the alerts which have fired are kept in the database.
+ */
+public class WeatherAlertEngine {
+    private static final String LOG_TAG = WeatherAlertEngine.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "weather_alerts";
+    // Normalized UTC date in milliseconds of the day the whole forecast was last tested
+    private static final String KEY_LAST_FULL_EVALUATION = "last_full_evaluation";
+
+    private static final String NOTIFICATION_CHANNEL_ID = "weather_alerts";
+    private static final int NOTIFICATION_ID = 3004;
+
+    private final Context mContext;
+    private final SunshineDatabase mDatabase;
+    private final WeatherDao mWeatherDao;
+    private final AlertDao mAlertDao;
+    private final SharedPreferences mPreferences;
+
+    public WeatherAlertEngine(Context context, SunshineDatabase database) {
+        mContext = context.getApplicationContext();
+        mDatabase = database;
+        mWeatherDao = database.weatherDao();
+        mAlertDao = database.alertDao();
+        mPreferences = mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Called after a sync has been stored, on the disk thread.
+     *
+     * @param changed The days whose weather was new or differed from the stored weather
+     */
+    @WorkerThread
+    public void onWeatherChanged(List<WeatherEntry> changed) {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        if (mPreferences.getLong(KEY_LAST_FULL_EVALUATION, -1) != today) {
+            evaluateAll();
+        } else if (!changed.isEmpty()) {
+            evaluate(changed, today);
+        }
+    }
+
+    /**
+     * Tests the whole stored forecast, such as after a rule has been added.
+     */
+    @WorkerThread
+    public void evaluateAll() {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        long lastDay = today + SunshineDateUtils.DAY_IN_MILLIS
+                * (WeatherDataSource.NUM_DAYS - 1);
+        evaluate(mWeatherDao.getWeatherBetweenDatesNow(new Date(today), new Date(lastDay)), today);
+        mPreferences.edit().putLong(KEY_LAST_FULL_EVALUATION, today).apply();
+    }
+
+    /**
+     * Forgets the alerts fired for the location the user left, so that the same rule and day
+     * notify again for the new location, and has its first sync test the whole forecast.
+     */
+    @WorkerThread
+    public void onLocationChanged() {
+        mAlertDao.deleteAllFiredAlerts();
+        mPreferences.edit().remove(KEY_LAST_FULL_EVALUATION).apply();
+    }
+
+    private void evaluate(Collection<WeatherEntry> weather, long today) {
+        List<AlertRuleEntry> rules = mAlertDao.getAlertRulesNow();
+        if (rules.isEmpty()) return;
+        List<AlertRuleSet.Match> matches = new AlertRuleSet(rules).match(weather, today);
+
+        // Leaves out the alerts which have fired already, and any match repeated within this run
+        List<AlertRuleSet.Match> newMatches = new ArrayList<>();
+        mDatabase.beginTransaction();
+        try {
+            mAlertDao.deleteFiredAlertsBefore(today);
+            Set<Long> fired = new HashSet<>();
+            for (FiredAlertEntry firedAlert : mAlertDao.getFiredAlertsSince(today)) {
+                fired.add(getAlertKey(firedAlert.getRuleId(), firedAlert.getDate()));
+            }
+            List<FiredAlertEntry> newAlerts = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (AlertRuleSet.Match match : matches) {
+                int ruleId = match.getRule().getId();
+                long date = match.getWeather().getDate().getTime();
+                if (fired.add(getAlertKey(ruleId, date))) {
+                    newAlerts.add(new FiredAlertEntry(ruleId, date, now));
+                    newMatches.add(match);
+                }
+            }
+            if (!newAlerts.isEmpty()) mAlertDao.insertFiredAlerts(newAlerts);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+
+        Log.d(LOG_TAG, "Tested " + weather.size() + " days against " + rules.size()
+                + " rules, " + matches.size() + " matches, " + newMatches.size() + " new");
+        if (!newMatches.isEmpty()) notifyAlerts(newMatches);
+    }
+
+    /**
+     * Shows a single notification for all of the new alerts, naming the first one.
+     */
+    private void notifyAlerts(List<AlertRuleSet.Match> alerts) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    mContext.getString(R.string.alert_channel_name),
+                    NotificationManager.IMPORTANCE_DEFAULT);
+            channel.setDescription(mContext.getString(R.string.alert_channel_description));
+            ((NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE))
+                    .createNotificationChannel(channel);
+        }
+
+        AlertRuleSet.Match first = alerts.get(0);
+        String day = SunshineDateUtils.getFriendlyDateString(mContext,
+                first.getWeather().getDate().getTime(), false);
+        String text = alerts.size() == 1
+                ? mContext.getString(R.string.alert_notification_text,
+                first.getRule().getName(), day)
+                : mContext.getString(R.string.alert_notification_text_more,
+                first.getRule().getName(), day, alerts.size() - 1);
+
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0,
+                new Intent(mContext, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(mContext, NOTIFICATION_CHANNEL_ID)
+                        .setSmallIcon(SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(
+                                first.getWeather().getWeatherIconId()))
+                        .setColor(ContextCompat.getColor(mContext, R.color.colorPrimary))
+                        .setContentTitle(mContext.getString(R.string.alert_notification_title))
+                        .setContentText(text)
+                        .setContentIntent(contentIntent)
+                        .setAutoCancel(true);
+        NotificationManagerCompat.from(mContext).notify(NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * @return A key which is unique to a rule and a day
+     */
+    private static long getAlertKey(int ruleId, long date) {
+        return ((long) ruleId << 32) | (date / SunshineDateUtils.DAY_IN_MILLIS);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.city;
+
+import android.text.TextUtils;
+
+/**
+ * A city from the {@link CityDatabase}
+ */
+public class City {
+
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    private final long mId;
+    private final String mName;
+    // Name of the state, province or other first level division, null if unknown
+    private final String mAdmin1;
+    // ISO 3166 two letter code
+    private final String mCountry;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final long mPopulation;
+
+    public City(long id, String name, String admin1, String country, double latitude,
+                double longitude, long population) {
+        mId = id;
+        mName = name;
+        mAdmin1 = admin1;
+        mCountry = country;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mPopulation = population;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getAdmin1() {
+        return mAdmin1;
+    }
+
+    public String getCountry() {
+        return mCountry;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public long getPopulation() {
+        return mPopulation;
+    }
+
+    /**
+     * @return The name to show, such as "Mountain View, California, US"
+     */
+    public String getDisplayName() {
+        return TextUtils.isEmpty(mAdmin1) ? mName + ", " + mCountry
+                : mName + ", " + mAdmin1 + ", " + mCountry;
+    }
+
+    /**
+     * @return The location to ask the weather server for, the name and the country
+     */
+    public String getLocationQuery() {
+        return mName + "," + mCountry;
+    }
+
+    /**
+     * @return The distance between two positions along the surface of the earth, in kilometers
+     */
+    public static double getDistanceKm(double latitude1, double longitude1, double latitude2,
+                                       double longitude2) {
+        // Haversine formula
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double h = sinHalfDeltaPhi * sinHalfDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+}
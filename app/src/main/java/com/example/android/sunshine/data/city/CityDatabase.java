@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.city;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Read only database of about 200k cities, bundled with the app and searched as the user types
+ * a location.
+ * <p>
+ * The database is built by {@code tools/build_city_database.py} and shipped in the assets. It is
+ * copied out once, as SQLite can't read it from inside the APK, and then only the pages a search
+ * touches are read, the cities are never all loaded. A search looks up cities whose name starts
+ * with the query on an index, most populous first. Short prefixes match too many cities to sort
+ * at every keystroke, so their most populous cities are worked out in advance and stored in
+ * their own table.
+ * <p>
+ * Next to it is a {@link CityIndex}, which finds the city nearest to a position.
+ */
+public class CityDatabase {
+    private static final String LOG_TAG = CityDatabase.class.getSimpleName();
+
+    private static final String ASSET_NAME = "cities.db";
+    private static final String INDEX_ASSET_NAME = "cities.kdtree";
+    // Must match build_city_database.py. The copies are replaced when the bundled ones are newer.
+    private static final int DATABASE_VERSION = 2;
+    // Prefixes up to this long are answered from the top_cities table
+    private static final int TOP_PREFIX_LENGTH = 3;
+
+    private static final String CITY_COLUMNS =
+            "id, name, admin1, country, latitude, longitude, population";
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NOT_ALPHANUMERIC = Pattern.compile("[^0-9a-z]+");
+
+    private final Context mContext;
+    // Opened by the first search, guarded by this
+    private SQLiteDatabase mDatabase;
+    // Opened with the database, null if it isn't bundled
+    private CityIndex mIndex;
+    // Set if the database isn't bundled, in which case every search finds nothing
+    private boolean mUnavailable;
+
+    public CityDatabase(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Finds the cities whose name starts with the query, ignoring case and accents.
+     *
+     * @param query What the user has typed so far
+     * @param limit Most cities to return
+     * @return The cities found, most populous first
+     */
+    @WorkerThread
+    public List<City> search(String query, int limit) {
+        String prefix = getSearchKey(query);
+        SQLiteDatabase database = open();
+        if (prefix.isEmpty() || database == null) return Collections.emptyList();
+
+        long start = System.nanoTime();
+        List<City> cities;
+        if (prefix.length() <= TOP_PREFIX_LENGTH) {
+            cities = searchTopCities(database, prefix, limit);
+        } else {
+            // Every key starting with the prefix sorts between it and the prefix with its last
+            // character incremented
+            String end = prefix.substring(0, prefix.length() - 1)
+                    + (char) (prefix.charAt(prefix.length() - 1) + 1);
+            cities = readCities(database.rawQuery("SELECT " + CITY_COLUMNS + " FROM cities "
+                            + "WHERE search_key >= ? AND search_key < ? "
+                            + "ORDER BY population DESC LIMIT " + limit,
+                    new String[]{prefix, end}));
+        }
+        Log.d(LOG_TAG, String.format(Locale.US, "Found %d cities for \"%s\" in %.2f ms",
+                cities.size(), prefix, (System.nanoTime() - start) / 1e6));
+        return cities;
+    }
+
+    /**
+     * Opens the database if it isn't open yet.
+     *
+     * @return Whether the database is bundled with the app. Builds made without running
+     * {@code tools/build_city_database.py} don't have one, and find no cities.
+     */
+    @WorkerThread
+    public boolean isAvailable() {
+        return open() != null;
+    }
+
+    /**
+     * Finds the city nearest to a position.
+     *
+     * @return The city, or null if there is no city database
+     */
+    @WorkerThread
+    public City findNearest(double latitude, double longitude) {
+        SQLiteDatabase database = open();
+        CityIndex index = getIndex();
+        if (database == null || index == null) return null;
+
+        long start = System.nanoTime();
+        long id = index.findNearest(latitude, longitude);
+        List<City> cities = readCities(database.rawQuery("SELECT " + CITY_COLUMNS
+                + " FROM cities WHERE id = " + id, null));
+        Log.d(LOG_TAG, String.format(Locale.US, "Found the nearest city in %.2f ms",
+                (System.nanoTime() - start) / 1e6));
+        return cities.isEmpty() ? null : cities.get(0);
+    }
+
+    private synchronized CityIndex getIndex() {
+        return mIndex;
+    }
+
+    private List<City> searchTopCities(SQLiteDatabase database, String prefix, int limit) {
+        String cityIds;
+        Cursor cursor = database.rawQuery("SELECT city_ids FROM top_cities WHERE prefix = ?",
+                new String[]{prefix});
+        try {
+            if (!cursor.moveToFirst()) return Collections.emptyList();
+            cityIds = cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+        // The ids are numbers written by the build script, so they can go into the query as is
+        return readCities(database.rawQuery("SELECT " + CITY_COLUMNS + " FROM cities "
+                + "WHERE id IN (" + cityIds + ") ORDER BY population DESC LIMIT " + limit, null));
+    }
+
+    private static List<City> readCities(Cursor cursor) {
+        try {
+            List<City> cities = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                cities.add(new City(cursor.getLong(0), cursor.getString(1),
+                        cursor.isNull(2) ? null : cursor.getString(2), cursor.getString(3),
+                        cursor.getDouble(4), cursor.getDouble(5), cursor.getLong(6)));
+            }
+            return cities;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The name in lower case, without accents and with anything but letters and digits
+     * turned into a space, as the database's search keys are
+     */
+    static String getSearchKey(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFKD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return NOT_ALPHANUMERIC.matcher(stripped.toLowerCase(Locale.US)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Opens the copy of the bundled database, and of its index, copying them out first if there
+     * is no copy yet or the bundled ones are newer.
+     *
+     * @return The database, or null if it isn't bundled
+     */
+    private synchronized SQLiteDatabase open() {
+        if (mDatabase != null || mUnavailable) return mDatabase;
+        File file = mContext.getDatabasePath(ASSET_NAME);
+        try {
+            if (file.exists()) {
+                SQLiteDatabase database = openCopy(file);
+                if (database.getVersion() == DATABASE_VERSION) {
+                    mDatabase = database;
+                    openIndex(false);
+                    return database;
+                }
+                database.close();
+            }
+            copyAsset(ASSET_NAME, file);
+            mDatabase = openCopy(file);
+            openIndex(true);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "No city database, location search is off", e);
+            mUnavailable = true;
+        }
+        return mDatabase;
+    }
+
+    /**
+     * Maps the copy of the bundled index, which is replaced whenever the database is, or when it
+     * is older than the database.
+     */
+    private void openIndex(boolean replace) {
+        File file = mContext.getDatabasePath(INDEX_ASSET_NAME);
+        try {
+            if (!replace && file.exists()) {
+                try {
+                    mIndex = CityIndex.open(file, DATABASE_VERSION);
+                    return;
+                } catch (IOException e) {
+                    Log.d(LOG_TAG, "Replacing the city index", e);
+                }
+            }
+            copyAsset(INDEX_ASSET_NAME, file);
+            mIndex = CityIndex.open(file, DATABASE_VERSION);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "No city index, positions can't be matched to cities", e);
+        }
+    }
+
+    private static SQLiteDatabase openCopy(File file) {
+        return SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+    }
+
+    /**
+     * Copies a bundled file out, through a temporary file so that a copy cut short is never
+     * opened.
+     */
+    private void copyAsset(String assetName, File file) throws IOException {
+        long start = System.nanoTime();
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (InputStream in = mContext.getAssets().open(assetName);
+             OutputStream out = new FileOutputStream(temporary)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+        if (!temporary.renameTo(file)) throw new IOException("Couldn't rename " + temporary);
+        Log.d(LOG_TAG, String.format(Locale.US, "Copied %s out in %.0f ms", assetName,
+                (System.nanoTime() - start) / 1e6));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.city;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Spatial index of the cities in the {@link CityDatabase}, which finds the city nearest to a
+ * position in O(log n).
+ * <p>
+ * It is a k-d tree built by {@code tools/build_city_database.py} and memory mapped, so opening it
+ * reads nothing and a lookup only pages in the few records on its path. Positions are points on
+ * the unit sphere, where the straight line distance between two points orders them the same as
+ * the distance along the surface, without special cases at the poles or the date line. The tree
+ * is laid out implicitly: the node for a range of records is the one in its middle, split on
+ * axis depth % 3, with its left subtree before it and its right subtree after it.
+ */
+final class CityIndex {
+
+    private static final int MAGIC = 0x53434b44;
+    private static final int HEADER_SIZE = 12;
+    // x, y and z as floats, then the city's id
+    private static final int RECORD_SIZE = 16;
+    private static final int DIMENSIONS = 3;
+
+    private final ByteBuffer mTree;
+    private final int mCount;
+
+    private CityIndex(ByteBuffer tree, int count) {
+        mTree = tree;
+        mCount = count;
+    }
+
+    /**
+     * Maps an index file.
+     *
+     * @param version Version the file must have
+     * @throws IOException If it can't be read or isn't an index of that version
+     */
+    static CityIndex open(File file, int version) throws IOException {
+        ByteBuffer tree;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            // The mapping stays valid once the file is closed
+            tree = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (tree.capacity() < HEADER_SIZE || tree.getInt(0) != MAGIC
+                || tree.getInt(4) != version) {
+            throw new IOException(file + " isn't a city index of version " + version);
+        }
+        int count = tree.getInt(8);
+        if (tree.capacity() < HEADER_SIZE + (long) count * RECORD_SIZE) {
+            throw new IOException(file + " is cut short");
+        }
+        return new CityIndex(tree, count);
+    }
+
+    /**
+     * Finds the city nearest to a position.
+     *
+     * @return Its id, or -1 if the index is empty
+     */
+    long findNearest(double latitude, double longitude) {
+        if (mCount == 0) return -1;
+        Search search = new Search(toUnitVector(latitude, longitude));
+        search(search, 0, mCount, 0);
+        return mTree.getInt(offsetOf(search.mNearest, DIMENSIONS));
+    }
+
+    private void search(Search search, int lo, int hi, int depth) {
+        // Subtrees are split on axes cycling through x, y and z
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            float dx = mTree.getFloat(offsetOf(mid, 0)) - search.mTarget[0];
+            float dy = mTree.getFloat(offsetOf(mid, 1)) - search.mTarget[1];
+            float dz = mTree.getFloat(offsetOf(mid, 2)) - search.mTarget[2];
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared < search.mNearestDistanceSquared) {
+                search.mNearestDistanceSquared = distanceSquared;
+                search.mNearest = mid;
+            }
+
+            int axis = depth % DIMENSIONS;
+            float split = search.mTarget[axis] - mTree.getFloat(offsetOf(mid, axis));
+            depth++;
+            // The side the target is on first, then the other side if the nearest city found so
+            // far is further away than the splitting plane
+            if (split < 0) {
+                search(search, lo, mid, depth);
+                if (split * split >= search.mNearestDistanceSquared) return;
+                lo = mid + 1;
+            } else {
+                search(search, mid + 1, hi, depth);
+                if (split * split >= search.mNearestDistanceSquared) return;
+                hi = mid;
+            }
+        }
+    }
+
+    private static int offsetOf(int record, int field) {
+        return HEADER_SIZE + record * RECORD_SIZE + field * 4;
+    }
+
+    /**
+     * @return The position as a point on the unit sphere, the same as the build script's
+     * unit_vector
+     */
+    private static float[] toUnitVector(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        return new float[]{
+                (float) (Math.cos(phi) * Math.cos(lambda)),
+                (float) (Math.cos(phi) * Math.sin(lambda)),
+                (float) Math.sin(phi)};
+    }
+
+    /**
+     * State of a lookup, the target and the nearest record found so far
+     */
+    private static final class Search {
+        final float[] mTarget;
+        int mNearest = -1;
+        float mNearestDistanceSquared = Float.MAX_VALUE;
+
+        Search(float[] target) {
+            mTarget = target;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+/**
+ * {@link Dao} for the weather alert rules and the alerts they have fired in the
+ * {@link SunshineDatabase}
+ */
+@Dao
+public interface AlertDao {
+
+    /**
+     * @return {@link LiveData} list of every rule, in the order they were added
+     */
+    @Query("SELECT * FROM alert_rules ORDER BY id ASC")
+    LiveData<List<AlertRuleEntry>> getAlertRules();
+
+    /**
+     * Gets every rule, once. Used off of the main thread to evaluate them after a sync.
+     *
+     * @return List of every rule
+     */
+    @Query("SELECT * FROM alert_rules")
+    List<AlertRuleEntry> getAlertRulesNow();
+
+    @Insert
+    long insertAlertRule(AlertRuleEntry alertRule);
+
+    /**
+     * Deletes a rule and the alerts it fired
+     *
+     * @param id Id of the rule
+     */
+    @Query("DELETE FROM alert_rules WHERE id = :id")
+    void deleteAlertRule(int id);
+
+    @Query("DELETE FROM fired_alerts WHERE ruleId = :ruleId")
+    void deleteFiredAlerts(int ruleId);
+
+    /**
+     * Gets the alerts fired for the given day onwards
+     *
+     * @param date Normalized UTC date in milliseconds of the first day (inclusive)
+     * @return List of the alerts fired for those days
+     */
+    @Query("SELECT * FROM fired_alerts WHERE date >= :date")
+    List<FiredAlertEntry> getFiredAlertsSince(long date);
+
+    /**
+     * Records fired alerts. Alerts which were already recorded keep the time they first fired.
+     *
+     * @param firedAlerts The alerts to record
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertFiredAlerts(List<FiredAlertEntry> firedAlerts);
+
+    /**
+     * Forgets the alerts fired for days which have passed
+     *
+     * @param date Normalized UTC date in milliseconds of today (exclusive)
+     */
+    @Query("DELETE FROM fired_alerts WHERE date < :date")
+    void deleteFiredAlertsBefore(long date);
+
+    /**
+     * Forgets every fired alert, such as when the user moves to another location
+     */
+    @Query("DELETE FROM fired_alerts")
+    void deleteAllFiredAlerts();
+}
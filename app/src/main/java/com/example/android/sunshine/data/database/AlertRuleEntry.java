@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * Defines the schema of a table in {@link android.arch.persistence.room.Room} for a weather alert
+ * set up by the user, such as "notify if tomorrow's min is below 0°C". The condition is compiled
+ * by {@link com.example.android.sunshine.data.alert.AlertRuleCompiler}.
+ */
+@Entity(tableName = "alert_rules")
+public class AlertRuleEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+    // Shown in the notification
+    private String name;
+    // Condition over the fields of a day's weather, such as "min < 0"
+    private String condition;
+    // Days the rule looks at, counted from today, both inclusive. 1 and 1 is tomorrow.
+    private int firstDay;
+    private int lastDay;
+
+    @Ignore
+    public AlertRuleEntry(String name, String condition, int firstDay, int lastDay) {
+        this.name = name;
+        this.condition = condition;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+    }
+
+    // Constructor used by Room to create AlertRuleEntries
+    public AlertRuleEntry(int id, String name, String condition, int firstDay, int lastDay) {
+        this.id = id;
+        this.name = name;
+        this.condition = condition;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    public int getLastDay() {
+        return lastDay;
+    }
+}
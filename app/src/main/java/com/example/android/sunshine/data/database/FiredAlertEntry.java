@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+
+/**
+ * Defines the schema of a table in {@link android.arch.persistence.room.Room} for an alert which
+ * has been notified. A rule only notifies once for each day it matches, however many syncs it
+ * matches in.
+ */
+@Entity(tableName = "fired_alerts", primaryKeys = {"ruleId", "date"})
+public class FiredAlertEntry {
+
+    private int ruleId;
+    // Normalized UTC date of the day which matched, in milliseconds
+    private long date;
+    // Time in milliseconds at which the alert was notified
+    private long firedAt;
+
+    // Constructor used by Room and WeatherAlertEngine to create FiredAlertEntries
+    public FiredAlertEntry(int ruleId, long date, long firedAt) {
+        this.ruleId = ruleId;
+        this.date = date;
+        this.firedAt = firedAt;
+    }
+
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public long getFiredAt() {
+        return firedAt;
+    }
+}
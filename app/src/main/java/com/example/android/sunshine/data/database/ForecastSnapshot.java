@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A compact binary copy of the last forecast list shown in
+ * {@link com.example.android.sunshine.ui.list.MainActivity}.
+ * <p>
+ * It is written after each successful sync and read when the app starts, so that the list can be
+ * shown on the first frame while the {@link SunshineDatabase} is still being opened. The file is
+ * small enough to be memory-mapped and decoded on the main thread.
+ * <p>
+ * The format is a header (magic, version, row count) followed by fixed-width rows of id, weather
+ * icon id, normalized date, min and max temperature.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final int MAGIC = 0x53554E53; // "SUNS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4;
+    private static final int ROW_BYTES = 4 + 4 + 8 + 4 + 4;
+
+    private final File mFile;
+
+    public ForecastSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the snapshot, skipping any days before the given date.
+     *
+     * @param date The date from which forecasts are still relevant, inclusive
+     * @return The forecasts stored in the snapshot, or null if there is no usable snapshot
+     */
+    @Nullable
+    public List<ListWeatherEntry> read(Date date) {
+        if (!mFile.exists()) return null;
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Log.w(LOG_TAG, "Ignoring snapshot with an unknown format");
+                return null;
+            }
+            int count = buffer.getInt();
+            if (buffer.remaining() < count * ROW_BYTES) {
+                Log.w(LOG_TAG, "Ignoring truncated snapshot");
+                return null;
+            }
+
+            List<ListWeatherEntry> forecast = new ArrayList<>(count);
+            long fromMillis = date.getTime();
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getInt();
+                int weatherIconId = buffer.getInt();
+                long dateMillis = buffer.getLong();
+                float min = buffer.getFloat();
+                float max = buffer.getFloat();
+                if (dateMillis >= fromMillis) {
+                    forecast.add(new ListWeatherEntry(id, weatherIconId, new Date(dateMillis),
+                            min, max));
+                }
+            }
+            return forecast;
+        } catch (IOException | BufferUnderflowException e) {
+            Log.w(LOG_TAG, "Could not read the forecast snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given forecasts. The new snapshot is written to a temporary
+     * file first and then renamed, so that a reader never sees a partially written file.
+     *
+     * @param forecast The forecasts to store
+     */
+    @WorkerThread
+    public void write(List<ListWeatherEntry> forecast) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + forecast.size() * ROW_BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(forecast.size());
+        for (ListWeatherEntry weatherEntry : forecast) {
+            buffer.putInt(weatherEntry.getId())
+                    .putInt(weatherEntry.getWeatherIconId())
+                    .putLong(weatherEntry.getDate().getTime())
+                    .putFloat((float) weatherEntry.getMin())
+                    .putFloat((float) weatherEntry.getMax());
+        }
+
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write the forecast snapshot", e);
+            return;
+        }
+        if (!tempFile.renameTo(mFile)) {
+            Log.w(LOG_TAG, "Could not replace the forecast snapshot");
+        }
+    }
+}
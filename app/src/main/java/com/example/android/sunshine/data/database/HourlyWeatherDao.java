@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Transaction;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * {@link Dao} which provides an api for the three hour forecast slots stored in the
+ * {@link SunshineDatabase}. All of the queries are ranges over the indexed date column.
+ */
+@Dao
+public abstract class HourlyWeatherDao {
+
+    /**
+     * Selects the forecast slots starting between two dates, inclusive. The LiveData will be kept
+     * in sync with the database.
+     *
+     * @param startDate The earliest slot start to select
+     * @param endDate   The latest slot start to select
+     * @return {@link LiveData} list of the forecast slots, ordered by date
+     */
+    @Query("SELECT * FROM hourly_weather WHERE date BETWEEN :startDate AND :endDate ORDER BY date ASC")
+    public abstract LiveData<List<HourlyWeatherEntry>> getHourlyWeatherBetweenDates(Date startDate, Date endDate);
+
+    /**
+     * Counts the forecast slots starting on or after a date.
+     *
+     * @param date The date to count from (inclusive)
+     * @return Number of future forecast slots stored in the database
+     */
+    @Query("SELECT COUNT(id) FROM hourly_weather WHERE date >= :date")
+    public abstract int countAllFutureHourlyWeather(Date date);
+
+    /**
+     * Inserts forecast slots in a single transaction. Slots that already exist for the same date
+     * are replaced, so fetching overlapping ranges doesn't grow the table.
+     *
+     * @param hourlyWeather The forecast slots to insert
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void bulkInsert(HourlyWeatherEntry... hourlyWeather);
+
+    /**
+     * Deletes the forecast slots which started before the given date.
+     *
+     * @param date The date to delete all prior slots from (exclusive)
+     */
+    @Query("DELETE FROM hourly_weather WHERE date < :date")
+    public abstract void deleteOldHourlyWeather(Date date);
+
+    /**
+     * Deletes every slot, such as when the user moves to another location
+     */
+    @Query("DELETE FROM hourly_weather")
+    public abstract void deleteAllHourlyWeather();
+
+    /**
+     * Deletes the forecast slots which started before the given date and inserts the new ones in
+     * one transaction, so observers never see the table without the current slots in between.
+     *
+     * @param date          The date to delete all prior slots from (exclusive)
+     * @param hourlyWeather The forecast slots to insert
+     */
+    @Transaction
+    public void replaceHourlyWeather(Date date, HourlyWeatherEntry... hourlyWeather) {
+        deleteOldHourlyWeather(date);
+        bulkInsert(hourlyWeather);
+    }
+}
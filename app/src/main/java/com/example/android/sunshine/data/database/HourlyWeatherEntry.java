@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+import android.arch.persistence.room.Room;
+
+import java.util.Date;
+
+/**
+ * Defines the schema of a table in {@link Room} for a single three hour slot of the higher
+ * resolution forecast. The date is the start of the slot and is used as a unique {@link Index},
+ * both to replace slots that are fetched again and to make range queries over time fast.
+ */
+@Entity(tableName = "hourly_weather", indices = {@Index(value = {"date"}, unique = true)})
+public class HourlyWeatherEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+    private int weatherIconId;
+    private Date date;
+    private double temperature;
+    private double humidity;
+    private double pressure;
+    private double wind;
+    private double degrees;
+
+    /**
+     * This constructor is used by OpenWeatherJsonParser. When the network fetch has JSON data, it
+     * converts this data to HourlyWeatherEntry objects using this constructor.
+     * @param weatherIconId Image id for weather
+     * @param date Start of the forecast slot
+     * @param temperature Temperature
+     * @param humidity Humidity
+     * @param pressure Barometric pressure
+     * @param wind Wind speed
+     * @param degrees Wind direction
+     */
+    @Ignore
+    public HourlyWeatherEntry(int weatherIconId, Date date, double temperature, double humidity,
+                              double pressure, double wind, double degrees) {
+        this.weatherIconId = weatherIconId;
+        this.date = date;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.wind = wind;
+        this.degrees = degrees;
+    }
+
+    // Constructor used by Room to create HourlyWeatherEntries
+    public HourlyWeatherEntry(int id, int weatherIconId, Date date, double temperature,
+                              double humidity, double pressure, double wind, double degrees) {
+        this.id = id;
+        this.weatherIconId = weatherIconId;
+        this.date = date;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.wind = wind;
+        this.degrees = degrees;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWeatherIconId() {
+        return weatherIconId;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public double getHumidity() {
+        return humidity;
+    }
+
+    public double getPressure() {
+        return pressure;
+    }
+
+    public double getWind() {
+        return wind;
+    }
+
+    public double getDegrees() {
+        return degrees;
+    }
+}
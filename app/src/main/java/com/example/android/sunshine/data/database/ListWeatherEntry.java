@@ -58,4 +58,13 @@ public class ListWeatherEntry {
     public double getMax() {
         return max;
     }
+
+    /**
+     * @return Whether the other entry holds the same weather for the same day. The id isn't
+     * compared, as a row gets a new one every time a sync replaces it.
+     */
+    public boolean hasSameContent(ListWeatherEntry other) {
+        return date.equals(other.date) && weatherIconId == other.weatherIconId
+                && min == other.min && max == other.max;
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Daily forecasts packed into parallel primitive arrays, one array per column.
+ * <p>
+ * A list of {@link ListWeatherEntry} costs an object, a {@link java.util.Date} and a list slot
+ * per row, roughly 70 bytes before any of the weather columns beyond min and max. Here every row
+ * of the full forecast costs 30 bytes (an int day, a short icon id and six floats) and there are
+ * only nine objects no matter how many rows there are. Adapters and charts read the columns
+ * through the position based getters, without a per-row object.
+ */
+public final class PackedForecast {
+
+    /**
+     * The numeric columns which can be read through {@link #getValue(Field, int)}, for charts
+     * that let the user choose what to plot.
+     */
+    public enum Field {
+        MIN, MAX, HUMIDITY, PRESSURE, WIND, DEGREES
+    }
+
+    // Size in bytes of a single row across all of the columns
+    private static final int ROW_BYTES = 4 + 2 + 6 * 4;
+
+    private final int mSize;
+    private final int[] mEpochDay;
+    private final short[] mWeatherIconId;
+    private final float[] mMin;
+    private final float[] mMax;
+    private final float[] mHumidity;
+    private final float[] mPressure;
+    private final float[] mWind;
+    private final float[] mDegrees;
+
+    private PackedForecast(int size) {
+        mSize = size;
+        mEpochDay = new int[size];
+        mWeatherIconId = new short[size];
+        mMin = new float[size];
+        mMax = new float[size];
+        mHumidity = new float[size];
+        mPressure = new float[size];
+        mWind = new float[size];
+        mDegrees = new float[size];
+    }
+
+    /**
+     * Reads every row of a cursor over the weather table straight into the columns, through
+     * {@link WeatherCursorReader}. The cursor is not closed.
+     *
+     * @param cursor A cursor over all of the columns of the weather table, ordered by date
+     * @return The packed forecast
+     */
+    @WorkerThread
+    public static PackedForecast fromCursor(Cursor cursor) {
+        PackedForecast forecast = new PackedForecast(cursor.getCount());
+        WeatherCursorReader.read(cursor, forecast::setRow);
+        return forecast;
+    }
+
+    private void setRow(int position, long dateMillis, int weatherIconId, float min, float max,
+                        float humidity, float pressure, float wind, float degrees) {
+        mEpochDay[position] = (int) (dateMillis / SunshineDateUtils.DAY_IN_MILLIS);
+        mWeatherIconId[position] = (short) weatherIconId;
+        mMin[position] = min;
+        mMax[position] = max;
+        mHumidity[position] = humidity;
+        mPressure[position] = pressure;
+        mWind[position] = wind;
+        mDegrees[position] = degrees;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return Number of days between the epoch and the normalized UTC date of the row
+     */
+    public int getEpochDay(int position) {
+        return mEpochDay[position];
+    }
+
+    /**
+     * @return The normalized UTC date of the row, in milliseconds, as stored in the database
+     */
+    public long getDateMillis(int position) {
+        return mEpochDay[position] * SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    public int getWeatherIconId(int position) {
+        return mWeatherIconId[position];
+    }
+
+    public float getMin(int position) {
+        return mMin[position];
+    }
+
+    public float getMax(int position) {
+        return mMax[position];
+    }
+
+    public float getHumidity(int position) {
+        return mHumidity[position];
+    }
+
+    public float getPressure(int position) {
+        return mPressure[position];
+    }
+
+    public float getWind(int position) {
+        return mWind[position];
+    }
+
+    public float getDegrees(int position) {
+        return mDegrees[position];
+    }
+
+    public float getValue(Field field, int position) {
+        switch (field) {
+            case MIN:
+                return mMin[position];
+            case MAX:
+                return mMax[position];
+            case HUMIDITY:
+                return mHumidity[position];
+            case PRESSURE:
+                return mPressure[position];
+            case WIND:
+                return mWind[position];
+            case DEGREES:
+                return mDegrees[position];
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    /**
+     * @return Approximate number of bytes held by the columns, for comparing against the object
+     * representation
+     */
+    public long getSizeInBytes() {
+        return (long) mSize * ROW_BYTES;
+    }
+}
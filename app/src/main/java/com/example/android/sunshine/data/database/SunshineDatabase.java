@@ -16,42 +16,155 @@
 
 package com.example.android.sunshine.data.database;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 /**
  * {@link SunshineDatabase} database for the application including a table for {@link WeatherEntry}
- * with the DAO {@link WeatherDao}.
+ * with the DAO {@link WeatherDao} and a table for {@link HourlyWeatherEntry} with the DAO
+ * {@link HourlyWeatherDao}. The weekly and monthly {@link WeatherSummaryEntry} and
+ * {@link WindRoseEntry} tables are derived from the weather table by {@link WeatherAggregator}.
+ * Fetches which haven't succeeded yet are queued in a table for {@link SyncRequestEntry} with
+ * the DAO {@link SyncRequestDao}. The user's {@link AlertRuleEntry} weather alerts and the
+ * {@link FiredAlertEntry} alerts they have fired have the DAO {@link AlertDao}.
  */
 
 // List of the entry classes and associated TypeConverters
-@Database(entities = {WeatherEntry.class}, version = 1)
+@Database(entities = {WeatherEntry.class, HourlyWeatherEntry.class, WeatherSummaryEntry.class,
+        WindRoseEntry.class, SyncRequestEntry.class, AlertRuleEntry.class,
+        FiredAlertEntry.class}, version = 5)
 @TypeConverters(DateConverter.class)
 public abstract class SunshineDatabase extends RoomDatabase {
 
     private static final String LOG_TAG = SunshineDatabase.class.getSimpleName();
     private static final String DATABASE_NAME = "weather";
 
+    // Version 2 adds the table for the three hour forecast
+    private static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `hourly_weather` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`weatherIconId` INTEGER NOT NULL, `date` INTEGER, "
+                    + "`temperature` REAL NOT NULL, `humidity` REAL NOT NULL, "
+                    + "`pressure` REAL NOT NULL, `wind` REAL NOT NULL, `degrees` REAL NOT NULL)");
+            database.execSQL("CREATE UNIQUE INDEX `index_hourly_weather_date` "
+                    + "ON `hourly_weather` (`date`)");
+        }
+    };
+
+    // Version 3 adds the weekly and monthly summary tables, filled in from the stored weather
+    private static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_summary` ("
+                    + "`period` INTEGER NOT NULL, `periodStart` INTEGER NOT NULL, "
+                    + "`dayCount` INTEGER NOT NULL, `sumMin` REAL NOT NULL, "
+                    + "`sumMax` REAL NOT NULL, `minTemp` REAL NOT NULL, `maxTemp` REAL NOT NULL, "
+                    + "`rainyDays` INTEGER NOT NULL, PRIMARY KEY(`period`, `periodStart`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `wind_rose` ("
+                    + "`period` INTEGER NOT NULL, `periodStart` INTEGER NOT NULL, "
+                    + "`sector` INTEGER NOT NULL, `dayCount` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`period`, `periodStart`, `sector`))");
+            // From here on WeatherAggregator only applies changes, so start from the stored days
+            backfillSummaries(database);
+        }
+    };
+
+    // Version 4 adds the queue of pending fetches
+    private static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_requests` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `location` TEXT, "
+                    + "`attempts` INTEGER NOT NULL, `nextAttemptAt` INTEGER NOT NULL, "
+                    + "`requestedAt` INTEGER NOT NULL)");
+            database.execSQL("CREATE UNIQUE INDEX `index_sync_requests_location` "
+                    + "ON `sync_requests` (`location`)");
+        }
+    };
+
+    // Version 5 adds the weather alert rules and the alerts they have fired
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `alert_rules` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, "
+                    + "`condition` TEXT, `firstDay` INTEGER NOT NULL, "
+                    + "`lastDay` INTEGER NOT NULL)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `fired_alerts` ("
+                    + "`ruleId` INTEGER NOT NULL, `date` INTEGER NOT NULL, "
+                    + "`firedAt` INTEGER NOT NULL, PRIMARY KEY(`ruleId`, `date`))");
+        }
+    };
+
+    // First day of the week (Monday) and month of the date column, matching
+    // WeatherAggregator#getPeriodStart. The epoch was a Thursday.
+    private static final String WEEK_START_SQL =
+            "(`date` - ((`date` / 86400000 + 3) % 7) * 86400000)";
+    private static final String MONTH_START_SQL =
+            "(strftime('%s', `date` / 1000, 'unixepoch', 'start of month') * 1000)";
+
+    /**
+     * Fills the empty summary tables in from the stored weather, as the migration to version 3
+     * does
+     */
+    @VisibleForTesting
+    static void backfillSummaries(SupportSQLiteDatabase database) {
+        backfillSummaries(database, WeatherSummaryEntry.PERIOD_WEEK, WEEK_START_SQL);
+        backfillSummaries(database, WeatherSummaryEntry.PERIOD_MONTH, MONTH_START_SQL);
+    }
+
+    private static void backfillSummaries(SupportSQLiteDatabase database, int period,
+                                          String periodStartSql) {
+        database.execSQL("INSERT INTO `weather_summary` SELECT " + period + ", "
+                + periodStartSql + " AS `start`, COUNT(*), SUM(`min`), SUM(`max`), "
+                + "MIN(`min`), MAX(`max`), "
+                + "SUM(CASE WHEN `weatherIconId` BETWEEN 200 AND 599 THEN 1 ELSE 0 END) "
+                + "FROM `weather` GROUP BY `start`");
+        // Same sectors as WindRoseEntry#sectorForDegrees
+        database.execSQL("INSERT INTO `wind_rose` SELECT " + period + ", "
+                + periodStartSql + " AS `start`, "
+                + "CAST((`degrees` + 22.5) / 45 AS INTEGER) % 8 AS `sector`, COUNT(*) "
+                + "FROM `weather` GROUP BY `start`, `sector`");
+    }
+
     // For Singleton instantiation
     private static final Object LOCK = new Object();
-    private static SunshineDatabase sInstance;
+    private static volatile SunshineDatabase sInstance;
 
     public static SunshineDatabase getInstance(Context context) {
-        Log.d(LOG_TAG, "Getting the database");
-        if (sInstance == null) {
+        SunshineDatabase instance = sInstance;
+        if (instance == null) {
             synchronized (LOCK) {
-                sInstance = Room.databaseBuilder(context.getApplicationContext(),
-                        SunshineDatabase.class, SunshineDatabase.DATABASE_NAME).build();
-                Log.d(LOG_TAG, "Made new database");
+                instance = sInstance;
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(),
+                            SunshineDatabase.class, SunshineDatabase.DATABASE_NAME)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4,
+                                    MIGRATION_4_5)
+                            .build();
+                    sInstance = instance;
+                    Log.d(LOG_TAG, "Made new database");
+                }
             }
         }
-        return sInstance;
+        return instance;
     }
 
     // The associated DAOs for the database
     public abstract WeatherDao weatherDao();
+
+    public abstract HourlyWeatherDao hourlyWeatherDao();
+
+    public abstract SyncRequestDao syncRequestDao();
+
+    public abstract AlertDao alertDao();
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+/**
+ * {@link Dao} for the queue of pending weather fetches in the {@link SunshineDatabase}
+ */
+@Dao
+public interface SyncRequestDao {
+
+    /**
+     * Adds a request to the queue, unless one is already pending for the same location. The
+     * pending one keeps its backoff.
+     *
+     * @param syncRequest The request to add
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertIfAbsent(SyncRequestEntry syncRequest);
+
+    /**
+     * Gets every request whose backoff has run out, oldest first
+     *
+     * @param now Current time in milliseconds
+     * @return List of the requests which can be attempted now
+     */
+    @Query("SELECT * FROM sync_requests WHERE nextAttemptAt <= :now ORDER BY requestedAt ASC")
+    List<SyncRequestEntry> getDueSyncRequests(long now);
+
+    /**
+     * @return The earliest time in milliseconds at which a pending request can be attempted, or
+     * null if the queue is empty
+     */
+    @Query("SELECT MIN(nextAttemptAt) FROM sync_requests")
+    Long getNextAttemptAt();
+
+    /**
+     * Records a failed attempt
+     *
+     * @param location      Location of the request
+     * @param attempts      Number of attempts which have failed so far
+     * @param nextAttemptAt Time in milliseconds before which it shouldn't be attempted again
+     */
+    @Query("UPDATE sync_requests SET attempts = :attempts, nextAttemptAt = :nextAttemptAt "
+            + "WHERE location = :location")
+    void updateBackoff(String location, int attempts, long nextAttemptAt);
+
+    /**
+     * Removes a request once its fetch has succeeded
+     *
+     * @param location Location of the request
+     */
+    @Query("DELETE FROM sync_requests WHERE location = :location")
+    void delete(String location);
+}
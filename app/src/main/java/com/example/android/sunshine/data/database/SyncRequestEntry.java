@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * Defines the schema of a table in {@link android.arch.persistence.room.Room} for a fetch of the
+ * weather which hasn't succeeded yet. There is at most one per location, enforced by a unique
+ * {@link Index}, so asking for the same location again while a fetch is pending does nothing.
+ */
+@Entity(tableName = "sync_requests", indices = {@Index(value = {"location"}, unique = true)})
+public class SyncRequestEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+    private String location;
+    // Number of attempts which have failed so far
+    private int attempts;
+    // Time in milliseconds before which the fetch shouldn't be attempted again
+    private long nextAttemptAt;
+    // Time in milliseconds at which the fetch was first asked for
+    private long requestedAt;
+
+    /**
+     * Creates a request which can be attempted straight away.
+     *
+     * @param location    Location to fetch the weather for
+     * @param requestedAt Current time in milliseconds
+     */
+    @Ignore
+    public SyncRequestEntry(String location, long requestedAt) {
+        this.location = location;
+        this.nextAttemptAt = requestedAt;
+        this.requestedAt = requestedAt;
+    }
+
+    // Constructor used by Room to create SyncRequestEntries
+    public SyncRequestEntry(int id, String location, int attempts, long nextAttemptAt,
+                            long requestedAt) {
+        this.id = id;
+        this.location = location;
+        this.attempts = attempts;
+        this.nextAttemptAt = nextAttemptAt;
+        this.requestedAt = requestedAt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public long getRequestedAt() {
+        return requestedAt;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+/**
+ * Lowest min and highest max temperature of a range of days, used by {@link WeatherAggregator}
+ * when an extreme has to be recomputed.
+ */
+public class TemperatureRange {
+
+    private final Double minTemp;
+    private final Double maxTemp;
+
+    // Constructor used by Room. Both values are null if the range has no days.
+    public TemperatureRange(Double minTemp, Double maxTemp) {
+        this.minTemp = minTemp;
+        this.maxTemp = maxTemp;
+    }
+
+    public Double getMinTemp() {
+        return minTemp;
+    }
+
+    public Double getMaxTemp() {
+        return maxTemp;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.WorkerThread;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Writes to the weather table and keeps the {@link WeatherSummaryEntry} and
+ * {@link WindRoseEntry} tables in step with it, in the same transaction.
+ * <p>
+ * Rather than recomputing the summaries, only the periods touched by a write are updated, by
+ * removing the days that were replaced or deleted and adding the new ones. Counts and sums can
+ * always be updated this way. The lowest and highest temperatures can't be when the day being
+ * removed held them, in which case they are recomputed from the days of that one period.
+ */
+public class WeatherAggregator {
+
+    private static final int[] PERIODS =
+            {WeatherSummaryEntry.PERIOD_WEEK, WeatherSummaryEntry.PERIOD_MONTH};
+
+    // Thunderstorm (2xx), drizzle (3xx) and rain (5xx) condition ids count as rainy days
+    private static final int FIRST_RAINY_WEATHER_ID = 200;
+    private static final int LAST_RAINY_WEATHER_ID = 599;
+
+    private final SunshineDatabase mDatabase;
+    private final WeatherDao mWeatherDao;
+
+    public WeatherAggregator(SunshineDatabase database) {
+        mDatabase = database;
+        mWeatherDao = database.weatherDao();
+    }
+
+    /**
+     * Inserts weather into the weather table, replacing any stored for the same dates, and
+     * updates the summaries of the periods they fall in.
+     *
+     * @param weather A list of weather forecasts to insert
+     * @return The forecasts which were new or differed from the stored ones
+     */
+    @WorkerThread
+    public List<WeatherEntry> bulkInsert(WeatherEntry... weather) {
+        if (weather.length == 0) return Collections.emptyList();
+
+        Map<Long, WeatherEntry> newWeather = new HashMap<>();
+        long firstDate = Long.MAX_VALUE;
+        long lastDate = Long.MIN_VALUE;
+        for (WeatherEntry weatherEntry : weather) {
+            long date = weatherEntry.getDate().getTime();
+            newWeather.put(date, weatherEntry);
+            firstDate = Math.min(firstDate, date);
+            lastDate = Math.max(lastDate, date);
+        }
+
+        mDatabase.beginTransaction();
+        try {
+            // Rows which are about to be replaced have to be taken out of their summaries
+            List<WeatherEntry> replaced =
+                    mWeatherDao.getWeatherBetweenDatesNow(new Date(firstDate), new Date(lastDate));
+            Set<Long> unchangedDates = new HashSet<>();
+            for (int i = replaced.size() - 1; i >= 0; i--) {
+                WeatherEntry old = replaced.get(i);
+                long date = old.getDate().getTime();
+                WeatherEntry replacement = newWeather.get(date);
+                if (replacement == null) replaced.remove(i);
+                else if (old.hasSameContent(replacement)) unchangedDates.add(date);
+            }
+            mWeatherDao.bulkInsert(weather);
+            applyChanges(replaced, Arrays.asList(weather));
+            mDatabase.setTransactionSuccessful();
+
+            List<WeatherEntry> changed = new ArrayList<>(newWeather.size() - unchangedDates.size());
+            for (WeatherEntry weatherEntry : newWeather.values()) {
+                if (!unchangedDates.contains(weatherEntry.getDate().getTime())) {
+                    changed.add(weatherEntry);
+                }
+            }
+            return changed;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes any weather data older than the given day and takes it out of the summaries
+     *
+     * @param date The date to delete all prior weather from (exclusive)
+     */
+    @WorkerThread
+    public void deleteOldWeather(Date date) {
+        mDatabase.beginTransaction();
+        try {
+            List<WeatherEntry> deleted = mWeatherDao.getWeatherBeforeNow(date);
+            if (!deleted.isEmpty()) {
+                mWeatherDao.deleteOldWeather(date);
+                applyChanges(deleted, Collections.emptyList());
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes all of the weather and its summaries, such as when the user moves to another
+     * location
+     */
+    @WorkerThread
+    public void deleteAllWeather() {
+        mDatabase.beginTransaction();
+        try {
+            mWeatherDao.deleteAllWeather();
+            mWeatherDao.deleteAllWeatherSummaries();
+            mWeatherDao.deleteAllWindRoses();
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private void applyChanges(List<WeatherEntry> removed, List<WeatherEntry> added) {
+        for (int period : PERIODS) {
+            Map<Long, Delta> deltas = new HashMap<>();
+            for (WeatherEntry weatherEntry : removed) {
+                getDelta(deltas, period, weatherEntry).remove(weatherEntry);
+            }
+            for (WeatherEntry weatherEntry : added) {
+                getDelta(deltas, period, weatherEntry).add(weatherEntry);
+            }
+            for (Delta delta : deltas.values()) {
+                applyDelta(delta);
+            }
+        }
+    }
+
+    private static Delta getDelta(Map<Long, Delta> deltas, int period, WeatherEntry weatherEntry) {
+        long periodStart = getPeriodStart(period, weatherEntry.getDate().getTime());
+        Delta delta = deltas.get(periodStart);
+        if (delta == null) {
+            delta = new Delta(period, periodStart);
+            deltas.put(periodStart, delta);
+        }
+        return delta;
+    }
+
+    private void applyDelta(Delta delta) {
+        WeatherSummaryEntry current = mWeatherDao.getWeatherSummaryNow(delta.mPeriod,
+                delta.mPeriodStart);
+        int dayCount = delta.mDayCount + (current == null ? 0 : current.getDayCount());
+        if (dayCount <= 0) {
+            // Every day of the period is gone
+            mWeatherDao.deleteWeatherSummary(delta.mPeriod, delta.mPeriodStart);
+            mWeatherDao.deleteWindRose(delta.mPeriod, delta.mPeriodStart);
+            return;
+        }
+
+        double minTemp;
+        double maxTemp;
+        if (current == null) {
+            minTemp = delta.mAddedMinTemp;
+            maxTemp = delta.mAddedMaxTemp;
+        } else if (delta.mRemovedMinTemp <= current.getMinTemp()
+                || delta.mRemovedMaxTemp >= current.getMaxTemp()) {
+            // A day holding one of the extremes is gone, only the days of this period are read
+            TemperatureRange range = mWeatherDao.getTemperatureRange(
+                    new Date(delta.mPeriodStart),
+                    new Date(getPeriodEnd(delta.mPeriod, delta.mPeriodStart)));
+            minTemp = range.getMinTemp() == null ? 0 : range.getMinTemp();
+            maxTemp = range.getMaxTemp() == null ? 0 : range.getMaxTemp();
+        } else {
+            minTemp = Math.min(current.getMinTemp(), delta.mAddedMinTemp);
+            maxTemp = Math.max(current.getMaxTemp(), delta.mAddedMaxTemp);
+        }
+
+        double sumMin = delta.mSumMin + (current == null ? 0 : current.getSumMin());
+        double sumMax = delta.mSumMax + (current == null ? 0 : current.getSumMax());
+        int rainyDays = delta.mRainyDays + (current == null ? 0 : current.getRainyDays());
+        mWeatherDao.insertWeatherSummaries(new WeatherSummaryEntry(delta.mPeriod,
+                delta.mPeriodStart, dayCount, sumMin, sumMax, minTemp, maxTemp, rainyDays));
+
+        // The wind rose is rewritten whole, it has at most one row per sector
+        int[] sectorDays = delta.mSectorDays;
+        for (WindRoseEntry windRoseEntry :
+                mWeatherDao.getWindRoseNow(delta.mPeriod, delta.mPeriodStart)) {
+            sectorDays[windRoseEntry.getSector()] += windRoseEntry.getDayCount();
+        }
+        mWeatherDao.deleteWindRose(delta.mPeriod, delta.mPeriodStart);
+        for (int sector = 0; sector < WindRoseEntry.SECTOR_COUNT; sector++) {
+            if (sectorDays[sector] > 0) {
+                mWeatherDao.insertWindRose(new WindRoseEntry(delta.mPeriod, delta.mPeriodStart,
+                        sector, sectorDays[sector]));
+            }
+        }
+    }
+
+    static boolean isRainy(int weatherIconId) {
+        return weatherIconId >= FIRST_RAINY_WEATHER_ID && weatherIconId <= LAST_RAINY_WEATHER_ID;
+    }
+
+    /**
+     * @param period     {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *                   {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @param dateMillis Normalized UTC date of a day
+     * @return Normalized UTC date of the first day of the period the day falls in. Weeks start
+     * on Monday.
+     */
+    public static long getPeriodStart(int period, long dateMillis) {
+        if (period == WeatherSummaryEntry.PERIOD_WEEK) {
+            long epochDay = dateMillis / SunshineDateUtils.DAY_IN_MILLIS;
+            // The epoch was a Thursday, three days after a Monday
+            long daysSinceMonday = ((epochDay + 3) % 7 + 7) % 7;
+            return (epochDay - daysSinceMonday) * SunshineDateUtils.DAY_IN_MILLIS;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(dateMillis);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return Normalized UTC date of the last day of the period starting at periodStart
+     */
+    private static long getPeriodEnd(int period, long periodStart) {
+        if (period == WeatherSummaryEntry.PERIOD_WEEK) {
+            return periodStart + 6 * SunshineDateUtils.DAY_IN_MILLIS;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(periodStart);
+        calendar.add(Calendar.MONTH, 1);
+        return calendar.getTimeInMillis() - SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    /**
+     * Change to the summary of one period caused by a single write
+     */
+    private static class Delta {
+        private final int mPeriod;
+        private final long mPeriodStart;
+        private final int[] mSectorDays = new int[WindRoseEntry.SECTOR_COUNT];
+        private int mDayCount;
+        private double mSumMin;
+        private double mSumMax;
+        private int mRainyDays;
+        private double mAddedMinTemp = Double.MAX_VALUE;
+        private double mAddedMaxTemp = -Double.MAX_VALUE;
+        private double mRemovedMinTemp = Double.MAX_VALUE;
+        private double mRemovedMaxTemp = -Double.MAX_VALUE;
+
+        Delta(int period, long periodStart) {
+            mPeriod = period;
+            mPeriodStart = periodStart;
+        }
+
+        void add(WeatherEntry weatherEntry) {
+            apply(weatherEntry, 1);
+            mAddedMinTemp = Math.min(mAddedMinTemp, weatherEntry.getMin());
+            mAddedMaxTemp = Math.max(mAddedMaxTemp, weatherEntry.getMax());
+        }
+
+        void remove(WeatherEntry weatherEntry) {
+            apply(weatherEntry, -1);
+            mRemovedMinTemp = Math.min(mRemovedMinTemp, weatherEntry.getMin());
+            mRemovedMaxTemp = Math.max(mRemovedMaxTemp, weatherEntry.getMax());
+        }
+
+        private void apply(WeatherEntry weatherEntry, int sign) {
+            mDayCount += sign;
+            mSumMin += sign * weatherEntry.getMin();
+            mSumMax += sign * weatherEntry.getMax();
+            if (isRainy(weatherEntry.getWeatherIconId())) mRainyDays += sign;
+            mSectorDays[WindRoseEntry.sectorForDegrees(weatherEntry.getDegrees())] += sign;
+        }
+    }
+}
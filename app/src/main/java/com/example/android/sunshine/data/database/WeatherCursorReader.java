@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Streams the rows of a {@link Cursor} over the weather table to a {@link RowVisitor}, column by
+ * column, without creating a {@link WeatherEntry} or a {@link java.util.Date} for each row.
+ * <p>
+ * Column indexes are looked up once per cursor and every value is handed over as a primitive, so
+ * reading a cursor allocates nothing per row. This is what bulk readers such as
+ * {@link PackedForecast}, charts and statistics should use instead of a list of entities.
+ */
+public final class WeatherCursorReader {
+
+    /**
+     * Receives the rows of the cursor, one call per row, in cursor order.
+     */
+    public interface RowVisitor {
+        /**
+         * @param position   Position of the row in the cursor
+         * @param dateMillis Normalized UTC date of the row, in milliseconds
+         */
+        void visitRow(int position, long dateMillis, int weatherIconId, float min, float max,
+                      float humidity, float pressure, float wind, float degrees);
+    }
+
+    private WeatherCursorReader() {
+    }
+
+    /**
+     * Reads every remaining row of the cursor into the visitor. The cursor is not closed.
+     *
+     * @param cursor  A cursor over all of the columns of the weather table
+     * @param visitor Receives each row
+     * @return The number of rows visited
+     */
+    @WorkerThread
+    public static int read(Cursor cursor, RowVisitor visitor) {
+        int weatherIconIdColumn = cursor.getColumnIndexOrThrow("weatherIconId");
+        int dateColumn = cursor.getColumnIndexOrThrow("date");
+        int minColumn = cursor.getColumnIndexOrThrow("min");
+        int maxColumn = cursor.getColumnIndexOrThrow("max");
+        int humidityColumn = cursor.getColumnIndexOrThrow("humidity");
+        int pressureColumn = cursor.getColumnIndexOrThrow("pressure");
+        int windColumn = cursor.getColumnIndexOrThrow("wind");
+        int degreesColumn = cursor.getColumnIndexOrThrow("degrees");
+
+        int position = 0;
+        while (cursor.moveToNext()) {
+            visitor.visitRow(position,
+                    cursor.getLong(dateColumn),
+                    cursor.getInt(weatherIconIdColumn),
+                    cursor.getFloat(minColumn),
+                    cursor.getFloat(maxColumn),
+                    cursor.getFloat(humidityColumn),
+                    cursor.getFloat(pressureColumn),
+                    cursor.getFloat(windColumn),
+                    cursor.getFloat(degreesColumn));
+            position++;
+        }
+        return position;
+    }
+}
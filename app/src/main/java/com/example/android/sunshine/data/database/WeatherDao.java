@@ -21,6 +21,7 @@ import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.database.Cursor;
 
 import java.util.Date;
 import java.util.List;
@@ -41,6 +42,27 @@ public interface WeatherDao {
     @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date")
     LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(Date date);
 
+    /**
+     * Selects all {@link ListWeatherEntry} entries after a give date, inclusive, once. This is used
+     * off of the main thread to write the {@link ForecastSnapshot} after a sync.
+     *
+     * @param date A {@link Date} from which to select all future weather
+     * @return List of all {@link ListWeatherEntry} objects after date
+     */
+    @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date")
+    List<ListWeatherEntry> getCurrentWeatherForecastsNow(Date date);
+
+    /**
+     * Selects every column of all weather entries after a given date, inclusive, as a raw
+     * {@link Cursor} ordered by date. This is read into a {@link PackedForecast} without creating
+     * an entity per row. The caller must close the cursor.
+     *
+     * @param date A {@link Date} from which to select all future weather
+     * @return {@link Cursor} over all weather after date
+     */
+    @Query("SELECT * FROM weather WHERE date >= :date ORDER BY date ASC")
+    Cursor getCurrentWeatherForecastsCursor(Date date);
+
     /**
      * Selects all ids entries after a give date, inclusive. This is for easily seeing
      * what entries are in the database without pulling all of the data.
@@ -60,10 +82,117 @@ public interface WeatherDao {
     @Query("SELECT * FROM weather WHERE date = :date")
     LiveData<WeatherEntry> getWeatherByDate(Date date);
 
+    /**
+     * Gets the weather for every day between two dates, inclusive, in a single query. This is
+     * used to prefetch the days surrounding the one the user is looking at.
+     *
+     * @param startDate The first date you want weather for
+     * @param endDate   The last date you want weather for
+     * @return {@link LiveData} list of the weather between the two dates, ordered by date
+     */
+    @Query("SELECT * FROM weather WHERE date BETWEEN :startDate AND :endDate ORDER BY date ASC")
+    LiveData<List<WeatherEntry>> getWeatherBetweenDates(Date startDate, Date endDate);
+
+    /**
+     * Gets the weather for every day between two dates, inclusive, once. Used by
+     * {@link WeatherAggregator} to find the rows a write is about to replace, and by the
+     * repository's streams.
+     *
+     * @param startDate The first date you want weather for
+     * @param endDate   The last date you want weather for
+     * @return List of the weather between the two dates, ordered by date
+     */
+    @Query("SELECT * FROM weather WHERE date BETWEEN :startDate AND :endDate ORDER BY date ASC")
+    List<WeatherEntry> getWeatherBetweenDatesNow(Date startDate, Date endDate);
+
+    /**
+     * Gets the weather older than the given day, once. Used by {@link WeatherAggregator} to find
+     * the rows {@link #deleteOldWeather(Date)} is about to delete.
+     *
+     * @param date The date to select all prior weather from (exclusive)
+     * @return List of the weather before date
+     */
+    @Query("SELECT * FROM weather WHERE date < :date")
+    List<WeatherEntry> getWeatherBeforeNow(Date date);
+
+    /**
+     * Gets the lowest min and highest max temperature between two dates, inclusive. Used by
+     * {@link WeatherAggregator} to recompute the extremes of a single period.
+     *
+     * @param startDate The first date of the range
+     * @param endDate   The last date of the range
+     * @return The {@link TemperatureRange}, with null values if there is no weather in the range
+     */
+    @Query("SELECT MIN(min) AS minTemp, MAX(max) AS maxTemp FROM weather "
+            + "WHERE date BETWEEN :startDate AND :endDate")
+    TemperatureRange getTemperatureRange(Date startDate, Date endDate);
+
+    /**
+     * Gets the summary of every stored week or month, which is kept up to date by
+     * {@link WeatherAggregator}. The weather table itself isn't read.
+     *
+     * @param period {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *               {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @return {@link LiveData} list of the summaries, ordered by the start of their period
+     */
+    @Query("SELECT * FROM weather_summary WHERE period = :period ORDER BY periodStart ASC")
+    LiveData<List<WeatherSummaryEntry>> getWeatherSummaries(int period);
+
+    /**
+     * Gets the summary of every stored week or month, once. Used off of the main thread by the
+     * repository's streams.
+     *
+     * @param period {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *               {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @return List of the summaries, ordered by the start of their period
+     */
+    @Query("SELECT * FROM weather_summary WHERE period = :period ORDER BY periodStart ASC")
+    List<WeatherSummaryEntry> getWeatherSummariesNow(int period);
+
+    /**
+     * Gets the summary of a single week or month, once
+     *
+     * @param period      {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *                    {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @param periodStart Normalized UTC date of the first day of the period, in milliseconds
+     * @return The summary, or null if no day of the period is stored
+     */
+    @Query("SELECT * FROM weather_summary WHERE period = :period AND periodStart = :periodStart")
+    WeatherSummaryEntry getWeatherSummaryNow(int period, long periodStart);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertWeatherSummaries(WeatherSummaryEntry... summaries);
+
+    @Query("DELETE FROM weather_summary WHERE period = :period AND periodStart = :periodStart")
+    void deleteWeatherSummary(int period, long periodStart);
+
+    /**
+     * Gets the wind rose of a week or a month, which is kept up to date by
+     * {@link WeatherAggregator}. Sectors without any day are left out.
+     *
+     * @param period      {@link WeatherSummaryEntry#PERIOD_WEEK} or
+     *                    {@link WeatherSummaryEntry#PERIOD_MONTH}
+     * @param periodStart Normalized UTC date of the first day of the period, in milliseconds
+     * @return {@link LiveData} list of the sectors of the wind rose, ordered clockwise from north
+     */
+    @Query("SELECT * FROM wind_rose WHERE period = :period AND periodStart = :periodStart "
+            + "ORDER BY sector ASC")
+    LiveData<List<WindRoseEntry>> getWindRose(int period, long periodStart);
+
+    @Query("SELECT * FROM wind_rose WHERE period = :period AND periodStart = :periodStart")
+    List<WindRoseEntry> getWindRoseNow(int period, long periodStart);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertWindRose(WindRoseEntry... windRose);
+
+    @Query("DELETE FROM wind_rose WHERE period = :period AND periodStart = :periodStart")
+    void deleteWindRose(int period, long periodStart);
+
     /**
      * Inserts a list of {@link WeatherEntry} into the weather table. If there is a conflicting id
      * or date the weather entry uses the {@link OnConflictStrategy} of replacing the weather
      * forecast. The required uniqueness of these values is defined in the {@link WeatherEntry}.
+     * This doesn't update the summaries, write through {@link WeatherAggregator} instead.
      *
      * @param weather A list of weather forecasts to insert
      */
@@ -71,11 +200,25 @@ public interface WeatherDao {
     void bulkInsert(WeatherEntry... weather);
 
     /**
-     * Deletes any weather data older than the given day
+     * Deletes any weather data older than the given day. This doesn't update the summaries,
+     * delete through {@link WeatherAggregator} instead.
      *
      * @param date The date to delete all prior weather from (exclusive)
      */
     @Query("DELETE FROM weather WHERE date < :date")
     void deleteOldWeather(Date date);
 
+    /**
+     * Deletes all of the weather. This doesn't update the summaries, delete through
+     * {@link WeatherAggregator} instead.
+     */
+    @Query("DELETE FROM weather")
+    void deleteAllWeather();
+
+    @Query("DELETE FROM weather_summary")
+    void deleteAllWeatherSummaries();
+
+    @Query("DELETE FROM wind_rose")
+    void deleteAllWindRoses();
+
 }
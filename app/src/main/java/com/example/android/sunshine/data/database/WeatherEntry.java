@@ -118,4 +118,14 @@ public class WeatherEntry {
     public double getDegrees() {
         return degrees;
     }
+
+    /**
+     * @return Whether the other entry holds the same weather for the same day. The id isn't
+     * compared, as a row gets a new one every time a sync replaces it.
+     */
+    public boolean hasSameContent(WeatherEntry other) {
+        return date.equals(other.date) && weatherIconId == other.weatherIconId
+                && min == other.min && max == other.max && humidity == other.humidity
+                && pressure == other.pressure && wind == other.wind && degrees == other.degrees;
+    }
 }
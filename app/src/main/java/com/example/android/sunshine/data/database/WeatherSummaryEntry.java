@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+
+/**
+ * Defines the schema of a table in {@link android.arch.persistence.room.Room} holding summary
+ * statistics of the weather table for a week or a month. The rows are kept up to date by
+ * {@link WeatherAggregator} whenever the weather table is written, so reading them never scans
+ * the weather table.
+ * <p>
+ * Sums are stored rather than means so that a day can be added or removed without looking at the
+ * other days of the period.
+ */
+@Entity(tableName = "weather_summary", primaryKeys = {"period", "periodStart"})
+public class WeatherSummaryEntry {
+
+    // Kinds of period a summary can cover
+    public static final int PERIOD_WEEK = 0;
+    public static final int PERIOD_MONTH = 1;
+
+    private int period;
+    // Normalized UTC date of the first day of the period, in milliseconds
+    private long periodStart;
+    private int dayCount;
+    private double sumMin;
+    private double sumMax;
+    private double minTemp;
+    private double maxTemp;
+    private int rainyDays;
+
+    // Constructor used by Room and WeatherAggregator to create WeatherSummaryEntries
+    public WeatherSummaryEntry(int period, long periodStart, int dayCount, double sumMin,
+                               double sumMax, double minTemp, double maxTemp, int rainyDays) {
+        this.period = period;
+        this.periodStart = periodStart;
+        this.dayCount = dayCount;
+        this.sumMin = sumMin;
+        this.sumMax = sumMax;
+        this.minTemp = minTemp;
+        this.maxTemp = maxTemp;
+        this.rainyDays = rainyDays;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public double getSumMin() {
+        return sumMin;
+    }
+
+    public double getSumMax() {
+        return sumMax;
+    }
+
+    /**
+     * @return Lowest min temperature of the period
+     */
+    public double getMinTemp() {
+        return minTemp;
+    }
+
+    /**
+     * @return Highest max temperature of the period
+     */
+    public double getMaxTemp() {
+        return maxTemp;
+    }
+
+    /**
+     * @return Number of days of the period with thunderstorms, drizzle or rain
+     */
+    public int getRainyDays() {
+        return rainyDays;
+    }
+
+    /**
+     * @return Mean of the daily mean temperatures, the daily mean being halfway between the
+     * min and the max
+     */
+    public double getMeanTemp() {
+        return dayCount == 0 ? 0 : (sumMin + sumMax) / (2 * dayCount);
+    }
+
+    /**
+     * @return Whether the other summary is of the same period and has the same values
+     */
+    public boolean hasSameContent(WeatherSummaryEntry other) {
+        return period == other.period && periodStart == other.periodStart
+                && dayCount == other.dayCount && sumMin == other.sumMin
+                && sumMax == other.sumMax && minTemp == other.minTemp
+                && maxTemp == other.maxTemp && rainyDays == other.rainyDays;
+    }
+}
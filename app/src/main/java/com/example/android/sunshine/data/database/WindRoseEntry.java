@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+
+/**
+ * Defines the schema of a table in {@link android.arch.persistence.room.Room} holding one bar of
+ * a wind rose: the number of days of a week or a month on which the wind blew from one of the
+ * eight compass sectors. Sectors without any day have no row. Kept up to date along with
+ * {@link WeatherSummaryEntry} by {@link WeatherAggregator}.
+ */
+@Entity(tableName = "wind_rose", primaryKeys = {"period", "periodStart", "sector"})
+public class WindRoseEntry {
+
+    // Number of compass sectors, sector 0 is north and they go clockwise from there
+    public static final int SECTOR_COUNT = 8;
+
+    private int period;
+    // Normalized UTC date of the first day of the period, in milliseconds
+    private long periodStart;
+    private int sector;
+    private int dayCount;
+
+    // Constructor used by Room and WeatherAggregator to create WindRoseEntries
+    public WindRoseEntry(int period, long periodStart, int sector, int dayCount) {
+        this.period = period;
+        this.periodStart = periodStart;
+        this.sector = sector;
+        this.dayCount = dayCount;
+    }
+
+    /**
+     * @param degrees Wind direction in compass degrees
+     * @return The sector the direction falls in
+     */
+    public static int sectorForDegrees(double degrees) {
+        double sectorDegrees = 360.0 / SECTOR_COUNT;
+        double normalized = ((degrees + sectorDegrees / 2) % 360 + 360) % 360;
+        return (int) (normalized / sectorDegrees) % SECTOR_COUNT;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public int getSector() {
+        return sector;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Compact binary encoding of the daily forecast. Decoding it allocates little more than the
+ * entries themselves, where the JSON goes through a tree of objects and strings first.
+ * <p>
+ * Layout, where varints are unsigned LEB128 and signed values are zigzag encoded first:
+ * <pre>
+ * byte    format version, currently 1
+ * byte    flags: 1 if only the changed days are sent, 2 if a version follows
+ * varint  length of the version, then its UTF-8 bytes
+ * varint  size of the full forecast in bytes, for a delta
+ * varint  number of days, then for each day:
+ *   signed varint  offset of the day from today
+ *   varint         weather id
+ *   signed varint  min and max temperature, in tenths of a degree Celsius
+ *   varint         humidity, pressure, wind speed and wind direction, in tenths
+ * </pre>
+ * Values are rounded to a tenth, which is finer than anything the app displays.
+ */
+class BinaryForecastCodec implements ForecastCodec, ForecastEncoder {
+    static final String CONTENT_TYPE = "application/x-sunshine-forecast";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_DELTA = 1;
+    private static final int FLAG_VERSION = 2;
+    private static final double SCALE = 10;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public WeatherResponse decode(byte[] body) throws IOException {
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Decodes straight from the buffer, such as a slice of a memory mapped file, without copying
+     * it first. The buffer's position is left where it was.
+     */
+    @Override
+    public WeatherResponse decode(ByteBuffer body) throws IOException {
+        Reader reader = new Reader(body);
+        int formatVersion = reader.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unknown forecast format " + formatVersion);
+        }
+        int flags = reader.readByte();
+        String version = (flags & FLAG_VERSION) != 0 ? reader.readString() : null;
+        int fullLength = reader.readVarint();
+
+        int count = reader.readVarint();
+        long normalizedUtcToday = SunshineDateUtils.getNormalizedUtcMsForToday();
+        WeatherEntry[] weatherEntries = new WeatherEntry[count];
+        for (int i = 0; i < count; i++) {
+            long dateMillis = normalizedUtcToday
+                    + SunshineDateUtils.DAY_IN_MILLIS * reader.readSignedVarint();
+            int weatherId = reader.readVarint();
+            double min = reader.readSignedVarint() / SCALE;
+            double max = reader.readSignedVarint() / SCALE;
+            double humidity = reader.readVarint() / SCALE;
+            double pressure = reader.readVarint() / SCALE;
+            double wind = reader.readVarint() / SCALE;
+            double degrees = reader.readVarint() / SCALE;
+            weatherEntries[i] = new WeatherEntry(weatherId, new Date(dateMillis), min, max,
+                    humidity, pressure, wind, degrees);
+        }
+        return new WeatherResponse(weatherEntries, version, (flags & FLAG_DELTA) != 0,
+                fullLength);
+    }
+
+    @Override
+    public byte[] encode(WeatherResponse response, long normalizedUtcToday) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String version = response.getVersion();
+        out.write(FORMAT_VERSION);
+        out.write((response.isDelta() ? FLAG_DELTA : 0) | (version != null ? FLAG_VERSION : 0));
+        if (version != null) {
+            byte[] versionBytes = version.getBytes(UTF_8);
+            writeVarint(out, versionBytes.length);
+            out.write(versionBytes, 0, versionBytes.length);
+        }
+        writeVarint(out, response.getFullLength());
+
+        WeatherEntry[] weatherEntries = response.getWeatherForecast();
+        writeVarint(out, weatherEntries.length);
+        for (WeatherEntry weatherEntry : weatherEntries) {
+            long day = (weatherEntry.getDate().getTime() - normalizedUtcToday)
+                    / SunshineDateUtils.DAY_IN_MILLIS;
+            writeSignedVarint(out, (int) day);
+            writeVarint(out, weatherEntry.getWeatherIconId());
+            writeSignedVarint(out, scale(weatherEntry.getMin()));
+            writeSignedVarint(out, scale(weatherEntry.getMax()));
+            writeVarint(out, scale(weatherEntry.getHumidity()));
+            writeVarint(out, scale(weatherEntry.getPressure()));
+            writeVarint(out, scale(weatherEntry.getWind()));
+            writeVarint(out, scale(weatherEntry.getDegrees()));
+        }
+        return out.toByteArray();
+    }
+
+    private static int scale(double value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    private static void writeSignedVarint(ByteArrayOutputStream out, int value) {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads the body front to back, without copying it.
+     */
+    private static final class Reader {
+        private final ByteBuffer mBytes;
+        private int mPosition;
+
+        Reader(ByteBuffer bytes) {
+            mBytes = bytes;
+            mPosition = bytes.position();
+        }
+
+        int readByte() throws IOException {
+            if (mPosition >= mBytes.limit()) throw new IOException("Truncated forecast");
+            return mBytes.get(mPosition++) & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readSignedVarint() throws IOException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length < 0 || length > mBytes.limit() - mPosition) {
+                throw new IOException("Truncated forecast");
+            }
+            // Only the few bytes of the string are copied
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) bytes[i] = mBytes.get(mPosition + i);
+            mPosition += length;
+            return new String(bytes, UTF_8);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers, per location, the version of the forecast which is stored in the database, so that
+ * the next sync only has to ask the server for what changed since. Also keeps a running count of
+ * the bytes the deltas saved over fetching the whole forecast.
+ * <p>
+ * A version only becomes the stored one once the repository has actually written the forecast it
+ * came with, see {@link #commitPendingVersion(int)}. Until then a delta would be applied on top of
+ * rows which aren't there. Several locations may be waiting at once, after a group query, and
+ * each one is committed on its own.
+ */
+class DeltaSyncState {
+    private static final String LOG_TAG = DeltaSyncState.class.getSimpleName();
+
+    static final String PREFERENCES_NAME = "delta_sync";
+    private static final String KEY_VERSION_PREFIX = "version_";
+    private static final String KEY_BYTES_RECEIVED = "bytes_received";
+    private static final String KEY_BYTES_SAVED = "bytes_saved";
+
+    private final SharedPreferences mPreferences;
+
+    // Versions received with forecasts which are waiting to be stored, by location
+    private final Map<String, PendingVersion> mPendingVersions = new HashMap<>();
+
+    DeltaSyncState(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The version of the stored forecast for the location, or null if the next fetch has
+     * to be a full one
+     */
+    @Nullable
+    String getVersion(String location) {
+        return mPreferences.getString(KEY_VERSION_PREFIX + location, null);
+    }
+
+    /**
+     * Called when a forecast has been posted for the repository to store. Replaces whatever was
+     * waiting for the same location.
+     *
+     * @param syncId  The sync which downloaded the forecast
+     * @param version Version the server sent with it, null if the server doesn't do deltas
+     */
+    synchronized void setPendingVersion(String location, int syncId, @Nullable String version) {
+        mPendingVersions.put(location, new PendingVersion(syncId, version));
+    }
+
+    /**
+     * Called once the forecast posted by a sync has been stored. Only the location of that sync
+     * is committed. If the location has been fetched again since, the newer version keeps
+     * waiting for its own forecast to be stored.
+     *
+     * @param syncId The sync whose forecast was stored
+     */
+    synchronized void commitPendingVersion(int syncId) {
+        Iterator<Map.Entry<String, PendingVersion>> pending =
+                mPendingVersions.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<String, PendingVersion> entry = pending.next();
+            PendingVersion pendingVersion = entry.getValue();
+            if (pendingVersion.mSyncId != syncId) continue;
+
+            String key = KEY_VERSION_PREFIX + entry.getKey();
+            SharedPreferences.Editor editor = mPreferences.edit();
+            if (pendingVersion.mVersion == null) editor.remove(key);
+            else editor.putString(key, pendingVersion.mVersion);
+            editor.apply();
+            pending.remove();
+            return;
+        }
+    }
+
+    /**
+     * Forgets every stored version, so that the next fetch of each location is a full one. Called
+     * when the stored forecast no longer matches what the versions say.
+     */
+    synchronized void reset() {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (String key : mPreferences.getAll().keySet()) {
+            if (key.startsWith(KEY_VERSION_PREFIX)) editor.remove(key);
+        }
+        editor.apply();
+        mPendingVersions.clear();
+    }
+
+    /**
+     * Adds a response to the running totals.
+     *
+     * @param receivedBytes Size of the response
+     * @param fullBytes     Size the full forecast would have been
+     */
+    synchronized void recordTransfer(long receivedBytes, long fullBytes) {
+        long totalReceived = mPreferences.getLong(KEY_BYTES_RECEIVED, 0) + receivedBytes;
+        long totalSaved = mPreferences.getLong(KEY_BYTES_SAVED, 0)
+                + Math.max(0, fullBytes - receivedBytes);
+        mPreferences.edit()
+                .putLong(KEY_BYTES_RECEIVED, totalReceived)
+                .putLong(KEY_BYTES_SAVED, totalSaved)
+                .apply();
+        Log.d(LOG_TAG, "Received " + receivedBytes + " of " + fullBytes + " bytes, "
+                + totalSaved + " saved of " + (totalReceived + totalSaved) + " so far");
+    }
+
+    /**
+     * @return Bytes not downloaded thanks to deltas, since the app was installed
+     */
+    long getBytesSaved() {
+        return mPreferences.getLong(KEY_BYTES_SAVED, 0);
+    }
+
+    /**
+     * @return Bytes of daily forecast downloaded, since the app was installed
+     */
+    long getBytesReceived() {
+        return mPreferences.getLong(KEY_BYTES_RECEIVED, 0);
+    }
+
+    private static class PendingVersion {
+        private final int mSyncId;
+        private final String mVersion;
+
+        PendingVersion(int syncId, String version) {
+            mSyncId = syncId;
+            mVersion = version;
+        }
+    }
+}
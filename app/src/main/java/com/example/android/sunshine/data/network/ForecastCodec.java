@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the body of a daily forecast response into a {@link WeatherResponse}. Each codec handles
+ * one content type; the server picks one of the types the app lists in its Accept header and says
+ * which in its Content-Type header. Formats the {@link LocalWeatherServer} sends are also a
+ * {@link ForecastEncoder}.
+ */
+interface ForecastCodec {
+
+    /**
+     * @return The media type of the bodies this codec handles, without parameters
+     */
+    String getContentType();
+
+    /**
+     * @param body Body of the response
+     * @return The forecast, or null if the server reported an error
+     * @throws IOException If the body isn't valid for this codec
+     */
+    @Nullable
+    WeatherResponse decode(byte[] body) throws IOException;
+
+    /**
+     * @param body Body of the response, from its position to its limit
+     * @return The forecast, or null if the server reported an error
+     * @throws IOException If the body isn't valid for this codec
+     */
+    @Nullable
+    WeatherResponse decode(ByteBuffer body) throws IOException;
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import java.io.IOException;
+
+/**
+ * Turns a {@link WeatherResponse} into the body of a daily forecast response, for the
+ * {@link LocalWeatherServer}. The app itself only decodes, see {@link ForecastCodec}.
+ */
+interface ForecastEncoder {
+
+    /**
+     * @return The media type of the bodies this encoder makes, without parameters
+     */
+    String getContentType();
+
+    /**
+     * @param response           The forecast to send
+     * @param normalizedUtcToday Normalized UTC date which day offsets are counted from
+     * @return Body of the response
+     */
+    byte[] encode(WeatherResponse response, long normalizedUtcToday) throws IOException;
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Daily forecasts of many locations, bundled with the app, for demos and load tests which should
+ * run the whole sync, from the sync queue through Room to the screens, without a network. Built by
+ * {@code tools/build_forecast_fixture.py} and used when {@code USE_FORECAST_FIXTURE} is set.
+ * <p>
+ * The asset is stored uncompressed, so it is memory mapped straight out of the APK. A forecast is
+ * handed over as a slice of the mapping and decoded from there, it is never copied. Layout, big
+ * endian:
+ * <pre>
+ * int     magic, "SFIX"
+ * int     format version, currently 1
+ * int     number of locations, then for each location, sorted by the UTF-8 bytes of its query:
+ *   int   offset and length of its location query, in UTF-8
+ *   int   offset and length of its forecast, in the {@link BinaryForecastCodec} format
+ * </pre>
+ * Days are counted from today whenever a forecast is decoded, so the fixture never goes stale.
+ */
+final class ForecastFixture {
+    private static final String LOG_TAG = ForecastFixture.class.getSimpleName();
+
+    static final String ASSET_NAME = "forecasts.fixture";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x53464958; // "SFIX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    private static final int ENTRY_SIZE = 4 + 4 + 4 + 4;
+
+    private final ByteBuffer mFixture;
+    private final int mCount;
+
+    private ForecastFixture(ByteBuffer fixture, int count) {
+        mFixture = fixture;
+        mCount = count;
+    }
+
+    /**
+     * Maps the bundled fixture.
+     *
+     * @throws IOException If it isn't bundled, is compressed or has another format
+     */
+    static ForecastFixture open(Context context) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer fixture;
+        // Only Closeable from KitKat on
+        AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_NAME);
+        try (FileInputStream in = descriptor.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            fixture = channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getLength());
+        } finally {
+            descriptor.close();
+        }
+
+        if (fixture.capacity() < HEADER_SIZE || fixture.getInt(0) != MAGIC
+                || fixture.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(ASSET_NAME + " has an unknown format");
+        }
+        int count = fixture.getInt(8);
+        if (count <= 0 || fixture.capacity() < HEADER_SIZE + (long) count * ENTRY_SIZE) {
+            throw new IOException(ASSET_NAME + " is empty or cut short");
+        }
+        Log.d(LOG_TAG, String.format(Locale.US, "Mapped %d forecasts, %d bytes, in %.2f ms",
+                count, fixture.capacity(), (System.nanoTime() - start) / 1e6));
+        return new ForecastFixture(fixture, count);
+    }
+
+    /**
+     * Serves the location's forecast. A location which isn't in the fixture, such as one the user
+     * searched for, always gets the same one of the others.
+     */
+    NetworkUtils.Response getForecastResponse(String location) {
+        int entry = find(location.getBytes(UTF_8));
+        if (entry < 0) entry = (location.hashCode() & Integer.MAX_VALUE) % mCount;
+
+        int offset = mFixture.getInt(getEntryOffset(entry) + 8);
+        int length = mFixture.getInt(getEntryOffset(entry) + 12);
+        ByteBuffer body = mFixture.duplicate();
+        body.position(offset);
+        body.limit(offset + length);
+        // The forecast never changes, so there is no point in syncing it more often
+        return new NetworkUtils.Response(body.slice(), BinaryForecastCodec.CONTENT_TYPE, 0);
+    }
+
+    /**
+     * Binary searches the sorted locations, comparing bytes in place.
+     *
+     * @return The index of the location's entry, or -1 if it isn't in the fixture
+     */
+    private int find(byte[] location) {
+        int lo = 0;
+        int hi = mCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int comparison = compareLocation(mid, location);
+            if (comparison < 0) {
+                lo = mid + 1;
+            } else if (comparison > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareLocation(int entry, byte[] location) {
+        int offset = mFixture.getInt(getEntryOffset(entry));
+        int length = mFixture.getInt(getEntryOffset(entry) + 4);
+        for (int i = 0; i < Math.min(length, location.length); i++) {
+            int comparison = (mFixture.get(offset + i) & 0xFF) - (location[i] & 0xFF);
+            if (comparison != 0) return comparison;
+        }
+        return length - location.length;
+    }
+
+    private static int getEntryOffset(int entry) {
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+}
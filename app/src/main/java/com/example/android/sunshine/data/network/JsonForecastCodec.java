@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The OpenWeatherMap JSON every server understands, decoded by {@link OpenWeatherJsonParser}.
+ * There is no encoder, the {@link LocalWeatherServer} builds its JSON itself.
+ */
+class JsonForecastCodec implements ForecastCodec {
+    static final String CONTENT_TYPE = "application/json";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Nullable
+    @Override
+    public WeatherResponse decode(byte[] body) throws IOException {
+        return parse(new String(body, UTF_8));
+    }
+
+    @Nullable
+    @Override
+    public WeatherResponse decode(ByteBuffer body) throws IOException {
+        // The parser works on a String, which is a copy anyway
+        return parse(UTF_8.decode(body.duplicate()).toString());
+    }
+
+    private static WeatherResponse parse(String body) throws IOException {
+        try {
+            return new OpenWeatherJsonParser().parse(body);
+        } catch (JSONException e) {
+            throw new IOException("Invalid forecast JSON", e);
+        }
+    }
+}
@@ -0,0 +1,599 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the weather server which runs inside the app, on the loopback interface, so that
+ * protocol changes can be tried out before the real server supports them. Point
+ * {@link WeatherNetworkDataSource#setServerBaseUrl(String)} at {@link #getBaseUrl()} to use it.
+ * <p>
+ * It serves the same daily and three hour forecasts as the real server, from a forecast which
+ * evolves a little on every request, plus:
+ * <ul>
+ * <li>{@code /weather/delta?since=<version>}: only the days which changed since the version the
+ * client last stored. A version from another run of the server can't be compared, so the whole
+ * forecast is sent instead, marked as {@code "full": true}.</li>
+ * <li>{@code /weather/group?q=<location>&q=<location>...}: the forecasts of several locations in
+ * one response, each tagged with its location.</li>
+ * </ul>
+ * Every location gets a forecast of its own. The daily forecast is sent in the compact
+ * {@link BinaryForecastCodec} format to clients which accept it, and as JSON otherwise.
+ * <p>
+ * The server can be made slow, unreliable or to send bigger forecasts, see {@link Conditions},
+ * to load test the sync against something other than a perfect server.
+ */
+public class LocalWeatherServer {
+    private static final String LOG_TAG = LocalWeatherServer.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final int THREAD_COUNT = 4;
+    private static final int MAX_AGE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(10);
+
+    private static final String PATH_WEATHER = "/weather";
+    private static final String PATH_WEATHER_DELTA = "/weather/delta";
+    private static final String PATH_WEATHER_GROUP = "/weather/group";
+    private static final String PATH_HOURLY_WEATHER = "/hourlyweather";
+
+    // Responses are written this many bytes at a time when the bandwidth is limited
+    private static final int THROTTLE_CHUNK_BYTES = 1024;
+
+    private final ServerSocket mServerSocket;
+    private final Conditions mConditions;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+    private final JsonForecastCodec mJsonCodec = new JsonForecastCodec();
+    private final BinaryForecastCodec mBinaryCodec = new BinaryForecastCodec();
+    private final Random mRandom = new Random();
+    // Forecast of every location asked for so far
+    private final Map<String, ForecastModel> mForecasts = new HashMap<>();
+    private volatile boolean mRunning = true;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mSimulatedFailureCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private LocalWeatherServer(ServerSocket serverSocket, Conditions conditions) {
+        mServerSocket = serverSocket;
+        mConditions = conditions;
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface, which answers every request as
+     * fast as it can.
+     */
+    public static LocalWeatherServer start() throws IOException {
+        return start(Conditions.IDEAL);
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param conditions How slow and unreliable the server is
+     */
+    public static LocalWeatherServer start(Conditions conditions) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        LocalWeatherServer server = new LocalWeatherServer(serverSocket, conditions);
+        new Thread(server::acceptConnections, LOG_TAG).start();
+        Log.d(LOG_TAG, "Listening on " + server.getBaseUrl() + ", " + conditions);
+        return server;
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    public void stop() {
+        mRunning = false;
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Closing the server socket failed", e);
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return Number of requests answered so far, including the simulated failures
+     */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return Number of requests answered with a simulated failure so far
+     */
+    public int getSimulatedFailureCount() {
+        return mSimulatedFailureCount.get();
+    }
+
+    /**
+     * @return Bytes of every response written so far, headers included
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    private void acceptConnections() {
+        while (mRunning) {
+            try {
+                Socket socket = mServerSocket.accept();
+                mExecutor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (mRunning) Log.e(LOG_TAG, "Accepting a connection failed", e);
+            }
+        }
+    }
+
+    private void handleConnection(Socket connection) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), ISO_8859_1));
+            String requestLine = reader.readLine();
+            if (requestLine == null) return;
+
+            // Only the headers are read, none of the requests have a body
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                            line.substring(colon + 1).trim());
+                }
+            }
+
+            if (mConditions.mLatencyMillis > 0) Thread.sleep(mConditions.mLatencyMillis);
+            String[] parts = requestLine.split(" ");
+            Response response;
+            if (parts.length < 2) {
+                response = Response.error(400, "Bad request");
+            } else if (mRandom.nextFloat() < mConditions.mErrorRate) {
+                mSimulatedFailureCount.incrementAndGet();
+                response = Response.error(503, "Simulated failure");
+            } else {
+                response = handleRequest(Uri.parse(parts[1]), headers);
+            }
+            mRequestCount.incrementAndGet();
+            mBytesSent.addAndGet(response.writeTo(connection.getOutputStream(),
+                    mConditions.mBytesPerSecond));
+        } catch (InterruptedException | InterruptedIOException e) {
+            // The server is being stopped
+            Thread.currentThread().interrupt();
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Handling a request failed", e);
+        } finally {
+            // Sockets are only Closeable from API 19
+            try {
+                connection.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Closing a connection failed", e);
+            }
+        }
+    }
+
+    /**
+     * Routes a request to the endpoint for its path.
+     */
+    private Response handleRequest(Uri uri, Map<String, String> headers)
+            throws IOException, JSONException {
+        String path = uri.getPath();
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday()
+                / SunshineDateUtils.DAY_IN_MILLIS;
+
+        int count = mConditions.mForecastDays > 0 ? mConditions.mForecastDays
+                : parseInt(uri.getQueryParameter("cnt"), WeatherDataSource.NUM_DAYS);
+        if (PATH_WEATHER.equals(path) || PATH_WEATHER_DELTA.equals(path)) {
+            ForecastModel forecast = getForecast(uri.getQueryParameter("q"));
+            forecast.evolve(today, count);
+            JSONObject fullForecast = getFullForecast(forecast, today, count);
+            JSONObject body = PATH_WEATHER.equals(path) ? fullForecast
+                    : getForecastDelta(forecast, today, count, uri.getQueryParameter("since"),
+                    fullForecast);
+            return accepts(headers.get("accept"), BinaryForecastCodec.CONTENT_TYPE)
+                    ? transcode(body, fullForecast) : Response.json(body);
+        } else if (PATH_WEATHER_GROUP.equals(path)) {
+            JSONArray list = new JSONArray();
+            for (String location : uri.getQueryParameters("q")) {
+                ForecastModel forecast = getForecast(location);
+                forecast.evolve(today, count);
+                list.put(getFullForecast(forecast, today, count).put("location", location));
+            }
+            return Response.json(new JSONObject()
+                    .put("cod", 200)
+                    .put("cnt", list.length())
+                    .put("list", list));
+        } else if (PATH_HOURLY_WEATHER.equals(path)) {
+            return Response.json(getHourlyForecast(parseInt(uri.getQueryParameter("cnt"),
+                    WeatherNetworkDataSource.NUM_HOURLY_SLOTS)));
+        }
+        return Response.error(404, "Unknown path " + path);
+    }
+
+    private ForecastModel getForecast(String location) {
+        String key = location == null ? "" : location;
+        synchronized (mForecasts) {
+            ForecastModel forecast = mForecasts.get(key);
+            if (forecast == null) {
+                forecast = new ForecastModel(new Random(mRandom.nextLong()));
+                mForecasts.put(key, forecast);
+            }
+            return forecast;
+        }
+    }
+
+    private static JSONObject getFullForecast(ForecastModel forecast, long today, int count)
+            throws JSONException {
+        JSONArray list = new JSONArray();
+        String version;
+        synchronized (forecast) {
+            for (Day day : forecast.getDays(today, count)) list.put(day.toJson(today));
+            version = forecast.getVersion();
+        }
+        return new JSONObject()
+                .put("cod", 200)
+                .put("version", version)
+                .put("list", list);
+    }
+
+    private static JSONObject getForecastDelta(ForecastModel forecast, long today, int count,
+                                               String since, JSONObject fullForecast)
+            throws JSONException {
+        long sinceVersion = forecast.parseVersion(since);
+        if (sinceVersion < 0) {
+            // The versions can't be compared, so the client has to replace everything it has
+            return fullForecast.put("full", true);
+        }
+
+        JSONArray list = new JSONArray();
+        String version;
+        synchronized (forecast) {
+            for (Day day : forecast.getDays(today, count)) {
+                if (day.mChangedAt > sinceVersion) list.put(day.toJson(today));
+            }
+            version = forecast.getVersion();
+        }
+        return new JSONObject()
+                .put("cod", 200)
+                .put("version", version)
+                .put("full", false)
+                .put("fullLength", fullForecast.toString().getBytes(UTF_8).length)
+                .put("list", list);
+    }
+
+    /**
+     * Re-encodes a JSON forecast in the binary format. Going through the app's own JSON decoder
+     * guarantees that both formats decode to the same entries.
+     */
+    private Response transcode(JSONObject body, JSONObject fullForecast) throws IOException {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        WeatherResponse response = mJsonCodec.decode(body.toString().getBytes(UTF_8));
+        if (response == null) return Response.error(500, "Invalid forecast");
+        if (response.isDelta()) {
+            // The size saved has to be measured against the full forecast in the same format
+            WeatherResponse full = mJsonCodec.decode(fullForecast.toString().getBytes(UTF_8));
+            int fullLength = full == null ? 0 : mBinaryCodec.encode(full, today).length;
+            response = new WeatherResponse(response.getWeatherForecast(), response.getVersion(),
+                    true, fullLength);
+        }
+        return new Response(200, BinaryForecastCodec.CONTENT_TYPE,
+                mBinaryCodec.encode(response, today));
+    }
+
+    /**
+     * @return Whether an Accept header lists a media type, without ruling it out with q=0
+     */
+    private static boolean accepts(String accept, String mediaType) {
+        if (accept == null) return false;
+        for (String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase(mediaType)) continue;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") && parseQuality(parameter.substring(2)) <= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static float parseQuality(String value) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static JSONObject getHourlyForecast(int count) throws JSONException {
+        long slotMillis = TimeUnit.HOURS.toMillis(3);
+        long firstSlot = System.currentTimeMillis() / slotMillis * slotMillis;
+        // The same slots always get the same weather
+        Random random = new Random(firstSlot);
+        JSONArray list = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            list.put(new JSONObject()
+                    .put("dt", TimeUnit.MILLISECONDS.toSeconds(firstSlot + i * slotMillis))
+                    .put("main", new JSONObject()
+                            .put("temp", 5 + random.nextInt(25))
+                            .put("pressure", 990 + random.nextInt(40))
+                            .put("humidity", 30 + random.nextInt(70)))
+                    .put("wind", new JSONObject()
+                            .put("speed", random.nextInt(20))
+                            .put("deg", random.nextInt(360)))
+                    .put("weather", new JSONArray().put(new JSONObject()
+                            .put("id", ForecastModel.randomWeatherId(random)))));
+        }
+        return new JSONObject().put("cod", 200).put("list", list);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The forecast served, which changes a little on every request. Every change bumps the
+     * version and every day remembers the version it last changed in, which is all a delta needs.
+     */
+    private static class ForecastModel {
+        private static final int[] WEATHER_IDS =
+                {800, 801, 802, 803, 500, 501, 211, 300, 600, 741};
+
+        private final Random mRandom;
+        // Tells versions from different runs of the server apart
+        private final String mRunId = UUID.randomUUID().toString();
+        private final Map<Long, Day> mDays = new HashMap<>();
+        private long mVersion;
+
+        ForecastModel(Random random) {
+            mRandom = random;
+        }
+
+        static int randomWeatherId(Random random) {
+            return WEATHER_IDS[random.nextInt(WEATHER_IDS.length)];
+        }
+
+        synchronized String getVersion() {
+            return mRunId + "." + mVersion;
+        }
+
+        /**
+         * @return The version number, or -1 if the version is missing, from another run of the
+         * server or from the future
+         */
+        synchronized long parseVersion(String version) {
+            if (version == null || !version.startsWith(mRunId + ".")) return -1;
+            try {
+                long number = Long.parseLong(version.substring(mRunId.length() + 1));
+                return number <= mVersion ? number : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Revises one of the days, the way a forecast changes between syncs.
+         */
+        synchronized void evolve(long firstDay, int count) {
+            List<Day> days = getDays(firstDay, count);
+            if (days.isEmpty()) return;
+            mVersion++;
+            days.get(mRandom.nextInt(days.size())).randomize(mRandom, mVersion);
+        }
+
+        /**
+         * Gets the forecast for a range of days, making up the days which haven't been asked
+         * for before.
+         */
+        synchronized List<Day> getDays(long firstDay, int count) {
+            List<Day> days = new ArrayList<>(count);
+            for (long epochDay = firstDay; epochDay < firstDay + count; epochDay++) {
+                Day day = mDays.get(epochDay);
+                if (day == null) {
+                    mVersion++;
+                    day = new Day(epochDay);
+                    day.randomize(mRandom, mVersion);
+                    mDays.put(epochDay, day);
+                }
+                days.add(day);
+            }
+            // Days which have passed are never asked for again
+            for (Iterator<Long> iterator = mDays.keySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next() < firstDay) iterator.remove();
+            }
+            return days;
+        }
+    }
+
+    private static class Day {
+        private final long mEpochDay;
+        private int mWeatherId;
+        private double mMin;
+        private double mMax;
+        private int mHumidity;
+        private double mPressure;
+        private double mSpeed;
+        private double mDegrees;
+        // Version of the forecast in which this day last changed
+        private long mChangedAt;
+
+        Day(long epochDay) {
+            mEpochDay = epochDay;
+        }
+
+        void randomize(Random random, long version) {
+            mWeatherId = ForecastModel.randomWeatherId(random);
+            mMin = -5 + random.nextInt(20);
+            mMax = mMin + 1 + random.nextInt(15);
+            mHumidity = 20 + random.nextInt(80);
+            mPressure = 980 + random.nextInt(50);
+            mSpeed = random.nextInt(25);
+            mDegrees = random.nextInt(360);
+            mChangedAt = version;
+        }
+
+        /**
+         * Same layout as the real server's daily forecast, plus the day's offset from today so
+         * that it can be placed when it is sent on its own in a delta.
+         */
+        JSONObject toJson(long today) throws JSONException {
+            return new JSONObject()
+                    .put("day", mEpochDay - today)
+                    .put("dt", TimeUnit.DAYS.toSeconds(mEpochDay))
+                    .put("temp", new JSONObject().put("min", mMin).put("max", mMax))
+                    .put("pressure", mPressure)
+                    .put("humidity", mHumidity)
+                    .put("speed", mSpeed)
+                    .put("deg", mDegrees)
+                    .put("weather", new JSONArray().put(new JSONObject().put("id", mWeatherId)));
+        }
+    }
+
+    /**
+     * A complete HTTP response. Every connection is closed after its response.
+     */
+    private static class Response {
+        private final int mStatus;
+        private final String mContentType;
+        private final byte[] mBody;
+
+        Response(int status, String contentType, byte[] body) {
+            mStatus = status;
+            mContentType = contentType;
+            mBody = body;
+        }
+
+        static Response json(JSONObject json) {
+            return new Response(200, "application/json", json.toString().getBytes(UTF_8));
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "text/plain", message.getBytes(UTF_8));
+        }
+
+        /**
+         * @param bytesPerSecond Rate to write at, 0 for as fast as possible
+         * @return Number of bytes written
+         */
+        int writeTo(OutputStream out, long bytesPerSecond)
+                throws IOException, InterruptedException {
+            String head = "HTTP/1.1 " + mStatus + (mStatus == 200 ? " OK" : " Error") + "\r\n"
+                    + "Content-Type: " + mContentType + "\r\n"
+                    + "Content-Length: " + mBody.length + "\r\n"
+                    + "Cache-Control: max-age=" + MAX_AGE_SECONDS + "\r\n"
+                    + "Connection: close\r\n\r\n";
+            byte[] headBytes = head.getBytes(ISO_8859_1);
+            byte[] response = new byte[headBytes.length + mBody.length];
+            System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+            System.arraycopy(mBody, 0, response, headBytes.length, mBody.length);
+
+            if (bytesPerSecond <= 0) {
+                out.write(response);
+            } else {
+                // Every chunk waits until the bytes before it have taken their share of time
+                long start = System.nanoTime();
+                for (int written = 0; written < response.length;
+                     written += THROTTLE_CHUNK_BYTES) {
+                    long dueNanos = start + TimeUnit.SECONDS.toNanos(written) / bytesPerSecond;
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    out.write(response, written,
+                            Math.min(THROTTLE_CHUNK_BYTES, response.length - written));
+                    out.flush();
+                }
+            }
+            out.flush();
+            return response.length;
+        }
+    }
+
+    /**
+     * How the server behaves, to see how the sync holds up against a slow or unreliable server
+     * or against big forecasts.
+     */
+    public static final class Conditions {
+        // Answers every request straight away, without failing
+        public static final Conditions IDEAL = new Conditions(0, 0, 0, 0);
+
+        private final long mLatencyMillis;
+        private final long mBytesPerSecond;
+        private final float mErrorRate;
+        private final int mForecastDays;
+
+        /**
+         * @param latencyMillis  Time each request waits before it is answered
+         * @param bytesPerSecond Rate at which every response is written, 0 for as fast as
+         *                       possible
+         * @param errorRate      Share of the requests, from 0 to 1, answered with a server error
+         * @param forecastDays   Days in every daily forecast, which sets how big responses are,
+         *                       or 0 for as many as were asked for
+         */
+        public Conditions(long latencyMillis, long bytesPerSecond, float errorRate,
+                          int forecastDays) {
+            mLatencyMillis = Math.max(0, latencyMillis);
+            mBytesPerSecond = Math.max(0, bytesPerSecond);
+            mErrorRate = Math.max(0, Math.min(1, errorRate));
+            mForecastDays = Math.max(0, forecastDays);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d ms latency, %s, %.0f%% errors, %s",
+                    mLatencyMillis,
+                    mBytesPerSecond == 0 ? "unlimited bandwidth" : mBytesPerSecond + " B/s",
+                    mErrorRate * 100,
+                    mForecastDays == 0 ? "days as asked for" : mForecastDays + " days");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.data.city.City;
+
+import java.util.Locale;
+
+/**
+ * Remembers the location the user picked, which is the one the weather is fetched for.
+ */
+public class LocationPreferences {
+
+    private static final String PREFERENCES_NAME = "location";
+    private static final String KEY_LOCATION_QUERY = "location_query";
+    private static final String KEY_DISPLAY_NAME = "display_name";
+    // Where the location is, stored as floats, which are within a couple of meters
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+
+    private final SharedPreferences mPreferences;
+
+    public LocationPreferences(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The location to ask the weather server for
+     */
+    public String getLocationQuery() {
+        return mPreferences.getString(KEY_LOCATION_QUERY, NetworkUtils.DEFAULT_LOCATION);
+    }
+
+    /**
+     * @return The location to show the user
+     */
+    public String getDisplayName() {
+        return mPreferences.getString(KEY_DISPLAY_NAME, NetworkUtils.DEFAULT_LOCATION);
+    }
+
+    public double getLatitude() {
+        return mPreferences.getFloat(KEY_LATITUDE, (float) NetworkUtils.DEFAULT_LATITUDE);
+    }
+
+    public double getLongitude() {
+        return mPreferences.getFloat(KEY_LONGITUDE, (float) NetworkUtils.DEFAULT_LONGITUDE);
+    }
+
+    void setCity(City city) {
+        mPreferences.edit()
+                .putString(KEY_LOCATION_QUERY, city.getLocationQuery())
+                .putString(KEY_DISPLAY_NAME, city.getDisplayName())
+                .putFloat(KEY_LATITUDE, (float) city.getLatitude())
+                .putFloat(KEY_LONGITUDE, (float) city.getLongitude())
+                .apply();
+    }
+
+    /**
+     * Sets a position which isn't near any known city as the location.
+     */
+    void setPosition(double latitude, double longitude) {
+        mPreferences.edit()
+                .putString(KEY_LOCATION_QUERY, NetworkUtils.getCoordinateQuery(latitude, longitude))
+                .putString(KEY_DISPLAY_NAME, String.format(Locale.getDefault(), "%.3f, %.3f",
+                        latitude, longitude))
+                .putFloat(KEY_LATITUDE, (float) latitude)
+                .putFloat(KEY_LONGITUDE, (float) longitude)
+                .apply();
+    }
+}
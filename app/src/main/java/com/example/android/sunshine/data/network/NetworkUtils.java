@@ -18,12 +18,17 @@ package com.example.android.sunshine.data.network;
 import android.net.Uri;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -32,6 +37,9 @@ final class NetworkUtils {
 
     private static final String TAG = NetworkUtils.class.getSimpleName();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
     /*
      * Sunshine was originally built to use OpenWeatherMap's API. However, we wanted to provide
      * a way to much more easily test the app and provide more varied weather data. After all, in
@@ -51,6 +59,27 @@ final class NetworkUtils {
 
     private static final String FORECAST_BASE_URL = DYNAMIC_WEATHER_URL;
 
+    /*
+     * The three hour forecast follows the format of OpenWeatherMap's 5 day / 3 hour forecast,
+     * where every element of the list carries its own "dt" timestamp.
+     */
+    private static final String HOURLY_FORECAST_BASE_URL =
+            "https://andfun-weather.udacity.com/hourlyweather";
+
+    /*
+     * Servers which support delta syncs answer this path with only the days which changed since
+     * the version passed as "since". The fake weather server doesn't, it answers with a 404.
+     */
+    private static final String DELTA_PATH = "delta";
+    private static final String SINCE_PARAM = "since";
+
+    /*
+     * Servers which support group queries answer this path with the forecasts of every location
+     * passed as a "q" parameter, in one response. The fake weather server doesn't, it answers
+     * with a 404.
+     */
+    private static final String GROUP_PATH = "group";
+
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
      * server. They are simply here to allow us to teach you how to build a URL if you were to use
@@ -60,12 +89,30 @@ final class NetworkUtils {
 
     /* The format we want our API to return */
     private static final String format = "json";
-    /* The units we want our API to return */
+    /*
+     * The units we want our API to return. Always metric, which is what the database stores,
+     * the user's units are only applied when the weather is formatted, see UnitFormatter.
+     */
     private static final String units = "metric";
 
 
+    /* The location the weather is fetched for */
+    static final String DEFAULT_LOCATION = "Mountain View, CA";
+    static final double DEFAULT_LATITUDE = 37.3861;
+    static final double DEFAULT_LONGITUDE = -122.0839;
+
     /* The query parameter allows us to provide a location string to the API */
     private static final String QUERY_PARAM = "q";
+    /* The latitude and longitude parameters are used instead of it for a position */
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+
+    /*
+     * A location query which is a position rather than a name, as a geo URI (RFC 5870), such as
+     * "geo:37.386,-122.084". Three decimals are about a hundred meters, finer than any forecast.
+     */
+    private static final String COORDINATE_QUERY_SCHEME = "geo:";
+    private static final String COORDINATE_QUERY_FORMAT = COORDINATE_QUERY_SCHEME + "%.3f,%.3f";
 
     /* The format parameter allows us to designate whether we want JSON or XML from our API */
     private static final String FORMAT_PARAM = "mode";
@@ -74,35 +121,151 @@ final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /* Directive of the Cache-Control header saying how long a response stays fresh */
+    private static final String MAX_AGE_DIRECTIVE = "max-age=";
+
+    /**
+     * @return The location query for a position, which the URLs built here turn into latitude and
+     * longitude parameters
+     */
+    static String getCoordinateQuery(double latitude, double longitude) {
+        return String.format(Locale.US, COORDINATE_QUERY_FORMAT, latitude, longitude);
+    }
+
+    /**
+     * @return Whether a location query is a position, see {@link #getCoordinateQuery}
+     */
+    static boolean isCoordinateQuery(String locationQuery) {
+        return locationQuery.startsWith(COORDINATE_QUERY_SCHEME);
+    }
+
     /**
      * Retrieves the proper URL to query for the weather data.
      *
+     * @param baseUrl       Scheme, host and port of the server, such as a LocalWeatherServer,
+     *                      or null for the fake weather server
+     * @param locationQuery The location that will be queried for.
      * @return URL to query weather service
      */
-    static URL getUrl() {
-        String locationQuery = "Mountain View, CA";
-        return buildUrlWithLocationQuery(locationQuery);
+    static URL getUrl(String baseUrl, String locationQuery) {
+        return buildUrlWithLocationQuery(baseUrl, locationQuery);
+    }
+
+    /**
+     * Retrieves the URL to query for the days which changed since a version of the forecast.
+     *
+     * @param baseUrl       Scheme, host and port of the server, such as a LocalWeatherServer,
+     *                      or null for the fake weather server
+     * @param locationQuery The location that will be queried for.
+     * @param sinceVersion  Version of the forecast the app has stored
+     * @return URL to query for the changes
+     */
+    static URL getDeltaUrl(String baseUrl, String locationQuery, String sinceVersion) {
+        Uri deltaQueryUri = getWeatherQueryUri(baseUrl, locationQuery).buildUpon()
+                .appendPath(DELTA_PATH)
+                .appendQueryParameter(SINCE_PARAM, sinceVersion)
+                .build();
+        return toUrl(deltaQueryUri);
+    }
+
+    /**
+     * Retrieves the URL to query for the forecasts of several locations at once.
+     *
+     * @param baseUrl         Scheme, host and port of the server, such as a LocalWeatherServer,
+     *                        or null for the fake weather server
+     * @param locationQueries The locations that will be queried for, by name. Group queries
+     *                        can't carry positions.
+     * @return URL to query for all of their forecasts
+     */
+    static URL getGroupUrl(String baseUrl, List<String> locationQueries) {
+        Uri.Builder groupQueryBuilder = Uri.parse(withBaseUrl(baseUrl, FORECAST_BASE_URL))
+                .buildUpon()
+                .appendPath(GROUP_PATH);
+        for (String locationQuery : locationQueries) {
+            groupQueryBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+        Uri groupQueryUri = groupQueryBuilder
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(WeatherDataSource.NUM_DAYS))
+                .build();
+        return toUrl(groupQueryUri);
+    }
+
+    /**
+     * Retrieves the proper URL to query for the three hour forecast.
+     *
+     * @param baseUrl       Scheme, host and port of the server, such as a LocalWeatherServer,
+     *                      or null for the fake weather server
+     * @param locationQuery The location that will be queried for.
+     * @return URL to query the three hour forecast
+     */
+    static URL getHourlyUrl(String baseUrl, String locationQuery) {
+        Uri hourlyQueryUri = appendLocation(
+                Uri.parse(withBaseUrl(baseUrl, HOURLY_FORECAST_BASE_URL)).buildUpon(),
+                locationQuery)
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM,
+                        Integer.toString(WeatherNetworkDataSource.NUM_HOURLY_SLOTS))
+                .build();
+        return toUrl(hourlyQueryUri);
     }
 
     /**
      * Builds the URL used to talk to the weather server using a location. This location is based
-     * on the query capabilities of the weather provider that we are using.
+     * on the query capabilities of the weather provider that we are using, either a name or a
+     * position from {@link #getCoordinateQuery}.
      *
+     * @param baseUrl       Scheme, host and port of the server, such as a LocalWeatherServer,
+     *                      or null for the fake weather server
      * @param locationQuery The location that will be queried for.
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                .appendQueryParameter(QUERY_PARAM, locationQuery)
+    private static URL buildUrlWithLocationQuery(String baseUrl, String locationQuery) {
+        return toUrl(getWeatherQueryUri(baseUrl, locationQuery));
+    }
+
+    private static Uri getWeatherQueryUri(String baseUrl, String locationQuery) {
+        return appendLocation(Uri.parse(withBaseUrl(baseUrl, FORECAST_BASE_URL)).buildUpon(),
+                locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(WeatherNetworkDataSource.NUM_DAYS))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(WeatherDataSource.NUM_DAYS))
                 .build();
+    }
+
+    /**
+     * Adds a location to a query, as latitude and longitude if it is a position and as a name
+     * otherwise.
+     */
+    private static Uri.Builder appendLocation(Uri.Builder builder, String locationQuery) {
+        if (!isCoordinateQuery(locationQuery)) {
+            return builder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+        String[] coordinates =
+                locationQuery.substring(COORDINATE_QUERY_SCHEME.length()).split(",");
+        return builder
+                .appendQueryParameter(LAT_PARAM, coordinates[0])
+                .appendQueryParameter(LON_PARAM, coordinates[1]);
+    }
 
+    /**
+     * Moves a URL onto another server, keeping its path.
+     *
+     * @param baseUrl Scheme, host and port of the server, null to leave the URL as it is
+     */
+    private static String withBaseUrl(String baseUrl, String url) {
+        if (baseUrl == null) return url;
+        // The path starts at the first slash after the scheme's "//"
+        return baseUrl + url.substring(url.indexOf('/', url.indexOf("//") + 2));
+    }
+
+    private static URL toUrl(Uri uri) {
         try {
-            URL weatherQueryUrl = new URL(weatherQueryUri.toString());
-            Log.v(TAG, "URL: " + weatherQueryUrl);
-            return weatherQueryUrl;
+            URL url = new URL(uri.toString());
+            Log.v(TAG, "URL: " + url);
+            return url;
         } catch (MalformedURLException e) {
             e.printStackTrace();
             return null;
@@ -117,22 +280,148 @@ final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     static String getResponseFromHttpUrl(URL url) throws IOException {
+        return getResponse(url).getBody();
+    }
+
+    /**
+     * Fetches the HTTP response along with how long the server says it stays fresh.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @return The {@link Response}
+     * @throws IOException Related to network and stream reading
+     */
+    static Response getResponse(URL url) throws IOException {
+        return getResponse(url, null);
+    }
+
+    /**
+     * Fetches the HTTP response, asking for it in one of the given content types.
+     *
+     * @param url    The URL to fetch the HTTP response from.
+     * @param accept Value of the Accept header, null to leave it out
+     * @return The {@link Response}
+     * @throws IOException Related to network and stream reading
+     */
+    static Response getResponse(URL url, String accept) throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
         try {
+            if (accept != null) urlConnection.setRequestProperty("Accept", accept);
             InputStream in = urlConnection.getInputStream();
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) body.write(buffer, 0, read);
+            in.close();
+            return new Response(body.toByteArray(), urlConnection.getContentType(),
+                    getMaxAgeSeconds(urlConnection));
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
-            }
-            scanner.close();
-            return response;
+    /**
+     * Hands the HTTP response to a reader while it is being downloaded, rather than reading it
+     * into a String first.
+     *
+     * @param url        The URL to fetch the HTTP response from.
+     * @param bodyReader Reads the body of the response
+     * @return What the reader returned
+     * @throws IOException Related to network and stream reading
+     */
+    static <T> T readResponse(URL url, BodyReader<T> bodyReader) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            return bodyReader.read(urlConnection.getInputStream());
         } finally {
             urlConnection.disconnect();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the freshness lifetime of a response from its Cache-Control max-age directive, or
+     * failing that from its Expires and Date headers.
+     *
+     * @return Seconds the response stays fresh for, 0 if the server didn't say
+     */
+    private static long getMaxAgeSeconds(HttpURLConnection urlConnection) {
+        String cacheControl = urlConnection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim();
+                if (directive.startsWith(MAX_AGE_DIRECTIVE)) {
+                    try {
+                        return Long.parseLong(directive.substring(MAX_AGE_DIRECTIVE.length()));
+                    } catch (NumberFormatException e) {
+                        Log.w(TAG, "Invalid Cache-Control: " + cacheControl);
+                    }
+                }
+            }
+        }
+        long expiration = urlConnection.getExpiration();
+        long date = urlConnection.getDate();
+        if (expiration > 0 && date > 0 && expiration > date) {
+            return TimeUnit.MILLISECONDS.toSeconds(expiration - date);
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the body of a response as it streams in, see {@link #readResponse}
+     */
+    interface BodyReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    /**
+     * Body of an HTTP response, its type and how long it stays fresh
+     */
+    static final class Response {
+        private final ByteBuffer mBody;
+        private final String mContentType;
+        private final long mMaxAgeSeconds;
+
+        Response(byte[] body, String contentType, long maxAgeSeconds) {
+            this(ByteBuffer.wrap(body), contentType, maxAgeSeconds);
+        }
+
+        /**
+         * @param body From its position to its limit, such as a slice of a memory mapped file,
+         *             which is then read without being copied
+         */
+        Response(ByteBuffer body, String contentType, long maxAgeSeconds) {
+            mBody = body;
+            mContentType = contentType;
+            mMaxAgeSeconds = maxAgeSeconds;
+        }
+
+        /**
+         * @return The body as text, null if it is empty
+         */
+        String getBody() {
+            return mBody.hasRemaining() ? UTF_8.decode(mBody.duplicate()).toString() : null;
+        }
+
+        /**
+         * @return A view of the body, which shares its bytes
+         */
+        ByteBuffer getBodyBuffer() {
+            return mBody.duplicate();
+        }
+
+        int getBodyLength() {
+            return mBody.remaining();
+        }
+
+        /**
+         * @return Value of the Content-Type header, null if the server didn't send one
+         */
+        String getContentType() {
+            return mContentType;
+        }
+
+        long getMaxAgeSeconds() {
+            return mMaxAgeSeconds;
+        }
+    }
+}
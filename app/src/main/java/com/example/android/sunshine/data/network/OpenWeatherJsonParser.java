@@ -16,7 +16,9 @@
 package com.example.android.sunshine.data.network;
 
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
 
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
 import com.example.android.sunshine.data.database.WeatherEntry;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
@@ -24,8 +26,14 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Parser for OpenWeatherMap JSON data.
@@ -52,6 +60,22 @@ final class OpenWeatherJsonParser {
 
     private static final String OWM_MESSAGE_CODE = "cod";
 
+    // Only sent by servers which support delta syncs. A delta is marked as not being "full" and
+    // each of its days carries its offset from today, since the unchanged days are left out.
+    private static final String OWM_VERSION = "version";
+    private static final String OWM_FULL = "full";
+    private static final String OWM_FULL_LENGTH = "fullLength";
+    private static final String OWM_DAY = "day";
+
+    // A group response has one element in its "list" per location, each laid out like the
+    // response for that location alone plus the location it is for
+    private static final String OWM_LOCATION = "location";
+
+    // Three hour forecast slots carry their own time, in seconds, and group their measurements
+    private static final String OWM_DATE_TIME = "dt";
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_WIND = "wind";
+
     private static boolean hasHttpError(JSONObject forecastJson) throws JSONException {
         if (forecastJson.has(OWM_MESSAGE_CODE)) {
             int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
@@ -86,8 +110,10 @@ final class OpenWeatherJsonParser {
             // Get the JSON object representing the day
             JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
 
-            // Create the weather entry object
-            long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
+            // Create the weather entry object. Days of a delta say where they go, the days of a
+            // full forecast are in order.
+            int day = dayForecast.optInt(OWM_DAY, i);
+            long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * day;
             WeatherEntry weather = fromJson(dayForecast, dateTimeMillis);
 
             weatherEntries[i] = weather;
@@ -124,6 +150,38 @@ final class OpenWeatherJsonParser {
                 humidity, pressure, windSpeed, windDirection);
     }
 
+    private static HourlyWeatherEntry[] hourlyFromJson(final JSONObject forecastJson)
+            throws JSONException {
+        JSONArray jsonSlotArray = forecastJson.getJSONArray(OWM_LIST);
+
+        HourlyWeatherEntry[] hourlyEntries = new HourlyWeatherEntry[jsonSlotArray.length()];
+        for (int i = 0; i < jsonSlotArray.length(); i++) {
+            hourlyEntries[i] = slotFromJson(jsonSlotArray.getJSONObject(i));
+        }
+        return hourlyEntries;
+    }
+
+    private static HourlyWeatherEntry slotFromJson(final JSONObject slotForecast)
+            throws JSONException {
+        // Unlike the daily forecast, each slot says when it starts
+        long dateTimeMillis = TimeUnit.SECONDS.toMillis(slotForecast.getLong(OWM_DATE_TIME));
+
+        JSONObject mainObject = slotForecast.getJSONObject(OWM_MAIN);
+        double temperature = mainObject.getDouble(OWM_TEMPERATURE);
+        double pressure = mainObject.getDouble(OWM_PRESSURE);
+        double humidity = mainObject.getDouble(OWM_HUMIDITY);
+
+        JSONObject windObject = slotForecast.getJSONObject(OWM_WIND);
+        double windSpeed = windObject.getDouble(OWM_WINDSPEED);
+        double windDirection = windObject.getDouble(OWM_WIND_DIRECTION);
+
+        int weatherId = slotForecast.getJSONArray(OWM_WEATHER).getJSONObject(0)
+                .getInt(OWM_WEATHER_ID);
+
+        return new HourlyWeatherEntry(weatherId, new Date(dateTimeMillis), temperature, humidity,
+                pressure, windSpeed, windDirection);
+    }
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
@@ -143,6 +201,183 @@ final class OpenWeatherJsonParser {
 
         WeatherEntry[] weatherForecast = fromJson(forecastJson);
 
-        return new WeatherResponse(weatherForecast);
+        String version = forecastJson.optString(OWM_VERSION, null);
+        boolean delta = !forecastJson.optBoolean(OWM_FULL, true);
+        return new WeatherResponse(weatherForecast, version, delta,
+                forecastJson.optInt(OWM_FULL_LENGTH, 0));
+    }
+
+    /**
+     * Parses the response of a group query while it is being downloaded, handing over each
+     * location's forecast as soon as it has been read. Only one location's forecast is held in
+     * memory at a time, however many locations the response holds.
+     *
+     * @param in      Body of the response
+     * @param handler Receives the forecast of each location
+     * @return Number of locations which were handed over
+     * @throws IOException If the body can't be read or isn't valid JSON
+     */
+    int parseGroup(InputStream in, GroupHandler handler) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        int locationCount = 0;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!OWM_LIST.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (readGroupMember(reader, handler)) locationCount++;
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return locationCount;
+    }
+
+    /**
+     * @return Whether the location's forecast was handed over, it isn't if the server reported
+     * an error for it
+     */
+    private static boolean readGroupMember(JsonReader reader, GroupHandler handler)
+            throws IOException {
+        String location = null;
+        String version = null;
+        int code = HttpURLConnection.HTTP_OK;
+        List<WeatherEntry> weatherEntries = new ArrayList<>();
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case OWM_LOCATION:
+                    location = reader.nextString();
+                    break;
+                case OWM_VERSION:
+                    version = reader.nextString();
+                    break;
+                case OWM_MESSAGE_CODE:
+                    code = reader.nextInt();
+                    break;
+                case OWM_LIST:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        weatherEntries.add(readDay(reader, weatherEntries.size(),
+                                normalizedUtcStartDay));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (location == null || code != HttpURLConnection.HTTP_OK) return false;
+        WeatherEntry[] weatherForecast =
+                weatherEntries.toArray(new WeatherEntry[weatherEntries.size()]);
+        handler.onForecast(location, new WeatherResponse(weatherForecast, version, false, 0));
+        return true;
+    }
+
+    /**
+     * Streaming counterpart of {@link #fromJson(JSONObject, long)}.
+     */
+    private static WeatherEntry readDay(JsonReader reader, int index, long normalizedUtcStartDay)
+            throws IOException {
+        int day = index;
+        int weatherId = 0;
+        double max = 0;
+        double min = 0;
+        int humidity = 0;
+        double pressure = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case OWM_DAY:
+                    day = reader.nextInt();
+                    break;
+                case OWM_PRESSURE:
+                    pressure = reader.nextDouble();
+                    break;
+                case OWM_HUMIDITY:
+                    humidity = reader.nextInt();
+                    break;
+                case OWM_WINDSPEED:
+                    windSpeed = reader.nextDouble();
+                    break;
+                case OWM_WIND_DIRECTION:
+                    windDirection = reader.nextDouble();
+                    break;
+                case OWM_TEMPERATURE:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (OWM_MAX.equals(name)) max = reader.nextDouble();
+                        else if (OWM_MIN.equals(name)) min = reader.nextDouble();
+                        else reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                case OWM_WEATHER:
+                    // Only the first element's code is used, like the non streaming parser
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                                weatherId = reader.nextInt();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    while (reader.hasNext()) reader.skipValue();
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * day;
+        return new WeatherEntry(weatherId, new Date(dateTimeMillis), max, min,
+                humidity, pressure, windSpeed, windDirection);
+    }
+
+    /**
+     * This method parses the three hour forecast JSON from a web response.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @return The forecast slots, or null if the server reported an error
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    @Nullable
+    HourlyWeatherEntry[] parseHourly(final String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // Is there an error?
+        if (hasHttpError(forecastJson)) {
+            return null;
+        }
+
+        return hourlyFromJson(forecastJson);
+    }
+
+    /**
+     * Receives the forecasts of a group response, one location at a time.
+     */
+    interface GroupHandler {
+        void onForecast(String location, WeatherResponse response);
     }
-}
\ No newline at end of file
+}
@@ -43,7 +43,12 @@ public class SunshineFirebaseJobService extends JobService {
 
         WeatherNetworkDataSource networkDataSource =
                 InjectorUtils.provideNetworkDataSource(this.getApplicationContext());
-        networkDataSource.fetchWeather();
+        if (SyncQueue.RETRY_SYNC_TAG.equals(jobParameters.getTag())) {
+            // A queued fetch is due or connectivity is back
+            networkDataSource.flushPendingFetches();
+        } else {
+            networkDataSource.fetchWeather();
+        }
 
         jobFinished(jobParameters, false);
 
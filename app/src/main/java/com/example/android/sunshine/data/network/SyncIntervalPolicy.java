@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long the recurring sync waits between fetches.
+ * <p>
+ * The interval shrinks when recent syncs changed a large share of the stored forecast and grows
+ * when they changed little or nothing. It is doubled while the app hasn't been opened for a while
+ * and is never shorter than the time the server says its response stays fresh. The history it
+ * works from is kept in {@link SharedPreferences}; the calculation itself,
+ * {@link #computeIntervalSeconds}, only depends on its arguments so it can be replayed against
+ * recorded histories.
+ */
+public class SyncIntervalPolicy {
+    private static final String LOG_TAG = SyncIntervalPolicy.class.getSimpleName();
+
+    // Interval used until there is a history to go by, the original fixed interval
+    static final long DEFAULT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+    static final long MIN_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    static final long MAX_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(12);
+
+    // Number of recent syncs remembered and how much the newest counts against the older ones
+    static final int HISTORY_SIZE = 8;
+    private static final float NEWEST_SYNC_WEIGHT = 0.5f;
+
+    // The interval is doubled when the app hasn't been in the foreground for this long
+    private static final long IDLE_MILLIS = TimeUnit.DAYS.toMillis(2);
+
+    // Changes smaller than this share of the scheduled interval aren't worth rescheduling for
+    private static final float RESCHEDULE_THRESHOLD = 0.15f;
+
+    private static final String PREFERENCES_NAME = "sync_interval_policy";
+    private static final String KEY_CHANGE_RATIOS = "change_ratios";
+    private static final String KEY_LAST_FOREGROUND = "last_foreground";
+    private static final String KEY_SERVER_MAX_AGE = "server_max_age";
+    private static final String KEY_SCHEDULED_INTERVAL = "scheduled_interval";
+
+    private final SharedPreferences mPreferences;
+
+    public SyncIntervalPolicy(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Called whenever the app comes to the foreground.
+     */
+    public void recordForeground() {
+        mPreferences.edit().putLong(KEY_LAST_FOREGROUND, System.currentTimeMillis()).apply();
+    }
+
+    /**
+     * Called with the freshness lifetime of the latest response, from its cache headers.
+     *
+     * @param maxAgeSeconds Seconds the response stays fresh for, 0 if the server didn't say
+     */
+    void recordServerMaxAge(long maxAgeSeconds) {
+        mPreferences.edit().putLong(KEY_SERVER_MAX_AGE, maxAgeSeconds).apply();
+    }
+
+    /**
+     * Called once the result of a sync has been stored.
+     *
+     * @param changedRows Number of rows which were new or differed from the stored ones
+     * @param totalRows   Number of rows the sync delivered
+     */
+    synchronized void recordSync(int changedRows, int totalRows) {
+        float changeRatio = totalRows == 0 ? 0f : Math.min(1f, (float) changedRows / totalRows);
+        float[] history = getChangeRatios();
+        int keep = Math.min(history.length, HISTORY_SIZE - 1);
+        StringBuilder encoded = new StringBuilder();
+        for (int i = history.length - keep; i < history.length; i++) {
+            encoded.append(history[i]).append(',');
+        }
+        encoded.append(changeRatio);
+        mPreferences.edit().putString(KEY_CHANGE_RATIOS, encoded.toString()).apply();
+        Log.d(LOG_TAG, "Sync changed " + changedRows + " of " + totalRows + " rows");
+    }
+
+    /**
+     * @return The interval the recurring sync should use now
+     */
+    long getIntervalSeconds() {
+        long sinceForeground = System.currentTimeMillis()
+                - mPreferences.getLong(KEY_LAST_FOREGROUND, System.currentTimeMillis());
+        return computeIntervalSeconds(getChangeRatios(), sinceForeground,
+                mPreferences.getLong(KEY_SERVER_MAX_AGE, 0));
+    }
+
+    /**
+     * @return Whether the interval has moved far enough from the scheduled one to reschedule
+     */
+    boolean shouldReschedule(long intervalSeconds) {
+        long scheduled = mPreferences.getLong(KEY_SCHEDULED_INTERVAL, 0);
+        return scheduled == 0
+                || Math.abs(intervalSeconds - scheduled) > scheduled * RESCHEDULE_THRESHOLD;
+    }
+
+    void recordScheduledInterval(long intervalSeconds) {
+        mPreferences.edit().putLong(KEY_SCHEDULED_INTERVAL, intervalSeconds).apply();
+    }
+
+    private float[] getChangeRatios() {
+        String encoded = mPreferences.getString(KEY_CHANGE_RATIOS, "");
+        if (TextUtils.isEmpty(encoded)) return new float[0];
+        String[] parts = encoded.split(",");
+        float[] changeRatios = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            changeRatios[i] = Float.parseFloat(parts[i]);
+        }
+        return changeRatios;
+    }
+
+    /**
+     * Computes the sync interval from a history of syncs.
+     *
+     * @param changeRatios          Share of the rows each recent sync changed, oldest first
+     * @param millisSinceForeground Time since the app was last in the foreground
+     * @param serverMaxAgeSeconds   Seconds the latest response stays fresh for, 0 if unknown
+     * @return The interval in seconds, between {@link #MIN_INTERVAL_SECONDS} and
+     * {@link #MAX_INTERVAL_SECONDS}
+     */
+    static long computeIntervalSeconds(float[] changeRatios, long millisSinceForeground,
+                                       long serverMaxAgeSeconds) {
+        long interval;
+        if (changeRatios.length == 0) {
+            interval = DEFAULT_INTERVAL_SECONDS;
+        } else {
+            // Exponentially weighted average, so a burst of changes is reacted to quickly and
+            // then forgotten once the forecast settles down
+            float volatility = changeRatios[0];
+            for (int i = 1; i < changeRatios.length; i++) {
+                volatility = NEWEST_SYNC_WEIGHT * changeRatios[i]
+                        + (1 - NEWEST_SYNC_WEIGHT) * volatility;
+            }
+            interval = MAX_INTERVAL_SECONDS
+                    - (long) ((MAX_INTERVAL_SECONDS - MIN_INTERVAL_SECONDS) * volatility);
+        }
+
+        // Nobody is looking, so fresh data isn't worth the battery
+        if (millisSinceForeground > IDLE_MILLIS) interval *= 2;
+
+        // Fetching before the server's copy expires would only return the same data
+        interval = Math.max(interval, serverMaxAgeSeconds);
+
+        return Math.max(MIN_INTERVAL_SECONDS, Math.min(MAX_INTERVAL_SECONDS, interval));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.SyncRequestDao;
+import com.example.android.sunshine.data.database.SyncRequestEntry;
+import com.firebase.jobdispatcher.Constraint;
+import com.firebase.jobdispatcher.FirebaseJobDispatcher;
+import com.firebase.jobdispatcher.GooglePlayDriver;
+import com.firebase.jobdispatcher.Job;
+import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.Trigger;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue of weather fetches which haven't succeeded yet, one per location.
+ * <p>
+ * A fetch which fails while the device is online is retried after an exponential backoff with
+ * jitter, so that many devices failing at once don't all come back at the same moment. A fetch
+ * which fails because the device is offline doesn't count as an attempt. Whenever requests are
+ * left in the queue, a one-off job is scheduled for the earliest of them, constrained to run on
+ * any network, so the queue is flushed as soon as connectivity comes back.
+ */
+class SyncQueue {
+    private static final String LOG_TAG = SyncQueue.class.getSimpleName();
+
+    // Tag of the one-off job which flushes the queue
+    static final String RETRY_SYNC_TAG = "sunshine-sync-retry";
+
+    // Backoff after the first failure, doubled after each following one
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // Past this the recurring sync would have tried again anyway
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(3);
+    // How late past its window the retry job may run
+    private static final int RETRY_FLEXTIME_SECONDS = 60;
+
+    private final Context mContext;
+    private final SyncRequestDao mSyncRequestDao;
+    private final Random mRandom = new Random();
+
+    SyncQueue(Context context, SyncRequestDao syncRequestDao) {
+        mContext = context;
+        mSyncRequestDao = syncRequestDao;
+    }
+
+    /**
+     * Adds a fetch for a location, unless one is already pending for it.
+     */
+    @WorkerThread
+    void enqueue(String location) {
+        mSyncRequestDao.insertIfAbsent(new SyncRequestEntry(location, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return The requests whose backoff has run out, oldest first
+     */
+    @WorkerThread
+    List<SyncRequestEntry> getDueRequests() {
+        return mSyncRequestDao.getDueSyncRequests(System.currentTimeMillis());
+    }
+
+    /**
+     * Drops the fetch for a location, such as one the user has moved away from.
+     */
+    @WorkerThread
+    void remove(String location) {
+        mSyncRequestDao.delete(location);
+    }
+
+    @WorkerThread
+    void onSuccess(SyncRequestEntry request) {
+        mSyncRequestDao.delete(request.getLocation());
+    }
+
+    /**
+     * Backs a request off after a failed attempt.
+     */
+    @WorkerThread
+    void onFailure(SyncRequestEntry request) {
+        int attempts = request.getAttempts() + 1;
+        long backoff = getBackoffMillis(attempts, mRandom);
+        mSyncRequestDao.updateBackoff(request.getLocation(), attempts,
+                System.currentTimeMillis() + backoff);
+        Log.d(LOG_TAG, "Fetch for " + request.getLocation() + " failed " + attempts
+                + " times, retrying in " + TimeUnit.MILLISECONDS.toSeconds(backoff) + "s");
+    }
+
+    /**
+     * Schedules the retry job for the earliest pending request, or cancels it if the queue is
+     * empty.
+     */
+    @WorkerThread
+    void scheduleRetry() {
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(mContext));
+        Long nextAttemptAt = mSyncRequestDao.getNextAttemptAt();
+        if (nextAttemptAt == null) {
+            dispatcher.cancel(RETRY_SYNC_TAG);
+            return;
+        }
+
+        int delaySeconds = (int) Math.max(0,
+                TimeUnit.MILLISECONDS.toSeconds(nextAttemptAt - System.currentTimeMillis()));
+        Job retryJob = dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(RETRY_SYNC_TAG)
+                // Waiting for a network is what makes the queue flush when connectivity returns
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                .setLifetime(Lifetime.FOREVER)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(delaySeconds,
+                        delaySeconds + RETRY_FLEXTIME_SECONDS))
+                .setReplaceCurrent(true)
+                .build();
+        dispatcher.schedule(retryJob);
+        Log.d(LOG_TAG, "Retry job scheduled in " + delaySeconds + "s");
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the backoff is fixed and the other half
+     * is random, so retries are spread out without ever coming back immediately.
+     *
+     * @param attempts Number of attempts which have failed so far, at least one
+     * @param random   Source of the jitter
+     * @return Time in milliseconds to wait before the next attempt
+     */
+    static long getBackoffMillis(int attempts, Random random) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << doublings);
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+}
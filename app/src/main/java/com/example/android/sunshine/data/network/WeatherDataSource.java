@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.WorkerThread;
+
+import com.example.android.sunshine.SyncTracer;
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+/**
+ * Where the repository gets its weather from. {@link WeatherNetworkDataSource} fetches it over
+ * HTTP, from the weather server or from a {@link LocalWeatherServer}, or reads the daily forecast
+ * from the bundled {@link ForecastFixture} when there is to be no network at all.
+ */
+public interface WeatherDataSource {
+
+    /**
+     * The number of days of forecast a sync brings, set to 14 days or two weeks
+     */
+    int NUM_DAYS = 14;
+
+    /**
+     * Sets where downloaded forecasts go. Anything downloaded before a sink was set is delivered
+     * to it straight away.
+     */
+    void setDownloadSink(DownloadSink downloadSink);
+
+    /**
+     * Fetches the weather now, in the background.
+     */
+    void startFetchWeatherService();
+
+    /**
+     * Makes sure the weather keeps being fetched regularly.
+     */
+    void scheduleRecurringFetchWeatherSync();
+
+    /**
+     * Called by the repository once a sync has been stored.
+     *
+     * @param syncId      The sync the forecast was downloaded by, as handed to the
+     *                    {@link DownloadSink}
+     * @param changedRows Number of rows which were new or differed from the stored ones
+     * @param totalRows   Number of rows in the forecast, including the ones a delta left out
+     */
+    void onForecastStored(int syncId, int changedRows, int totalRows);
+
+    /**
+     * Makes the next sync download the whole forecast, rather than only what changed.
+     */
+    void requireFullFetch();
+
+    /**
+     * Fetches the weather for the city the user picked from now on.
+     */
+    void setLocation(City city);
+
+    /**
+     * Fetches the weather for where the device is from now on.
+     */
+    void setDevicePosition(double latitude, double longitude);
+
+    /**
+     * Takes the forecasts as they are downloaded, on the thread which downloaded them. It
+     * mustn't block that thread for long, nor drop anything it is given. Everything it is given
+     * is for the one location the user picked, as the repository stores a single location.
+     */
+    interface DownloadSink {
+        /**
+         * @param forecast The downloaded days. After a delta sync only the days which changed,
+         *                 possibly none at all.
+         * @param syncId   The sync the forecast was downloaded by, see {@link SyncTracer}
+         */
+        @WorkerThread
+        void onForecastDownloaded(WeatherEntry[] forecast, int syncId);
+
+        @WorkerThread
+        void onHourlyForecastDownloaded(HourlyWeatherEntry[] hourlyForecast);
+
+        /**
+         * The user moved to another location. Called before the new location is fetched, so
+         * everything stored until now is for the location they left.
+         */
+        @WorkerThread
+        void onLocationChanged();
+    }
+}
@@ -15,13 +15,21 @@
  */
 package com.example.android.sunshine.data.network;
 
-import android.arch.lifecycle.LiveData;
-import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.SyncTracer;
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.HourlyWeatherEntry;
+import com.example.android.sunshine.data.database.SyncRequestDao;
+import com.example.android.sunshine.data.database.SyncRequestEntry;
 import com.example.android.sunshine.data.database.WeatherEntry;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
@@ -31,70 +39,279 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.URL;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Provides an API for doing all operations with the server data
  */
-public class WeatherNetworkDataSource {
-    // The number of days we want our API to return, set to 14 days or two weeks
-    public static final int NUM_DAYS = 14;
+public class WeatherNetworkDataSource implements WeatherDataSource {
+    // The number of three hour slots we want our API to return, set to 40 or five days
+    public static final int NUM_HOURLY_SLOTS = 40;
     private static final String LOG_TAG = WeatherNetworkDataSource.class.getSimpleName();
 
-    // Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-    // writing out a bunch of multiplication ourselves and risk making a silly mistake.
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    // The interval at which to sync with the weather is decided by the SyncIntervalPolicy. The
+    // job may run up to a third of the interval late.
+    private static final int SYNC_FLEXTIME_DIVISOR = 3;
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
 
+    // Largest number of locations fetched in one group query unless set otherwise. Matches the
+    // limit OpenWeatherMap puts on its group queries.
+    public static final int DEFAULT_GROUP_BATCH_SIZE = 20;
+
+    // A device position this close to the location being fetched, or to a known city, gets that
+    // location's forecast. Forecasts don't change over shorter distances.
+    private static final double SNAP_DISTANCE_KM = 15;
+
     // For Singleton instantiation
     private static final Object LOCK = new Object();
-    private static WeatherNetworkDataSource sInstance;
+    private static volatile WeatherNetworkDataSource sInstance;
+    // Scheme, host and port of the server the singleton fetches from, null for the fake weather
+    // server
+    private static volatile String sServerBaseUrl;
     private final Context mContext;
+    // Neither schedules jobs nor follows setServerBaseUrl, see newStandaloneInstance
+    private final boolean mStandalone;
+    // Server a standalone instance fetches from
+    private final String mServerBaseUrl;
 
-    // LiveData storing the latest downloaded weather forecasts
-    private final MutableLiveData<WeatherEntry[]> mDownloadedWeatherForecasts;
+    // Takes every downloaded forecast, set by the repository
+    private final Object mSinkLock = new Object();
+    private DownloadSink mDownloadSink;
+    // Deliveries made before there was a sink, in the order they were made
+    private final List<Runnable> mUndelivered = new ArrayList<>();
     private final AppExecutors mExecutors;
+    // Fetches which haven't succeeded yet
+    private final SyncQueue mSyncQueue;
+    // Decides how often the recurring sync runs
+    private final SyncIntervalPolicy mSyncIntervalPolicy;
+    // Versions of the stored forecast, which let a sync only download what changed
+    private final DeltaSyncState mDeltaSyncState;
+    // The location the user picked
+    private final LocationPreferences mLocationPreferences;
+    // Matches device positions to cities
+    private final CityDatabase mCityDatabase;
+    // Serves daily forecasts without a network when USE_FORECAST_FIXTURE is set, null to fetch
+    // them from the weather server
+    private final ForecastFixture mForecastFixture;
+    private volatile int mGroupBatchSize = DEFAULT_GROUP_BATCH_SIZE;
+    // Cleared once the server turns out not to support group queries
+    private volatile boolean mGroupQueriesSupported = true;
+    // Formats the daily forecast may come in, most preferred first. JSON comes last, as every
+    // server supports it.
+    private final List<ForecastCodec> mForecastCodecs =
+            Arrays.asList(new BinaryForecastCodec(), new JsonForecastCodec());
+    private final SyncTracer mTracer = SyncTracer.getInstance();
+    // Held while the queue is worked through, so that only one flush runs at a time
+    private final Object mFlushLock = new Object();
 
-    private WeatherNetworkDataSource(Context context, AppExecutors executors) {
+    private WeatherNetworkDataSource(Context context, AppExecutors executors,
+                                     SyncRequestDao syncRequestDao, CityDatabase cityDatabase,
+                                     boolean standalone, String serverBaseUrl) {
         mContext = context;
+        mStandalone = standalone;
+        mServerBaseUrl = serverBaseUrl;
         mExecutors = executors;
-        mDownloadedWeatherForecasts = new MutableLiveData<WeatherEntry[]>();
+        mSyncQueue = new SyncQueue(context, syncRequestDao);
+        mSyncIntervalPolicy = new SyncIntervalPolicy(context);
+        mDeltaSyncState = new DeltaSyncState(context);
+        mLocationPreferences = new LocationPreferences(context);
+        mCityDatabase = cityDatabase;
+        mForecastFixture = BuildConfig.USE_FORECAST_FIXTURE && !standalone
+                ? openForecastFixture(context) : null;
+    }
+
+    /**
+     * @return The bundled forecast fixture, or null if it can't be opened
+     */
+    private static ForecastFixture openForecastFixture(Context context) {
+        try {
+            return ForecastFixture.open(context);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "No forecast fixture, fetching from the weather server", e);
+            return null;
+        }
     }
 
     /**
      * Get the singleton for this class
      */
-    public static WeatherNetworkDataSource getInstance(Context context, AppExecutors executors) {
-        Log.d(LOG_TAG, "Getting the network data source");
-        if (sInstance == null) {
+    public static WeatherNetworkDataSource getInstance(Context context, AppExecutors executors,
+                                                       SyncRequestDao syncRequestDao,
+                                                       CityDatabase cityDatabase) {
+        WeatherNetworkDataSource instance = sInstance;
+        if (instance == null) {
             synchronized (LOCK) {
-                sInstance = new WeatherNetworkDataSource(context.getApplicationContext(), executors);
-                Log.d(LOG_TAG, "Made new network data source");
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new WeatherNetworkDataSource(context.getApplicationContext(),
+                            executors, syncRequestDao, cityDatabase, false, null);
+                    sInstance = instance;
+                    Log.d(LOG_TAG, "Made new network data source");
+                }
             }
         }
-        return sInstance;
+        return instance;
+    }
+
+    /**
+     * Makes a data source, apart from the singleton, which fetches from the given server. It
+     * never schedules a job, neither the recurring sync nor retries, and fetches straight away
+     * rather than through the sync service, so that load tests can drive it without touching
+     * the app's own syncs. Its state is kept in the preferences of the context, which should
+     * keep them apart from the app's.
+     *
+     * @param serverBaseUrl Scheme, host and port of the server, such as a
+     *                      {@link LocalWeatherServer}
+     */
+    public static WeatherNetworkDataSource newStandaloneInstance(Context context,
+                                                                 AppExecutors executors,
+                                                                 SyncRequestDao syncRequestDao,
+                                                                 CityDatabase cityDatabase,
+                                                                 String serverBaseUrl) {
+        return new WeatherNetworkDataSource(context, executors, syncRequestDao, cityDatabase,
+                true, serverBaseUrl);
     }
 
-    public LiveData<WeatherEntry[]> getCurrentWeatherForecasts() {
-        return mDownloadedWeatherForecasts;
+    /**
+     * Points every fetch of the singleton at another server, such as a
+     * {@link LocalWeatherServer}.
+     *
+     * @param baseUrl Scheme, host and port of the server, or null for the fake weather server
+     */
+    public static void setServerBaseUrl(String baseUrl) {
+        sServerBaseUrl = baseUrl;
+    }
+
+    /**
+     * @return Scheme, host and port of the server to fetch from, null for the fake weather server
+     */
+    private String getServerBaseUrl() {
+        return mStandalone ? mServerBaseUrl : sServerBaseUrl;
+    }
+
+    @Override
+    public void setDownloadSink(DownloadSink downloadSink) {
+        synchronized (mSinkLock) {
+            mDownloadSink = downloadSink;
+            for (Runnable delivery : mUndelivered) delivery.run();
+            mUndelivered.clear();
+        }
+    }
+
+    /**
+     * Delivers to the sink on the calling thread, or holds on to the delivery until there is a
+     * sink. Deliveries reach the sink one at a time, in the order they were made.
+     */
+    private void deliver(Runnable delivery) {
+        synchronized (mSinkLock) {
+            if (mDownloadSink == null) {
+                mUndelivered.add(delivery);
+            } else {
+                delivery.run();
+            }
+        }
     }
 
     /**
      * Starts an intent service to fetch the weather.
      */
+    @Override
     public void startFetchWeatherService() {
+        if (mStandalone) {
+            fetchWeather();
+            return;
+        }
         Intent intentToFetch = new Intent(mContext, SunshineSyncIntentService.class);
         mContext.startService(intentToFetch);
         Log.d(LOG_TAG, "Service created");
     }
 
     /**
-     * Schedules a repeating job service which fetches the weather.
+     * Schedules a repeating job service which fetches the weather, at the interval currently
+     * picked by the {@link SyncIntervalPolicy}.
      */
+    @Override
     public void scheduleRecurringFetchWeatherSync() {
+        scheduleRecurringFetchWeatherSync(mSyncIntervalPolicy.getIntervalSeconds());
+    }
+
+    /**
+     * Called by the repository once a sync has been stored. Feeds the {@link SyncIntervalPolicy}
+     * and reschedules the recurring sync if the interval it picks has moved.
+     *
+     * @param syncId      The sync which downloaded the forecast
+     * @param changedRows Number of rows which were new or differed from the stored ones
+     * @param totalRows   Number of rows in the forecast, including the ones a delta left out
+     */
+    @Override
+    public void onForecastStored(int syncId, int changedRows, int totalRows) {
+        // Later deltas of the location can build on what was just stored
+        mDeltaSyncState.commitPendingVersion(syncId);
+        mSyncIntervalPolicy.recordSync(changedRows, totalRows);
+        long intervalSeconds = mSyncIntervalPolicy.getIntervalSeconds();
+        if (mSyncIntervalPolicy.shouldReschedule(intervalSeconds)) {
+            scheduleRecurringFetchWeatherSync(intervalSeconds);
+        }
+    }
+
+    /**
+     * Sets how many locations are fetched in one group query, when several are due at once.
+     *
+     * @param groupBatchSize Number of locations per request, 1 fetches every location on its own
+     */
+    public void setGroupBatchSize(int groupBatchSize) {
+        mGroupBatchSize = Math.max(1, groupBatchSize);
+    }
+
+    /**
+     * Queues a fetch of every location and works through the queue on the calling thread. Once
+     * this returns, every forecast which was downloaded has been handed to the download sink and
+     * whatever failed is still queued.
+     */
+    @WorkerThread
+    public void fetchLocations(List<String> locations) {
+        for (String location : locations) mSyncQueue.enqueue(location);
+        flushSyncQueue();
+    }
+
+    /**
+     * @return Bytes of daily forecast downloaded, since the app was installed
+     */
+    @WorkerThread
+    public long getBytesReceived() {
+        return mDeltaSyncState.getBytesReceived();
+    }
+
+    /**
+     * @return Bytes of daily forecast which delta syncs didn't have to download, since the app
+     * was installed
+     */
+    @WorkerThread
+    public long getBytesSaved() {
+        return mDeltaSyncState.getBytesSaved();
+    }
+
+    /**
+     * Makes the next sync download the whole forecast. Called by the repository when the stored
+     * forecast is missing days, which a delta wouldn't bring back.
+     */
+    @Override
+    public void requireFullFetch() {
+        mDeltaSyncState.reset();
+    }
+
+    private void scheduleRecurringFetchWeatherSync(long intervalSeconds) {
+        if (mStandalone) return;
+        int syncIntervalSeconds = (int) intervalSeconds;
+        int syncFlextimeSeconds = syncIntervalSeconds / SYNC_FLEXTIME_DIVISOR;
         Driver driver = new GooglePlayDriver(mContext);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -121,15 +338,16 @@ public class WeatherNetworkDataSource {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval to interval plus a third,
+                 * 3 to 4 hours until there is a history of syncs. The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        syncIntervalSeconds,
+                        syncIntervalSeconds + syncFlextimeSeconds))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -140,52 +358,374 @@ public class WeatherNetworkDataSource {
 
         // Schedule the Job with the dispatcher
         dispatcher.schedule(syncSunshineJob);
-        Log.d(LOG_TAG, "Job scheduled");
+        mSyncIntervalPolicy.recordScheduledInterval(intervalSeconds);
+        Log.d(LOG_TAG, "Job scheduled every " + syncIntervalSeconds + "s");
     }
 
     /**
-     * Gets the newest weather
+     * Gets the newest weather. The fetch is queued first, so that if it fails it is retried
+     * with a backoff rather than dropped until the next recurring sync.
      */
     void fetchWeather() {
         Log.d(LOG_TAG, "Fetch weather started");
         mExecutors.networkIO().execute(() -> {
+            mSyncQueue.enqueue(mLocationPreferences.getLocationQuery());
+            flushSyncQueue();
+        });
+    }
+
+    /**
+     * Fetches the weather for another location from now on, starting straight away unless it
+     * already is the location.
+     */
+    @Override
+    public void setLocation(City city) {
+        mExecutors.networkIO().execute(() -> {
+            // A flush fetching the previous location finishes, and delivers, first
+            synchronized (mFlushLock) {
+                String previousLocation = mLocationPreferences.getLocationQuery();
+                mLocationPreferences.setCity(city);
+                onLocationChanged(previousLocation);
+            }
+        });
+    }
+
+    /**
+     * Fetches the weather for where the device is from now on. The position snaps to the
+     * location being fetched, or else to the nearest known city, if it is close enough, so that
+     * moving around doesn't set off a fetch whenever the device reports a new position. Only a
+     * position far from any known city is fetched as it is.
+     */
+    @Override
+    public void setDevicePosition(double latitude, double longitude) {
+        mExecutors.networkIO().execute(() -> {
+            synchronized (mFlushLock) {
+                setDevicePositionLocked(latitude, longitude);
+            }
+        });
+    }
+
+    private void setDevicePositionLocked(double latitude, double longitude) {
+        double distanceKm = City.getDistanceKm(latitude, longitude,
+                mLocationPreferences.getLatitude(), mLocationPreferences.getLongitude());
+        if (distanceKm <= SNAP_DISTANCE_KM) {
+            Log.d(LOG_TAG, String.format(Locale.US, "Position is %.1f km from %s, keeping it",
+                    distanceKm, mLocationPreferences.getLocationQuery()));
+            return;
+        }
+
+        String previousLocation = mLocationPreferences.getLocationQuery();
+        City city = mCityDatabase.findNearest(latitude, longitude);
+        if (city != null && City.getDistanceKm(latitude, longitude, city.getLatitude(),
+                city.getLongitude()) <= SNAP_DISTANCE_KM) {
+            mLocationPreferences.setCity(city);
+        } else {
+            mLocationPreferences.setPosition(latitude, longitude);
+        }
+        onLocationChanged(previousLocation);
+    }
+
+    /**
+     * Drops the queued fetch of the previous location, so that it can't overwrite the new
+     * location's forecast, has the sink clear what was stored for it, and fetches the new one.
+     * Runs on the network thread, holding the flush lock, so that no flush is fetching the
+     * previous location meanwhile. Whatever it fetched has been delivered before the sink is
+     * told to clear it, and no version of it can be stored after the reset.
+     */
+    private void onLocationChanged(String previousLocation) {
+        String location = mLocationPreferences.getLocationQuery();
+        if (location.equals(previousLocation)) return;
+        mSyncQueue.remove(previousLocation);
+        Log.d(LOG_TAG, "Location changed to " + location);
+        deliver(() -> mDownloadSink.onLocationChanged());
+        // Nothing is stored any more that a delta could be applied to
+        mDeltaSyncState.reset();
+        mSyncQueue.enqueue(location);
+        flushSyncQueue();
+    }
+
+    /**
+     * Attempts every queued fetch whose backoff has run out. Called by the retry job.
+     */
+    void flushPendingFetches() {
+        mExecutors.networkIO().execute(this::flushSyncQueue);
+    }
+
+    /**
+     * Works through the queue on the network thread. Only one flush runs at a time, a second
+     * one waits and then finds nothing left to do. Besides flushes, the flush lock is only taken
+     * to change the location, which waits for a running flush, on a network thread too.
+     */
+    private void flushSyncQueue() {
+        synchronized (mFlushLock) {
+            flushSyncQueueLocked();
+        }
+    }
+
+    private void flushSyncQueueLocked() {
+        // Without the network nothing can be fetched from the weather server
+        boolean remote = mForecastFixture == null;
+        if (remote && !isOnline()) {
+            // Nothing is attempted, the retry job will run once there is a network again
+            Log.d(LOG_TAG, "Offline, fetch left in the queue");
+            scheduleRetry();
+            return;
+        }
+
+        List<SyncRequestEntry> dueRequests = mSyncQueue.getDueRequests();
+        if (remote && dueRequests.size() > 1 && mGroupBatchSize > 1 && mGroupQueriesSupported) {
+            dueRequests = downloadWeatherGroups(dueRequests);
+        }
+
+        for (SyncRequestEntry request : dueRequests) {
+            if (downloadWeather(request.getLocation())) {
+                mSyncQueue.onSuccess(request);
+            } else if (!remote || isOnline()) {
+                mSyncQueue.onFailure(request);
+            } else {
+                // Connectivity went away, which isn't the server's fault, so don't back off
+                break;
+            }
+        }
+        scheduleRetry();
+    }
+
+    /**
+     * Schedules the retry job for what is left in the queue, unless this is standalone.
+     */
+    private void scheduleRetry() {
+        if (!mStandalone) mSyncQueue.scheduleRetry();
+    }
+
+    /**
+     * Fetches the weather for a location and posts it for the repository to store. Only the days
+     * which changed are fetched when the server knows the version of the stored forecast.
+     *
+     * @return Whether the daily forecast was fetched
+     */
+    private boolean downloadWeather(String location) {
+        boolean fetched = false;
+        int syncId = mTracer.beginSync(location);
+        try {
+            // How long the server says the response stays fresh bounds how often it is worth
+            // syncing
+            NetworkUtils.Response httpResponse;
+            mTracer.beginSection(syncId, SyncTracer.STAGE_FETCH);
             try {
+                httpResponse = mForecastFixture == null ? getForecastResponse(location)
+                        : mForecastFixture.getForecastResponse(location);
+            } finally {
+                mTracer.endSection(syncId, SyncTracer.STAGE_FETCH);
+            }
+            mSyncIntervalPolicy.recordServerMaxAge(httpResponse.getMaxAgeSeconds());
 
-                // The getUrl method will return the URL that we need to get the forecast JSON for the
-                // weather. It will decide whether to create a URL based off of the latitude and
-                // longitude or off of a simple location as a String.
+            // Decode the body, in whichever format the server picked, into a list of weather
+            // forecasts
+            ForecastCodec codec = getForecastCodec(httpResponse.getContentType());
+            WeatherResponse response;
+            mTracer.beginSection(syncId, SyncTracer.STAGE_PARSE);
+            try {
+                response = codec.decode(httpResponse.getBodyBuffer());
+            } finally {
+                mTracer.endSection(syncId, SyncTracer.STAGE_PARSE);
+            }
+            Log.d(LOG_TAG, "Decoding " + codec.getContentType() + " finished");
 
-                URL weatherRequestUrl = NetworkUtils.getUrl();
 
-                // Use the URL to retrieve the JSON
-                String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            // As long as there are weather forecasts, hand them to the download sink, which is
+            // the SunshineRepository. A delta is handed over even if nothing changed, so that the
+            // sync still counts towards the sync interval and its version gets stored.
+            if (response != null
+                    && (response.isDelta() || response.getWeatherForecast().length != 0)) {
+                Log.d(LOG_TAG, "Response not null and has " + response.getWeatherForecast().length
+                        + (response.isDelta() ? " changed" : "") + " values");
 
-                // Parse the JSON into a list of weather forecasts
-                WeatherResponse response = new OpenWeatherJsonParser().parse(jsonWeatherResponse);
-                Log.d(LOG_TAG, "JSON Parsing finished");
+                int receivedBytes = httpResponse.getBodyLength();
+                mDeltaSyncState.recordTransfer(receivedBytes,
+                        response.isDelta() ? response.getFullLength() : receivedBytes);
+                postForecast(location, response, syncId);
 
+                // If the code reaches this point, we have successfully performed our sync
+                fetched = true;
+            }
+        } catch (Exception e) {
+            // Server unreachable or invalid, or the location can't be made into a URL, the fetch
+            // stays in the queue
+            Log.e(LOG_TAG, "Fetching the weather for " + location + " failed", e);
+        }
 
-                // As long as there are weather forecasts, update the LiveData storing the most recent
-                // weather forecasts. This will trigger observers of that LiveData, such as the
-                // SunshineRepository.
-                if (response != null && response.getWeatherForecast().length != 0) {
-                    Log.d(LOG_TAG, "JSON not null and has " + response.getWeatherForecast().length
-                            + " values");
-                    Log.d(LOG_TAG, String.format("First value is %1.0f and %1.0f",
-                            response.getWeatherForecast()[0].getMin(),
-                            response.getWeatherForecast()[0].getMax()));
+        // The three hour forecast is fetched separately, so that a failure there doesn't
+        // prevent the daily forecast from being updated. Only the weather server has it.
+        if (mForecastFixture == null) fetchHourlyWeather(location);
+        return fetched;
+    }
 
-                    // When you are off of the main thread and want to update LiveData, use postValue.
-                    // It posts the update to the main thread.
-                    mDownloadedWeatherForecasts.postValue(response.getWeatherForecast());
+    /**
+     * Fetches the locations of several requests in groups of up to the batch size, one request
+     * per group. Each location's forecast is posted as soon as it has been read from the
+     * response, without waiting for the rest of the group. Only the user's location is stored,
+     * see {@link #isDelivered(String)}, the others are only taken off the queue.
+     *
+     * @return The requests which weren't fetched and still have to be tried on their own
+     */
+    private List<SyncRequestEntry> downloadWeatherGroups(List<SyncRequestEntry> requests) {
+        Map<String, SyncRequestEntry> remaining = new LinkedHashMap<>();
+        List<String> locations = new ArrayList<>();
+        for (SyncRequestEntry request : requests) {
+            remaining.put(request.getLocation(), request);
+            // Positions can't be grouped, they are fetched on their own
+            if (!NetworkUtils.isCoordinateQuery(request.getLocation())) {
+                locations.add(request.getLocation());
+            }
+        }
+        List<String> fetched = new ArrayList<>();
+        int batchSize = mGroupBatchSize;
+        int roundTrips = 0;
 
-                    // If the code reaches this point, we have successfully performed our sync
-                }
-            } catch (Exception e) {
-                // Server probably invalid
-                e.printStackTrace();
+        for (int start = 0; start < locations.size() && mGroupQueriesSupported;
+             start += batchSize) {
+            List<String> batch =
+                    locations.subList(start, Math.min(start + batchSize, locations.size()));
+            try {
+                roundTrips++;
+                NetworkUtils.readResponse(NetworkUtils.getGroupUrl(getServerBaseUrl(), batch),
+                        in -> new OpenWeatherJsonParser().parseGroup(in, (location, response) -> {
+                            SyncRequestEntry request = remaining.remove(location);
+                            // Locations which weren't asked for are ignored
+                            if (request == null || response.getWeatherForecast().length == 0) {
+                                return;
+                            }
+                            // Streamed locations have no fetch or parse stage of their own
+                            postForecast(location, response, mTracer.beginSync(location));
+                            mSyncQueue.onSuccess(request);
+                            fetched.add(location);
+                        }));
+            } catch (FileNotFoundException e) {
+                Log.w(LOG_TAG, "Group queries not supported, fetching locations one at a time");
+                mGroupQueriesSupported = false;
+            } catch (IOException e) {
+                // Whatever the group didn't deliver is tried on its own
+                Log.e(LOG_TAG, "Fetching the weather for " + batch + " failed", e);
             }
-        });
+        }
+        Log.d(LOG_TAG, "Fetched " + fetched.size() + " of " + requests.size() + " locations in "
+                + roundTrips + " round trips, saving " + Math.max(0, fetched.size() - roundTrips));
+
+        // There is no group query for the three hour forecast
+        for (String location : fetched) fetchHourlyWeather(location);
+        return new ArrayList<>(remaining.values());
+    }
+
+    /**
+     * Hands a location's forecast over to the repository, remembering its version until the
+     * repository says it has been stored. The forecast of a location other than the user's,
+     * such as one which came in the same group, is dropped.
+     */
+    private void postForecast(String location, WeatherResponse response, int syncId) {
+        if (!isDelivered(location)) {
+            Log.d(LOG_TAG, "Dropped the forecast for " + location + ", it isn't the location");
+            return;
+        }
+        mDeltaSyncState.setPendingVersion(location, syncId, response.getVersion());
+        // Ended by the repository, once its disk thread has picked the forecast up
+        mTracer.beginHop(syncId, SyncTracer.STAGE_HANDOFF);
+
+        // Straight from this thread to the sink, never through the main thread. Every forecast
+        // is delivered, even when several arrive at once.
+        WeatherEntry[] forecast = response.getWeatherForecast();
+        deliver(() -> mDownloadSink.onForecastDownloaded(forecast, syncId));
+    }
+
+    /**
+     * @return Whether the location's weather goes to the sink. The repository stores a single
+     * location, the one the user picked, so storing any other would overwrite its days. A
+     * standalone instance delivers every location, its caller picks them and owns the sink.
+     */
+    private boolean isDelivered(String location) {
+        return mStandalone || location.equals(mLocationPreferences.getLocationQuery());
+    }
+
+    /**
+     * Asks the weather server for the days which changed since the stored version of the
+     * forecast, or for the whole forecast if there is no stored version. A server which doesn't
+     * know the version answers the delta request with the whole forecast itself.
+     */
+    private NetworkUtils.Response getForecastResponse(String location) throws IOException {
+        String version = mDeltaSyncState.getVersion(location);
+        if (version != null) {
+            try {
+                return NetworkUtils.getResponse(
+                        NetworkUtils.getDeltaUrl(getServerBaseUrl(), location, version),
+                        getAcceptHeader());
+            } catch (FileNotFoundException e) {
+                // The server no longer does deltas, it will hand out a new version if it starts
+                // again
+                Log.w(LOG_TAG, "Delta sync not supported, fetching the whole forecast");
+                mDeltaSyncState.reset();
+            }
+        }
+        // The getUrl method will return the URL that we need to get the forecast JSON for the
+        // weather. It will decide whether to create a URL based off of the latitude and
+        // longitude or off of a simple location as a String.
+        URL weatherRequestUrl = NetworkUtils.getUrl(getServerBaseUrl(), location);
+        return NetworkUtils.getResponse(weatherRequestUrl, getAcceptHeader());
     }
 
-}
\ No newline at end of file
+    /**
+     * @return Accept header listing every format of the daily forecast which can be decoded,
+     * with falling preference
+     */
+    private String getAcceptHeader() {
+        StringBuilder accept = new StringBuilder();
+        for (int i = 0; i < mForecastCodecs.size(); i++) {
+            if (i > 0) accept.append(", ");
+            accept.append(mForecastCodecs.get(i).getContentType());
+            if (i > 0) accept.append(";q=0.").append(Math.max(1, 10 - i));
+        }
+        return accept.toString();
+    }
+
+    /**
+     * @return The codec for the Content-Type of a response. Servers which don't say, or name a
+     * type nothing can decode, are assumed to have sent JSON.
+     */
+    private ForecastCodec getForecastCodec(String contentType) {
+        if (contentType != null) {
+            String mediaType = contentType.split(";")[0].trim();
+            for (ForecastCodec codec : mForecastCodecs) {
+                if (codec.getContentType().equalsIgnoreCase(mediaType)) return codec;
+            }
+        }
+        return mForecastCodecs.get(mForecastCodecs.size() - 1);
+    }
+
+    /**
+     * Gets the newest three hour forecast. Called on the network thread by downloadWeather.
+     */
+    private void fetchHourlyWeather(String location) {
+        // Nothing would take it
+        if (!isDelivered(location)) return;
+        try {
+            URL hourlyRequestUrl = NetworkUtils.getHourlyUrl(getServerBaseUrl(), location);
+            String jsonHourlyResponse = NetworkUtils.getResponseFromHttpUrl(hourlyRequestUrl);
+            HourlyWeatherEntry[] hourlyForecast =
+                    new OpenWeatherJsonParser().parseHourly(jsonHourlyResponse);
+
+            if (hourlyForecast != null && hourlyForecast.length != 0) {
+                Log.d(LOG_TAG, "Hourly JSON has " + hourlyForecast.length + " values");
+                deliver(() -> mDownloadSink.onHourlyForecastDownloaded(hourlyForecast));
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Fetching the three hour forecast for " + location + " failed", e);
+        }
+    }
+
+    private boolean isOnline() {
+        // A standalone instance is meant for a server on the device, which needs no network
+        if (mStandalone) return true;
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+}
@@ -16,22 +16,55 @@
 package com.example.android.sunshine.data.network;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.example.android.sunshine.data.database.WeatherEntry;
 
 /**
- * Weather response from the backend. Contains the weather forecasts.
+ * Weather response from the backend. Contains the weather forecasts, or only the days which
+ * changed when it answers a delta request.
  */
 class WeatherResponse {
 
     @NonNull
     private final WeatherEntry[] mWeatherForecast;
+    @Nullable
+    private final String mVersion;
+    private final boolean mDelta;
+    private final int mFullLength;
 
     public WeatherResponse(@NonNull final WeatherEntry[] weatherForecast) {
+        this(weatherForecast, null, false, 0);
+    }
+
+    /**
+     * @param weatherForecast The forecasts, only the changed days if this is a delta
+     * @param version         Version of the forecast, null if the server doesn't do deltas
+     * @param delta           Whether only the changed days were sent
+     * @param fullLength      Size in bytes the full forecast would have been, for a delta
+     */
+    public WeatherResponse(@NonNull final WeatherEntry[] weatherForecast,
+                           @Nullable String version, boolean delta, int fullLength) {
         mWeatherForecast = weatherForecast;
+        mVersion = version;
+        mDelta = delta;
+        mFullLength = fullLength;
     }
 
     public WeatherEntry[] getWeatherForecast() {
         return mWeatherForecast;
     }
+
+    @Nullable
+    public String getVersion() {
+        return mVersion;
+    }
+
+    public boolean isDelta() {
+        return mDelta;
+    }
+
+    public int getFullLength() {
+        return mFullLength;
+    }
 }
\ No newline at end of file
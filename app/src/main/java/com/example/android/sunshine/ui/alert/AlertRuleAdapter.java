@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.alert;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the user's alert rules in {@link AlertRulesActivity}
+ */
+class AlertRuleAdapter extends RecyclerView.Adapter<AlertRuleAdapter.AlertRuleViewHolder> {
+
+    /**
+     * Receives the rule the user asked to delete.
+     */
+    interface AlertRuleOnDeleteHandler {
+        void onDeleteAlertRule(AlertRuleEntry alertRule);
+    }
+
+    private final AlertRuleOnDeleteHandler mDeleteHandler;
+    private List<AlertRuleEntry> mAlertRules = Collections.emptyList();
+
+    AlertRuleAdapter(AlertRuleOnDeleteHandler deleteHandler) {
+        mDeleteHandler = deleteHandler;
+    }
+
+    @Override
+    public AlertRuleViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.alert_rule_list_item, parent, false);
+        return new AlertRuleViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(AlertRuleViewHolder holder, int position) {
+        AlertRuleEntry alertRule = mAlertRules.get(position);
+        Context context = holder.itemView.getContext();
+        holder.nameView.setText(alertRule.getName());
+        holder.summaryView.setText(context.getString(R.string.alert_rule_summary,
+                alertRule.getCondition(), alertRule.getFirstDay(), alertRule.getLastDay()));
+        holder.deleteView.setContentDescription(
+                context.getString(R.string.a11y_alert_rule_delete, alertRule.getName()));
+    }
+
+    @Override
+    public int getItemCount() {
+        return mAlertRules.size();
+    }
+
+    void swapAlertRules(List<AlertRuleEntry> alertRules) {
+        mAlertRules = alertRules;
+        notifyDataSetChanged();
+    }
+
+    class AlertRuleViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView nameView;
+        final TextView summaryView;
+        final View deleteView;
+
+        AlertRuleViewHolder(View view) {
+            super(view);
+            nameView = view.findViewById(R.id.alert_rule_name);
+            summaryView = view.findViewById(R.id.alert_rule_summary);
+            deleteView = view.findViewById(R.id.alert_rule_delete);
+            deleteView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mDeleteHandler.onDeleteAlertRule(mAlertRules.get(position));
+            }
+        }
+    }
+}
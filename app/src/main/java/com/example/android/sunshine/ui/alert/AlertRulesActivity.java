@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.alert;
+
+import android.arch.lifecycle.LifecycleActivity;
+import android.arch.lifecycle.ViewModelProviders;
+import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.alert.AlertRuleCompiler;
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+import com.example.android.sunshine.data.network.WeatherDataSource;
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+/**
+ * Lets the user add and delete the rules they are notified about, such as "min < 0" for the next
+ * few days. Conditions are written as {@link AlertRuleCompiler} reads them.
+ */
+public class AlertRulesActivity extends LifecycleActivity
+        implements AlertRuleAdapter.AlertRuleOnDeleteHandler {
+
+    private AlertRulesViewModel mViewModel;
+    private AlertRuleAdapter mAlertRuleAdapter;
+    private EditText mNameView;
+    private EditText mConditionView;
+    private EditText mFirstDayView;
+    private EditText mLastDayView;
+    private View mAddView;
+    private TextView mEmptyView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_alert_rules);
+
+        AlertRulesViewModelFactory factory =
+                InjectorUtils.provideAlertRulesViewModelFactory(getApplicationContext());
+        mViewModel = ViewModelProviders.of(this, factory).get(AlertRulesViewModel.class);
+
+        mAlertRuleAdapter = new AlertRuleAdapter(this);
+        RecyclerView rulesView = findViewById(R.id.alert_rules);
+        rulesView.setLayoutManager(
+                new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false));
+        rulesView.setAdapter(mAlertRuleAdapter);
+
+        mNameView = findViewById(R.id.alert_rule_name_input);
+        mConditionView = findViewById(R.id.alert_rule_condition_input);
+        mFirstDayView = findViewById(R.id.alert_rule_first_day_input);
+        mLastDayView = findViewById(R.id.alert_rule_last_day_input);
+        mEmptyView = findViewById(R.id.alert_rules_empty);
+        mAddView = findViewById(R.id.alert_rule_add);
+        mAddView.setOnClickListener(v -> addAlertRule());
+
+        mViewModel.getAlertRules().observe(this, alertRules -> {
+            mAlertRuleAdapter.swapAlertRules(alertRules);
+            mEmptyView.setVisibility(alertRules.isEmpty() ? View.VISIBLE : View.GONE);
+            // Rules can only be added once the repository is ready, which it is by now
+            mAddView.setEnabled(true);
+        });
+    }
+
+    @Override
+    public void onDeleteAlertRule(AlertRuleEntry alertRule) {
+        mViewModel.deleteAlertRule(alertRule.getId());
+    }
+
+    /**
+     * Adds the rule the user entered, or points out what is wrong with it. The name defaults to
+     * the condition, the first day to today and the last day to the first.
+     */
+    private void addAlertRule() {
+        String condition = mConditionView.getText().toString().trim();
+        if (condition.isEmpty()) {
+            mConditionView.setError(getString(R.string.alert_rule_condition_required));
+            return;
+        }
+        String name = mNameView.getText().toString().trim();
+        if (name.isEmpty()) name = condition;
+
+        int firstDay = parseDay(mFirstDayView, 0);
+        int lastDay = parseDay(mLastDayView, firstDay);
+        int maxDay = WeatherDataSource.NUM_DAYS - 1;
+        if (firstDay < 0 || lastDay < firstDay || lastDay > maxDay) {
+            mLastDayView.setError(getString(R.string.alert_rule_invalid_days, maxDay));
+            return;
+        }
+
+        try {
+            mViewModel.addAlertRule(name, condition, firstDay, lastDay);
+        } catch (IllegalArgumentException e) {
+            mConditionView.setError(
+                    getString(R.string.alert_rule_invalid_condition, e.getMessage()));
+            return;
+        }
+        mNameView.setText(null);
+        mConditionView.setText(null);
+        mFirstDayView.setText(null);
+        mLastDayView.setText(null);
+    }
+
+    /**
+     * @return The day entered, counted from today, the default if nothing was, or -1 if it isn't
+     * a number
+     */
+    private static int parseDay(EditText dayView, int defaultDay) {
+        String day = dayView.getText().toString().trim();
+        if (day.isEmpty()) return defaultDay;
+        try {
+            return Integer.parseInt(day);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.alert;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Transformations;
+import android.arch.lifecycle.ViewModel;
+
+import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.database.AlertRuleEntry;
+
+import java.util.List;
+
+/**
+ * {@link ViewModel} for {@link AlertRulesActivity}
+ */
+class AlertRulesViewModel extends ViewModel {
+
+    private final LiveData<SunshineRepository> mRepository;
+    private final LiveData<List<AlertRuleEntry>> mAlertRules;
+
+    public AlertRulesViewModel(LiveData<SunshineRepository> repository) {
+        mRepository = repository;
+        // The rules are read once the repository is ready
+        mAlertRules = Transformations.switchMap(repository, SunshineRepository::getAlertRules);
+    }
+
+    public LiveData<List<AlertRuleEntry>> getAlertRules() {
+        return mAlertRules;
+    }
+
+    /**
+     * Adds a rule. Only called once the rules have been shown, by when the repository is ready.
+     *
+     * @throws IllegalArgumentException If the condition isn't valid
+     */
+    public void addAlertRule(String name, String condition, int firstDay, int lastDay) {
+        mRepository.getValue().addAlertRule(name, condition, firstDay, lastDay);
+    }
+
+    public void deleteAlertRule(int id) {
+        mRepository.getValue().deleteAlertRule(id);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.chart;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.PackedForecast;
+import com.example.android.sunshine.data.database.PackedForecast.Field;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Everything {@link ForecastChartView} needs to draw a {@link PackedForecast}, prepared off of
+ * the main thread.
+ * <p>
+ * Each series is stored with a level of detail pyramid: level 0 holds every point and each
+ * following level is an LTTB downsample of the one before it, with half as many points, down to
+ * {@link #MIN_LEVEL_POINTS}. When drawing, the chart picks the finest level that puts no more
+ * points on screen than it has pixels for, so the cost of a frame depends on the width of the
+ * chart and not on the length of the series. The whole pyramid takes about twice the memory of
+ * the series itself.
+ */
+public final class ForecastChartData {
+
+    /**
+     * What the chart shows at once. Temperature plots both the min and the max series.
+     */
+    public enum Metric {
+        TEMPERATURE(R.string.chart_metric_temperature, Field.MIN, Field.MAX),
+        HUMIDITY(R.string.chart_metric_humidity, Field.HUMIDITY),
+        PRESSURE(R.string.chart_metric_pressure, Field.PRESSURE),
+        WIND(R.string.chart_metric_wind, Field.WIND);
+
+        private final int mLabelResId;
+        private final Field[] mFields;
+
+        Metric(int labelResId, Field... fields) {
+            mLabelResId = labelResId;
+            mFields = fields;
+        }
+
+        public int getLabelResId() {
+            return mLabelResId;
+        }
+
+        Field[] getFields() {
+            return mFields;
+        }
+
+        Metric next() {
+            Metric[] metrics = values();
+            return metrics[(ordinal() + 1) % metrics.length];
+        }
+    }
+
+    // Levels stop being halved once they would have fewer points than this
+    private static final int MIN_LEVEL_POINTS = 64;
+
+    // X value of every point, in days since the epoch
+    private final float[] mX;
+    private final EnumMap<Field, Series> mSeries = new EnumMap<>(Field.class);
+
+    private ForecastChartData(float[] x) {
+        mX = x;
+    }
+
+    /**
+     * Builds the level of detail pyramid of every series. This is linear in the length of the
+     * forecast and must be called off of the main thread.
+     */
+    @WorkerThread
+    public static ForecastChartData build(PackedForecast forecast) {
+        int size = forecast.size();
+        float[] x = new float[size];
+        // Level 0 of every series is every point, so it is shared
+        int[] allPoints = new int[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = forecast.getEpochDay(i);
+            allPoints[i] = i;
+        }
+
+        ForecastChartData data = new ForecastChartData(x);
+        for (Metric metric : Metric.values()) {
+            for (Field field : metric.getFields()) {
+                float[] y = new float[size];
+                for (int i = 0; i < size; i++) {
+                    y[i] = forecast.getValue(field, i);
+                }
+                data.mSeries.put(field, new Series(y, buildLevels(x, y, allPoints)));
+            }
+        }
+        return data;
+    }
+
+    private static int[][] buildLevels(float[] x, float[] y, int[] allPoints) {
+        List<int[]> levels = new ArrayList<>();
+        int[] level = allPoints;
+        levels.add(level);
+        while (level.length / 2 >= MIN_LEVEL_POINTS) {
+            level = LttbDownsampler.downsample(x, y, level, level.length / 2);
+            levels.add(level);
+        }
+        return levels.toArray(new int[levels.size()][]);
+    }
+
+    /**
+     * Builds the chart data off of the main thread every time the forecast changes.
+     *
+     * @param forecast The forecast to chart
+     * @param executor Executor to build the pyramids on
+     * @return {@link LiveData} of the chart data for the latest forecast
+     */
+    public static LiveData<ForecastChartData> load(LiveData<PackedForecast> forecast,
+                                                   Executor executor) {
+        MediatorLiveData<ForecastChartData> chartData = new MediatorLiveData<>();
+        // Only the newest forecast's result is posted if several are being built at once
+        AtomicInteger generation = new AtomicInteger();
+        chartData.addSource(forecast, packedForecast -> {
+            if (packedForecast == null) return;
+            int thisGeneration = generation.incrementAndGet();
+            executor.execute(() -> {
+                ForecastChartData data = build(packedForecast);
+                if (generation.get() == thisGeneration) chartData.postValue(data);
+            });
+        });
+        return chartData;
+    }
+
+    public int size() {
+        return mX.length;
+    }
+
+    float getX(int index) {
+        return mX[index];
+    }
+
+    float getFirstX() {
+        return mX[0];
+    }
+
+    float getLastX() {
+        return mX[mX.length - 1];
+    }
+
+    float getValue(Field field, int index) {
+        return mSeries.get(field).mY[index];
+    }
+
+    float getMinValue(Metric metric) {
+        float min = Float.MAX_VALUE;
+        for (Field field : metric.getFields()) min = Math.min(min, mSeries.get(field).mMinY);
+        return min;
+    }
+
+    float getMaxValue(Metric metric) {
+        float max = -Float.MAX_VALUE;
+        for (Field field : metric.getFields()) max = Math.max(max, mSeries.get(field).mMaxY);
+        return max;
+    }
+
+    /**
+     * Picks the finest level of a series which has at most maxPoints points between two x
+     * values.
+     *
+     * @return Indexes of the points of the level, in ascending order of x
+     */
+    int[] getLevel(Field field, float startX, float endX, int maxPoints) {
+        int[][] levels = mSeries.get(field).mLevels;
+        int visible = Math.max(1, indexAfter(levels[0], endX) - indexBefore(levels[0], startX));
+        int level = 0;
+        while (level < levels.length - 1
+                && (long) visible * levels[level].length / mX.length > maxPoints) {
+            level++;
+        }
+        return levels[level];
+    }
+
+    /**
+     * @return Position in the level of the last point at or before x, or 0
+     */
+    int indexBefore(int[] level, float x) {
+        int low = 0;
+        int high = level.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mX[level[middle]] <= x) low = middle;
+            else high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return Position in the level of the first point at or after x, or the last position
+     */
+    int indexAfter(int[] level, float x) {
+        int low = 0;
+        int high = level.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mX[level[middle]] >= x) high = middle;
+            else low = middle + 1;
+        }
+        return low;
+    }
+
+    private static class Series {
+        private final float[] mY;
+        private final int[][] mLevels;
+        private final float mMinY;
+        private final float mMaxY;
+
+        Series(float[] y, int[][] levels) {
+            mY = y;
+            mLevels = levels;
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (float value : y) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            mMinY = min;
+            mMaxY = max;
+        }
+    }
+}
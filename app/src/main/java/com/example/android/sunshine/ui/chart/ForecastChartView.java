@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.chart;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.PackedForecast.Field;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Line chart of the stored forecast. Shows one {@link ForecastChartData.Metric} at a time,
+ * tapping the chart moves on to the next one. Pinch to zoom and drag to pan.
+ * <p>
+ * Only the points of the level of detail picked by {@link ForecastChartData#getLevel} which are
+ * on screen are drawn, so a frame never draws more than about one point per
+ * {@link #PIXELS_PER_POINT} pixels, however long the series is.
+ */
+public class ForecastChartView extends View {
+
+    // Horizontal pixels per drawn point at most
+    private static final int PIXELS_PER_POINT = 2;
+
+    // The chart can't be zoomed in further than this many days
+    private static final float MIN_VISIBLE_DAYS = 2f;
+
+    private final Paint[] mLinePaints;
+    private final Paint mHighlightPaint;
+    // Reused for every series of every frame
+    private final Path mPath = new Path();
+    private final ScaleGestureDetector mScaleDetector;
+
+    private ForecastChartData mData;
+    private ForecastChartData.Metric mMetric = ForecastChartData.Metric.TEMPERATURE;
+
+    // Visible range, in days since the epoch
+    private float mStartX;
+    private float mEndX;
+    // Day to mark with a vertical line, or NaN
+    private float mHighlightX = Float.NaN;
+
+    private float mLastTouchX;
+    private boolean mDragged;
+
+    public ForecastChartView(Context context) {
+        this(context, null);
+    }
+
+    public ForecastChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float strokeWidth = getResources().getDimension(R.dimen.chart_stroke_width);
+        mLinePaints = new Paint[]{
+                newStrokePaint(ContextCompat.getColor(context, R.color.colorPrimary), strokeWidth),
+                newStrokePaint(ContextCompat.getColor(context, R.color.colorAccent), strokeWidth)};
+        mHighlightPaint = newStrokePaint(
+                ContextCompat.getColor(context, R.color.secondary_text), strokeWidth / 2);
+
+        mScaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoom(detector.getScaleFactor(), toDataX(detector.getFocusX()));
+                        return true;
+                    }
+                });
+
+        setOnClickListener(v -> setMetric(mMetric.next()));
+        updateContentDescription();
+    }
+
+    private static Paint newStrokePaint(int color, float strokeWidth) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(color);
+        paint.setStrokeWidth(strokeWidth);
+        paint.setStyle(Paint.Style.STROKE);
+        return paint;
+    }
+
+    /**
+     * Swaps in newly built chart data. The visible range is reset if it no longer overlaps it.
+     */
+    public void setChartData(ForecastChartData data) {
+        boolean hadData = mData != null && mData.size() > 0;
+        mData = data;
+        if (data != null && data.size() > 0
+                && (!hadData || mEndX < data.getFirstX() || mStartX > data.getLastX())) {
+            mStartX = data.getFirstX();
+            mEndX = Math.max(data.getLastX(), mStartX + MIN_VISIBLE_DAYS);
+        }
+        invalidate();
+    }
+
+    public void setMetric(ForecastChartData.Metric metric) {
+        mMetric = metric;
+        updateContentDescription();
+        invalidate();
+    }
+
+    /**
+     * Marks a day on the chart, such as the one shown by the detail screen.
+     *
+     * @param dateMillis Normalized UTC date of the day
+     */
+    public void setHighlightedDate(long dateMillis) {
+        mHighlightX = (float) dateMillis / SunshineDateUtils.DAY_IN_MILLIS;
+        invalidate();
+    }
+
+    private void updateContentDescription() {
+        String metric = getContext().getString(mMetric.getLabelResId());
+        setContentDescription(getContext().getString(R.string.a11y_chart, metric));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mData == null || mData.size() == 0) return;
+
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - left - getPaddingRight();
+        float height = getHeight() - top - getPaddingBottom();
+        if (width <= 0 || height <= 0) return;
+
+        float minY = mData.getMinValue(mMetric);
+        float rangeY = Math.max(mData.getMaxValue(mMetric) - minY, 1f);
+        float scaleX = width / (mEndX - mStartX);
+        int maxPoints = Math.max(2, (int) width / PIXELS_PER_POINT);
+
+        Field[] fields = mMetric.getFields();
+        for (int s = 0; s < fields.length; s++) {
+            Field field = fields[s];
+            int[] level = mData.getLevel(field, mStartX, mEndX, maxPoints);
+            // One point past each edge so the line runs off the side of the chart
+            int from = mData.indexBefore(level, mStartX);
+            int to = mData.indexAfter(level, mEndX);
+
+            mPath.rewind();
+            for (int i = from; i <= to; i++) {
+                int index = level[i];
+                float x = left + (mData.getX(index) - mStartX) * scaleX;
+                float y = top + height - (mData.getValue(field, index) - minY) / rangeY * height;
+                if (i == from) mPath.moveTo(x, y);
+                else mPath.lineTo(x, y);
+            }
+            canvas.drawPath(mPath, mLinePaints[s % mLinePaints.length]);
+        }
+
+        if (mHighlightX >= mStartX && mHighlightX <= mEndX) {
+            float x = left + (mHighlightX - mStartX) * scaleX;
+            canvas.drawLine(x, top, x, top + height, mHighlightPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mData == null || mData.size() == 0) return super.onTouchEvent(event);
+        mScaleDetector.onTouchEvent(event);
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mLastTouchX = event.getX();
+                mDragged = false;
+                return true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Pinching is never a tap
+                mDragged = true;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!mScaleDetector.isInProgress() && event.getPointerCount() == 1) {
+                    float dx = event.getX() - mLastTouchX;
+                    if (Math.abs(dx) > 0) {
+                        pan(-dx * (mEndX - mStartX) / getChartWidth());
+                        mDragged = true;
+                    }
+                }
+                mLastTouchX = event.getX();
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (!mDragged) performClick();
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    private void zoom(float scaleFactor, float focusX) {
+        float fullSpan = Math.max(mData.getLastX() - mData.getFirstX(), MIN_VISIBLE_DAYS);
+        float span = mEndX - mStartX;
+        float newSpan = Math.max(MIN_VISIBLE_DAYS, Math.min(fullSpan, span / scaleFactor));
+        mStartX = focusX - (focusX - mStartX) * newSpan / span;
+        mEndX = mStartX + newSpan;
+        pan(0);
+    }
+
+    /**
+     * Moves the visible range by dx days, keeping it inside the data.
+     */
+    private void pan(float dx) {
+        float span = mEndX - mStartX;
+        float start = Math.max(mData.getFirstX(),
+                Math.min(mStartX + dx, Math.max(mData.getFirstX(), mData.getLastX() - span)));
+        mStartX = start;
+        mEndX = start + span;
+        postInvalidateOnAnimation();
+    }
+
+    private float toDataX(float viewX) {
+        return mStartX + (viewX - getPaddingLeft()) * (mEndX - mStartX) / getChartWidth();
+    }
+
+    private float getChartWidth() {
+        return Math.max(1, getWidth() - getPaddingLeft() - getPaddingRight());
+    }
+}
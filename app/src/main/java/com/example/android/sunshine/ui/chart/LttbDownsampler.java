@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.ui.chart;
+
+/**
+ * Downsamples a series with the Largest-Triangle-Three-Buckets algorithm.
+ * <p>
+ * The series is split into as many buckets as points are wanted and from each bucket the point
+ * which forms the largest triangle with the point kept from the previous bucket and the average
+ * of the next bucket is kept. Unlike averaging, this keeps the peaks and troughs that make a
+ * line chart look like the full series.
+ */
+final class LttbDownsampler {
+
+    private LttbDownsampler() {
+    }
+
+    /**
+     * @param x         X values of every point, in ascending order
+     * @param y         Y values of every point
+     * @param source    Indexes into x and y of the points to downsample, in ascending order
+     * @param threshold Number of points wanted, at least three
+     * @return Indexes into x and y of the points kept, in ascending order. This is source itself
+     * if it already has no more than threshold points.
+     */
+    static int[] downsample(float[] x, float[] y, int[] source, int threshold) {
+        int count = source.length;
+        if (threshold >= count || threshold < 3) return source;
+
+        int[] sampled = new int[threshold];
+        // The first and last points are always kept, the rest are split into equal buckets
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int previous = 0;
+        sampled[0] = source[0];
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third corner of the triangle
+            int averageStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int averageEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = averageStart; i < averageEnd; i++) {
+                averageX += x[source[i]];
+                averageY += y[source[i]];
+            }
+            int averageCount = Math.max(1, averageEnd - averageStart);
+            averageX /= averageCount;
+            averageY /= averageCount;
+
+            // Pick the point of this bucket which makes the largest triangle
+            int rangeStart = (int) (bucket * bucketSize) + 1;
+            int rangeEnd = (int) ((bucket + 1) * bucketSize) + 1;
+            float previousX = x[source[previous]];
+            float previousY = y[source[previous]];
+            double maxArea = -1;
+            int selected = rangeStart;
+            for (int i = rangeStart; i < rangeEnd; i++) {
+                double area = Math.abs((previousX - averageX) * (y[source[i]] - previousY)
+                        - (previousX - x[source[i]]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+            sampled[bucket + 1] = source[selected];
+            previous = selected;
+        }
+
+        sampled[threshold - 1] = source[count - 1];
+        return sampled;
+    }
+}
@@ -17,32 +17,132 @@
 package com.example.android.sunshine.ui.detail;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
 import android.arch.lifecycle.ViewModel;
 
+import com.example.android.sunshine.AppExecutors;
 import com.example.android.sunshine.data.SunshineRepository;
 import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.ui.chart.ForecastChartData;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * {@link ViewModel} for {@link DetailActivity}
+ * <p>
+ * Rather than loading one day at a time, a window of {@link #PREFETCH_DAYS} days on either side
+ * of the day the user is looking at is loaded with a single query, so that neighbouring pages
+ * can be bound straight from memory. The window slides along as the user swipes between days.
  */
 class DetailActivityViewModel extends ViewModel {
 
-    // Weather forecast the user is looking at
-    private final LiveData<WeatherEntry> mWeather;
+    // Number of days to prefetch on either side of the day the user is looking at
+    static final int PREFETCH_DAYS = 3;
 
-    // Date for the weather forecast
-    private final Date mDate;
-    private final SunshineRepository mRepository;
+    // Weather forecasts in the currently prefetched window
+    private final LiveData<List<WeatherEntry>> mWeatherWindow;
 
-    public DetailActivityViewModel(SunshineRepository repository, Date date) {
-        mRepository = repository;
+    // Date at the center of the prefetched window, changing it slides the window
+    private final MutableLiveData<Date> mWindowCenter;
+
+    // The whole stored forecast, prepared for the chart
+    private final LiveData<ForecastChartData> mChartData;
+
+    // The forecasts of the current window, keyed by their normalized date
+    private final Map<Long, WeatherEntry> mLoadedWeather = new HashMap<>();
+
+    // Date for the weather forecast the user is looking at
+    private Date mDate;
+
+    public DetailActivityViewModel(LiveData<SunshineRepository> repository, Date date,
+                                   AppExecutors executors) {
         mDate = date;
-        mWeather = mRepository.getWeatherByDate(mDate);
+        mWindowCenter = new MutableLiveData<>();
+        mWindowCenter.setValue(date);
+
+        // Switching to a new window drops the query for the old one, so nothing is loaded for
+        // days the user has moved away from. The query starts once the repository is ready.
+        LiveData<List<WeatherEntry>> window = Transformations.switchMap(mWindowCenter,
+                center -> Transformations.switchMap(repository,
+                        readyRepository -> readyRepository.getWeatherBetweenDates(
+                                addDays(center, -PREFETCH_DAYS), addDays(center, PREFETCH_DAYS))));
+        mWeatherWindow = Transformations.map(window, weatherEntries -> {
+            evictOutsideWindow(mWindowCenter.getValue());
+            if (weatherEntries != null) {
+                for (WeatherEntry weatherEntry : weatherEntries) {
+                    mLoadedWeather.put(weatherEntry.getDate().getTime(), weatherEntry);
+                }
+            }
+            return weatherEntries;
+        });
+
+        mChartData = ForecastChartData.load(Transformations.switchMap(repository,
+                SunshineRepository::getPackedWeatherForecasts), executors.diskIO());
+    }
+
+    public LiveData<List<WeatherEntry>> getWeatherWindow() {
+        return mWeatherWindow;
+    }
+
+    public LiveData<ForecastChartData> getChartData() {
+        return mChartData;
+    }
+
+    /**
+     * Gets the forecast for a day from memory, if it has already been loaded.
+     *
+     * @param date The date you want weather for
+     * @return The weather for that date or null if it hasn't been loaded yet
+     */
+    public WeatherEntry getLoadedWeather(Date date) {
+        return mLoadedWeather.get(date.getTime());
+    }
+
+    public Date getDate() {
+        return mDate;
+    }
+
+    /**
+     * Called when the user navigates to a different day. If the days next to it are no longer
+     * inside the prefetched window, the window is re-centered on the new day.
+     *
+     * @param date The date the user is now looking at
+     */
+    public void setDate(Date date) {
+        mDate = date;
+        long daysFromCenter = (date.getTime() - mWindowCenter.getValue().getTime())
+                / SunshineDateUtils.DAY_IN_MILLIS;
+        if (Math.abs(daysFromCenter) >= PREFETCH_DAYS) {
+            mWindowCenter.setValue(date);
+        }
+    }
+
+    /**
+     * Drops the days which have fallen out of the window, once the new window has been loaded,
+     * so that paging through the forecast doesn't keep every day ever shown in memory. Until
+     * then the old days stay, for the pages still showing them.
+     */
+    private void evictOutsideWindow(Date center) {
+        long first = addDays(center, -PREFETCH_DAYS).getTime();
+        long last = addDays(center, PREFETCH_DAYS).getTime();
+        for (Iterator<Long> iterator = mLoadedWeather.keySet().iterator(); iterator.hasNext(); ) {
+            long date = iterator.next();
+            if (date < first || date > last) iterator.remove();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        mLoadedWeather.clear();
     }
 
-    public LiveData<WeatherEntry> getWeather() {
-        return mWeather;
+    private static Date addDays(Date date, int days) {
+        return new Date(date.getTime() + SunshineDateUtils.DAY_IN_MILLIS * days);
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.detail;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v4.view.PagerAdapter;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.databinding.ActivityDetailBinding;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.util.Date;
+
+/**
+ * Exposes one page per day of forecast to the {@link android.support.v4.view.ViewPager} in
+ * {@link DetailActivity}. Pages are bound from the weather already loaded in memory by the
+ * {@link DetailActivityViewModel}, so swiping to a neighbouring day doesn't wait on a query.
+ */
+class DetailPagerAdapter extends PagerAdapter {
+
+    // The context we use to utility methods, app resources and layout inflaters
+    private final Context mContext;
+    private final DetailActivityViewModel mViewModel;
+
+    // Normalized UTC date of the first page and the number of pages
+    private final long mFirstDateMillis;
+    private final int mDayCount;
+
+    // Bindings of the pages that currently exist, keyed by position
+    private final SparseArray<ActivityDetailBinding> mPages = new SparseArray<>();
+
+    /**
+     * Creates a DetailPagerAdapter.
+     *
+     * @param context         Used to talk to the UI and app resources
+     * @param viewModel       Holds the weather that has been loaded so far
+     * @param firstDateMillis Normalized UTC date of the first page
+     * @param dayCount        Number of days to page through
+     */
+    DetailPagerAdapter(@NonNull Context context, DetailActivityViewModel viewModel,
+                       long firstDateMillis, int dayCount) {
+        mContext = context;
+        mViewModel = viewModel;
+        mFirstDateMillis = firstDateMillis;
+        mDayCount = dayCount;
+    }
+
+    @Override
+    public int getCount() {
+        return mDayCount;
+    }
+
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return view == ((ActivityDetailBinding) object).getRoot();
+    }
+
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        ActivityDetailBinding detailBinding =
+                ActivityDetailBinding.inflate(LayoutInflater.from(mContext), container, false);
+        container.addView(detailBinding.getRoot());
+        mPages.put(position, detailBinding);
+        bindPage(position);
+        return detailBinding;
+    }
+
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        container.removeView(((ActivityDetailBinding) object).getRoot());
+        mPages.remove(position);
+    }
+
+    Date getDateForPosition(int position) {
+        return new Date(mFirstDateMillis + SunshineDateUtils.DAY_IN_MILLIS * position);
+    }
+
+    int getPositionForDate(Date date) {
+        int position = (int) ((date.getTime() - mFirstDateMillis) / SunshineDateUtils.DAY_IN_MILLIS);
+        return Math.max(0, Math.min(mDayCount - 1, position));
+    }
+
+    /**
+     * Called by {@link DetailActivity} when a new window of weather has been loaded, so that the
+     * pages which are already laid out can be bound.
+     */
+    void onWeatherLoaded() {
+        for (int i = 0; i < mPages.size(); i++) {
+            bindPage(mPages.keyAt(i));
+        }
+    }
+
+    private void bindPage(int position) {
+        WeatherEntry weatherEntry = mViewModel.getLoadedWeather(getDateForPosition(position));
+        // The page will be bound once its day has been loaded
+        if (weatherEntry != null) bindWeatherToUI(mPages.get(position), weatherEntry);
+    }
+
+    private void bindWeatherToUI(ActivityDetailBinding detailBinding, WeatherEntry weatherEntry) {
+        /****************
+         * Weather Icon *
+         ****************/
+
+        int weatherId = weatherEntry.getWeatherIconId();
+        int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+
+        /* Set the resource ID on the icon to display the art */
+        detailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
+
+        /****************
+         * Weather Date *
+         ****************/
+        /*
+         * The date that is stored is a GMT representation at midnight of the date when the weather
+         * information was loaded for.
+         *
+         * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
+         * the date representation for the local date in local time.
+         * SunshineDateUtils#getFriendlyDateString takes care of this for us.
+         */
+        long localDateMidnightGmt = weatherEntry.getDate().getTime();
+        String dateText = SunshineDateUtils.getFriendlyDateString(mContext, localDateMidnightGmt, true);
+        detailBinding.primaryInfo.date.setText(dateText);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        /* Use the weatherId to obtain the proper description */
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+
+        /* Create the accessibility (a11y) String from the weather description */
+        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.primaryInfo.weatherDescription.setText(description);
+        detailBinding.primaryInfo.weatherDescription.setContentDescription(descriptionA11y);
+
+        /* Set the content description on the weather image (for accessibility purposes) */
+        detailBinding.primaryInfo.weatherIcon.setContentDescription(descriptionA11y);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+
+        double maxInCelsius = weatherEntry.getMax();
+
+        /*
+         * If the user's preference for weather is fahrenheit, formatTemperature will convert
+         * the temperature. This method will also append either °C or °F to the temperature
+         * String.
+         */
+        String highString = SunshineWeatherUtils.formatTemperature(mContext, maxInCelsius);
+
+        /* Create the accessibility (a11y) String from the weather description */
+        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.primaryInfo.highTemperature.setText(highString);
+        detailBinding.primaryInfo.highTemperature.setContentDescription(highA11y);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+
+        double minInCelsius = weatherEntry.getMin();
+        /*
+         * If the user's preference for weather is fahrenheit, formatTemperature will convert
+         * the temperature. This method will also append either °C or °F to the temperature
+         * String.
+         */
+        String lowString = SunshineWeatherUtils.formatTemperature(mContext, minInCelsius);
+
+        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.primaryInfo.lowTemperature.setText(lowString);
+        detailBinding.primaryInfo.lowTemperature.setContentDescription(lowA11y);
+
+        /************
+         * Humidity *
+         ************/
+
+        double humidity = weatherEntry.getHumidity();
+        String humidityString = mContext.getString(R.string.format_humidity, humidity);
+        String humidityA11y = mContext.getString(R.string.a11y_humidity, humidityString);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.extraDetails.humidity.setText(humidityString);
+        detailBinding.extraDetails.humidity.setContentDescription(humidityA11y);
+
+        detailBinding.extraDetails.humidityLabel.setContentDescription(humidityA11y);
+
+        /****************************
+         * Wind speed and direction *
+         ****************************/
+        /* Read wind speed (in MPH) and direction (in compass degrees)*/
+        double windSpeed = weatherEntry.getWind();
+        double windDirection = weatherEntry.getDegrees();
+        String windString = SunshineWeatherUtils.getFormattedWind(mContext, windSpeed, windDirection);
+        String windA11y = mContext.getString(R.string.a11y_wind, windString);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.extraDetails.windMeasurement.setText(windString);
+        detailBinding.extraDetails.windMeasurement.setContentDescription(windA11y);
+        detailBinding.extraDetails.windLabel.setContentDescription(windA11y);
+
+        /************
+         * Pressure *
+         ************/
+        double pressure = weatherEntry.getPressure();
+
+        /*
+         * Format the pressure text using string resources. The reason we directly access
+         * resources using getString rather than using a method from SunshineWeatherUtils as
+         * we have for other data displayed in this Activity is because there is no
+         * additional logic that needs to be considered in order to properly display the
+         * pressure.
+         */
+        String pressureString = mContext.getString(R.string.format_pressure, pressure);
+
+        String pressureA11y = mContext.getString(R.string.a11y_pressure, pressureString);
+
+        /* Set the text and content description (for accessibility purposes) */
+        detailBinding.extraDetails.pressure.setText(pressureString);
+        detailBinding.extraDetails.pressure.setContentDescription(pressureA11y);
+        detailBinding.extraDetails.pressureLabel.setContentDescription(pressureA11y);
+    }
+}
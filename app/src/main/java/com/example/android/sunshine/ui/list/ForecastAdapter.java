@@ -59,7 +59,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * boolean resources.
      */
     private final boolean mUseTodayLayout;
-    private List<ListWeatherEntry> mForecast;
+    private List<ForecastListItem> mForecast;
 
     /**
      * Creates a ForecastAdapter.
@@ -106,7 +106,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        ListWeatherEntry currentWeather = mForecast.get(position);
+        ForecastListItem item = mForecast.get(position);
+        ListWeatherEntry currentWeather = item.getWeatherEntry();
 
         /****************
          * Weather Icon *
@@ -139,13 +140,11 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /**************************
          * High (max) temperature *
          **************************/
-        double highInCelsius = currentWeather.getMax();
          /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
+          * The temperatures were formatted ahead of binding, in Fahrenheit if that is the user's
+          * preference for weather.
           */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
+        String highString = item.getHigh();
          /* Create the accessibility (a11y) String from the weather description */
         String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
 
@@ -156,13 +155,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /*************************
          * Low (min) temperature *
          *************************/
-        double lowInCelsius = currentWeather.getMin();
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
+        String lowString = item.getLow();
         String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
 
          /* Set the text and content description (for accessibility purposes) */
@@ -234,7 +227,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      *
      * @param newForecast the new list of forecasts to use as ForecastAdapter's data source
      */
-    void swapForecast(final List<ListWeatherEntry> newForecast) {
+    void swapForecast(final List<ForecastListItem> newForecast) {
         // If there was no forecast data, then recreate all of the list
         if (mForecast == null) {
             mForecast = newForecast;
@@ -260,16 +253,21 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
 
                 @Override
                 public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mForecast.get(oldItemPosition).getId() ==
-                            newForecast.get(newItemPosition).getId();
+                    return mForecast.get(oldItemPosition).getWeatherEntry().getId() ==
+                            newForecast.get(newItemPosition).getWeatherEntry().getId();
                 }
 
                 @Override
                 public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    ListWeatherEntry newWeather = newForecast.get(newItemPosition);
-                    ListWeatherEntry oldWeather = mForecast.get(oldItemPosition);
+                    ForecastListItem newItem = newForecast.get(newItemPosition);
+                    ForecastListItem oldItem = mForecast.get(oldItemPosition);
+                    ListWeatherEntry newWeather = newItem.getWeatherEntry();
+                    ListWeatherEntry oldWeather = oldItem.getWeatherEntry();
+                    // Changing the units changes the temperatures, but nothing else
                     return newWeather.getId() == oldWeather.getId()
-                            && newWeather.getDate().equals(oldWeather.getDate());
+                            && newWeather.getDate().equals(oldWeather.getDate())
+                            && newItem.getHigh().equals(oldItem.getHigh())
+                            && newItem.getLow().equals(oldItem.getLow());
                 }
             });
             mForecast = newForecast;
@@ -342,7 +340,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            Date date = mForecast.get(adapterPosition).getDate();
+            Date date = mForecast.get(adapterPosition).getWeatherEntry().getDate();
             mClickHandler.onItemClick(date);
         }
     }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.list;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.utilities.UnitFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A day of the forecast list, with its temperatures already formatted in the user's units so
+ * that binding it doesn't have to
+ */
+class ForecastListItem {
+    private final ListWeatherEntry mWeatherEntry;
+    private final String mHigh;
+    private final String mLow;
+
+    private ForecastListItem(ListWeatherEntry weatherEntry, String high, String low) {
+        mWeatherEntry = weatherEntry;
+        mHigh = high;
+        mLow = low;
+    }
+
+    /**
+     * Formats every day of a forecast.
+     *
+     * @param metric Whether to show the temperatures in Celsius rather than Fahrenheit
+     */
+    static List<ForecastListItem> format(List<ListWeatherEntry> forecast,
+                                         UnitFormatter unitFormatter, boolean metric) {
+        List<ForecastListItem> items = new ArrayList<>(forecast.size());
+        for (ListWeatherEntry weatherEntry : forecast) {
+            items.add(new ForecastListItem(weatherEntry,
+                    unitFormatter.formatTemperature(weatherEntry.getMax(), metric),
+                    unitFormatter.formatTemperature(weatherEntry.getMin(), metric)));
+        }
+        return items;
+    }
+
+    ListWeatherEntry getWeatherEntry() {
+        return mWeatherEntry;
+    }
+
+    /**
+     * @return The high (max) temperature, such as "21°"
+     */
+    String getHigh() {
+        return mHigh;
+    }
+
+    /**
+     * @return The low (min) temperature, such as "12°"
+     */
+    String getLow() {
+        return mLow;
+    }
+}
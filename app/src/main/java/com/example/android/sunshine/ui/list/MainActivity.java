@@ -17,18 +17,31 @@ package com.example.android.sunshine.ui.list;
 
 import android.arch.lifecycle.LifecycleActivity;
 import android.arch.lifecycle.ViewModelProviders;
+import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 
+import com.example.android.sunshine.AppExecutors;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.SyncTracer;
+import com.example.android.sunshine.ui.alert.AlertRulesActivity;
+import com.example.android.sunshine.ui.chart.ForecastChartView;
 import com.example.android.sunshine.ui.detail.DetailActivity;
+import com.example.android.sunshine.ui.location.LocationSearchActivity;
 import com.example.android.sunshine.utilities.InjectorUtils;
 
 import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -37,15 +50,25 @@ import java.util.Date;
 public class MainActivity extends LifecycleActivity implements
         ForecastAdapter.ForecastAdapterOnItemClickHandler {
 
+    private static final String LOG_TAG = MainActivity.class.getSimpleName();
+
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
     private int mPosition = RecyclerView.NO_POSITION;
     private ProgressBar mLoadingIndicator;
+    private ForecastChartView mChartView;
+    private TextView mLocationView;
     private MainActivityViewModel mViewModel;
 
+    // Used to measure how long it takes for the forecast to show up when the activity is created
+    private long mCreateTime;
+    private boolean mFirstContentShown;
+    private boolean mDatabaseContentShown;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreateTime = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_forecast);
 
         /*
@@ -63,6 +86,14 @@ public class MainActivity extends LifecycleActivity implements
          */
         mLoadingIndicator = findViewById(R.id.pb_loading_indicator);
 
+        // Chart of the trend over every stored day of forecast
+        mChartView = findViewById(R.id.forecast_chart);
+
+        // The location the forecast is for, which opens the location search
+        mLocationView = findViewById(R.id.forecast_location);
+        mLocationView.setOnClickListener(v ->
+                startActivity(new Intent(this, LocationSearchActivity.class)));
+
         /*
          * A LinearLayoutManager is responsible for measuring and positioning item views within a
          * RecyclerView into a linear list. This means that it can produce either a horizontal or
@@ -106,16 +137,87 @@ public class MainActivity extends LifecycleActivity implements
         MainViewModelFactory factory = InjectorUtils.provideMainActivityViewModelFactory(this.getApplicationContext());
         mViewModel = ViewModelProviders.of(this, factory).get(MainActivityViewModel.class);
 
-        mViewModel.getForecast().observe(this, weatherEntries -> {
-            mForecastAdapter.swapForecast(weatherEntries);
+        SyncTracer tracer = SyncTracer.getInstance();
+        mViewModel.getForecast().observe(this, syncedForecast -> {
+            // Closes the trace of the sync the rows were stored by, the first time they arrive
+            int syncId = syncedForecast.getSyncId();
+            List<ForecastListItem> forecast = syncedForecast.getValue();
+            boolean tracing = tracer.endHop(syncId, SyncTracer.STAGE_INVALIDATION);
+            if (tracing) tracer.beginSection(syncId, SyncTracer.STAGE_UI);
+
+            mForecastAdapter.swapForecast(forecast);
             if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
             mRecyclerView.smoothScrollToPosition(mPosition);
 
             // Show the weather list or the loading screen based on whether the forecast data exists
             // and is loaded
-            if (weatherEntries != null && weatherEntries.size() != 0) showWeatherDataView();
-            else showLoading();
+            if (forecast != null && forecast.size() != 0) {
+                showWeatherDataView();
+                reportContentShown();
+            } else {
+                showLoading();
+            }
+
+            if (tracing) tracer.endSection(syncId, SyncTracer.STAGE_UI);
         });
+
+        mViewModel.getChartData().observe(this, chartData -> mChartView.setChartData(chartData));
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // The sync interval stretches out while the app isn't being used. Off of the main thread,
+        // since the first use of the preferences reads them from disk.
+        Context appContext = getApplicationContext();
+        AppExecutors.getInstance().diskIO().execute(() ->
+                InjectorUtils.provideSyncIntervalPolicy(appContext).recordForeground());
+        // May have been changed in the location search
+        String location = InjectorUtils.provideLocationPreferences(this).getDisplayName();
+        mLocationView.setText(location);
+        mLocationView.setContentDescription(getString(R.string.a11y_forecast_location, location));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.forecast, menu);
+        menu.findItem(R.id.action_imperial_units).setChecked(!mViewModel.isMetric());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_imperial_units) {
+            boolean imperial = !item.isChecked();
+            item.setChecked(imperial);
+            // The forecast at hand is formatted again, nothing is fetched or queried
+            mViewModel.setMetric(!imperial);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_alert_rules) {
+            startActivity(new Intent(this, AlertRulesActivity.class));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Logs the time from onCreate until the forecast was first shown, from the snapshot or from
+     * the database, and tells the system once the database's forecast is on screen.
+     */
+    private void reportContentShown() {
+        long elapsed = SystemClock.uptimeMillis() - mCreateTime;
+        boolean fromSnapshot = mViewModel.isShowingSnapshot();
+        if (!mFirstContentShown) {
+            mFirstContentShown = true;
+            Log.d(LOG_TAG, "Time to first content: " + elapsed + " ms"
+                    + (fromSnapshot ? " (snapshot)" : " (database)"));
+        }
+        if (!fromSnapshot && !mDatabaseContentShown) {
+            mDatabaseContentShown = true;
+            Log.d(LOG_TAG, "Time to database content: " + elapsed + " ms");
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) reportFullyDrawn();
+        }
     }
 
     /**
@@ -17,29 +17,142 @@
 package com.example.android.sunshine.ui.list;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.Transformations;
 import android.arch.lifecycle.ViewModel;
 
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.SyncTracer;
 import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.SyncedValue;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.ui.chart.ForecastChartData;
+import com.example.android.sunshine.ui.widget.ForecastWidgetUpdater;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.UnitFormatter;
 
 import java.util.List;
 
 /**
  * {@link ViewModel} for {@link MainActivity}
+ * <p>
+ * The forecast starts out with the snapshot saved after the last sync, so that there is
+ * something to show on the first frame, and is replaced by the database's forecast as soon as
+ * the repository has been built and the first query returns.
+ * <p>
+ * The days are formatted in the user's units. When the units change, the rows at hand are
+ * formatted again in the background, without querying the database.
+ * <p>
+ * The formatted forecast carries the sync it was stored by, so that the activity can close that
+ * sync's trace once the rows are on screen.
  */
 class MainActivityViewModel extends ViewModel {
 
-    private final SunshineRepository mRepository;
-    private final LiveData<List<ListWeatherEntry>> mForecast;
+    private final MediatorLiveData<SyncedValue<List<ForecastListItem>>> mForecast;
+    private final LiveData<ForecastChartData> mChartData;
+    private final AppExecutors mExecutors;
+    private final ForecastSnapshot mForecastSnapshot;
+    private final UnitFormatter mUnitFormatter;
+    private final ForecastWidgetUpdater mWidgetUpdater;
 
-    public MainActivityViewModel(SunshineRepository repository) {
-        mRepository = repository;
-        mForecast = mRepository.getCurrentWeatherForecasts();
+    // Forecast read from the snapshot, null once the database has delivered its own
+    private List<ListWeatherEntry> mSnapshot;
+    // Rows the forecast was last formatted from, and the units they were formatted in
+    private List<ListWeatherEntry> mRows;
+    private boolean mFormattedMetric;
+
+    public MainActivityViewModel(LiveData<SunshineRepository> repository,
+                                 ForecastSnapshot forecastSnapshot, AppExecutors executors,
+                                 UnitFormatter unitFormatter,
+                                 ForecastWidgetUpdater widgetUpdater) {
+        mForecast = new MediatorLiveData<>();
+        mExecutors = executors;
+        mForecastSnapshot = forecastSnapshot;
+        mUnitFormatter = unitFormatter;
+        mWidgetUpdater = widgetUpdater;
+
+        mSnapshot = forecastSnapshot.read(SunshineDateUtils.getNormalizedUtcDateForToday());
+        if (mSnapshot != null && !mSnapshot.isEmpty()) setRows(mSnapshot, SyncTracer.NO_SYNC);
+
+        // The database is the source of truth, its first result replaces the snapshot
+        LiveData<SyncedValue<List<ListWeatherEntry>>> databaseForecast =
+                Transformations.switchMap(repository,
+                        SunshineRepository::getCurrentWeatherForecasts);
+        mForecast.addSource(databaseForecast, weatherEntries -> {
+            mSnapshot = null;
+            setRows(weatherEntries.getValue(), weatherEntries.getSyncId());
+        });
+
+        mForecast.addSource(unitFormatter.getMetric(), metric -> {
+            if (mRows != null && metric != null && metric != mFormattedMetric) reformat(metric);
+        });
+
+        // The chart reads every column of the forecast, packed, and is prepared in the background
+        mChartData = ForecastChartData.load(Transformations.switchMap(repository,
+                SunshineRepository::getPackedWeatherForecasts), executors.diskIO());
+    }
+
+    /**
+     * Formats new rows in the current units. Most of the strings come from the formatter's
+     * cache, so this is cheap enough for the main thread.
+     */
+    private void setRows(List<ListWeatherEntry> rows, int syncId) {
+        mRows = rows;
+        mFormattedMetric = mUnitFormatter.isMetric();
+        mForecast.setValue(new SyncedValue<>(rows == null ? null
+                : ForecastListItem.format(rows, mUnitFormatter, mFormattedMetric), syncId));
     }
 
-    public LiveData<List<ListWeatherEntry>> getForecast() {
+    /**
+     * Formats the rows at hand again, in other units, on the disk thread. The result is dropped
+     * if newer rows have come in meanwhile, as they were already formatted in the current units,
+     * or if the units have changed again, as another result is on its way.
+     */
+    private void reformat(boolean metric) {
+        List<ListWeatherEntry> rows = mRows;
+        mExecutors.diskIO().execute(() -> {
+            List<ForecastListItem> items = ForecastListItem.format(rows, mUnitFormatter, metric);
+            mExecutors.mainThread().execute(() -> {
+                if (rows != mRows || metric != mUnitFormatter.isMetric()) return;
+                mFormattedMetric = metric;
+                // Not a sync, there is no trace to close
+                mForecast.setValue(new SyncedValue<>(items, SyncTracer.NO_SYNC));
+            });
+        });
+    }
+
+    public LiveData<SyncedValue<List<ForecastListItem>>> getForecast() {
         return mForecast;
     }
 
+    /**
+     * @return Whether the weather is shown in metric units
+     */
+    public boolean isMetric() {
+        return mUnitFormatter.isMetric();
+    }
+
+    /**
+     * Switches the units the weather is shown in. The list is formatted again from the rows at
+     * hand and the widgets from the forecast saved after the last sync, neither needs a sync or
+     * a query.
+     */
+    public void setMetric(boolean metric) {
+        if (metric == mUnitFormatter.isMetric()) return;
+        mUnitFormatter.setMetric(metric);
+        mExecutors.diskIO().execute(() -> mWidgetUpdater.redraw(mForecastSnapshot));
+    }
 
+    public LiveData<ForecastChartData> getChartData() {
+        return mChartData;
+    }
+
+    /**
+     * @return Whether the forecast being shown still comes from the snapshot rather than the
+     * database
+     */
+    public boolean isShowingSnapshot() {
+        return mSnapshot != null && mSnapshot == mRows;
+    }
 }
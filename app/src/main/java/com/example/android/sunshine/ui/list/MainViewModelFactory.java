@@ -16,26 +16,42 @@
 
 package com.example.android.sunshine.ui.list;
 
+import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.ViewModel;
 import android.arch.lifecycle.ViewModelProvider;
 
+import com.example.android.sunshine.AppExecutors;
 import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.ui.widget.ForecastWidgetUpdater;
+import com.example.android.sunshine.utilities.UnitFormatter;
 
 /**
  * Factory method that allows us to create a ViewModel with a constructor that takes a
- * {@link SunshineRepository}
+ * {@link SunshineRepository}, once it is ready, and a {@link ForecastSnapshot}
  */
 public class MainViewModelFactory extends ViewModelProvider.NewInstanceFactory {
 
-    private final SunshineRepository mRepository;
+    private final LiveData<SunshineRepository> mRepository;
+    private final ForecastSnapshot mForecastSnapshot;
+    private final AppExecutors mExecutors;
+    private final UnitFormatter mUnitFormatter;
+    private final ForecastWidgetUpdater mWidgetUpdater;
 
-    public MainViewModelFactory(SunshineRepository repository) {
+    public MainViewModelFactory(LiveData<SunshineRepository> repository,
+                                ForecastSnapshot forecastSnapshot, AppExecutors executors,
+                                UnitFormatter unitFormatter, ForecastWidgetUpdater widgetUpdater) {
         this.mRepository = repository;
+        this.mForecastSnapshot = forecastSnapshot;
+        this.mExecutors = executors;
+        this.mUnitFormatter = unitFormatter;
+        this.mWidgetUpdater = widgetUpdater;
     }
 
     @Override
     public <T extends ViewModel> T create(Class<T> modelClass) {
         //noinspection unchecked
-        return (T) new MainActivityViewModel(mRepository);
+        return (T) new MainActivityViewModel(mRepository, mForecastSnapshot, mExecutors,
+                mUnitFormatter, mWidgetUpdater);
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.location;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.city.City;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the cities found for the user's query in {@link LocationSearchActivity}
+ */
+class CityAdapter extends RecyclerView.Adapter<CityAdapter.CityViewHolder> {
+
+    /**
+     * Receives the city the user tapped.
+     */
+    interface CityOnClickHandler {
+        void onCityClick(City city);
+    }
+
+    private final CityOnClickHandler mClickHandler;
+    private List<City> mCities = Collections.emptyList();
+
+    CityAdapter(CityOnClickHandler clickHandler) {
+        mClickHandler = clickHandler;
+    }
+
+    @Override
+    public CityViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.city_list_item, parent, false);
+        return new CityViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(CityViewHolder holder, int position) {
+        City city = mCities.get(position);
+        holder.nameView.setText(city.getName());
+        holder.regionView.setText(city.getAdmin1() == null ? city.getCountry()
+                : city.getAdmin1() + ", " + city.getCountry());
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCities.size();
+    }
+
+    void swapCities(List<City> cities) {
+        mCities = cities;
+        notifyDataSetChanged();
+    }
+
+    class CityViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView nameView;
+        final TextView regionView;
+
+        CityViewHolder(View view) {
+            super(view);
+            nameView = view.findViewById(R.id.city_name);
+            regionView = view.findViewById(R.id.city_region);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mClickHandler.onCityClick(mCities.get(position));
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.location;
+
+import android.Manifest;
+import android.arch.lifecycle.LifecycleActivity;
+import android.arch.lifecycle.ViewModelProviders;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+/**
+ * Lets the user pick the city the weather is fetched for, suggesting cities as they type, or have
+ * it fetched for where the device is
+ */
+public class LocationSearchActivity extends LifecycleActivity
+        implements CityAdapter.CityOnClickHandler {
+
+    private static final int REQUEST_LOCATION_PERMISSION = 1;
+
+    private LocationSearchViewModel mViewModel;
+    private CityAdapter mCityAdapter;
+    private EditText mQueryView;
+    private TextView mEmptyView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_location_search);
+
+        LocationSearchViewModelFactory factory =
+                InjectorUtils.provideLocationSearchViewModelFactory(getApplicationContext());
+        mViewModel = ViewModelProviders.of(this, factory).get(LocationSearchViewModel.class);
+
+        mCityAdapter = new CityAdapter(this);
+        RecyclerView resultsView = findViewById(R.id.location_results);
+        resultsView.setLayoutManager(
+                new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false));
+        resultsView.setAdapter(mCityAdapter);
+
+        mEmptyView = findViewById(R.id.location_empty);
+        mQueryView = findViewById(R.id.location_query);
+        mQueryView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mViewModel.setQuery(s.toString());
+            }
+        });
+
+        findViewById(R.id.location_use_position).setOnClickListener(v -> useDevicePosition());
+
+        mViewModel.isSearchAvailable().observe(this, available -> {
+            if (available) return;
+            // Only the device's position can be used
+            mQueryView.setEnabled(false);
+            mEmptyView.setText(R.string.location_search_unavailable);
+            mEmptyView.setVisibility(View.VISIBLE);
+        });
+        mViewModel.getResults().observe(this, cities -> {
+            mCityAdapter.swapCities(cities);
+            if (!mQueryView.isEnabled()) return;
+            boolean nothingFound = cities.isEmpty() && mQueryView.getText().length() != 0;
+            mEmptyView.setVisibility(nothingFound ? View.VISIBLE : View.GONE);
+        });
+    }
+
+    @Override
+    public void onCityClick(City city) {
+        // The repository may still be being built if the app was started straight into here
+        InjectorUtils.provideRepositoryAsync(getApplicationContext()).observe(this, repository -> {
+            repository.setLocation(city);
+            finish();
+        });
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions,
+                                           int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_LOCATION_PERMISSION && grantResults.length > 0
+                && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            useDevicePosition();
+        }
+    }
+
+    /**
+     * Fetches the weather for the device's last known position, asking for the permission first
+     * if need be. No new position is asked for, the one some other app last had is good enough
+     * for a forecast.
+     */
+    private void useDevicePosition() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.ACCESS_COARSE_LOCATION},
+                    REQUEST_LOCATION_PERMISSION);
+            return;
+        }
+
+        LocationManager locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
+        Location position = null;
+        for (String provider : locationManager.getProviders(true)) {
+            Location candidate = locationManager.getLastKnownLocation(provider);
+            // The most recent of them
+            if (candidate != null
+                    && (position == null || candidate.getTime() > position.getTime())) {
+                position = candidate;
+            }
+        }
+        if (position == null) {
+            Toast.makeText(this, R.string.location_position_unknown, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        double latitude = position.getLatitude();
+        double longitude = position.getLongitude();
+        InjectorUtils.provideRepositoryAsync(getApplicationContext()).observe(this, repository -> {
+            repository.setDevicePosition(latitude, longitude);
+            finish();
+        });
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.location;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.ViewModel;
+
+import com.example.android.sunshine.data.city.City;
+import com.example.android.sunshine.data.city.CityDatabase;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ViewModel} for {@link LocationSearchActivity}
+ * <p>
+ * Searches the {@link CityDatabase} in the background at every keystroke. Only the latest query
+ * counts: one which has been overtaken by the time it would start isn't run, and its results
+ * aren't posted if it was. Searches run on an executor of their own, so that a keystroke never
+ * waits behind a sync being written to disk.
+ */
+class LocationSearchViewModel extends ViewModel {
+
+    // Most cities suggested at once
+    private static final int RESULT_LIMIT = 10;
+
+    private final CityDatabase mCityDatabase;
+    private final Executor mSearchExecutor;
+    private final MutableLiveData<List<City>> mResults = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> mSearchAvailable = new MutableLiveData<>();
+    // Counts the queries, so that a search can tell whether it has been overtaken
+    private final AtomicInteger mLatestQuery = new AtomicInteger();
+
+    public LocationSearchViewModel(CityDatabase cityDatabase, Executor searchExecutor) {
+        mCityDatabase = cityDatabase;
+        mSearchExecutor = searchExecutor;
+        // Opens the database before the first keystroke, and finds out whether there is one
+        mSearchExecutor.execute(() -> mSearchAvailable.postValue(mCityDatabase.isAvailable()));
+    }
+
+    public void setQuery(String query) {
+        int queryNumber = mLatestQuery.incrementAndGet();
+        mSearchExecutor.execute(() -> {
+            if (queryNumber != mLatestQuery.get()) return;
+            List<City> cities = mCityDatabase.search(query, RESULT_LIMIT);
+            if (queryNumber == mLatestQuery.get()) mResults.postValue(cities);
+        });
+    }
+
+    public LiveData<List<City>> getResults() {
+        return mResults;
+    }
+
+    /**
+     * @return Whether cities can be searched at all, false if the app was built without a city
+     * database
+     */
+    public LiveData<Boolean> isSearchAvailable() {
+        return mSearchAvailable;
+    }
+}
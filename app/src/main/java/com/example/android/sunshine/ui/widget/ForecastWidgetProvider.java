@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.widget;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.ui.list.MainActivity;
+import com.example.android.sunshine.utilities.InjectorUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Home screen widget showing today's forecast and the next few days.
+ * <p>
+ * Updates run in a broadcast receiver with little time to spare, so they only read the
+ * {@link WidgetSnapshot} saved after the last sync. The widgets are also redrawn straight from
+ * the snapshot by {@link ForecastWidgetUpdater} whenever a sync is stored.
+ */
+public class ForecastWidgetProvider extends AppWidgetProvider {
+
+    // Views of the days after today, in order
+    private static final int[] DAY_DATE_IDS =
+            {R.id.widget_day1_date, R.id.widget_day2_date, R.id.widget_day3_date};
+    private static final int[] DAY_ICON_IDS =
+            {R.id.widget_day1_icon, R.id.widget_day2_icon, R.id.widget_day3_icon};
+    private static final int[] DAY_HIGH_IDS =
+            {R.id.widget_day1_high, R.id.widget_day2_high, R.id.widget_day3_high};
+    private static final int[] DAY_LOW_IDS =
+            {R.id.widget_day1_low, R.id.widget_day2_low, R.id.widget_day3_low};
+
+    // Views which only make sense once there is a forecast
+    private static final int[] TODAY_IDS = {R.id.widget_today_date, R.id.widget_today_icon,
+            R.id.widget_today_high, R.id.widget_today_low, R.id.widget_today_description};
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        long start = System.nanoTime();
+        WidgetSnapshot snapshot =
+                WidgetSnapshot.read(InjectorUtils.provideWidgetSnapshotFile(context));
+        updateWidgets(context, appWidgetManager, appWidgetIds, snapshot);
+        new WidgetMetrics(context).record(WidgetMetrics.STAGE_UPDATE, System.nanoTime() - start);
+    }
+
+    /**
+     * Redraws widgets from a snapshot.
+     *
+     * @param snapshot The snapshot, null if there is none yet
+     */
+    static void updateWidgets(Context context, AppWidgetManager appWidgetManager,
+                              int[] appWidgetIds, @Nullable WidgetSnapshot snapshot) {
+        appWidgetManager.updateAppWidget(appWidgetIds, buildViews(context, snapshot));
+    }
+
+    private static RemoteViews buildViews(Context context, @Nullable WidgetSnapshot snapshot) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_forecast);
+
+        // Tapping the widget opens the forecast list
+        Intent intent = new Intent(context, MainActivity.class);
+        views.setOnClickPendingIntent(R.id.widget,
+                PendingIntent.getActivity(context, 0, intent, 0));
+
+        // Days which have gone by since the snapshot was made are skipped. The friendlier
+        // labels, such as "Tomorrow", are only right on the day they were formatted.
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        List<WidgetSnapshot.Day> days = snapshot == null
+                ? Collections.<WidgetSnapshot.Day>emptyList() : snapshot.getDays();
+        boolean labelsCurrent = snapshot != null && snapshot.getFormattedForDate() == today;
+        int first = 0;
+        while (first < days.size() && days.get(first).getDateMillis() < today) first++;
+
+        boolean hasForecast = first < days.size();
+        views.setViewVisibility(R.id.widget_empty, hasForecast ? View.GONE : View.VISIBLE);
+        for (int id : TODAY_IDS) {
+            views.setViewVisibility(id, hasForecast ? View.VISIBLE : View.GONE);
+        }
+
+        if (hasForecast) {
+            WidgetSnapshot.Day day = days.get(first);
+            views.setTextViewText(R.id.widget_today_date, getLabel(day, labelsCurrent));
+            views.setImageViewResource(R.id.widget_today_icon, SunshineWeatherUtils
+                    .getLargeArtResourceIdForWeatherCondition(day.getWeatherId()));
+            views.setContentDescription(R.id.widget_today_icon, day.getDescriptionA11y());
+            views.setTextViewText(R.id.widget_today_high, day.getHigh());
+            views.setTextViewText(R.id.widget_today_low, day.getLow());
+            views.setTextViewText(R.id.widget_today_description, day.getDescription());
+        }
+
+        for (int i = 0; i < DAY_DATE_IDS.length; i++) {
+            int position = first + 1 + i;
+            if (position >= days.size()) {
+                views.setViewVisibility(DAY_DATE_IDS[i], View.INVISIBLE);
+                views.setViewVisibility(DAY_ICON_IDS[i], View.INVISIBLE);
+                views.setViewVisibility(DAY_HIGH_IDS[i], View.INVISIBLE);
+                views.setViewVisibility(DAY_LOW_IDS[i], View.INVISIBLE);
+                continue;
+            }
+            WidgetSnapshot.Day day = days.get(position);
+            views.setTextViewText(DAY_DATE_IDS[i], day.getWeekdayLabel());
+            views.setImageViewResource(DAY_ICON_IDS[i], SunshineWeatherUtils
+                    .getSmallArtResourceIdForWeatherCondition(day.getWeatherId()));
+            views.setContentDescription(DAY_ICON_IDS[i], day.getDescriptionA11y());
+            views.setTextViewText(DAY_HIGH_IDS[i], day.getHigh());
+            views.setTextViewText(DAY_LOW_IDS[i], day.getLow());
+        }
+        return views;
+    }
+
+    private static String getLabel(WidgetSnapshot.Day day, boolean labelsCurrent) {
+        return labelsCurrent ? day.getDateLabel() : day.getWeekdayLabel();
+    }
+}
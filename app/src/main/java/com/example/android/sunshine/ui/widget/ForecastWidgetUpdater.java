@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.sunshine.data.QueryStream;
+import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Builds the {@link WidgetSnapshot} whenever the stored forecast changes, and redraws the widgets
+ * on the home screen from it. Follows the forecast through a {@link QueryStream}, one result at a
+ * time, so syncs which change nothing don't redraw the widgets and a burst of syncs only redraws
+ * them with the latest forecast.
+ */
+public class ForecastWidgetUpdater implements QueryStream.Subscriber<List<ListWeatherEntry>> {
+    private static final String LOG_TAG = ForecastWidgetUpdater.class.getSimpleName();
+
+    private final Context mContext;
+    private final File mSnapshotFile;
+    private QueryStream.Subscription mSubscription;
+
+    public ForecastWidgetUpdater(Context context, File snapshotFile) {
+        mContext = context.getApplicationContext();
+        mSnapshotFile = snapshotFile;
+    }
+
+    /**
+     * Starts following the repository's forecast. The widgets are drawn from the forecast stored
+     * now, and again after each sync which changes it.
+     *
+     * @param executor Where the snapshot is built and written, off of the main thread
+     */
+    public synchronized void start(SunshineRepository repository, Executor executor) {
+        if (mSubscription != null) return;
+        mSubscription = repository.getCurrentWeatherForecastStream()
+                .distinctUntilChanged(QueryStream.elementwise(ListWeatherEntry::hasSameContent))
+                .subscribe(executor, this);
+        mSubscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ListWeatherEntry> forecast) {
+        update(forecast);
+        // Only asks for the next forecast once this one is on the home screen
+        mSubscription.request(1);
+    }
+
+    @Override
+    public void onError(RuntimeException e) {
+        Log.e(LOG_TAG, "Reading the forecast for the widget failed", e);
+    }
+
+    /**
+     * Formats the widgets again from the forecast saved after the last sync, such as after the
+     * user picked other units. Runs on the calling thread, which mustn't be the main thread.
+     */
+    @WorkerThread
+    public void redraw(ForecastSnapshot forecastSnapshot) {
+        List<ListWeatherEntry> forecast =
+                forecastSnapshot.read(SunshineDateUtils.getNormalizedUtcDateForToday());
+        if (forecast != null) update(forecast);
+    }
+
+    @WorkerThread
+    private void update(List<ListWeatherEntry> forecast) {
+        WidgetMetrics metrics = new WidgetMetrics(mContext);
+        long start = System.nanoTime();
+        WidgetSnapshot snapshot = WidgetSnapshot.create(mContext, forecast);
+        snapshot.write(mSnapshotFile);
+        metrics.record(WidgetMetrics.STAGE_SNAPSHOT, System.nanoTime() - start);
+
+        // The snapshot is saved for later updates even if there is no widget yet, so that a
+        // widget added before the next sync has something to show
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(mContext);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(mContext, ForecastWidgetProvider.class));
+        if (appWidgetIds == null || appWidgetIds.length == 0) return;
+
+        start = System.nanoTime();
+        ForecastWidgetProvider.updateWidgets(mContext, appWidgetManager, appWidgetIds, snapshot);
+        metrics.record(WidgetMetrics.STAGE_PUSH, System.nanoTime() - start);
+    }
+}
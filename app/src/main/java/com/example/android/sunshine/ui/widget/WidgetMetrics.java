@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps count of how long each stage of the widget pipeline takes: building the snapshot after a
+ * sync, pushing it to the widgets on the home screen and updating them from the saved snapshot
+ * when the system asks. The totals survive process restarts, as widget updates usually happen
+ * in a process which was started just for them.
+ */
+class WidgetMetrics {
+    private static final String LOG_TAG = WidgetMetrics.class.getSimpleName();
+
+    // Formatting and saving the snapshot, on the disk thread after a sync
+    static final String STAGE_SNAPSHOT = "snapshot";
+    // Redrawing the widgets from the snapshot which was just built
+    static final String STAGE_PUSH = "push";
+    // Reading the saved snapshot and redrawing the widgets, in the update broadcast
+    static final String STAGE_UPDATE = "update";
+
+    private static final String PREFERENCES_NAME = "widget_metrics";
+    private static final String KEY_COUNT = "_count";
+    private static final String KEY_TOTAL_MICROS = "_total_us";
+    private static final String KEY_MAX_MICROS = "_max_us";
+
+    private final SharedPreferences mPreferences;
+
+    WidgetMetrics(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds a run of a stage to its totals.
+     *
+     * @param stage        One of the STAGE constants
+     * @param elapsedNanos How long the run took
+     */
+    synchronized void record(String stage, long elapsedNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        mPreferences.edit()
+                .putLong(stage + KEY_COUNT, mPreferences.getLong(stage + KEY_COUNT, 0) + 1)
+                .putLong(stage + KEY_TOTAL_MICROS,
+                        mPreferences.getLong(stage + KEY_TOTAL_MICROS, 0) + micros)
+                .putLong(stage + KEY_MAX_MICROS,
+                        Math.max(micros, mPreferences.getLong(stage + KEY_MAX_MICROS, 0)))
+                .apply();
+        Log.d(LOG_TAG, "Widget " + stage + " took " + micros + "us, " + getSummary(stage));
+    }
+
+    /**
+     * @return Runs, mean and worst time of a stage, for logs and debugging
+     */
+    String getSummary(String stage) {
+        long count = mPreferences.getLong(stage + KEY_COUNT, 0);
+        long total = mPreferences.getLong(stage + KEY_TOTAL_MICROS, 0);
+        return String.format(Locale.US, "%s: %d runs, mean %.1f ms, max %.1f ms", stage, count,
+                count == 0 ? 0f : total / 1000f / count,
+                mPreferences.getLong(stage + KEY_MAX_MICROS, 0) / 1000f);
+    }
+}
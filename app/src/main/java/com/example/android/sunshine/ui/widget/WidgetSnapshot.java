@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.widget;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Everything the home screen widget shows, already formatted.
+ * <p>
+ * It is built on the disk thread right after a sync has been stored, while the forecast is at
+ * hand, and saved to a small file. {@link ForecastWidgetProvider} only has to read that file and
+ * copy its strings into views, so an update never opens the database or formats a date.
+ * <p>
+ * Labels such as "Today" are only right on the day they were formatted, so each day also carries
+ * its plain weekday name, which is used once the snapshot is from another day.
+ */
+class WidgetSnapshot {
+    private static final String LOG_TAG = WidgetSnapshot.class.getSimpleName();
+
+    private static final int MAGIC = 0x53554E57; // "SUNW"
+    private static final int VERSION = 1;
+
+    // Days kept, more than the widget shows so that it still has days to show after midnight
+    static final int DAY_COUNT = 7;
+
+    private final long mFormattedForDate;
+    private final long mCreatedAt;
+    private final List<Day> mDays;
+
+    private WidgetSnapshot(long formattedForDate, long createdAt, List<Day> days) {
+        mFormattedForDate = formattedForDate;
+        mCreatedAt = createdAt;
+        mDays = days;
+    }
+
+    /**
+     * Formats the first days of a forecast.
+     *
+     * @param context  Used to format the strings in the user's locale and units
+     * @param forecast The forecast, starting today
+     */
+    @WorkerThread
+    static WidgetSnapshot create(Context context, List<ListWeatherEntry> forecast) {
+        // Normalized dates are UTC midnights, formatting them in UTC gives their weekday
+        SimpleDateFormat weekdayFormat = new SimpleDateFormat("EEE", Locale.getDefault());
+        weekdayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        int count = Math.min(DAY_COUNT, forecast.size());
+        List<Day> days = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ListWeatherEntry weatherEntry = forecast.get(i);
+            long dateMillis = weatherEntry.getDate().getTime();
+            int weatherId = weatherEntry.getWeatherIconId();
+            String description =
+                    SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+            days.add(new Day(dateMillis, weatherId,
+                    SunshineDateUtils.getFriendlyDateString(context, dateMillis, i == 0),
+                    weekdayFormat.format(dateMillis),
+                    description,
+                    context.getString(R.string.a11y_forecast, description),
+                    SunshineWeatherUtils.formatTemperature(context, weatherEntry.getMax()),
+                    SunshineWeatherUtils.formatTemperature(context, weatherEntry.getMin())));
+        }
+        return new WidgetSnapshot(SunshineDateUtils.getNormalizedUtcMsForToday(),
+                System.currentTimeMillis(), days);
+    }
+
+    /**
+     * @return Normalized UTC date of the day the labels were formatted on
+     */
+    long getFormattedForDate() {
+        return mFormattedForDate;
+    }
+
+    /**
+     * @return When the snapshot was created, in milliseconds since the epoch
+     */
+    long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    List<Day> getDays() {
+        return mDays;
+    }
+
+    /**
+     * Reads a snapshot saved by {@link #write(File)}.
+     *
+     * @return The snapshot, or null if there is no usable one
+     */
+    @Nullable
+    static WidgetSnapshot read(File file) {
+        if (!file.exists()) return null;
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(LOG_TAG, "Ignoring widget snapshot with an unknown format");
+                return null;
+            }
+            long formattedForDate = in.readLong();
+            long createdAt = in.readLong();
+            int count = in.readInt();
+            List<Day> days = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                days.add(new Day(in.readLong(), in.readInt(), in.readUTF(), in.readUTF(),
+                        in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            return new WidgetSnapshot(formattedForDate, createdAt,
+                    Collections.unmodifiableList(days));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read the widget snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the saved snapshot. The new one is written to a temporary file first and then
+     * renamed, so that a widget update never sees a partially written file.
+     */
+    @WorkerThread
+    void write(File file) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mFormattedForDate);
+            out.writeLong(mCreatedAt);
+            out.writeInt(mDays.size());
+            for (Day day : mDays) {
+                out.writeLong(day.mDateMillis);
+                out.writeInt(day.mWeatherId);
+                out.writeUTF(day.mDateLabel);
+                out.writeUTF(day.mWeekdayLabel);
+                out.writeUTF(day.mDescription);
+                out.writeUTF(day.mDescriptionA11y);
+                out.writeUTF(day.mHigh);
+                out.writeUTF(day.mLow);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write the widget snapshot", e);
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.w(LOG_TAG, "Could not replace the widget snapshot");
+        }
+    }
+
+    /**
+     * One day of the widget, ready to be shown
+     */
+    static final class Day {
+        private final long mDateMillis;
+        private final int mWeatherId;
+        private final String mDateLabel;
+        private final String mWeekdayLabel;
+        private final String mDescription;
+        private final String mDescriptionA11y;
+        private final String mHigh;
+        private final String mLow;
+
+        Day(long dateMillis, int weatherId, String dateLabel, String weekdayLabel,
+            String description, String descriptionA11y, String high, String low) {
+            mDateMillis = dateMillis;
+            mWeatherId = weatherId;
+            mDateLabel = dateLabel;
+            mWeekdayLabel = weekdayLabel;
+            mDescription = description;
+            mDescriptionA11y = descriptionA11y;
+            mHigh = high;
+            mLow = low;
+        }
+
+        long getDateMillis() {
+            return mDateMillis;
+        }
+
+        int getWeatherId() {
+            return mWeatherId;
+        }
+
+        /**
+         * @return Label such as "Today" or "Friday", only valid on the day it was formatted
+         */
+        String getDateLabel() {
+            return mDateLabel;
+        }
+
+        /**
+         * @return Abbreviated weekday name, valid on any day
+         */
+        String getWeekdayLabel() {
+            return mWeekdayLabel;
+        }
+
+        String getDescription() {
+            return mDescription;
+        }
+
+        String getDescriptionA11y() {
+            return mDescriptionA11y;
+        }
+
+        String getHigh() {
+            return mHigh;
+        }
+
+        String getLow() {
+            return mLow;
+        }
+    }
+}
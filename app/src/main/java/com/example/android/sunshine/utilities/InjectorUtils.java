@@ -13,49 +13,170 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.example.android.sunshine.utilities;
 
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
 
 import com.example.android.sunshine.AppExecutors;
 import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.alert.WeatherAlertEngine;
+import com.example.android.sunshine.data.city.CityDatabase;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
 import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.network.LocationPreferences;
+import com.example.android.sunshine.data.network.SyncIntervalPolicy;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.ui.alert.AlertRulesViewModelFactory;
 import com.example.android.sunshine.ui.detail.DetailViewModelFactory;
 import com.example.android.sunshine.ui.list.MainViewModelFactory;
+import com.example.android.sunshine.ui.location.LocationSearchViewModelFactory;
+import com.example.android.sunshine.ui.widget.ForecastWidgetUpdater;
 
+import java.io.File;
 import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Provides static methods to inject the various classes needed for Sunshine
+ * <p>
+ * Every dependency is created lazily, the first time it is asked for, by a {@link LazyProvider}.
+ * {@link #warmUp(Context)} builds the graph on a background thread when the app starts so that
+ * activities don't pay for it on the main thread.
  */
 public class InjectorUtils {
 
+    private static final String FORECAST_SNAPSHOT_FILE = "forecast_snapshot.bin";
+    private static final String WIDGET_SNAPSHOT_FILE = "widget_snapshot.bin";
+
+    private static final LazyProvider<AppExecutors> sExecutors =
+            new LazyProvider<>("AppExecutors", appContext -> AppExecutors.getInstance());
+
+    private static final LazyProvider<SunshineDatabase> sDatabase =
+            new LazyProvider<>("SunshineDatabase", SunshineDatabase::getInstance);
+
+    private static final LazyProvider<CityDatabase> sCityDatabase =
+            new LazyProvider<>("CityDatabase", CityDatabase::new);
+
+    private static final LazyProvider<UnitFormatter> sUnitFormatter =
+            new LazyProvider<>("UnitFormatter", UnitFormatter::getInstance);
+
+    // Location searches run at every keystroke, they mustn't queue behind disk writes
+    private static final LazyProvider<Executor> sSearchExecutor =
+            new LazyProvider<>("SearchExecutor", appContext ->
+                    Executors.newSingleThreadExecutor());
+
+    private static final LazyProvider<WeatherNetworkDataSource> sNetworkDataSource =
+            new LazyProvider<>("WeatherNetworkDataSource", appContext ->
+                    WeatherNetworkDataSource.getInstance(appContext, sExecutors.get(appContext),
+                            sDatabase.get(appContext).syncRequestDao(),
+                            sCityDatabase.get(appContext)));
+
+    private static final LazyProvider<ForecastWidgetUpdater> sWidgetUpdater =
+            new LazyProvider<>("ForecastWidgetUpdater", appContext ->
+                    new ForecastWidgetUpdater(appContext, provideWidgetSnapshotFile(appContext)));
+
+    private static final LazyProvider<SunshineRepository> sRepository =
+            new LazyProvider<>("SunshineRepository", appContext -> {
+                SunshineRepository repository = SunshineRepository.getInstance(
+                        sDatabase.get(appContext), sNetworkDataSource.get(appContext),
+                        sExecutors.get(appContext), provideForecastSnapshot(appContext),
+                        new WeatherAlertEngine(appContext, sDatabase.get(appContext)));
+                // The widget follows the stored forecast for as long as the process lives
+                sWidgetUpdater.get(appContext).start(repository,
+                        sExecutors.get(appContext).diskIO());
+                return repository;
+            });
+
+    /**
+     * Builds the repository and everything it depends on, and opens the database, on a background
+     * thread. Called when the application starts.
+     */
+    public static void warmUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        sExecutors.get(appContext).diskIO().execute(() -> {
+            provideRepository(appContext);
+            sUnitFormatter.get(appContext);
+            // Room only opens the database on the first query, do it now instead
+            sDatabase.get(appContext).getOpenHelper().getWritableDatabase();
+        });
+    }
+
     public static SunshineRepository provideRepository(Context context) {
-        SunshineDatabase database = SunshineDatabase.getInstance(context.getApplicationContext());
-        AppExecutors executors = AppExecutors.getInstance();
-        WeatherNetworkDataSource networkDataSource =
-                WeatherNetworkDataSource.getInstance(context.getApplicationContext(), executors);
-        return SunshineRepository.getInstance(database.weatherDao(), networkDataSource, executors);
+        return sRepository.get(context);
+    }
+
+    /**
+     * Provides the repository without blocking the calling thread while it is being built.
+     *
+     * @return {@link LiveData} which will hold the repository once it is ready
+     */
+    public static LiveData<SunshineRepository> provideRepositoryAsync(Context context) {
+        Context appContext = context.getApplicationContext();
+        MutableLiveData<SunshineRepository> repository = new MutableLiveData<>();
+        if (sRepository.isInitialized()) {
+            repository.postValue(sRepository.get(appContext));
+        } else {
+            sExecutors.get(appContext).diskIO().execute(() ->
+                    repository.postValue(provideRepository(appContext)));
+        }
+        return repository;
     }
 
     public static WeatherNetworkDataSource provideNetworkDataSource(Context context) {
         // This call to provide repository is necessary if the app starts from a service - in this
         // case the repository will not exist unless it is specifically created.
         provideRepository(context.getApplicationContext());
-        AppExecutors executors = AppExecutors.getInstance();
-        return WeatherNetworkDataSource.getInstance(context.getApplicationContext(), executors);
+        return sNetworkDataSource.get(context);
+    }
+
+    public static SyncIntervalPolicy provideSyncIntervalPolicy(Context context) {
+        return new SyncIntervalPolicy(context.getApplicationContext());
+    }
+
+    public static LocationPreferences provideLocationPreferences(Context context) {
+        return new LocationPreferences(context.getApplicationContext());
+    }
+
+    public static ForecastSnapshot provideForecastSnapshot(Context context) {
+        return new ForecastSnapshot(new File(context.getFilesDir(), FORECAST_SNAPSHOT_FILE));
+    }
+
+    public static ForecastWidgetUpdater provideForecastWidgetUpdater(Context context) {
+        return sWidgetUpdater.get(context);
+    }
+
+    /**
+     * Provides the file the home screen widget is drawn from. Only the file, widget updates
+     * mustn't build anything else.
+     */
+    public static File provideWidgetSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), WIDGET_SNAPSHOT_FILE);
     }
 
     public static DetailViewModelFactory provideDetailViewModelFactory(Context context, Date date) {
-        SunshineRepository repository = provideRepository(context.getApplicationContext());
-        return new DetailViewModelFactory(repository, date);
+        LiveData<SunshineRepository> repository = provideRepositoryAsync(context);
+        return new DetailViewModelFactory(repository, date, sExecutors.get(context));
+    }
+
+    public static AlertRulesViewModelFactory provideAlertRulesViewModelFactory(Context context) {
+        return new AlertRulesViewModelFactory(provideRepositoryAsync(context));
+    }
+
+    public static LocationSearchViewModelFactory provideLocationSearchViewModelFactory(
+            Context context) {
+        return new LocationSearchViewModelFactory(sCityDatabase.get(context),
+                sSearchExecutor.get(context));
     }
 
     public static MainViewModelFactory provideMainActivityViewModelFactory(Context context) {
-        SunshineRepository repository = provideRepository(context.getApplicationContext());
-        return new MainViewModelFactory(repository);
+        LiveData<SunshineRepository> repository = provideRepositoryAsync(context);
+        Context appContext = context.getApplicationContext();
+        return new MainViewModelFactory(repository, provideForecastSnapshot(appContext),
+                sExecutors.get(context), sUnitFormatter.get(appContext),
+                provideForecastWidgetUpdater(appContext));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+/**
+ * Lazily creates a dependency the first time it is asked for and hands out the same instance from
+ * then on. Creation is wrapped in a systrace section and its duration is logged, so that the cost
+ * of building each part of the dependency graph shows up in startup traces.
+ *
+ * @param <T> Type of the dependency
+ */
+public class LazyProvider<T> {
+    private static final String LOG_TAG = LazyProvider.class.getSimpleName();
+
+    /**
+     * Creates the dependency. Only ever called once per {@link LazyProvider}.
+     */
+    public interface Factory<T> {
+        T create(Context appContext);
+    }
+
+    private final String mName;
+    private final Factory<T> mFactory;
+    private volatile T mInstance;
+
+    /**
+     * @param name    Name used for the trace section and logs
+     * @param factory Creates the dependency
+     */
+    public LazyProvider(String name, Factory<T> factory) {
+        mName = name;
+        mFactory = factory;
+    }
+
+    /**
+     * Gets the dependency, creating it on the calling thread if it doesn't exist yet. If another
+     * thread is already creating it, this waits for that thread to finish.
+     *
+     * @param context Any context, only its application context is used
+     * @return The dependency
+     */
+    public T get(Context context) {
+        T instance = mInstance;
+        if (instance == null) {
+            synchronized (this) {
+                instance = mInstance;
+                if (instance == null) {
+                    instance = create(context.getApplicationContext());
+                    mInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return Whether the dependency has already been created, in which case {@link #get} returns
+     * immediately
+     */
+    public boolean isInitialized() {
+        return mInstance != null;
+    }
+
+    private T create(Context appContext) {
+        long start = SystemClock.elapsedRealtime();
+        TraceCompat.beginSection("Inject:" + mName);
+        try {
+            return mFactory.create(appContext);
+        } finally {
+            TraceCompat.endSection();
+            Log.d(LOG_TAG, "Provided " + mName + " in " + (SystemClock.elapsedRealtime() - start)
+                    + " ms on " + Thread.currentThread().getName());
+        }
+    }
+}
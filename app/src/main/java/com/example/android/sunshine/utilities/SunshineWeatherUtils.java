@@ -40,17 +40,16 @@ public final class SunshineWeatherUtils {
      * @param temperature Temperature in degrees Celsius (°C)
      * @return Formatted temperature String in the following form:
      * "21°"
+     * @see UnitFormatter
      */
     public static String formatTemperature(Context context, double temperature) {
-        int temperatureFormatResourceId = R.string.format_temperature;
-
-        /* For presentation, assume the user doesn't care about tenths of a degree. */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        return UnitFormatter.getInstance(context).formatTemperature(temperature);
     }
 
     /**
      * This method uses the wind direction in degrees to determine compass direction as a
-     * String. (eg NW) The method will return the wind String in the following form: "2 km/h SW"
+     * String. (eg NW) The method will return the wind String in the following form: "2 km/h SW",
+     * or "1 mph SW" if the user's preference is imperial units.
      *
      * @param context   Android Context to access preferences and resources
      * @param windSpeed Wind speed in kilometers / hour
@@ -59,8 +58,6 @@ public final class SunshineWeatherUtils {
      * @return Wind String in the following form: "2 km/h SW"
      */
     public static String getFormattedWind(Context context, double windSpeed, double degrees) {
-        int windFormat = R.string.format_wind_kmh;
-
         String direction = "Unknown";
         if (degrees >= 337.5 || degrees < 22.5) {
             direction = "N";
@@ -80,7 +77,7 @@ public final class SunshineWeatherUtils {
             direction = "NW";
         }
 
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return UnitFormatter.getInstance(context).formatWind(windSpeed, direction);
     }
 
     /**
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.MainThread;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.R;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Shows the weather in the units the user picked. The weather is stored in metric units, as the
+ * server sends it, and is only converted when it is formatted, so that changing the units needs
+ * neither a sync nor a query, only formatting the rows already at hand again.
+ * <p>
+ * Temperatures are shown in whole degrees, so their strings are cached per unit and degree and
+ * formatting a forecast mostly takes lookups.
+ * <p>
+ * Making one doesn't touch the disk, so it may be done on the main thread. The units the user
+ * picked are read from the preferences in the background, until then the locale's units are
+ * shown, and {@link #getMetric()} says when they turn out to be others.
+ */
+public final class UnitFormatter {
+
+    private static final String PREFERENCES_NAME = "unit_preferences";
+    private static final String KEY_METRIC = "metric";
+
+    // Countries which use Fahrenheit and miles, the rest of the world gets metric units
+    private static final String[] IMPERIAL_COUNTRIES = {"US", "LR", "MM"};
+
+    private static final double MPH_PER_KMH = 0.621371;
+
+    // Range of whole degrees, in either unit, whose strings are cached
+    private static final int MIN_CACHED_DEGREES = -100;
+    private static final int MAX_CACHED_DEGREES = 160;
+
+    // For Singleton instantiation
+    private static final Object LOCK = new Object();
+    private static volatile UnitFormatter sInstance;
+
+    private final Context mContext;
+    private final MutableLiveData<Boolean> mMetric = new MutableLiveData<>();
+    private volatile boolean mMetricValue;
+    // Set once the user picks units, which the preference read in the background mustn't undo.
+    // Only used on the main thread.
+    private boolean mMetricPicked;
+
+    // Temperature strings by whole degree, for Celsius and Fahrenheit, filled as they are needed.
+    // Guarded by this, along with the locale they were formatted in.
+    private final String[] mCelsiusCache = new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+    private final String[] mFahrenheitCache =
+            new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+    private Locale mCacheLocale;
+
+    private UnitFormatter(Context context, AppExecutors executors) {
+        mContext = context;
+        mMetricValue = isMetricCountry(Locale.getDefault());
+        executors.diskIO().execute(() -> loadMetric(executors.mainThread()));
+    }
+
+    /**
+     * Get the singleton for this class
+     */
+    public static UnitFormatter getInstance(Context context) {
+        UnitFormatter instance = sInstance;
+        if (instance == null) {
+            synchronized (LOCK) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new UnitFormatter(context.getApplicationContext(),
+                            AppExecutors.getInstance());
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the units the user picked, if they ever did, and tells the observers of
+     * {@link #getMetric()}.
+     */
+    @WorkerThread
+    private void loadMetric(Executor mainThread) {
+        boolean metric = getPreferences().getBoolean(KEY_METRIC, mMetricValue);
+        mainThread.execute(() -> {
+            if (mMetricPicked) return;
+            mMetricValue = metric;
+            mMetric.setValue(metric);
+        });
+    }
+
+    private SharedPreferences getPreferences() {
+        return mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static boolean isMetricCountry(Locale locale) {
+        for (String country : IMPERIAL_COUNTRIES) {
+            if (country.equals(locale.getCountry())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the weather is shown in metric units, rather than imperial ones
+     */
+    public boolean isMetric() {
+        return mMetricValue;
+    }
+
+    /**
+     * @return Whether the weather is shown in metric units, which changes when the user picks
+     * other units. Has no value until the user's units have been read.
+     */
+    public LiveData<Boolean> getMetric() {
+        return mMetric;
+    }
+
+    /**
+     * Saves the units the user picked. Whatever observes {@link #getMetric()} formats the weather
+     * it shows again.
+     */
+    @MainThread
+    public void setMetric(boolean metric) {
+        mMetricPicked = true;
+        if (metric == mMetricValue) return;
+        mMetricValue = metric;
+        // Normally loaded by loadMetric already, so this only queues the write
+        getPreferences().edit().putBoolean(KEY_METRIC, metric).apply();
+        mMetric.setValue(metric);
+    }
+
+    /**
+     * Formats a temperature in the units the user picked, in the following form: "21°"
+     *
+     * @param temperature Temperature in degrees Celsius (°C)
+     */
+    public String formatTemperature(double temperature) {
+        return formatTemperature(temperature, mMetricValue);
+    }
+
+    /**
+     * Formats a temperature in whole degrees, in the following form: "21°"
+     *
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @param metric      Whether to show it in Celsius rather than Fahrenheit
+     */
+    public String formatTemperature(double temperature, boolean metric) {
+        double converted = metric ? temperature : temperature * 1.8 + 32;
+        long degrees = Math.round(converted);
+        if (degrees < MIN_CACHED_DEGREES || degrees > MAX_CACHED_DEGREES) {
+            return String.format(mContext.getString(R.string.format_temperature),
+                    (double) degrees);
+        }
+
+        return getCachedTemperature((int) degrees, metric);
+    }
+
+    /**
+     * Looks a temperature's string up in the cache of its unit, and formats and stores it if it
+     * isn't there yet. The cache is emptied first if the locale has changed since it was filled.
+     *
+     * @param degrees Whole degrees, in the unit of the cache, within the cached range
+     */
+    private synchronized String getCachedTemperature(int degrees, boolean metric) {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mCacheLocale)) {
+            for (int i = 0; i < mCelsiusCache.length; i++) {
+                mCelsiusCache[i] = null;
+                mFahrenheitCache[i] = null;
+            }
+            mCacheLocale = locale;
+        }
+
+        String[] cache = metric ? mCelsiusCache : mFahrenheitCache;
+        int index = degrees - MIN_CACHED_DEGREES;
+        String formatted = cache[index];
+        if (formatted == null) {
+            /* For presentation, assume the user doesn't care about tenths of a degree. */
+            formatted = String.format(mContext.getString(R.string.format_temperature),
+                    (double) degrees);
+            cache[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Formats a wind speed in the units the user picked, in the following form: "2 km/h SW"
+     *
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param direction Compass direction the wind comes from, such as "SW"
+     */
+    public String formatWind(double windSpeed, String direction) {
+        if (mMetricValue) {
+            return String.format(mContext.getString(R.string.format_wind_kmh),
+                    windSpeed, direction);
+        }
+        return String.format(mContext.getString(R.string.format_wind_mph),
+                windSpeed * MPH_PER_KMH, direction);
+    }
+}
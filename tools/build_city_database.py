@@ -0,0 +1,162 @@
+#!/usr/bin/env python3
+#
+# Copyright (C) 2017 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Builds the city database bundled with the app, app/src/main/assets/cities.db,
+and the spatial index of its cities, app/src/main/assets/cities.kdtree.
+
+Reads the GeoNames dump of cities with at least 500 inhabitants (about 200k of
+them) and, optionally, the names of the first level administrative divisions:
+
+    https://download.geonames.org/export/dump/cities500.zip
+    https://download.geonames.org/export/dump/admin1CodesASCII.txt
+
+    tools/build_city_database.py cities500.txt admin1CodesASCII.txt
+
+The layout must match CityDatabase. Cities are looked up by a prefix of their
+search key, see search_key(). Prefixes up to TOP_PREFIX_LENGTH characters match
+too many cities to sort at every keystroke, so the most populous cities for
+each of them are worked out here and stored in top_cities.
+
+The spatial index is a k-d tree over the cities' positions as points on the
+unit sphere, so that the straight line distance between two points orders them
+the same as the distance along the surface, with no special case at the poles
+or the date line. It is laid out implicitly: the node for a range of records is
+the one in the middle of it, split on axis depth % 3, with its left subtree
+before it and its right subtree after it. Its layout must match CityIndex:
+
+    int   magic, KDTREE_MAGIC
+    int   version, DATABASE_VERSION
+    int   number of records
+    then per record, big endian:
+    float x, y, z
+    int   city id
+"""
+
+import math
+import os
+import re
+import sqlite3
+import struct
+import sys
+import unicodedata
+
+OUTPUT = os.path.join(os.path.dirname(__file__), '..', 'app', 'src', 'main', 'assets',
+                      'cities.db')
+KDTREE_OUTPUT = os.path.join(os.path.dirname(OUTPUT), 'cities.kdtree')
+
+# Must match CityDatabase
+DATABASE_VERSION = 2
+KDTREE_MAGIC = 0x53434b44
+TOP_PREFIX_LENGTH = 3
+TOP_CITY_COUNT = 10
+
+NOT_ALPHANUMERIC = re.compile(r'[^0-9a-z]+')
+
+
+def search_key(name):
+    """Lower case, accents removed and anything but letters and digits turned into a space,
+    the same as CityDatabase.getSearchKey."""
+    decomposed = unicodedata.normalize('NFKD', name)
+    stripped = ''.join(c for c in decomposed if not unicodedata.combining(c))
+    return NOT_ALPHANUMERIC.sub(' ', stripped.lower()).strip()
+
+
+def unit_vector(latitude, longitude):
+    """The position as a point on the unit sphere, the same as CityIndex.toUnitVector."""
+    phi, lam = math.radians(latitude), math.radians(longitude)
+    return (math.cos(phi) * math.cos(lam), math.cos(phi) * math.sin(lam), math.sin(phi))
+
+
+def lay_out_kdtree(points, lo, hi, depth):
+    """Sorts points[lo:hi] into the implicit k-d tree order described above."""
+    if hi - lo <= 1:
+        return
+    axis = depth % 3
+    points[lo:hi] = sorted(points[lo:hi], key=lambda point: point[axis])
+    mid = (lo + hi) // 2
+    lay_out_kdtree(points, lo, mid, depth + 1)
+    lay_out_kdtree(points, mid + 1, hi, depth + 1)
+
+
+def write_kdtree(points):
+    lay_out_kdtree(points, 0, len(points), 0)
+    with open(KDTREE_OUTPUT, 'wb') as f:
+        f.write(struct.pack('>iii', KDTREE_MAGIC, DATABASE_VERSION, len(points)))
+        for x, y, z, city_id in points:
+            f.write(struct.pack('>fffi', x, y, z, city_id))
+    print('Wrote %s, %d bytes' % (KDTREE_OUTPUT, os.path.getsize(KDTREE_OUTPUT)))
+
+
+def read_admin1_names(path):
+    names = {}
+    if path:
+        with open(path, encoding='utf-8') as f:
+            for line in f:
+                fields = line.rstrip('\n').split('\t')
+                names[fields[0]] = fields[2]
+    return names
+
+
+def main(cities_path, admin1_path=None):
+    admin1_names = read_admin1_names(admin1_path)
+    if os.path.exists(OUTPUT):
+        os.remove(OUTPUT)
+    os.makedirs(os.path.dirname(OUTPUT), exist_ok=True)
+    db = sqlite3.connect(OUTPUT)
+    db.execute('CREATE TABLE cities (id INTEGER PRIMARY KEY, name TEXT NOT NULL, '
+               'admin1 TEXT, country TEXT NOT NULL, latitude REAL NOT NULL, '
+               'longitude REAL NOT NULL, population INTEGER NOT NULL, '
+               'search_key TEXT NOT NULL)')
+    db.execute('CREATE TABLE top_cities (prefix TEXT PRIMARY KEY, city_ids TEXT NOT NULL)')
+
+    top = {}
+    points = []
+    with open(cities_path, encoding='utf-8') as f:
+        for line in f:
+            fields = line.rstrip('\n').split('\t')
+            city_id, name = int(fields[0]), fields[1]
+            country, admin1_code = fields[8], fields[10]
+            population = int(fields[14] or 0)
+            key = search_key(name)
+            if not key:
+                continue
+            latitude, longitude = float(fields[4]), float(fields[5])
+            db.execute('INSERT INTO cities VALUES (?, ?, ?, ?, ?, ?, ?, ?)',
+                       (city_id, name, admin1_names.get(country + '.' + admin1_code),
+                        country, latitude, longitude, population, key))
+            points.append(unit_vector(latitude, longitude) + (city_id,))
+            for length in range(1, min(len(key), TOP_PREFIX_LENGTH) + 1):
+                top.setdefault(key[:length], []).append((population, city_id))
+
+    for prefix, cities in top.items():
+        cities.sort(reverse=True)
+        db.execute('INSERT INTO top_cities VALUES (?, ?)',
+                   (prefix, ','.join(str(city_id) for _, city_id in cities[:TOP_CITY_COUNT])))
+
+    # Created last, so that it is built in one go
+    db.execute('CREATE INDEX cities_search_key ON cities (search_key)')
+    db.execute('PRAGMA user_version = %d' % DATABASE_VERSION)
+    db.commit()
+    db.execute('VACUUM')
+    db.close()
+    print('Wrote %s, %d bytes' % (OUTPUT, os.path.getsize(OUTPUT)))
+    write_kdtree(points)
+
+
+if __name__ == '__main__':
+    if len(sys.argv) not in (2, 3):
+        sys.exit(__doc__)
+    main(*sys.argv[1:])
@@ -0,0 +1,143 @@
+#!/usr/bin/env python3
+#
+# Copyright (C) 2017 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Builds the forecast fixture, app/src/main/assets/forecasts.fixture.
+
+Writes a made up daily forecast for each of many locations, which the app serves
+instead of fetching when USE_FORECAST_FIXTURE is set:
+
+    tools/build_forecast_fixture.py [number of locations] [number of days]
+
+The locations are the most populous cities of the city database, if it has been
+built (see build_city_database.py), so that picking one of them in the app finds
+its forecast. Otherwise they are named "Location 1", "Location 2" and so on. The
+default location is always included. The same arguments always build the same
+fixture.
+
+The layout must match ForecastFixture, and each forecast is in the format of
+BinaryForecastCodec, with days counted from whenever it is decoded.
+"""
+
+import os
+import random
+import sqlite3
+import struct
+import sys
+
+ASSETS = os.path.join(os.path.dirname(__file__), '..', 'app', 'src', 'main', 'assets')
+OUTPUT = os.path.join(ASSETS, 'forecasts.fixture')
+CITY_DATABASE = os.path.join(ASSETS, 'cities.db')
+
+# Must match ForecastFixture
+MAGIC = 0x53464958
+FORMAT_VERSION = 1
+HEADER_SIZE = 12
+ENTRY_SIZE = 16
+
+# Must match BinaryForecastCodec
+CODEC_FORMAT_VERSION = 1
+SCALE = 10
+
+# Must match NetworkUtils
+DEFAULT_LOCATION = 'Mountain View, CA'
+
+DEFAULT_LOCATION_COUNT = 10000
+DEFAULT_DAY_COUNT = 14
+
+# Thunderstorm, drizzle, rain, snow, fog, clear and clouds
+WEATHER_IDS = [200, 211, 300, 500, 501, 502, 600, 601, 741, 800, 800, 800, 801, 802, 803, 804]
+
+
+def varint(value):
+    out = bytearray()
+    while value & ~0x7F:
+        out.append((value & 0x7F) | 0x80)
+        value >>= 7
+    out.append(value)
+    return out
+
+
+def signed_varint(value):
+    return varint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFF)
+
+
+def scale(value):
+    return int(round(value * SCALE))
+
+
+def read_locations(count):
+    locations = []
+    if os.path.exists(CITY_DATABASE):
+        db = sqlite3.connect(CITY_DATABASE)
+        # The same query as City.getLocationQuery
+        locations = [name + ',' + country for name, country in db.execute(
+            'SELECT name, country FROM cities ORDER BY population DESC LIMIT ?', (count,))]
+        db.close()
+    locations += ['Location %d' % i for i in range(1, count - len(locations) + 1)]
+    # Cities of the same name in the same country share their forecast
+    locations = list(dict.fromkeys([DEFAULT_LOCATION] + locations))[:count]
+    return locations
+
+
+def encode_forecast(rng, day_count):
+    out = bytearray([CODEC_FORMAT_VERSION, 0])
+    out += varint(0)
+    out += varint(day_count)
+    mean = rng.uniform(-15, 30)
+    for day in range(day_count):
+        low = mean + rng.uniform(-6, 2)
+        high = low + rng.uniform(2, 12)
+        out += signed_varint(day)
+        out += varint(rng.choice(WEATHER_IDS))
+        out += signed_varint(scale(low))
+        out += signed_varint(scale(high))
+        out += varint(scale(rng.uniform(20, 100)))
+        out += varint(scale(rng.uniform(980, 1040)))
+        out += varint(scale(rng.uniform(0, 20)))
+        out += varint(scale(rng.uniform(0, 359.9)))
+        mean += rng.uniform(-2, 2)
+    return bytes(out)
+
+
+def main(location_count=DEFAULT_LOCATION_COUNT, day_count=DEFAULT_DAY_COUNT):
+    rng = random.Random(0)
+    locations = read_locations(int(location_count))
+    day_count = int(day_count)
+    keys = sorted(location.encode('utf-8') for location in locations)
+    forecasts = [encode_forecast(rng, day_count) for _ in keys]
+
+    offset = HEADER_SIZE + ENTRY_SIZE * len(keys)
+    entries = bytearray()
+    for key, forecast in zip(keys, forecasts):
+        forecast_offset = offset + len(key)
+        entries += struct.pack('>iiii', offset, len(key), forecast_offset, len(forecast))
+        offset = forecast_offset + len(forecast)
+
+    os.makedirs(ASSETS, exist_ok=True)
+    with open(OUTPUT, 'wb') as f:
+        f.write(struct.pack('>iii', MAGIC, FORMAT_VERSION, len(keys)))
+        f.write(entries)
+        for key, forecast in zip(keys, forecasts):
+            f.write(key)
+            f.write(forecast)
+    print('Wrote %s, %d locations of %d days, %d bytes'
+          % (OUTPUT, len(keys), day_count, os.path.getsize(OUTPUT)))
+
+
+if __name__ == '__main__':
+    if len(sys.argv) > 3:
+        sys.exit(__doc__)
+    main(*sys.argv[1:])